@@ -0,0 +1,262 @@
+package com.newforma.titan.schema;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Element;
+import org.apache.tinkerpop.gremlin.structure.VertexProperty;
+import org.janusgraph.core.Cardinality;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphElement;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.JanusGraphVertex;
+import org.janusgraph.core.Multiplicity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.newforma.titan.schema.scan.ParallelVertexScan;
+import com.newforma.titan.schema.types.SchemaEdgeLabel;
+import com.newforma.titan.schema.types.SchemaPropertyDef;
+
+/**
+ * Checks that the data obeys the edge label multiplicities and the property cardinalities of the
+ * schema, which JanusGraph only enforces for the new writes. The vertices are scanned by several
+ * threads and only the edges and the properties of one vertex are held in memory at a time.
+ * Optionally the violations are repaired by keeping one winner, the edge or property with the
+ * lowest ID, and removing the others. The IDs are allocated in blocks by every JanusGraph instance,
+ * so the lowest ID is not necessarily the oldest element.
+ *
+ * @author Nikolai
+ *
+ */
+public class ConstraintAuditor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConstraintAuditor.class);
+
+    private static final int MAX_SAMPLES = 10;
+
+    private static final Comparator<Element> BY_ID = Comparator.comparingLong(e -> ((JanusGraphElement) e).longId());
+
+    /**
+     * Violations of one constraint.
+     */
+    private static final class Violations {
+        private final AtomicLong vertices = new AtomicLong();
+        private final AtomicLong surplus = new AtomicLong();
+        private final AtomicLong removed = new AtomicLong();
+        private final List<Object> samples = new ArrayList<>();
+
+        void add(Object vertexId, int surplusCount) {
+            vertices.incrementAndGet();
+            surplus.addAndGet(surplusCount);
+            synchronized (samples) {
+                if (samples.size() < MAX_SAMPLES) {
+                    samples.add(vertexId);
+                }
+            }
+        }
+    }
+
+    private final JanusGraph graph;
+    private final Map<String, Multiplicity> multiplicities = new HashMap<>();
+    private final Map<String, Cardinality> cardinalities = new HashMap<>();
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean repair;
+
+    private final Map<String, Violations> violations = new ConcurrentSkipListMap<>();
+
+    public ConstraintAuditor(JanusGraph graph, GraphState graphState) {
+        this.graph = graph;
+        for (final SchemaEdgeLabel edgeDef : graphState.getGraphSchemaDef().getEdges()) {
+            if (edgeDef.getMultiplicity() != null && edgeDef.getMultiplicity() != Multiplicity.MULTI) {
+                multiplicities.put(edgeDef.getLabel(), edgeDef.getMultiplicity());
+            }
+        }
+        for (final SchemaPropertyDef propertyDef : graphState.getGraphSchemaDef().getProperties()) {
+            if (propertyDef.getCardinality() != Cardinality.LIST) {
+                cardinalities.put(propertyDef.getKey(), propertyDef.getCardinality());
+            }
+        }
+    }
+
+    public ConstraintAuditor threads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @param repair keep one winner for every violation and remove the other edges or property values
+     */
+    public ConstraintAuditor repair(boolean repair) {
+        this.repair = repair;
+        return this;
+    }
+
+    /**
+     * Runs the audit and logs the violations.
+     *
+     * @param reportFile file to write the violations to as JSON, <code>null</code> to only log them
+     * @return number of the vertices violating any constraint
+     */
+    public long audit(File reportFile) throws SchemaManagementException {
+        final ParallelVertexScan scan = new ParallelVertexScan(graph, threads);
+        if (repair) {
+            scan.runBatches("Constraint audit and repair", this::repairBatch);
+        } else {
+            scan.run("Constraint audit", (v, tx) -> auditVertex(v));
+        }
+
+        long total = 0;
+        final Map<String, Object> report = new LinkedHashMap<>();
+        for (final Map.Entry<String, Violations> e : violations.entrySet()) {
+            final Violations v = e.getValue();
+            total += v.vertices.get();
+            LOG.warn("{}: violated by {} vertices, {} surplus edges or values, {} removed, e.g. vertices {}", e.getKey(),
+                    v.vertices.get(), v.surplus.get(), v.removed.get(), v.samples);
+            final Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("vertices", Long.valueOf(v.vertices.get()));
+            entry.put("surplus", Long.valueOf(v.surplus.get()));
+            entry.put("removed", Long.valueOf(v.removed.get()));
+            entry.put("samples", v.samples);
+            report.put(e.getKey(), entry);
+        }
+        if (violations.isEmpty()) {
+            LOG.info("No violations of the edge multiplicities and the property cardinalities found");
+        }
+        if (reportFile != null) {
+            try {
+                new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(reportFile, report);
+            } catch (IOException e) {
+                throw new SchemaManagementException("Failed to write the constraint audit report to " + reportFile, e);
+            }
+        }
+        return total;
+    }
+
+    private void repairBatch(List<JanusGraphVertex> vertices, JanusGraphTransaction scanTx) {
+        final JanusGraphTransaction tx = graph.newTransaction();
+        try {
+            final Map<Violations, Long> removed = new HashMap<>();
+            for (final JanusGraphVertex scanned : vertices) {
+                final JanusGraphVertex v = tx.getVertex(((Number) scanned.id()).longValue());
+                if (v == null) {
+                    continue;
+                }
+                for (final Map.Entry<Violations, List<Element>> e : auditVertex(v).entrySet()) {
+                    for (final Element surplus : e.getValue()) {
+                        // the same edge may violate the constraints of both its vertices
+                        if (!((JanusGraphElement) surplus).isRemoved()) {
+                            surplus.remove();
+                        }
+                    }
+                    removed.merge(e.getKey(), Long.valueOf(e.getValue().size()), Long::sum);
+                }
+            }
+            if (!removed.isEmpty()) {
+                tx.commit();
+                removed.forEach((violation, count) -> violation.removed.addAndGet(count.longValue()));
+            }
+        } finally {
+            if (tx.isOpen()) {
+                tx.rollback();
+            }
+        }
+    }
+
+    /**
+     * @return the surplus elements of the vertex, by the violated constraint
+     */
+    private Map<Violations, List<Element>> auditVertex(JanusGraphVertex v) {
+        final Map<Violations, List<Element>> found = new HashMap<>();
+
+        final Map<String, List<VertexProperty<Object>>> properties = new HashMap<>();
+        for (final Iterator<VertexProperty<Object>> it = v.properties(); it.hasNext();) {
+            final VertexProperty<Object> p = it.next();
+            if (cardinalities.containsKey(p.key())) {
+                properties.computeIfAbsent(p.key(), k -> new ArrayList<>(1)).add(p);
+            }
+        }
+        for (final Map.Entry<String, List<VertexProperty<Object>>> e : properties.entrySet()) {
+            final Cardinality cardinality = cardinalities.get(e.getKey());
+            final List<Element> surplus = cardinality == Cardinality.SINGLE
+                    ? losers(e.getValue()) : duplicates(e.getValue(), p -> p.value());
+            record(found, v, "property " + e.getKey() + " " + cardinality, surplus);
+        }
+
+        final Map<String, List<Edge>> outEdges = new HashMap<>();
+        final Map<String, List<Edge>> inEdges = new HashMap<>();
+        for (final Iterator<Edge> it = v.edges(Direction.BOTH); it.hasNext();) {
+            final Edge edge = it.next();
+            if (multiplicities.containsKey(edge.label())) {
+                // a self-loop is both outgoing and incoming
+                if (edge.outVertex().id().equals(v.id())) {
+                    outEdges.computeIfAbsent(edge.label(), k -> new ArrayList<>(1)).add(edge);
+                }
+                if (edge.inVertex().id().equals(v.id())) {
+                    inEdges.computeIfAbsent(edge.label(), k -> new ArrayList<>(1)).add(edge);
+                }
+            }
+        }
+        for (final Map.Entry<String, List<Edge>> e : outEdges.entrySet()) {
+            final Multiplicity multiplicity = multiplicities.get(e.getKey());
+            if (multiplicity == Multiplicity.SIMPLE) {
+                record(found, v, "edge " + e.getKey() + " SIMPLE", duplicates(e.getValue(), edge -> edge.inVertex().id()));
+            } else if (multiplicity == Multiplicity.MANY2ONE || multiplicity == Multiplicity.ONE2ONE) {
+                record(found, v, "edge " + e.getKey() + " " + multiplicity + " OUT", losers(e.getValue()));
+            }
+        }
+        for (final Map.Entry<String, List<Edge>> e : inEdges.entrySet()) {
+            final Multiplicity multiplicity = multiplicities.get(e.getKey());
+            if (multiplicity == Multiplicity.ONE2MANY || multiplicity == Multiplicity.ONE2ONE) {
+                record(found, v, "edge " + e.getKey() + " " + multiplicity + " IN", losers(e.getValue()));
+            }
+        }
+        return found;
+    }
+
+    private void record(Map<Violations, List<Element>> found, JanusGraphVertex v, String constraint, List<Element> surplus) {
+        if (surplus.isEmpty()) {
+            return;
+        }
+        final Violations violation = violations.computeIfAbsent(constraint, c -> new Violations());
+        violation.add(v.id(), surplus.size());
+        found.put(violation, surplus);
+    }
+
+    /**
+     * @return all the elements but the one with the lowest ID
+     */
+    private static List<Element> losers(List<? extends Element> elements) {
+        final List<Element> sorted = new ArrayList<>(elements);
+        sorted.sort(BY_ID);
+        return sorted.subList(1, sorted.size());
+    }
+
+    /**
+     * @return all the elements but the ones with the lowest ID among the elements with the same key
+     */
+    private static <E extends Element> List<Element> duplicates(List<E> elements, Function<E, Object> key) {
+        final Map<Object, List<E>> groups = new HashMap<>();
+        for (final E e : elements) {
+            groups.computeIfAbsent(key.apply(e), k -> new ArrayList<>(1)).add(e);
+        }
+        final List<Element> surplus = new ArrayList<>();
+        for (final List<E> group : groups.values()) {
+            surplus.addAll(losers(group));
+        }
+        return surplus;
+    }
+}
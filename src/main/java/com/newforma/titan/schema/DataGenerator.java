@@ -0,0 +1,576 @@
+package com.newforma.titan.schema;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.lang3.tuple.Triple;
+import org.apache.commons.math3.distribution.ParetoDistribution;
+import org.apache.commons.math3.distribution.ZipfDistribution;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.janusgraph.core.Cardinality;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphEdge;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.JanusGraphVertex;
+import org.janusgraph.core.Multiplicity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.newforma.titan.schema.types.SchemaEdgeLabel;
+import com.newforma.titan.schema.types.SchemaPropertyDef;
+import com.newforma.titan.schema.types.SchemaPropertyDesc;
+import com.newforma.titan.schema.types.SchemaRelationshipDesc;
+import com.newforma.titan.schema.types.SchemaVertexLabel;
+import com.newforma.titan.schema.types.SchemaVertexRelationshipDesc;
+
+/**
+ * Generates a synthetic graph that follows the schema: the vertices of every declared label with
+ * the declared properties and the edges for every declared relationship (in/out vertex pair).
+ * Property values are random values of the declared data type, multi-valued properties get
+ * several values. The out-degrees follow the Pareto distribution and the edge targets are chosen
+ * with the Zipf distribution, so the generated graph has realistic hubs. Edge multiplicity is
+ * respected across all the relationships of an edge label: e.g. a vertex that got a MANY2ONE edge
+ * for one relationship gets none for the other relationships of the label.
+ * <p>
+ * The data is either written directly into the graph by several threads, each committing its own
+ * batches, or streamed into a GraphML file. The result depends only on the seed, not on the
+ * thread scheduling.
+ *
+ * @author Nikolai
+ *
+ */
+public class DataGenerator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DataGenerator.class);
+
+    public static final double DEFAULT_AVERAGE_DEGREE = 5.0;
+    public static final double DEFAULT_DEGREE_SKEW = 2.0;
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private static final double TARGET_ZIPF_EXPONENT = 1.0;
+    private static final int MAX_MULTI_VALUES = 3;
+    private static final int SIMPLE_EDGE_ATTEMPTS = 3;
+    // generated dates are within 2000-2020, fixed for the output to depend only on the seed
+    private static final long DATE_BASE_MS = 946684800000L;
+    private static final long DATE_RANGE_MS = 20L * 365 * 24 * 3600 * 1000;
+
+    private final GraphState graphState;
+    private final long vertexCount;
+
+    private double averageDegree = DEFAULT_AVERAGE_DEGREE;
+    private double degreeSkew = DEFAULT_DEGREE_SKEW;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private long seed = 0;
+
+    private final AtomicLong generatedVertices = new AtomicLong();
+    private final AtomicLong generatedEdges = new AtomicLong();
+
+    /**
+     * @param graphState schema to generate the data for
+     * @param vertexCount total number of vertices, evenly split between the vertex labels
+     */
+    public DataGenerator(GraphState graphState, long vertexCount) {
+        Preconditions.checkArgument(vertexCount > 0, "Number of vertices to generate must be positive");
+        this.graphState = graphState;
+        this.vertexCount = vertexCount;
+    }
+
+    /**
+     * @param averageDegree average number of outgoing edges per vertex for every relationship
+     */
+    public DataGenerator averageDegree(double averageDegree) {
+        Preconditions.checkArgument(averageDegree > 0, "Average degree must be positive");
+        this.averageDegree = averageDegree;
+        return this;
+    }
+
+    /**
+     * @param degreeSkew shape of the Pareto distribution of the out-degrees, must be greater than 1.
+     * The closer to 1, the heavier the tail (e.g. the bigger the hubs)
+     */
+    public DataGenerator degreeSkew(double degreeSkew) {
+        Preconditions.checkArgument(degreeSkew > 1, "Degree skew must be greater than 1");
+        this.degreeSkew = degreeSkew;
+        return this;
+    }
+
+    public DataGenerator threads(int threads) {
+        Preconditions.checkArgument(threads > 0, "Number of threads must be positive");
+        this.threads = threads;
+        return this;
+    }
+
+    public DataGenerator batchSize(int batchSize) {
+        Preconditions.checkArgument(batchSize > 0, "Batch size must be positive");
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public DataGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Writes the generated data into the graph, in parallel batches.
+     *
+     * @param graph target graph, the schema must be already applied
+     * @throws SchemaManagementException if the generation fails
+     */
+    public void generateInto(JanusGraph graph) throws SchemaManagementException {
+        final Map<String, LabelIds> idsByLabel = new LinkedHashMap<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            LOG.info("Generating {} vertices into the graph using {} thread(s)", vertexCount, threads);
+            for (final Map.Entry<String, Integer> labelCount : getVertexCounts().entrySet()) {
+                final SchemaVertexLabel vertexDef = graphState.getVertex(labelCount.getKey());
+                final LabelIds ids = new LabelIds(labelCount.getValue().intValue());
+                final List<Future<?>> batches = new ArrayList<>();
+                int chunkIndex = 0;
+                for (int from = 0; from < ids.count; from += batchSize) {
+                    final int start = from;
+                    final int end = Math.min(from + batchSize, ids.count);
+                    final RandomGenerator rng = random(vertexDef.getLabel(), chunkIndex++);
+                    batches.add(executor.submit((Callable<Void>) () -> {
+                        final JanusGraphTransaction tx = graph.newTransaction();
+                        try {
+                            for (int i = start; i < end; i++) {
+                                final JanusGraphVertex v = tx.addVertex(vertexDef.getLabel());
+                                generateProperties(vertexDef.getProperties(), rng, (k, val) -> v.property(k, val));
+                                ids.ids[i] = v.longId();
+                            }
+                            tx.commit();
+                        } finally {
+                            if (tx.isOpen()) {
+                                tx.rollback();
+                            }
+                        }
+                        logProgress(generatedVertices.addAndGet(end - start), "vertices");
+                        return null;
+                    }));
+                }
+                await(batches);
+                idsByLabel.put(vertexDef.getLabel(), ids);
+            }
+
+            final Map<String, boolean[]> usedEndpoints = new HashMap<>();
+            for (final Triple<String, String, String> rel : getRelationships()) {
+                final LabelIds outIds = idsByLabel.get(rel.getLeft());
+                final LabelIds inIds = idsByLabel.get(rel.getRight());
+                final SchemaEdgeLabel edgeDef = graphState.getEdge(rel.getMiddle());
+                final boolean[] usedOut = usedEndpoints(usedEndpoints, edgeDef, Direction.OUT, rel.getLeft(), outIds);
+                final boolean[] usedIn = usedEndpoints(usedEndpoints, edgeDef, Direction.IN, rel.getRight(), inIds);
+                LOG.info("Generating edges {}-[{}]->{}", rel.getLeft(), rel.getMiddle(), rel.getRight());
+
+                final List<Future<?>> batches = new ArrayList<>();
+                final int sources = edgeSources(edgeDef, outIds, inIds);
+                int chunkIndex = 0;
+                for (int from = 0; from < sources; from += batchSize) {
+                    final int start = from;
+                    final int end = Math.min(from + batchSize, sources);
+                    final RandomGenerator rng = random(rel.toString(), chunkIndex++);
+                    batches.add(executor.submit((Callable<Void>) () -> {
+                        // the vertices were just created, no need to verify that they exist
+                        final JanusGraphTransaction tx = graph.buildTransaction().checkExternalVertexExistence(false).start();
+                        try {
+                            final long count = generateEdges(edgeDef, outIds, inIds, usedOut, usedIn, start, end, rng, (outId, inId, props) -> {
+                                final JanusGraphVertex out = tx.getVertex(outId);
+                                final JanusGraphEdge e = out.addEdge(edgeDef.getLabel(), tx.getVertex(inId));
+                                generateProperties(props, rng, (k, val) -> e.property(k, val));
+                            });
+                            tx.commit();
+                            logProgress(generatedEdges.addAndGet(count), "edges");
+                        } finally {
+                            if (tx.isOpen()) {
+                                tx.rollback();
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                await(batches);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        LOG.info("Generated {} vertices and {} edges", generatedVertices.get(), generatedEdges.get());
+    }
+
+    /**
+     * Streams the generated data into a GraphML file (gzip-compressed if the file name ends with .gz).
+     *
+     * @param file target file
+     * @throws SchemaManagementException if the generation fails
+     */
+    public void generateInto(File file) throws SchemaManagementException {
+        if (GraphDataFormat.forFile(file) != GraphDataFormat.GRAPHML) {
+            throw new SchemaManagementException("Generated data can only be written in GraphML format, got " + file);
+        }
+
+        LOG.info("Generating {} vertices into {}", vertexCount, file);
+
+        final Map<String, String> keyTypes = new TreeMap<>();
+        for (final SchemaPropertyDef p : graphState.getGraphSchemaDef().getProperties()) {
+            keyTypes.put(p.getKey(), GraphMLStreamWriter.attributeType(dataType(p)));
+        }
+
+        OutputStream fileStream = null;
+        try {
+            fileStream = new BufferedOutputStream(new FileOutputStream(file), 256 * 1024);
+            if (GraphDataFormat.isCompressed(file)) {
+                fileStream = new GZIPOutputStream(fileStream);
+            }
+            try (OutputStream os = fileStream; GraphMLStreamWriter writer = GraphMLStreamWriter.document(os, keyTypes)) {
+                final Map<String, LabelIds> idsByLabel = new LinkedHashMap<>();
+                long nextId = 1;
+                for (final Map.Entry<String, Integer> labelCount : getVertexCounts().entrySet()) {
+                    final SchemaVertexLabel vertexDef = graphState.getVertex(labelCount.getKey());
+                    final LabelIds ids = new LabelIds(nextId, labelCount.getValue().intValue());
+                    nextId += ids.count;
+                    int chunkIndex = 0;
+                    for (int from = 0; from < ids.count; from += batchSize) {
+                        final RandomGenerator rng = random(vertexDef.getLabel(), chunkIndex++);
+                        for (int i = from; i < Math.min(from + batchSize, ids.count); i++) {
+                            writer.startNode(Long.valueOf(ids.get(i)), vertexDef.getLabel());
+                            generateProperties(vertexDef.getProperties(), rng, writer::data);
+                            writer.end();
+                        }
+                    }
+                    generatedVertices.addAndGet(ids.count);
+                    idsByLabel.put(vertexDef.getLabel(), ids);
+                }
+
+                final Map<String, boolean[]> usedEndpoints = new HashMap<>();
+                for (final Triple<String, String, String> rel : getRelationships()) {
+                    final LabelIds outIds = idsByLabel.get(rel.getLeft());
+                    final LabelIds inIds = idsByLabel.get(rel.getRight());
+                    final SchemaEdgeLabel edgeDef = graphState.getEdge(rel.getMiddle());
+                    final boolean[] usedOut = usedEndpoints(usedEndpoints, edgeDef, Direction.OUT, rel.getLeft(), outIds);
+                    final boolean[] usedIn = usedEndpoints(usedEndpoints, edgeDef, Direction.IN, rel.getRight(), inIds);
+                    final int sources = edgeSources(edgeDef, outIds, inIds);
+                    int chunkIndex = 0;
+                    for (int from = 0; from < sources; from += batchSize) {
+                        final RandomGenerator rng = random(rel.toString(), chunkIndex++);
+                        generateEdges(edgeDef, outIds, inIds, usedOut, usedIn, from, Math.min(from + batchSize, sources), rng,
+                                (outId, inId, props) -> {
+                                    writer.startEdge("e" + generatedEdges.incrementAndGet(), Long.valueOf(outId),
+                                            Long.valueOf(inId), edgeDef.getLabel());
+                                    generateProperties(props, rng, writer::data);
+                                    writer.end();
+                                });
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new SchemaManagementException("Failed to write generated data to " + file, e);
+        }
+        LOG.info("Generated {} vertices and {} edges", generatedVertices.get(), generatedEdges.get());
+    }
+
+    /**
+     * Splits the total number of vertices evenly between the declared vertex labels.
+     */
+    Map<String, Integer> getVertexCounts() throws SchemaManagementException {
+        final List<String> labels = new ArrayList<>();
+        for (final SchemaVertexLabel v : graphState.getGraphSchemaDef().getVertices()) {
+            labels.add(v.getLabel());
+        }
+        if (labels.isEmpty()) {
+            throw new SchemaManagementException("The schema defines no vertex labels, nothing to generate");
+        }
+        final Map<String, Integer> counts = new LinkedHashMap<>();
+        final long perLabel = vertexCount / labels.size();
+        long remainder = vertexCount % labels.size();
+        for (final String label : labels) {
+            final long count = perLabel + (remainder-- > 0 ? 1 : 0);
+            if (count > Integer.MAX_VALUE) {
+                throw new SchemaManagementException("Too many vertices requested for label \"" + label + "\"");
+            }
+            counts.put(label, Integer.valueOf((int) count));
+        }
+        return counts;
+    }
+
+    /**
+     * Collects (out vertex, edge, in vertex) triples declared either in the edges or in the vertices.
+     */
+    Set<Triple<String, String, String>> getRelationships() {
+        final Set<Triple<String, String, String>> relationships = new LinkedHashSet<>();
+        for (final SchemaEdgeLabel e : graphState.getGraphSchemaDef().getEdges()) {
+            for (final SchemaRelationshipDesc rel : e.getRelationships()) {
+                addRelationship(relationships, rel.getOut(), e.getLabel(), rel.getIn());
+            }
+        }
+        for (final SchemaVertexLabel v : graphState.getGraphSchemaDef().getVertices()) {
+            for (final SchemaVertexRelationshipDesc rel : v.getRelationships()) {
+                if (rel.getDirection() == Direction.OUT) {
+                    addRelationship(relationships, v.getLabel(), rel.getEdge(), rel.getVertex());
+                } else {
+                    addRelationship(relationships, rel.getVertex(), rel.getEdge(), v.getLabel());
+                }
+            }
+        }
+        return relationships;
+    }
+
+    private void addRelationship(Set<Triple<String, String, String>> relationships, String out, String edge, String in) {
+        if (graphState.getVertex(out) == null || graphState.getVertex(in) == null || graphState.getEdge(edge) == null) {
+            LOG.warn("Relationship {}-[{}]->{} refers to undefined vertex or edge label, no data generated for it", out, edge, in);
+            return;
+        }
+        relationships.add(Triple.of(out, edge, in));
+    }
+
+    /**
+     * @return number of the vertices iterated to generate the edges: for ONE2MANY edges these are
+     * the incoming vertices (each gets at most one edge), otherwise the outgoing ones
+     */
+    private static int edgeSources(SchemaEdgeLabel edgeDef, LabelIds outIds, LabelIds inIds) {
+        switch (multiplicity(edgeDef)) {
+        case ONE2MANY:
+            return inIds.count;
+        case ONE2ONE:
+            return Math.min(outIds.count, inIds.count);
+        default:
+            return outIds.count;
+        }
+    }
+
+    /**
+     * @return flags of the vertices of the label that already have an edge of the label in the
+     * direction, shared by all the relationships of the edge label, or null if the multiplicity of the
+     * edge label allows any number of edges in that direction
+     */
+    private static boolean[] usedEndpoints(Map<String, boolean[]> usedEndpoints, SchemaEdgeLabel edgeDef,
+            Direction direction, String vertexLabel, LabelIds ids) {
+        final Multiplicity multiplicity = multiplicity(edgeDef);
+        final boolean single = multiplicity == Multiplicity.ONE2ONE
+                || multiplicity == (direction == Direction.OUT ? Multiplicity.MANY2ONE : Multiplicity.ONE2MANY);
+        return single ? usedEndpoints.computeIfAbsent(edgeDef.getLabel() + "/" + direction + "/" + vertexLabel,
+                k -> new boolean[ids.count]) : null;
+    }
+
+    /**
+     * Every index from..to is only handled by one batch and the flags of a relationship are only read
+     * by the next ones, once all its batches have completed, so the flags need no synchronization.
+     *
+     * @param usedOut flags of the outgoing vertices already having an edge, see {@link #usedEndpoints}
+     * @param usedIn flags of the incoming vertices already having an edge
+     */
+    private long generateEdges(SchemaEdgeLabel edgeDef, LabelIds outIds, LabelIds inIds, boolean[] usedOut,
+            boolean[] usedIn, int from, int to, RandomGenerator rng, EdgeSink sink) throws IOException {
+        if (outIds.count == 0 || inIds.count == 0) {
+            return 0;
+        }
+        final Set<SchemaPropertyDesc> props = edgeDef.getProperties();
+        final boolean selfRelation = outIds == inIds;
+        long count = 0;
+        switch (multiplicity(edgeDef)) {
+        case ONE2ONE:
+            // pairing the vertices one by one, shifted for the edges between the vertices of the same label
+            for (int i = from; i < to; i++) {
+                final int target = selfRelation ? (i + 1) % inIds.count : i;
+                if (target != i && !usedOut[i] && !usedIn[target]) {
+                    usedOut[i] = true;
+                    usedIn[target] = true;
+                    sink.accept(outIds.get(i), inIds.get(target), props);
+                    count++;
+                }
+            }
+            break;
+        case ONE2MANY: {
+            // each incoming vertex gets at most one edge, from a Zipf-selected (e.g. skewed) outgoing vertex
+            final ZipfDistribution outSelector = new ZipfDistribution(rng, outIds.count, TARGET_ZIPF_EXPONENT);
+            final double edgeProbability = Math.min(1.0, averageDegree * outIds.count / inIds.count);
+            for (int i = from; i < to; i++) {
+                if (rng.nextDouble() < edgeProbability && !usedIn[i]) {
+                    usedIn[i] = true;
+                    sink.accept(outIds.get(outSelector.sample() - 1), inIds.get(i), props);
+                    count++;
+                }
+            }
+            break;
+        }
+        case MANY2ONE: {
+            final ZipfDistribution inSelector = new ZipfDistribution(rng, inIds.count, TARGET_ZIPF_EXPONENT);
+            for (int i = from; i < to; i++) {
+                if (!usedOut[i]) {
+                    usedOut[i] = true;
+                    sink.accept(outIds.get(i), inIds.get(inSelector.sample() - 1), props);
+                    count++;
+                }
+            }
+            break;
+        }
+        default: {
+            final boolean simple = multiplicity(edgeDef) == Multiplicity.SIMPLE;
+            final ZipfDistribution inSelector = new ZipfDistribution(rng, inIds.count, TARGET_ZIPF_EXPONENT);
+            // Pareto distribution with the mean equal to the average degree
+            final ParetoDistribution degrees = new ParetoDistribution(rng,
+                    averageDegree * (degreeSkew - 1) / degreeSkew, degreeSkew);
+            for (int i = from; i < to; i++) {
+                final int degree = (int) Math.min(Math.round(degrees.sample()), inIds.count);
+                final Set<Integer> targets = simple ? new HashSet<>() : null;
+                for (int d = 0; d < degree; d++) {
+                    int target = inSelector.sample() - 1;
+                    if (simple) {
+                        // a few more tries to find a vertex that is not connected yet, otherwise giving up on this edge
+                        boolean added = targets.add(Integer.valueOf(target));
+                        for (int attempt = 0; !added && attempt < SIMPLE_EDGE_ATTEMPTS; attempt++) {
+                            target = inSelector.sample() - 1;
+                            added = targets.add(Integer.valueOf(target));
+                        }
+                        if (!added) {
+                            continue;
+                        }
+                    }
+                    sink.accept(outIds.get(i), inIds.get(target), props);
+                    count++;
+                }
+            }
+        }
+        }
+        return count;
+    }
+
+    private void generateProperties(Set<SchemaPropertyDesc> props, RandomGenerator rng, PropertySink sink)
+            throws IOException {
+        for (final SchemaPropertyDesc desc : props) {
+            final SchemaPropertyDef def = graphState.getProperty(desc.getKey());
+            if (def == null) {
+                continue;
+            }
+            final int values = def.getCardinality() == null || def.getCardinality() == Cardinality.SINGLE ? 1
+                    : 1 + rng.nextInt(MAX_MULTI_VALUES);
+            for (int i = 0; i < values; i++) {
+                final Object value = randomValue(dataType(def), def.getKey(), rng);
+                if (value != null) {
+                    sink.accept(def.getKey(), value);
+                }
+            }
+        }
+    }
+
+    static Object randomValue(Class<?> dataType, String key, RandomGenerator rng) {
+        if (String.class.equals(dataType)) {
+            return key + "-" + Long.toString(rng.nextLong() & Long.MAX_VALUE, 36);
+        } else if (Integer.class.equals(dataType)) {
+            return Integer.valueOf(rng.nextInt(Integer.MAX_VALUE));
+        } else if (Long.class.equals(dataType)) {
+            return Long.valueOf(rng.nextLong() & Long.MAX_VALUE);
+        } else if (Double.class.equals(dataType)) {
+            return Double.valueOf(rng.nextDouble() * 1000);
+        } else if (Float.class.equals(dataType)) {
+            return Float.valueOf(rng.nextFloat() * 1000);
+        } else if (Boolean.class.equals(dataType)) {
+            return Boolean.valueOf(rng.nextBoolean());
+        } else if (Short.class.equals(dataType)) {
+            return Short.valueOf((short) rng.nextInt(Short.MAX_VALUE));
+        } else if (Byte.class.equals(dataType)) {
+            return Byte.valueOf((byte) rng.nextInt(Byte.MAX_VALUE));
+        } else if (Character.class.equals(dataType)) {
+            return Character.valueOf((char) ('a' + rng.nextInt(26)));
+        } else if (Date.class.equals(dataType)) {
+            return new Date(DATE_BASE_MS + (long) (rng.nextDouble() * DATE_RANGE_MS));
+        } else if (UUID.class.equals(dataType)) {
+            return new UUID(rng.nextLong(), rng.nextLong());
+        }
+        return null;
+    }
+
+    private static Class<?> dataType(SchemaPropertyDef def) {
+        try {
+            return Class.forName(def.getDataType());
+        } catch (ClassNotFoundException e) {
+            LOG.warn("Unknown data type {} of property \"{}\", no values generated", def.getDataType(), def.getKey());
+            return Object.class;
+        }
+    }
+
+    private static Multiplicity multiplicity(SchemaEdgeLabel edgeDef) {
+        return edgeDef.getMultiplicity() == null ? Multiplicity.MULTI : edgeDef.getMultiplicity();
+    }
+
+    private RandomGenerator random(String stream, int chunkIndex) {
+        return new Well19937c(new int[] { (int) seed, (int) (seed >>> 32), stream.hashCode(), chunkIndex });
+    }
+
+    private void logProgress(long count, String what) {
+        if (count % (batchSize * 100L) < batchSize) {
+            LOG.info("Generated {} {} so far", count, what);
+        }
+    }
+
+    private static void await(List<Future<?>> batches) throws SchemaManagementException {
+        try {
+            for (final Future<?> batch : batches) {
+                batch.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SchemaManagementException("Interrupted while generating data", e);
+        } catch (ExecutionException e) {
+            throw new SchemaManagementException("Failed to generate data", e.getCause());
+        }
+    }
+
+    /**
+     * Vertex IDs of one label: assigned by the graph or sequential when writing to a file.
+     */
+    private static class LabelIds {
+        private final long[] ids;
+        private final long base;
+        private final int count;
+
+        private LabelIds(int count) {
+            this.ids = new long[count];
+            this.base = 0;
+            this.count = count;
+        }
+
+        private LabelIds(long base, int count) {
+            this.ids = null;
+            this.base = base;
+            this.count = count;
+        }
+
+        private long get(int index) {
+            return ids != null ? ids[index] : base + index;
+        }
+    }
+
+    @FunctionalInterface
+    private interface PropertySink {
+        void accept(String key, Object value) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface EdgeSink {
+        void accept(long outId, long inId, Set<SchemaPropertyDesc> props) throws IOException;
+    }
+}
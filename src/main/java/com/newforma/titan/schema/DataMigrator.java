@@ -0,0 +1,308 @@
+package com.newforma.titan.schema;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Element;
+import org.apache.tinkerpop.gremlin.structure.Property;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.JanusGraphVertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.newforma.titan.schema.scan.ParallelVertexScan;
+import com.newforma.titan.schema.types.MigrationDef;
+import com.newforma.titan.schema.types.SchemaPropertyDef;
+
+import groovy.lang.Binding;
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+
+/**
+ * Applies the data migrations declared in the schema: backfills a property with a constant,
+ * copies it from another property or transforms it with a Groovy expression. The vertices are
+ * scanned by several threads, optionally at a limited rate, and the changes of every batch are
+ * committed in one transaction. The progress is recorded in the graph metadata: an interrupted
+ * migration resumes from its last checkpoint and a completed one is skipped. The batches committed
+ * after the last checkpoint are migrated again on resume, so the migrations must be idempotent: the
+ * backfills and the copies are, a transform is checked to be for every element it changes, by
+ * evaluating the expression again on its own result. The graph metadata vertex is never migrated.
+ *
+ * @author Nikolai
+ *
+ */
+public class DataMigrator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DataMigrator.class);
+
+    static final String STATE_STATUS = "status";
+    static final String STATE_CHECKPOINT = "checkpoint";
+    static final String STATE_CHANGED = "changed";
+    static final String STATE_UPDATED_ON = "updated_on";
+    static final String STATUS_RUNNING = "running";
+    static final String STATUS_COMPLETED = "completed";
+
+    private final JanusGraph graph;
+    private final GraphState graphState;
+    private final SchemaManager schemaManager;
+    private final GlobalMetaDataManager metaDataManager = new GlobalMetaDataManager();
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private double maxRate;
+
+    public DataMigrator(JanusGraph graph, GraphState graphState, SchemaManager schemaManager) {
+        this.graph = graph;
+        this.graphState = graphState;
+        this.schemaManager = schemaManager;
+    }
+
+    public DataMigrator threads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @param verticesPerSecond maximum number of the vertices migrated per second, 0 (the default) for no limit
+     */
+    public DataMigrator maxRate(double verticesPerSecond) {
+        this.maxRate = verticesPerSecond;
+        return this;
+    }
+
+    /**
+     * Applies the migrations that have not been completed yet, in the order of the schema.
+     */
+    public void run() throws SchemaManagementException {
+        for (final MigrationDef migrationDef : graphState.getGraphSchemaDef().getMigrations()) {
+            migrate(migrationDef);
+        }
+    }
+
+    private void migrate(MigrationDef migrationDef) throws SchemaManagementException {
+        final String name = migrationDef.getName();
+        final Map<String, String> state;
+        try {
+            state = metaDataManager.getMigrationState(graph, name);
+        } catch (IOException e) {
+            throw new SchemaManagementException("Failed to read the state of migration " + name, e);
+        }
+        if (STATUS_COMPLETED.equals(state.get(STATE_STATUS))) {
+            LOG.info("Migration {} has been completed on {}, skipping", name, state.get(STATE_UPDATED_ON));
+            return;
+        }
+
+        final Migration migration = new Migration(migrationDef);
+        final ParallelVertexScan scan = new ParallelVertexScan(graph, threads).maxRate(maxRate)
+                .checkpoints(id -> saveState(name, STATUS_RUNNING, id, migration.changed.get()));
+        final String checkpoint = state.get(STATE_CHECKPOINT);
+        if (checkpoint != null) {
+            scan.resumeAfter(Long.valueOf(checkpoint));
+            migration.changed.set(Long.parseLong(state.getOrDefault(STATE_CHANGED, "0")));
+        } else {
+            saveState(name, STATUS_RUNNING, null, 0);
+        }
+        LOG.info("Applying migration {} ({}){}", name, migrationDef.getType(),
+                migrationDef.getDescription() == null ? "" : ": " + migrationDef.getDescription());
+
+        scan.runBatches("Migration " + name, (vertices, tx) -> migrateBatch(migration, vertices));
+
+        saveState(name, STATUS_COMPLETED, null, migration.changed.get());
+        LOG.info("Migration {} has been completed, {} elements changed", name, migration.changed.get());
+    }
+
+    private void migrateBatch(Migration migration, List<JanusGraphVertex> vertices) throws SchemaManagementException {
+        final MigrationDef def = migration.def;
+        final JanusGraphTransaction tx = graph.newTransaction();
+        try {
+            long changed = 0;
+            for (final JanusGraphVertex scanned : vertices) {
+                if (GlobalMetaDataManager.METADATA_VERTEX_LABEL.equals(scanned.label())
+                        || GlobalMetaDataManager.METADATA_STATE_VERTEX_LABEL.equals(scanned.label())) {
+                    continue;
+                }
+                if (def.getRelType() == MigrationDef.RelType.VERTEX && def.getLabel() != null
+                        && !def.getLabel().equals(scanned.label())) {
+                    continue;
+                }
+                final JanusGraphVertex v = tx.getVertex(((Number) scanned.id()).longValue());
+                if (v == null) {
+                    continue;
+                }
+                if (def.getRelType() == MigrationDef.RelType.VERTEX) {
+                    changed += migration.apply(v) ? 1 : 0;
+                } else {
+                    final Iterator<Edge> edges = def.getLabel() == null ? v.edges(Direction.OUT) : v.edges(Direction.OUT, def.getLabel());
+                    while (edges.hasNext()) {
+                        changed += migration.apply(edges.next()) ? 1 : 0;
+                    }
+                }
+            }
+            if (changed > 0) {
+                tx.commit();
+                migration.changed.addAndGet(changed);
+            }
+        } finally {
+            if (tx.isOpen()) {
+                tx.rollback();
+            }
+        }
+    }
+
+    private void saveState(String name, String status, Object checkpoint, long changed) throws SchemaManagementException {
+        final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd 'T' HH:mm:ss'Z'");
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        final Map<String, String> state = new LinkedHashMap<>();
+        state.put(STATE_STATUS, status);
+        if (checkpoint != null) {
+            state.put(STATE_CHECKPOINT, checkpoint.toString());
+        }
+        state.put(STATE_CHANGED, String.valueOf(changed));
+        state.put(STATE_UPDATED_ON, sdf.format(new Date()));
+        try {
+            metaDataManager.saveMigrationState(graph, name, state, schemaManager);
+        } catch (IOException e) {
+            throw new SchemaManagementException("Failed to record the state of migration " + name, e);
+        }
+    }
+
+    /**
+     * Migration prepared for applying: the value converted, the expression compiled.
+     */
+    private final class Migration {
+        private final MigrationDef def;
+        private final Class<?> dataType;
+        private final Object constant;
+        private final Class<? extends Script> expression;
+        private final AtomicLong changed = new AtomicLong();
+
+        Migration(MigrationDef def) throws SchemaManagementException {
+            this.def = def;
+            final SchemaPropertyDef propertyDef = graphState.getProperty(def.getKey());
+            if (propertyDef == null) {
+                throw new SchemaManagementException("Migration " + def.getName() + " refers to undefined property " + def.getKey());
+            }
+            try {
+                this.dataType = Class.forName(propertyDef.getDataType());
+            } catch (ClassNotFoundException e) {
+                throw new SchemaManagementException("Unknown data type " + propertyDef.getDataType() + " of property " + def.getKey(), e);
+            }
+            this.constant = def.getType() == MigrationDef.Type.BACKFILL ? convert(def.getValue()) : null;
+            if (def.getType() == MigrationDef.Type.TRANSFORM) {
+                try {
+                    this.expression = new GroovyShell().parse(def.getExpression()).getClass();
+                } catch (CompilationFailedException e) {
+                    throw new SchemaManagementException("Failed to compile the expression of migration " + def.getName(), e);
+                }
+            } else {
+                this.expression = null;
+            }
+        }
+
+        /**
+         * @return true if the element has been changed
+         */
+        boolean apply(Element element) throws SchemaManagementException {
+            final Object current = firstValue(element, def.getKey());
+            final Object value;
+            switch (def.getType()) {
+            case BACKFILL:
+                if (current != null && !Boolean.TRUE.equals(def.getOverwrite())) {
+                    return false;
+                }
+                value = constant;
+                break;
+            case COPY:
+                final Object source = firstValue(element, def.getSourceKey());
+                if (source == null || current != null && !Boolean.TRUE.equals(def.getOverwrite())) {
+                    return false;
+                }
+                value = convert(source);
+                break;
+            case TRANSFORM:
+                value = evaluate(element, def.getSourceKey() == null ? current : firstValue(element, def.getSourceKey()));
+                break;
+            default:
+                throw new SchemaManagementException("Unsupported migration type " + def.getType());
+            }
+            if (Objects.equals(value, current)) {
+                return false;
+            }
+            element.properties(def.getKey()).forEachRemaining(Property::remove);
+            if (value != null) {
+                element.property(def.getKey(), value);
+            }
+            if (def.getType() == MigrationDef.Type.TRANSFORM) {
+                // a resumed migration transforms the elements of the batches after the last checkpoint again
+                final Object again = evaluate(element, def.getSourceKey() == null ? value : firstValue(element, def.getSourceKey()));
+                if (!Objects.equals(again, value)) {
+                    throw new SchemaManagementException("Expression of migration " + def.getName() + " is not idempotent: "
+                            + "it changes its own result \"" + value + "\" to \"" + again + "\" for " + element
+                            + ", a resumed migration would apply it twice");
+                }
+            }
+            return true;
+        }
+
+        private Object evaluate(Element element, Object input) throws SchemaManagementException {
+            final Binding binding = new Binding();
+            binding.setVariable("value", input);
+            binding.setVariable("element", element);
+            try {
+                return convert(InvokerHelper.createScript(expression, binding).run());
+            } catch (RuntimeException e) {
+                throw new SchemaManagementException("Expression of migration " + def.getName() + " has failed for "
+                        + element, e);
+            }
+        }
+
+        private Object convert(Object value) throws SchemaManagementException {
+            if (value == null || dataType.isInstance(value)) {
+                return value;
+            }
+            if (dataType == String.class) {
+                return value.toString();
+            }
+            if (value instanceof Number) {
+                final Number n = (Number) value;
+                if (dataType == Long.class) {
+                    return Long.valueOf(n.longValue());
+                } else if (dataType == Integer.class) {
+                    return Integer.valueOf(n.intValue());
+                } else if (dataType == Double.class) {
+                    return Double.valueOf(n.doubleValue());
+                } else if (dataType == Float.class) {
+                    return Float.valueOf(n.floatValue());
+                } else if (dataType == Short.class) {
+                    return Short.valueOf(n.shortValue());
+                } else if (dataType == Byte.class) {
+                    return Byte.valueOf(n.byteValue());
+                }
+            }
+            try {
+                // Boolean, the numbers and the enums parse their string form
+                return dataType.getMethod("valueOf", String.class).invoke(null, value.toString());
+            } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+                throw new SchemaManagementException("Migration " + def.getName() + " cannot convert value \"" + value
+                        + "\" to " + dataType.getName(), e);
+            }
+        }
+    }
+
+    private static Object firstValue(Element element, String key) {
+        final Iterator<? extends Property<Object>> it = element.properties(key);
+        return it.hasNext() ? it.next().value() : null;
+    }
+}
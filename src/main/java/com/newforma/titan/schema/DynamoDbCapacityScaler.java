@@ -0,0 +1,226 @@
+package com.newforma.titan.schema;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.UpdateTableRequest;
+import com.amazonaws.services.dynamodbv2.util.TableUtils;
+
+/**
+ * Raises the provisioned capacity of the DynamoDB tables of the graph for the time of a heavy
+ * phase (reindexing, bulk loading), so the throughput is limited by the job and not by the capacity
+ * provisioned for the regular load. The original capacity is restored on close. DynamoDB only
+ * allows a few capacity decreases of a table per day, so every scaling uses one of them.
+ *
+ * @author Nikolai
+ *
+ */
+public class DynamoDbCapacityScaler implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DynamoDbCapacityScaler.class);
+
+    public static final List<String> DEFAULT_STORES = Arrays.asList("edgestore", "graphindex");
+
+    private static final String DYNAMODB_PREFIX = "storage.dynamodb.";
+    private static final String DEFAULT_TABLE_PREFIX = "jg";
+    private static final int ACTIVE_POLL_INTERVAL_MS = 5000;
+
+    private final AmazonDynamoDB client;
+    private final List<String> tables = new ArrayList<>();
+    private final long readCapacity;
+    private final long writeCapacity;
+    private int timeoutInSecs = SchemaManager.DEFAULT_INDEX_REGISTERED_TIMEOUT_SECS;
+    private final Map<String, ProvisionedThroughput> originalCapacity = new LinkedHashMap<>();
+
+    /**
+     * @param graphConfig configuration of the graph stored in DynamoDB
+     * @param stores JanusGraph stores to scale, e.g. {@link #DEFAULT_STORES}
+     */
+    public DynamoDbCapacityScaler(Configuration graphConfig, List<String> stores, long readCapacity, long writeCapacity)
+            throws SchemaManagementException {
+        if (!isDynamoDb(graphConfig)) {
+            throw new SchemaManagementException("The graph is not stored in DynamoDB, its capacity cannot be scaled");
+        }
+        for (final String store : stores) {
+            tables.add(getTableName(graphConfig, store));
+        }
+        this.readCapacity = readCapacity;
+        this.writeCapacity = writeCapacity;
+        this.client = createClient(graphConfig);
+    }
+
+    /**
+     * @param timeoutInSecs how long to wait for a table to become active after a capacity change
+     */
+    public DynamoDbCapacityScaler timeout(int timeoutInSecs) {
+        this.timeoutInSecs = timeoutInSecs;
+        return this;
+    }
+
+    /**
+     * Raises the capacity of the tables below the target and waits for them to become active. If it
+     * fails, the capacity of the tables already scaled is restored.
+     */
+    public DynamoDbCapacityScaler scaleUp() throws SchemaManagementException {
+        try {
+            for (final String table : tables) {
+                final ProvisionedThroughputDescription current = client.describeTable(table).getTable()
+                        .getProvisionedThroughput();
+                final long read = current.getReadCapacityUnits().longValue();
+                final long write = current.getWriteCapacityUnits().longValue();
+                if (read >= readCapacity && write >= writeCapacity) {
+                    LOG.info("Table {}: capacity {}/{} (read/write) is enough", table, read, write);
+                    continue;
+                }
+                final ProvisionedThroughput scaled = new ProvisionedThroughput(Math.max(read, readCapacity),
+                        Math.max(write, writeCapacity));
+                LOG.info("Table {}: raising the capacity from {}/{} to {}/{} (read/write)", table, read, write,
+                        scaled.getReadCapacityUnits(), scaled.getWriteCapacityUnits());
+                updateCapacity(table, scaled);
+                originalCapacity.put(table, new ProvisionedThroughput(read, write));
+            }
+            for (final String table : originalCapacity.keySet()) {
+                awaitActive(table);
+            }
+        } catch (AmazonClientException | SchemaManagementException e) {
+            // the tables already scaled are restored
+            try {
+                close();
+            } catch (SchemaManagementException ex) {
+                e.addSuppressed(ex);
+            }
+            throw new SchemaManagementException("Failed to raise the capacity of the DynamoDB tables " + tables, e);
+        }
+        return this;
+    }
+
+    /**
+     * Restores the original capacity of the scaled tables.
+     */
+    @Override
+    public void close() throws SchemaManagementException {
+        final List<String> failed = new ArrayList<>();
+        try {
+            for (final Map.Entry<String, ProvisionedThroughput> e : originalCapacity.entrySet()) {
+                try {
+                    awaitActive(e.getKey());
+                    LOG.info("Table {}: restoring the capacity {}/{} (read/write)", e.getKey(),
+                            e.getValue().getReadCapacityUnits(), e.getValue().getWriteCapacityUnits());
+                    updateCapacity(e.getKey(), e.getValue());
+                    awaitActive(e.getKey());
+                } catch (AmazonClientException | SchemaManagementException ex) {
+                    LOG.error("Failed to restore the capacity of table {}, restore {}/{} (read/write) manually", e.getKey(),
+                            e.getValue().getReadCapacityUnits(), e.getValue().getWriteCapacityUnits(), ex);
+                    failed.add(e.getKey());
+                }
+            }
+            originalCapacity.clear();
+        } finally {
+            client.shutdown();
+        }
+        if (!failed.isEmpty()) {
+            throw new SchemaManagementException("Failed to restore the capacity of the DynamoDB tables " + failed);
+        }
+    }
+
+    private void updateCapacity(String table, ProvisionedThroughput capacity) {
+        client.updateTable(new UpdateTableRequest().withTableName(table).withProvisionedThroughput(capacity));
+    }
+
+    private void awaitActive(String table) throws SchemaManagementException {
+        try {
+            TableUtils.waitUntilActive(client, table, (int) TimeUnit.SECONDS.toMillis(timeoutInSecs), ACTIVE_POLL_INTERVAL_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SchemaManagementException("Interrupted while waiting for table " + table + " to become active", e);
+        } catch (TableUtils.TableNeverTransitionedToStateException e) {
+            throw new SchemaManagementException("Table " + table + " has not become active in " + timeoutInSecs + " seconds", e);
+        }
+    }
+
+    static boolean isDynamoDb(Configuration graphConfig) {
+        return StringUtils.contains(graphConfig.getString("storage.backend"), "DynamoDBStoreManager");
+    }
+
+    /**
+     * @return name of the DynamoDB table of a JanusGraph store
+     */
+    static String getTableName(Configuration graphConfig, String store) {
+        return graphConfig.getString(DYNAMODB_PREFIX + "prefix", DEFAULT_TABLE_PREFIX) + "_" + store;
+    }
+
+    /**
+     * Raises the client side rate limits of the stores to the target capacity, otherwise the
+     * DynamoDB backend keeps throttling itself at the configured rates. Must be done before the
+     * graph is opened.
+     */
+    static void raiseRateLimits(Configuration graphConfig, List<String> stores, long readCapacity, long writeCapacity) {
+        for (final String store : stores) {
+            final String storePrefix = DYNAMODB_PREFIX + "stores." + store + ".";
+            graphConfig.setProperty(storePrefix + "read-rate",
+                    Math.max(graphConfig.getDouble(storePrefix + "read-rate", 0), readCapacity));
+            graphConfig.setProperty(storePrefix + "write-rate",
+                    Math.max(graphConfig.getDouble(storePrefix + "write-rate", 0), writeCapacity));
+        }
+    }
+
+    private static AmazonDynamoDB createClient(Configuration graphConfig) throws SchemaManagementException {
+        final String clientPrefix = DYNAMODB_PREFIX + "client.";
+        final AmazonDynamoDBClientBuilder builder = AmazonDynamoDBClientBuilder.standard()
+                .withCredentials(createCredentials(graphConfig.getString(clientPrefix + "credentials.class-name"),
+                        graphConfig.getStringArray(clientPrefix + "credentials.constructor-args")));
+        final String region = graphConfig.getString(clientPrefix + "signing-region");
+        final String endpoint = graphConfig.getString(clientPrefix + "endpoint");
+        if (StringUtils.isEmpty(endpoint)) {
+            builder.withRegion(region);
+        } else {
+            builder.withEndpointConfiguration(new EndpointConfiguration(endpoint, region));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates the credentials the same way the DynamoDB backend does: an instance of the configured
+     * credentials or credentials provider class, constructed with the configured string arguments.
+     */
+    private static AWSCredentialsProvider createCredentials(String className, String[] args) throws SchemaManagementException {
+        if (StringUtils.isEmpty(className)) {
+            throw new SchemaManagementException("No DynamoDB credentials class configured");
+        }
+        final String[] constructorArgs = Arrays.stream(args).filter(StringUtils::isNotEmpty).toArray(String[]::new);
+        final Object credentials;
+        try {
+            final Class<?>[] argTypes = new Class<?>[constructorArgs.length];
+            Arrays.fill(argTypes, String.class);
+            final Constructor<?> constructor = Class.forName(className).getConstructor(argTypes);
+            credentials = constructor.newInstance((Object[]) constructorArgs);
+        } catch (ReflectiveOperationException e) {
+            throw new SchemaManagementException("Unable to create the DynamoDB credentials of class " + className, e);
+        }
+        if (credentials instanceof AWSCredentialsProvider) {
+            return (AWSCredentialsProvider) credentials;
+        } else if (credentials instanceof AWSCredentials) {
+            return new AWSStaticCredentialsProvider((AWSCredentials) credentials);
+        }
+        throw new SchemaManagementException("Class " + className + " provides no AWS credentials");
+    }
+}
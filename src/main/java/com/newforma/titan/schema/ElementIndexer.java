@@ -0,0 +1,331 @@
+package com.newforma.titan.schema;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphElement;
+import org.janusgraph.core.PropertyKey;
+import org.janusgraph.core.schema.JanusGraphIndex;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.janusgraph.core.schema.SchemaStatus;
+import org.janusgraph.diskstorage.Backend;
+import org.janusgraph.diskstorage.BackendException;
+import org.janusgraph.diskstorage.BackendTransaction;
+import org.janusgraph.diskstorage.Entry;
+import org.janusgraph.diskstorage.EntryList;
+import org.janusgraph.diskstorage.ReadBuffer;
+import org.janusgraph.diskstorage.StaticBuffer;
+import org.janusgraph.diskstorage.indexing.IndexEntry;
+import org.janusgraph.diskstorage.keycolumnvalue.KeyColumnValueStore;
+import org.janusgraph.diskstorage.keycolumnvalue.KeyColumnValueStoreManager;
+import org.janusgraph.diskstorage.keycolumnvalue.KeyIterator;
+import org.janusgraph.diskstorage.keycolumnvalue.KeyRangeQuery;
+import org.janusgraph.diskstorage.keycolumnvalue.KeySliceQuery;
+import org.janusgraph.diskstorage.keycolumnvalue.SliceQuery;
+import org.janusgraph.diskstorage.keycolumnvalue.StoreFeatures;
+import org.janusgraph.diskstorage.keycolumnvalue.StoreTransaction;
+import org.janusgraph.diskstorage.keycolumnvalue.cache.KCVSCache;
+import org.janusgraph.diskstorage.util.BufferUtil;
+import org.janusgraph.diskstorage.util.StandardBaseTransactionConfig;
+import org.janusgraph.graphdb.database.IndexSerializer;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+import org.janusgraph.graphdb.database.idhandling.VariableLong;
+import org.janusgraph.graphdb.database.management.JanusGraphIndexWrapper;
+import org.janusgraph.graphdb.internal.ElementCategory;
+import org.janusgraph.graphdb.relations.RelationIdentifier;
+import org.janusgraph.graphdb.transaction.StandardJanusGraphTx;
+import org.janusgraph.graphdb.types.CompositeIndexType;
+import org.janusgraph.graphdb.types.IndexType;
+import org.janusgraph.graphdb.types.MixedIndexType;
+import org.janusgraph.graphdb.types.ParameterIndexField;
+import org.janusgraph.util.encoding.HashingUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Reads and writes the entries of individual elements in one graph index, the same way the
+ * JanusGraph reindexing job does, but only for the given elements instead of the whole graph. Meant
+ * to be used for one batch of elements: the changes are accumulated in a transaction and written
+ * by {@link #commit()}. Not thread-safe.
+ *
+ * @author Nikolai
+ *
+ */
+class ElementIndexer implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ElementIndexer.class);
+
+    private final StandardJanusGraph graph;
+    private final JanusGraphManagement mgmt;
+    private final IndexType indexType;
+    private final IndexSerializer serializer;
+    private final StandardJanusGraphTx writeTx;
+    private final Map<String, Map<String, List<IndexEntry>>> documents = new HashMap<>();
+
+    ElementIndexer(JanusGraph graph, String indexName) throws SchemaManagementException {
+        if (!(graph instanceof StandardJanusGraph)) {
+            throw new SchemaManagementException("Index entries can only be managed for a standard JanusGraph instance");
+        }
+        this.graph = (StandardJanusGraph) graph;
+        this.mgmt = graph.openManagement();
+        final JanusGraphIndex index = mgmt.getGraphIndex(indexName);
+        if (index == null) {
+            mgmt.rollback();
+            throw new SchemaManagementException("Unknown graph index " + indexName);
+        }
+        this.indexType = ((JanusGraphIndexWrapper) index).getBaseIndex();
+        this.serializer = ((StandardJanusGraph) graph).getIndexSerializer();
+        this.writeTx = (StandardJanusGraphTx) graph.buildTransaction().start();
+    }
+
+    /**
+     * @throws SchemaManagementException if any of the index keys is not enabled
+     */
+    static void checkEnabled(JanusGraph graph, String indexName) throws SchemaManagementException {
+        final JanusGraphManagement mgmt = graph.openManagement();
+        try {
+            final JanusGraphIndex index = mgmt.getGraphIndex(indexName);
+            if (index == null) {
+                throw new SchemaManagementException("Unknown graph index " + indexName);
+            }
+            for (final PropertyKey key : index.getFieldKeys()) {
+                if (index.getIndexStatus(key) != SchemaStatus.ENABLED) {
+                    throw new SchemaManagementException("Index " + indexName + " is " + index.getIndexStatus(key)
+                            + " for property " + key.name() + ", it has to be enabled first");
+                }
+            }
+        } finally {
+            mgmt.rollback();
+        }
+    }
+
+    boolean isComposite() {
+        return indexType.isCompositeIndex();
+    }
+
+    /**
+     * Checks that all the entries of the element are present in a composite index.
+     */
+    boolean hasEntries(JanusGraphElement element) throws SchemaManagementException {
+        final BackendTransaction txHandle = writeTx.getTxHandle();
+        for (final IndexSerializer.IndexUpdate<StaticBuffer, Entry> update : compositeUpdates(element)) {
+            final StaticBuffer column = update.getEntry().getColumn();
+            final EntryList row;
+            try {
+                row = txHandle.indexQuery(new KeySliceQuery(update.getKey(), column, BufferUtil.nextBiggerBuffer(column)));
+            } catch (RuntimeException e) {
+                throw new SchemaManagementException("Failed to read index " + indexType.getName(), e);
+            }
+            if (row.isEmpty() || !row.get(0).getValue().equals(update.getEntry().getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Processes the entries of one composite index row.
+     */
+    @FunctionalInterface
+    interface RowProcessor {
+        void process(StaticBuffer rowKey, List<Entry> entries) throws SchemaManagementException;
+    }
+
+    /**
+     * Reads all the rows of the composite index from the index store, one by one. The store is
+     * scanned as a whole, the rows of the other indexes are skipped.
+     */
+    void scanRows(RowProcessor processor) throws SchemaManagementException {
+        final long indexId = ((CompositeIndexType) indexType).getID();
+        final KeyColumnValueStoreManager storeManager = graph.getBackend().getStoreManager();
+        final StoreFeatures features = storeManager.getFeatures();
+        // the distributed ordered stores have the index keys prefixed with a hash, see StandardJanusGraph
+        final int keyOffset = features.isDistributed() && features.isKeyOrdered() ? HashingUtil.HashLength.SHORT.length() : 0;
+        final SliceQuery allColumns = new SliceQuery(BufferUtil.zeroBuffer(1), BufferUtil.oneBuffer(16));
+        StoreTransaction storeTx = null;
+        try {
+            final KeyColumnValueStore store = storeManager.openDatabase(Backend.INDEXSTORE_NAME);
+            storeTx = storeManager.beginTransaction(StandardBaseTransactionConfig.of(graph.getConfiguration().getTimestampProvider()));
+            final KeyIterator keys;
+            if (features.hasUnorderedScan()) {
+                keys = store.getKeys(allColumns, storeTx);
+            } else if (features.hasOrderedScan()) {
+                keys = store.getKeys(new KeyRangeQuery(BufferUtil.zeroBuffer(1), BufferUtil.oneBuffer(16), allColumns), storeTx);
+            } else {
+                throw new SchemaManagementException("The storage backend cannot scan the rows of index " + indexType.getName());
+            }
+            try {
+                while (keys.hasNext()) {
+                    final StaticBuffer rowKey = keys.next();
+                    final ReadBuffer keyBuffer = rowKey.asReadBuffer();
+                    keyBuffer.movePositionTo(keyOffset);
+                    if (VariableLong.readPositive(keyBuffer) != indexId) {
+                        continue;
+                    }
+                    final List<Entry> entries = new ArrayList<>();
+                    keys.getEntries().forEachRemaining(entries::add);
+                    processor.process(rowKey, entries);
+                }
+            } finally {
+                keys.close();
+            }
+        } catch (BackendException | IOException | RuntimeException e) {
+            throw new SchemaManagementException("Failed to scan the rows of index " + indexType.getName(), e);
+        } finally {
+            if (storeTx != null) {
+                try {
+                    storeTx.rollback();
+                } catch (BackendException e) {
+                    LOG.warn("Failed to close the index store transaction", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the entries of the composite index row that do not belong to the elements they point
+     * to: either the element does not exist anymore or it no longer has the values of the row.
+     *
+     * @param rowKey key of the index row
+     * @param entries all the entries of the row
+     * @param remove remove the stale entries
+     * @return number of the stale entries
+     */
+    int findStaleEntries(StaticBuffer rowKey, List<Entry> entries, boolean remove) {
+        final List<StaticBuffer> stale = new ArrayList<>();
+        for (final Entry entry : entries) {
+            final JanusGraphElement element = getElement(getElementId(entry));
+            final boolean live = element != null && compositeUpdates(element).stream()
+                    .anyMatch(u -> u.getKey().equals(rowKey) && u.getEntry().getColumn().equals(entry.getColumn())
+                            && u.getEntry().getValue().equals(entry.getValue()));
+            if (!live) {
+                stale.add(entry.getColumn());
+            }
+        }
+        if (remove && !stale.isEmpty()) {
+            writeTx.getTxHandle().mutateIndex(rowKey, KCVSCache.NO_ADDITIONS, stale);
+        }
+        return stale.size();
+    }
+
+    /**
+     * @return ID of the element a composite index entry points to, the same way the index query reads it
+     */
+    private Object getElementId(Entry entry) {
+        final ReadBuffer value = entry.asReadBuffer();
+        value.movePositionTo(entry.getValuePosition());
+        if (indexType.getElement() == ElementCategory.VERTEX) {
+            return Long.valueOf(VariableLong.readPositive(value));
+        }
+        final long[] relationId = new long[4];
+        for (int i = 0; i < 3; i++) {
+            relationId[i] = VariableLong.readPositive(value);
+        }
+        if (value.hasRemaining()) {
+            relationId[3] = VariableLong.readPositive(value);
+            return RelationIdentifier.get(relationId);
+        }
+        return RelationIdentifier.get(Arrays.copyOf(relationId, 3));
+    }
+
+    /**
+     * @param elementId vertex or edge ID
+     * @return the element, <code>null</code> if it does not exist
+     */
+    JanusGraphElement getElement(Object elementId) {
+        if (elementId instanceof RelationIdentifier) {
+            return ((RelationIdentifier) elementId).findEdge(writeTx);
+        }
+        return writeTx.getVertex(((Long) elementId).longValue());
+    }
+
+    /**
+     * @return name of the store the mixed index is kept in by the index backend
+     */
+    String getStoreName() {
+        return ((MixedIndexType) indexType).getStoreName();
+    }
+
+    String getBackingIndexName() {
+        return indexType.getBackingIndexName();
+    }
+
+    /**
+     * @return names of the mixed index fields by the property keys
+     */
+    Map<String, String> getFieldNames() {
+        final MixedIndexType mixedType = (MixedIndexType) indexType;
+        final Map<String, String> fields = new LinkedHashMap<>();
+        for (final ParameterIndexField field : mixedType.getFieldKeys()) {
+            fields.put(field.getFieldKey().name(), IndexSerializer.key2Field(mixedType, field.getFieldKey()));
+        }
+        return fields;
+    }
+
+    /**
+     * Writes (or re-writes) all the entries of the element.
+     */
+    void add(JanusGraphElement element) {
+        if (indexType.isCompositeIndex()) {
+            for (final IndexSerializer.IndexUpdate<StaticBuffer, Entry> update : compositeUpdates(element)) {
+                writeTx.getTxHandle().mutateIndex(update.getKey(), Lists.newArrayList(update.getEntry()), KCVSCache.NO_DELETIONS);
+            }
+        } else {
+            serializer.reindexElement(element, (MixedIndexType) indexType, documents);
+        }
+    }
+
+    /**
+     * Removes the document of the element that no longer exists from a mixed index.
+     */
+    void removeDocument(JanusGraphElement element) {
+        removeDocument(IndexSerializer.element2String(element));
+    }
+
+    /**
+     * Removes the document from a mixed index.
+     *
+     * @param docId ID of the document, as produced by {@link IndexSerializer#element2String(JanusGraphElement)}
+     */
+    void removeDocument(String docId) {
+        final MixedIndexType mixedType = (MixedIndexType) indexType;
+        // the document is removed as a whole, the key and the value are not used then
+        final PropertyKey anyKey = mixedType.getFieldKeys()[0].getFieldKey();
+        writeTx.getTxHandle().getIndexTransaction(mixedType.getBackingIndexName())
+                .delete(mixedType.getStoreName(), docId, anyKey.name(), null, true);
+    }
+
+    void commit() throws SchemaManagementException {
+        try {
+            if (!documents.isEmpty()) {
+                writeTx.getTxHandle().getIndexTransaction(((MixedIndexType) indexType).getBackingIndexName()).restore(documents);
+                documents.clear();
+            }
+            writeTx.commit();
+        } catch (BackendException | RuntimeException e) {
+            throw new SchemaManagementException("Failed to write the entries of index " + indexType.getName(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (writeTx.isOpen()) {
+            writeTx.rollback();
+        }
+        mgmt.rollback();
+    }
+
+    private Set<IndexSerializer.IndexUpdate<StaticBuffer, Entry>> compositeUpdates(JanusGraphElement element) {
+        return serializer.reindexElement(element, (CompositeIndexType) indexType);
+    }
+}
@@ -0,0 +1,138 @@
+package com.newforma.titan.schema;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Switches the Elasticsearch index behind a mixed index to the bulk-friendly settings while it is
+ * reindexed: no periodic refresh, no replicas and a larger translog before a flush. The original
+ * settings are restored on close, then the index is refreshed and its segments merged. The
+ * Elasticsearch REST API is called directly, on the hosts of the index backend in the graph
+ * configuration.
+ *
+ * @author Nikolai
+ *
+ */
+public class EsBulkIndexingProfile implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EsBulkIndexingProfile.class);
+
+    static final String REFRESH_INTERVAL = "index.refresh_interval";
+    static final String NUMBER_OF_REPLICAS = "index.number_of_replicas";
+    static final String TRANSLOG_FLUSH_THRESHOLD = "index.translog.flush_threshold_size";
+
+    private static final String DEFAULT_INDEX_NAME = "janusgraph";
+    private static final int DEFAULT_REST_PORT = 9200;
+    private static final String BULK_TRANSLOG_FLUSH_THRESHOLD = "1gb";
+
+    private final EsRestClient client;
+    private final String esIndexName;
+    private Map<String, String> originalSettings;
+
+    /**
+     * @param graphConfig configuration the graph has been opened with
+     * @param backingIndex name of the index backend in the configuration, e.g. "search"
+     * @param storeName name of the store of the mixed index in the index backend, it stays the name the
+     * index has been created with when the index is renamed (see <code>MixedIndexType.getStoreName()</code>)
+     */
+    public EsBulkIndexingProfile(Configuration graphConfig, String backingIndex, String storeName)
+            throws SchemaManagementException {
+        if (!EsRestClient.isElasticsearch(graphConfig, backingIndex)) {
+            throw new SchemaManagementException("Index backend " + backingIndex + " of store " + storeName
+                    + " is not Elasticsearch");
+        }
+        this.client = new EsRestClient(graphConfig, backingIndex);
+        this.esIndexName = getEsIndexName(graphConfig, backingIndex, storeName);
+    }
+
+    /**
+     * Saves the current settings of the index and switches it to the bulk settings.
+     */
+    public EsBulkIndexingProfile apply() throws SchemaManagementException {
+        final JsonNode settings = client.execute(new HttpGet("/" + esIndexName + "/_settings?flat_settings=true"))
+                .path(esIndexName).path("settings");
+        final Map<String, String> current = new LinkedHashMap<>();
+        for (final String key : new String[] { REFRESH_INTERVAL, NUMBER_OF_REPLICAS, TRANSLOG_FLUSH_THRESHOLD }) {
+            // the settings not set explicitly are reset to the default afterwards
+            current.put(key, settings.hasNonNull(key) ? settings.get(key).asText() : null);
+        }
+        final Map<String, String> bulk = new LinkedHashMap<>();
+        bulk.put(REFRESH_INTERVAL, "-1");
+        bulk.put(NUMBER_OF_REPLICAS, "0");
+        bulk.put(TRANSLOG_FLUSH_THRESHOLD, BULK_TRANSLOG_FLUSH_THRESHOLD);
+        LOG.info("Elasticsearch index {}: switching from {} to the bulk indexing settings {}", esIndexName, current, bulk);
+        updateSettings(bulk);
+        originalSettings = current;
+        return this;
+    }
+
+    /**
+     * Restores the original settings, refreshes the index and merges its segments.
+     */
+    @Override
+    public void close() throws SchemaManagementException {
+        try {
+            if (originalSettings != null) {
+                LOG.info("Elasticsearch index {}: restoring the settings {}", esIndexName, originalSettings);
+                updateSettings(originalSettings);
+                originalSettings = null;
+                client.execute(new HttpPost("/" + esIndexName + "/_refresh"));
+                LOG.info("Elasticsearch index {}: merging the segments...", esIndexName);
+                client.execute(new HttpPost("/" + esIndexName + "/_forcemerge"));
+                LOG.info("Elasticsearch index {}: refreshed and merged", esIndexName);
+            }
+        } finally {
+            client.close();
+        }
+    }
+
+    private void updateSettings(Map<String, String> settings) throws SchemaManagementException {
+        client.execute(new HttpPut("/" + esIndexName + "/_settings"), settings);
+    }
+
+    /**
+     * @param storeName name of the store of the mixed index in the index backend
+     * @return name of the Elasticsearch index JanusGraph keeps the store in
+     */
+    static String getEsIndexName(Configuration graphConfig, String backingIndex, String storeName) {
+        final String prefix = "index." + backingIndex + ".";
+        final String baseName = graphConfig.getString(prefix + "index-name", DEFAULT_INDEX_NAME);
+        return isMultiTypeIndex(graphConfig, backingIndex) ? baseName : baseName + "_" + storeName.toLowerCase();
+    }
+
+    /**
+     * @return true if all the mixed indexes are kept in one Elasticsearch index, as types
+     */
+    static boolean isMultiTypeIndex(Configuration graphConfig, String backingIndex) {
+        return graphConfig.getBoolean("index." + backingIndex + ".elasticsearch.use-deprecated-multitype-index", false);
+    }
+
+    /**
+     * @return base URLs of the REST API of the Elasticsearch hosts
+     */
+    static List<String> getHostUrls(Configuration graphConfig, String backingIndex) {
+        final String prefix = "index." + backingIndex + ".";
+        // the port of the transport client is not the port of the REST API
+        final int port = "TRANSPORT_CLIENT".equals(graphConfig.getString(prefix + "elasticsearch.interface"))
+                ? DEFAULT_REST_PORT : graphConfig.getInt(prefix + "port", DEFAULT_REST_PORT);
+        final List<String> urls = new ArrayList<>();
+        for (final String host : graphConfig.getStringArray(prefix + "hostname")) {
+            urls.add("http://" + (host.contains(":") ? host.trim() : host.trim() + ":" + port));
+        }
+        if (urls.isEmpty()) {
+            urls.add("http://localhost:" + port);
+        }
+        return urls;
+    }
+}
@@ -0,0 +1,97 @@
+package com.newforma.titan.schema;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Minimal client of the Elasticsearch REST API on the hosts of an index backend in the graph
+ * configuration. Every request is tried on the hosts in turn until one of them responds.
+ *
+ * @author Nikolai
+ *
+ */
+class EsRestClient implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EsRestClient.class);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final CloseableHttpClient client = HttpClients.createDefault();
+    private final List<String> hosts;
+
+    /**
+     * @param backingIndex name of the index backend in the configuration, e.g. "search"
+     */
+    EsRestClient(Configuration graphConfig, String backingIndex) {
+        this.hosts = EsBulkIndexingProfile.getHostUrls(graphConfig, backingIndex);
+    }
+
+    static boolean isElasticsearch(Configuration graphConfig, String backingIndex) {
+        return "elasticsearch".equalsIgnoreCase(graphConfig.getString("index." + backingIndex + ".backend"));
+    }
+
+    /**
+     * Executes the request with the JSON body.
+     */
+    JsonNode execute(HttpEntityEnclosingRequestBase request, Object body) throws SchemaManagementException {
+        try {
+            request.setEntity(new StringEntity(mapper.writeValueAsString(body), ContentType.APPLICATION_JSON));
+        } catch (IOException e) {
+            throw new SchemaManagementException("Unable to serialize the request " + body, e);
+        }
+        return execute(request);
+    }
+
+    /**
+     * @param request request with the path relative to the host
+     * @return response body, an empty object if there is none
+     */
+    JsonNode execute(HttpRequestBase request) throws SchemaManagementException {
+        final String path = request.getURI().toString();
+        IOException lastError = null;
+        for (final String host : hosts) {
+            request.setURI(URI.create(host + path));
+            try {
+                final HttpResponse response = client.execute(request);
+                final String body = response.getEntity() == null ? "" : EntityUtils.toString(response.getEntity());
+                final int status = response.getStatusLine().getStatusCode();
+                if (status >= 300) {
+                    throw new SchemaManagementException("Elasticsearch request " + request.getMethod() + " " + path
+                            + " failed with status " + status + ": " + body);
+                }
+                return body.isEmpty() ? mapper.createObjectNode() : mapper.readTree(body);
+            } catch (IOException e) {
+                LOG.warn("Elasticsearch request {} {} to {} failed: {}", request.getMethod(), path, host, e.toString());
+                lastError = e;
+            } finally {
+                request.releaseConnection();
+            }
+        }
+        throw new SchemaManagementException("Elasticsearch request " + request.getMethod() + " " + path
+                + " failed on all the hosts " + hosts, lastError);
+    }
+
+    @Override
+    public void close() {
+        try {
+            client.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close the Elasticsearch client", e);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.newforma.titan.schema;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphEdge;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.JanusGraphVertex;
+import org.janusgraph.graphdb.transaction.StandardJanusGraphTx;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.newforma.titan.schema.scan.ParallelVertexScan;
+import com.newforma.titan.schema.types.SchemaEdgeLabel;
+
+/**
+ * Finds the leftovers of the concurrent deletes under eventual consistency: the ghost vertices,
+ * which still have edges or properties but no longer exist, the dangling edges pointing to a
+ * vertex that does not exist and the half-deleted edges stored on one of their vertices only. All
+ * the vertex IDs of the storage backend are scanned by several threads, optionally the leftovers
+ * are removed in a transaction per batch.
+ *
+ * @author Nikolai
+ *
+ */
+public class GhostVertexCleaner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GhostVertexCleaner.class);
+
+    private static final int MAX_SAMPLES = 10;
+
+    private final JanusGraph graph;
+    private final GraphState graphState;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean repair;
+
+    private final AtomicLong ghostVertices = new AtomicLong();
+    private final AtomicLong removedVertices = new AtomicLong();
+    private final AtomicLong removedEdges = new AtomicLong();
+    private final Map<String, AtomicLong> danglingEdges = new ConcurrentSkipListMap<>();
+    private final Map<String, AtomicLong> halfDeletedEdges = new ConcurrentSkipListMap<>();
+    private final List<Object> samples = new ArrayList<>();
+
+    public GhostVertexCleaner(JanusGraph graph, GraphState graphState) {
+        this.graph = graph;
+        this.graphState = graphState;
+    }
+
+    public GhostVertexCleaner threads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @param repair remove the ghost vertices, the dangling and the half-deleted edges
+     */
+    public GhostVertexCleaner repair(boolean repair) {
+        this.repair = repair;
+        return this;
+    }
+
+    /**
+     * Runs the scan and logs the counts.
+     *
+     * @param reportFile file to write the counts to as JSON, <code>null</code> to only log them
+     * @return number of the ghost vertices, the dangling and the half-deleted edges found
+     */
+    public long clean(File reportFile) throws SchemaManagementException {
+        final long startTime = System.currentTimeMillis();
+        final long scanned = new ParallelVertexScan(graph, threads)
+                .runIdBatches(repair ? "Ghost vertex cleanup" : "Ghost vertex detection", this::processBatch);
+        final double seconds = Math.max(1, System.currentTimeMillis() - startTime) / 1000.0;
+
+        final long dangling = danglingEdges.values().stream().mapToLong(AtomicLong::get).sum();
+        final long halfDeleted = halfDeletedEdges.values().stream().mapToLong(AtomicLong::get).sum();
+        LOG.info("Scanned {} vertices ({} per second): {} ghost vertices, {} dangling edges {}, {} half-deleted edges {}, "
+                + "removed {} vertices and {} edges, e.g. ghost vertices {}", Long.valueOf(scanned),
+                String.format("%.0f", scanned / seconds), Long.valueOf(ghostVertices.get()), Long.valueOf(dangling),
+                danglingEdges, Long.valueOf(halfDeleted), halfDeletedEdges, Long.valueOf(removedVertices.get()),
+                Long.valueOf(removedEdges.get()), samples);
+
+        if (reportFile != null) {
+            final Map<String, Object> report = new LinkedHashMap<>();
+            report.put("scanned_vertices", Long.valueOf(scanned));
+            report.put("vertices_per_second", Double.valueOf(scanned / seconds));
+            report.put("ghost_vertices", Long.valueOf(ghostVertices.get()));
+            report.put("dangling_edges", danglingEdges);
+            report.put("half_deleted_edges", halfDeletedEdges);
+            report.put("removed_vertices", Long.valueOf(removedVertices.get()));
+            report.put("removed_edges", Long.valueOf(removedEdges.get()));
+            report.put("samples", samples);
+            try {
+                new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(reportFile, report);
+            } catch (IOException e) {
+                throw new SchemaManagementException("Failed to write the ghost vertex report to " + reportFile, e);
+            }
+        }
+        return ghostVertices.get() + dangling + halfDeleted;
+    }
+
+    private void processBatch(List<Object> ids) {
+        final List<Long> ghosts = new ArrayList<>();
+        final Map<Long, Set<Object>> brokenEdges = new HashMap<>();
+
+        // the vertex existence is only verified when the vertex is not in the transaction cache yet,
+        // so it is never looked up in the transaction reading the edges
+        final JanusGraphTransaction existenceTx = graph.buildTransaction().readOnly().start();
+        final JanusGraphTransaction readTx = graph.buildTransaction().readOnly().start();
+        try {
+            final Map<Long, Boolean> existing = new HashMap<>();
+            for (final Object id : ids) {
+                final Long vertexId = Long.valueOf(((Number) id).longValue());
+                if (!exists(existenceTx, existing, vertexId)) {
+                    ghosts.add(vertexId);
+                    continue;
+                }
+                final JanusGraphVertex v = readTx.getVertex(vertexId.longValue());
+                for (final Iterator<Edge> it = v.edges(Direction.BOTH); it.hasNext();) {
+                    final JanusGraphEdge e = (JanusGraphEdge) it.next();
+                    final boolean out = e.outVertex().id().equals(v.id());
+                    if (out && e.inVertex().id().equals(v.id())) {
+                        // a self-loop is stored once
+                        continue;
+                    }
+                    final JanusGraphVertex other = e.otherVertex(v);
+                    final Map<String, AtomicLong> found;
+                    if (!exists(existenceTx, existing, Long.valueOf(other.longId()))) {
+                        found = danglingEdges;
+                    } else if (!(out && isUnidirected(e.label())) && !isStoredOn(other, e, out ? Direction.IN : Direction.OUT, v)) {
+                        found = halfDeletedEdges;
+                    } else {
+                        continue;
+                    }
+                    found.computeIfAbsent(e.label(), l -> new AtomicLong()).incrementAndGet();
+                    brokenEdges.computeIfAbsent(vertexId, i -> new HashSet<>()).add(e.id());
+                }
+            }
+        } finally {
+            existenceTx.rollback();
+            readTx.rollback();
+        }
+
+        ghostVertices.addAndGet(ghosts.size());
+        synchronized (samples) {
+            for (final Iterator<Long> it = ghosts.iterator(); it.hasNext() && samples.size() < MAX_SAMPLES;) {
+                samples.add(it.next());
+            }
+        }
+        if (repair && (!ghosts.isEmpty() || !brokenEdges.isEmpty())) {
+            remove(ghosts, brokenEdges);
+        }
+    }
+
+    private void remove(List<Long> ghosts, Map<Long, Set<Object>> brokenEdges) {
+        final JanusGraphTransaction tx = graph.newTransaction();
+        try {
+            long edges = 0;
+            for (final Map.Entry<Long, Set<Object>> e : brokenEdges.entrySet()) {
+                final JanusGraphVertex v = tx.getVertex(e.getKey().longValue());
+                if (v == null) {
+                    continue;
+                }
+                for (final Iterator<Edge> it = v.edges(Direction.BOTH); it.hasNext();) {
+                    final Edge edge = it.next();
+                    if (e.getValue().contains(edge.id())) {
+                        edge.remove();
+                        edges++;
+                    }
+                }
+            }
+            for (final Long id : ghosts) {
+                // not verifying the existence, which would hide the ghost; removes all its edges and properties
+                ((StandardJanusGraphTx) tx).getInternalVertex(id.longValue()).remove();
+            }
+            tx.commit();
+            removedVertices.addAndGet(ghosts.size());
+            removedEdges.addAndGet(edges);
+        } finally {
+            if (tx.isOpen()) {
+                tx.rollback();
+            }
+        }
+    }
+
+    private static boolean exists(JanusGraphTransaction tx, Map<Long, Boolean> existing, Long vertexId) {
+        return existing.computeIfAbsent(vertexId, id -> Boolean.valueOf(tx.getVertex(id.longValue()) != null)).booleanValue();
+    }
+
+    /**
+     * @return true if the edge is also stored on the other vertex
+     */
+    private static boolean isStoredOn(JanusGraphVertex other, JanusGraphEdge e, Direction direction, JanusGraphVertex v) {
+        for (final JanusGraphEdge reverse : other.query().direction(direction).labels(e.label()).adjacent(v).edges()) {
+            if (reverse.id().equals(e.id())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the edges of the label are only stored on their out vertex
+     */
+    private boolean isUnidirected(String label) {
+        final SchemaEdgeLabel edgeDef = graphState.getEdge(label);
+        return edgeDef != null && Boolean.TRUE.equals(edgeDef.getUnidirected());
+    }
+}
@@ -2,21 +2,32 @@ package com.newforma.titan.schema;
 
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
 import java.util.concurrent.ExecutionException;
 
-import org.apache.tinkerpop.gremlin.structure.Transaction;
+import org.apache.tinkerpop.gremlin.process.traversal.Order;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
 import org.apache.tinkerpop.gremlin.structure.Vertex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableMap;
 import com.newforma.titan.schema.types.GraphSchemaDef;
 import org.janusgraph.core.Cardinality;
 import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphTransaction;
 import org.janusgraph.core.JanusGraphVertex;
+import org.janusgraph.core.PropertyKey;
+import org.janusgraph.core.VertexLabel;
 import org.janusgraph.core.schema.SchemaAction;
 import org.janusgraph.core.schema.SchemaStatus;
 import org.janusgraph.core.schema.JanusGraphIndex;
@@ -25,19 +36,30 @@ import org.janusgraph.graphdb.database.management.ManagementSystem;
 
 public class GlobalMetaDataManager {
 
-	// Get latest with Gremlin:
-	// g.V().hasLabel("GRAPHREVISIONMETADATAVERTEX").has("graphmetadataidproperty", "globalmetadata").order().by("graphmetadataucreationtime", decr).limit(1).valueMap(true)
+	// Get latest with Gremlin (or use getCurrentRevision()):
+	// g.V().hasLabel("GRAPHMETADATASTATEVERTEX").has("graphmetadataidproperty", "globalmetadata").order().by("graphmetadataucreationtime", decr).limit(1).valueMap(true)
 
+	// static label of the revisions recorded by the earlier versions, its vertices can be neither changed nor removed
 	public static final String METADATA_VERTEX_LABEL = "GRAPHREVISIONMETADATAVERTEX";
+	// label of the metadata recorded now, not static so that it can be updated and pruned
+	public static final String METADATA_STATE_VERTEX_LABEL = "GRAPHMETADATASTATEVERTEX";
 	public static final String METADATA_ID_PROPERTY_KEY = "graphmetadataidproperty";
 	public static final String METADATA_ID_PROPERTY_VALUE = "globalmetadata";
 	public static final String METADATA_DATA_PROPERTY_KEY = "graphmetadataproperty";
 	public static final String METADATA_TIME_PROPERTY_KEY = "graphmetadataucreationtime";
+	public static final String METADATA_HASH_PROPERTY_KEY = "graphmetadataschemahash";
 	public static final String METADATA_ID_GRAPH_INDEX = "graphmetadatapropertyidx";
+	public static final String METADATA_STATE_ID_GRAPH_INDEX = "graphmetadatastateidx";
+	// the progress of every data migration is kept in its own metadata vertex
+	public static final String METADATA_MIGRATION_ID_PREFIX = "migration:";
 
 	public static final String META_PROP_GRAPH_NAME = "graph_name";
 	public static final String META_PROP_MODEL_VERSION = "model_version";
 	public static final String META_PROP_UPDATED_ON = "updated_on";
+	public static final String META_PROP_SCHEMA_HASH = "schema_hash";
+
+	// number of the latest revisions kept by default, so that reading them stays cheap
+	public static final int DEFAULT_REVISION_RETENTION = 100;
 
 	private static final Logger LOG = LoggerFactory.getLogger(GlobalMetaDataManager.class);
 
@@ -45,106 +67,294 @@ public class GlobalMetaDataManager {
 		// does nothing
 	}
 
-	void updateGraph(final JanusGraph graph, final GraphSchemaDef schemaDef, final SchemaManager schemaManager) throws IOException, SchemaManagementException {
+	/**
+	 * Records a new schema revision.
+	 *
+	 * @param retention number of the latest revisions to keep, the older ones are removed. 0 means keeping all
+	 */
+	void updateGraph(final JanusGraph graph, final GraphState graphState, final int retention, final SchemaManager schemaManager) throws IOException, SchemaManagementException {
 		ensureConfigured(graph, schemaManager);
-		tag(graph, schemaDef);
+		tag(graph, graphState.getGraphSchemaDef(), graphState.getSchemaHash());
+		if (retention > 0) {
+			pruneRevisions(graph, retention);
+		}
+	}
+
+	/**
+	 * Reads the recorded schema revisions using the metadata indexes, including the revisions
+	 * recorded under the static label by the earlier versions. The indexes only serve the lookup
+	 * of the revision vertices, they are ordered by the traversal and only the requested number of
+	 * them is read. The number of the vertices ordered is bounded by the retention
+	 * ({@link #DEFAULT_REVISION_RETENTION} by default) plus the number of the earlier revisions.
+	 *
+	 * @param limit maximum number of revisions to return, 0 for all
+	 * @return revisions, the latest first
+	 */
+	public List<GraphRevision> getRevisions(final JanusGraph graph, final int limit) throws IOException {
+		final List<GraphRevision> revisions = new ArrayList<>(readRevisions(graph, METADATA_STATE_VERTEX_LABEL, limit));
+		final List<GraphRevision> earlier = readRevisions(graph, METADATA_VERTEX_LABEL, limit);
+		if (earlier.isEmpty()) {
+			return revisions;
+		}
+		revisions.addAll(earlier);
+		revisions.sort(Comparator.comparingLong(GraphRevision::getCreationTime).reversed());
+		return limit > 0 && revisions.size() > limit ? new ArrayList<>(revisions.subList(0, limit)) : revisions;
+	}
+
+	/**
+	 * @return revisions recorded under the label, the latest first
+	 */
+	private static List<GraphRevision> readRevisions(final JanusGraph graph, final String label, final int limit) throws IOException {
+		if (!graph.containsVertexLabel(label)) {
+			return Collections.emptyList();
+		}
+		final JanusGraphTransaction tx = graph.buildTransaction().readOnly().start();
+		try {
+			GraphTraversal<Vertex, Vertex> latest = findRevisionVertices(tx, label).order().by(METADATA_TIME_PROPERTY_KEY, Order.decr);
+			if (limit > 0) {
+				latest = latest.limit(limit);
+			}
+			final List<GraphRevision> revisions = new ArrayList<>();
+			while (latest.hasNext()) {
+				revisions.add(toRevision(latest.next()));
+			}
+			return revisions;
+		} finally {
+			tx.rollback();
+		}
+	}
+
+	/**
+	 * @return the latest recorded revision or <code>null</code> if the schema has never been applied
+	 */
+	public GraphRevision getCurrentRevision(final JanusGraph graph) throws IOException {
+		final List<GraphRevision> revisions = getRevisions(graph, 1);
+		return revisions.isEmpty() ? null : revisions.get(0);
+	}
+
+	/**
+	 * Removes all but the given number of the latest revisions. The revisions recorded under the
+	 * static label by the earlier versions cannot be removed, they are neither pruned nor counted.
+	 *
+	 * @return number of the removed revisions
+	 */
+	int pruneRevisions(final JanusGraph graph, final int retention) throws IOException {
+		final List<GraphRevision> revisions = readRevisions(graph, METADATA_STATE_VERTEX_LABEL, 0);
+		if (revisions.size() <= retention) {
+			return 0;
+		}
+		final List<GraphRevision> obsolete = revisions.subList(retention, revisions.size());
+		final JanusGraphTransaction tx = graph.newTransaction();
+		try {
+			for (final GraphRevision revision : obsolete) {
+				final Iterator<Vertex> vertices = tx.vertices(revision.getVertexId());
+				if (vertices.hasNext()) {
+					vertices.next().remove();
+				}
+			}
+			tx.commit();
+		} finally {
+			if (tx.isOpen()) {
+				tx.rollback();
+			}
+		}
+		LOG.info("Removed {} old schema revision(s), kept {}", Integer.valueOf(obsolete.size()), Integer.valueOf(retention));
+		return obsolete.size();
 	}
 
+	/**
+	 * @return the recorded state of the data migration, empty if it has never been started. A state
+	 * recorded under the static label by an earlier version is used until a new one is recorded
+	 */
+	Map<String, String> getMigrationState(final JanusGraph graph, final String migrationName) throws IOException {
+		final JanusGraphTransaction tx = graph.buildTransaction().readOnly().start();
+		try {
+			List<Vertex> vertices = findMigrationVertices(graph, tx, METADATA_STATE_VERTEX_LABEL, migrationName);
+			if (vertices.isEmpty()) {
+				vertices = findMigrationVertices(graph, tx, METADATA_VERTEX_LABEL, migrationName);
+			}
+			if (vertices.isEmpty()) {
+				return Collections.emptyMap();
+			}
+			final String data = vertices.get(0).<String>property(METADATA_DATA_PROPERTY_KEY).orElse(null);
+			return data == null ? Collections.emptyMap()
+					: new ObjectMapper().readValue(data, new TypeReference<Map<String, String>>() { });
+		} finally {
+			tx.rollback();
+		}
+	}
 
-	private void tag(final JanusGraph graph, GraphSchemaDef schemaDef) throws IOException {
+	/**
+	 * Records the state of the data migration, replacing the previous one. The state is kept in a
+	 * vertex of the non-static label, which can be updated at every checkpoint.
+	 */
+	void saveMigrationState(final JanusGraph graph, final String migrationName, final Map<String, String> state,
+			final SchemaManager schemaManager) throws IOException, SchemaManagementException {
+		ensureConfigured(graph, schemaManager);
+		final JanusGraphTransaction tx = graph.newTransaction();
+		try {
+			final List<Vertex> vertices = findMigrationVertices(graph, tx, METADATA_STATE_VERTEX_LABEL, migrationName);
+			final Vertex v;
+			if (vertices.isEmpty()) {
+				v = tx.addVertex(METADATA_STATE_VERTEX_LABEL);
+				v.property(METADATA_ID_PROPERTY_KEY, METADATA_MIGRATION_ID_PREFIX + migrationName);
+			} else {
+				v = vertices.get(0);
+			}
+			v.property(METADATA_DATA_PROPERTY_KEY, new ObjectMapper().writeValueAsString(state));
+			v.property(METADATA_TIME_PROPERTY_KEY, Long.valueOf(System.currentTimeMillis()));
+			tx.commit();
+		} finally {
+			if (tx.isOpen()) {
+				tx.rollback();
+			}
+		}
+	}
+
+	private static List<Vertex> findMigrationVertices(final JanusGraph graph, final JanusGraphTransaction tx, final String label,
+			final String migrationName) {
+		if (!graph.containsVertexLabel(label)) {
+			return Collections.emptyList();
+		}
+		return tx.traversal().V().hasLabel(label)
+				.has(METADATA_ID_PROPERTY_KEY, METADATA_MIGRATION_ID_PREFIX + migrationName).toList();
+	}
+
+	private static GraphTraversal<Vertex, Vertex> findRevisionVertices(final JanusGraphTransaction tx, final String label) {
+		// served by the composite index of the label, METADATA_STATE_ID_GRAPH_INDEX or METADATA_ID_GRAPH_INDEX
+		return tx.traversal().V().hasLabel(label)
+				.has(METADATA_ID_PROPERTY_KEY, METADATA_ID_PROPERTY_VALUE);
+	}
+
+	private static GraphRevision toRevision(final Vertex v) throws IOException {
+		final Map<String, String> info;
+		final String data = v.<String>property(METADATA_DATA_PROPERTY_KEY).orElse(null);
+		if (data == null) {
+			info = Collections.emptyMap();
+		} else {
+			info = new ObjectMapper().readValue(data, new TypeReference<Map<String, String>>() { });
+		}
+		final Long time = v.<Long>property(METADATA_TIME_PROPERTY_KEY).orElse(Long.valueOf(0));
+		// the hash property is the source of truth, the copy in the data is for the humans
+		final String hash = v.<String>property(METADATA_HASH_PROPERTY_KEY).orElse(info.get(META_PROP_SCHEMA_HASH));
+		return new GraphRevision(v.id(), time.longValue(), info.get(META_PROP_GRAPH_NAME),
+				info.get(META_PROP_MODEL_VERSION), hash);
+	}
+
+	private void tag(final JanusGraph graph, GraphSchemaDef schemaDef, String schemaHash) throws IOException {
 		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd 'T' HH:mm:ss'Z'");
 		sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
 
 		ObjectMapper mapper = new ObjectMapper();
-		final String graphInfo = mapper.writeValueAsString(ImmutableMap.<String, String>builder()
+		final ImmutableMap.Builder<String, String> info = ImmutableMap.<String, String>builder()
 					.put(META_PROP_GRAPH_NAME, schemaDef.getGraph().getName())
 					.put(META_PROP_MODEL_VERSION, schemaDef.getGraph().getModelVersion())
-					.put(META_PROP_UPDATED_ON, sdf.format(new Date())).build());
-
-		Transaction tx = graph.tx();
-		// creating new metadata vertex
-		JanusGraphVertex metaVertex = graph.addVertex(METADATA_VERTEX_LABEL);
-		metaVertex.property(METADATA_ID_PROPERTY_KEY, METADATA_ID_PROPERTY_VALUE);
-		metaVertex.property(METADATA_DATA_PROPERTY_KEY, graphInfo);
-		metaVertex.property(METADATA_TIME_PROPERTY_KEY, Long.valueOf(System.currentTimeMillis()));
-		tx.commit();
+					.put(META_PROP_UPDATED_ON, sdf.format(new Date()));
+		if (schemaHash != null) {
+			info.put(META_PROP_SCHEMA_HASH, schemaHash);
+		}
+		final String graphInfo = mapper.writeValueAsString(info.build());
+
+		final JanusGraphTransaction tx = graph.newTransaction();
+		try {
+			// creating new metadata vertex
+			JanusGraphVertex metaVertex = tx.addVertex(METADATA_STATE_VERTEX_LABEL);
+			metaVertex.property(METADATA_ID_PROPERTY_KEY, METADATA_ID_PROPERTY_VALUE);
+			metaVertex.property(METADATA_DATA_PROPERTY_KEY, graphInfo);
+			metaVertex.property(METADATA_TIME_PROPERTY_KEY, Long.valueOf(System.currentTimeMillis()));
+			if (schemaHash != null) {
+				metaVertex.property(METADATA_HASH_PROPERTY_KEY, schemaHash);
+			}
+			tx.commit();
+		} finally {
+			if (tx.isOpen()) {
+				tx.rollback();
+			}
+		}
 	}
 
 
+	/**
+	 * Makes sure the metadata vertex label, property keys and index exist and the index is ENABLED.
+	 * The static label and its index of the earlier versions are only read, they are not created.
+	 * Everything is checked and, if needed, created in a single management transaction, which is
+	 * only committed if something has been created. The schema elements are checked every time, so a
+	 * metadata index disabled or removed since the last run is noticed.
+	 */
 	private void ensureConfigured(final JanusGraph graph, final SchemaManager schemaManager) throws IOException, SchemaManagementException {
 
 		graph.tx().rollback();
 
-		JanusGraphManagement mgmt;
-
-		mgmt = graph.openManagement();
-		if (mgmt.getVertexLabel(METADATA_VERTEX_LABEL) == null) {
-			LOG.info("Initializing vertex label {}", METADATA_VERTEX_LABEL);
-			mgmt.makeVertexLabel(METADATA_VERTEX_LABEL).setStatic().make();
-			mgmt.commit();
-		} else {
-			LOG.debug("Vertex label {} exists", METADATA_VERTEX_LABEL);
-			mgmt.rollback();
-		}
+		final JanusGraphManagement mgmt = graph.openManagement();
+		final SchemaStatus indexStatus;
+		final boolean indexCreated;
+		try {
+			VertexLabel label = mgmt.getVertexLabel(METADATA_STATE_VERTEX_LABEL);
+			if (label == null) {
+				LOG.info("Initializing vertex label {}", METADATA_STATE_VERTEX_LABEL);
+				label = mgmt.makeVertexLabel(METADATA_STATE_VERTEX_LABEL).make();
+			}
+			final PropertyKey idKey = ensurePropertyKey(mgmt, METADATA_ID_PROPERTY_KEY, String.class);
+			final PropertyKey timeKey = ensurePropertyKey(mgmt, METADATA_TIME_PROPERTY_KEY, Long.class);
+			final PropertyKey dataKey = ensurePropertyKey(mgmt, METADATA_DATA_PROPERTY_KEY, String.class);
+			final PropertyKey hashKey = ensurePropertyKey(mgmt, METADATA_HASH_PROPERTY_KEY, String.class);
 
-		mgmt = graph.openManagement();
-		if (mgmt.getPropertyKey(METADATA_ID_PROPERTY_KEY) == null) {
-			LOG.info("Initializing property key {}", METADATA_ID_PROPERTY_KEY);
-			mgmt.makePropertyKey(METADATA_ID_PROPERTY_KEY).cardinality(Cardinality.SINGLE).dataType(java.lang.String.class).make();
-			mgmt.commit();
-		} else {
-			LOG.debug("Property key {} exists", METADATA_ID_PROPERTY_KEY);
-			mgmt.rollback();
-		}
+			JanusGraphIndex idx = mgmt.getGraphIndex(METADATA_STATE_ID_GRAPH_INDEX);
+			indexCreated = idx == null;
+			if (indexCreated) {
+				LOG.info("Initializing graph index {}", METADATA_STATE_ID_GRAPH_INDEX);
+				// the index is ENABLED right away if the key is created in the same transaction
+				idx = mgmt.buildIndex(METADATA_STATE_ID_GRAPH_INDEX, Vertex.class)
+					.addKey(idKey)
+					.indexOnly(label)
+					.buildCompositeIndex();
+			}
+			indexStatus = idx.getIndexStatus(idKey);
 
-		mgmt = graph.openManagement();
-		if (mgmt.getPropertyKey(METADATA_TIME_PROPERTY_KEY) == null) {
-			LOG.info("Initializing property key {}", METADATA_TIME_PROPERTY_KEY);
-			mgmt.makePropertyKey(METADATA_TIME_PROPERTY_KEY).cardinality(Cardinality.SINGLE).dataType(java.lang.Long.class).make();
-			mgmt.commit();
-		} else {
-			LOG.debug("Property key {} exists", METADATA_TIME_PROPERTY_KEY);
-			mgmt.rollback();
-		}
+			if (indexStatus == SchemaStatus.DISABLED) {
+				throw new SchemaManagementException("Metadata index " + METADATA_STATE_ID_GRAPH_INDEX + " is DISABLED");
+			}
 
-		mgmt = graph.openManagement();
-		if (mgmt.getPropertyKey(METADATA_DATA_PROPERTY_KEY) == null) {
-			LOG.info("Initializing property key {}", METADATA_DATA_PROPERTY_KEY);
-			mgmt.makePropertyKey(METADATA_DATA_PROPERTY_KEY).cardinality(Cardinality.SINGLE).dataType(java.lang.String.class).make();
-			mgmt.commit();
-		} else {
-			LOG.debug("Property key {} exists", METADATA_DATA_PROPERTY_KEY);
-			mgmt.rollback();
+			if (indexCreated || label.isNew() || idKey.isNew() || timeKey.isNew() || dataKey.isNew() || hashKey.isNew()) {
+				mgmt.commit();
+			}
+		} finally {
+			if (mgmt.isOpen()) {
+				mgmt.rollback();
+			}
 		}
 
-		mgmt = graph.openManagement();
-		final JanusGraphIndex idx = mgmt.getGraphIndex(METADATA_ID_GRAPH_INDEX);
-		if (idx == null) {
-			LOG.info("Initializing graph index {}", METADATA_ID_GRAPH_INDEX);
-			mgmt.buildIndex(METADATA_ID_GRAPH_INDEX, Vertex.class)
-				.addKey(mgmt.getPropertyKey(METADATA_ID_PROPERTY_KEY))
-				.indexOnly(mgmt.getVertexLabel(METADATA_VERTEX_LABEL))
-				.buildCompositeIndex();
-			mgmt.commit();
+		if (indexStatus == SchemaStatus.ENABLED) {
+			LOG.debug("Metadata schema is ready, index {} is ENABLED", METADATA_STATE_ID_GRAPH_INDEX);
+		} else if (indexCreated) {
+			// the key existed before, the index has to go through the registration
 			try {
-				ManagementSystem.awaitGraphIndexStatus(graph, METADATA_ID_GRAPH_INDEX).call();
+				ManagementSystem.awaitGraphIndexStatus(graph, METADATA_STATE_ID_GRAPH_INDEX).call();
 			} catch (InterruptedException e) {
-				throw new IOException("Interrupted while waiting for the index " + METADATA_ID_GRAPH_INDEX + " to be available");
+				throw new IOException("Interrupted while waiting for the index " + METADATA_STATE_ID_GRAPH_INDEX + " to be available");
 			}
-			mgmt = graph.openManagement();
+			final JanusGraphManagement enableMgmt = graph.openManagement();
 			// no need to re-index
 			try {
-				mgmt.updateIndex(mgmt.getGraphIndex(METADATA_ID_GRAPH_INDEX), SchemaAction.ENABLE_INDEX).get();
+				enableMgmt.updateIndex(enableMgmt.getGraphIndex(METADATA_STATE_ID_GRAPH_INDEX), SchemaAction.ENABLE_INDEX).get();
 			} catch (InterruptedException | ExecutionException e) {
-				throw new SchemaManagementException("Unable to update index " + METADATA_ID_GRAPH_INDEX, e);
+				enableMgmt.rollback();
+				throw new SchemaManagementException("Unable to update index " + METADATA_STATE_ID_GRAPH_INDEX, e);
 			}
-			mgmt.commit();
-		} else if (idx.getIndexStatus(mgmt.getPropertyKey(METADATA_ID_PROPERTY_KEY)) == SchemaStatus.DISABLED) {
-		    throw new SchemaManagementException("Metadata index " + METADATA_ID_GRAPH_INDEX + " is DISABLED");
+			enableMgmt.commit();
 		} else {
-		    mgmt.rollback();
-		    LOG.info("Metadata index {} exists", METADATA_ID_GRAPH_INDEX);
-		    schemaManager.ensureGraphIndexReady(graph, METADATA_ID_GRAPH_INDEX);
+			LOG.info("Metadata index {} exists, status is {}", METADATA_STATE_ID_GRAPH_INDEX, indexStatus);
+			schemaManager.ensureGraphIndexReady(graph, METADATA_STATE_ID_GRAPH_INDEX);
+		}
+	}
+
+	private static PropertyKey ensurePropertyKey(JanusGraphManagement mgmt, String key, Class<?> dataType) {
+		final PropertyKey pk = mgmt.getPropertyKey(key);
+		if (pk != null) {
+			LOG.debug("Property key {} exists", key);
+			return pk;
 		}
+		LOG.info("Initializing property key {}", key);
+		return mgmt.makePropertyKey(key).cardinality(Cardinality.SINGLE).dataType(dataType).make();
 	}
 }
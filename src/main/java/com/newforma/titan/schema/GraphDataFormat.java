@@ -0,0 +1,59 @@
+package com.newforma.titan.schema;
+
+import java.io.File;
+import java.util.Locale;
+
+import org.apache.tinkerpop.gremlin.structure.io.Io;
+import org.apache.tinkerpop.gremlin.structure.io.IoCore;
+
+/**
+ * Graph data file formats supported for loading and saving. The format and the compression are
+ * recognized by the file name extension:
+ * <ul>
+ * <li><code>.json</code>, <code>.json.gz</code> - GraphSON (adjacency list, one vertex per line)</li>
+ * <li><code>.kryo</code>, <code>.kryo.gz</code> - Gryo</li>
+ * <li>anything else (e.g. <code>.xml</code>, <code>.graphml.gz</code>) - GraphML</li>
+ * </ul>
+ * A <code>.gz</code> suffix means that the file is compressed with gzip.
+ *
+ * @author Nikolai
+ *
+ */
+public enum GraphDataFormat {
+    GRAPHML, GRAPHSON, GRYO;
+
+    private static final String GZIP_SUFFIX = ".gz";
+
+    public static GraphDataFormat forFile(File file) {
+        final String name = stripCompressionSuffix(file.getName().toLowerCase(Locale.ROOT));
+        if (name.endsWith(".json")) {
+            return GRAPHSON;
+        } else if (name.endsWith(".kryo")) {
+            return GRYO;
+        }
+        return GRAPHML;
+    }
+
+    public static boolean isCompressed(File file) {
+        return file.getName().toLowerCase(Locale.ROOT).endsWith(GZIP_SUFFIX);
+    }
+
+    /**
+     * @return TinkerPop I/O builder for this format, <code>null</code> for GraphML, which is handled
+     * by the schema manager itself when saving
+     */
+    Io.Builder<? extends Io> ioBuilder() {
+        switch (this) {
+        case GRAPHSON:
+            return IoCore.graphson();
+        case GRYO:
+            return IoCore.gryo();
+        default:
+            return null;
+        }
+    }
+
+    private static String stripCompressionSuffix(String name) {
+        return name.endsWith(GZIP_SUFFIX) ? name.substring(0, name.length() - GZIP_SUFFIX.length()) : name;
+    }
+}
@@ -4,17 +4,27 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
 
 import org.apache.tinkerpop.gremlin.structure.io.graphml.GraphMLReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.newforma.titan.utils.ReadAheadInputStream;
+
 import org.janusgraph.core.JanusGraph;
 
+/**
+ * Loads the graph data from a file. Despite the name, all {@link GraphDataFormat}s are supported,
+ * the format is recognized by the file name.
+ */
 public class GraphMLLoader {
 
 	private static final Logger LOG = LoggerFactory.getLogger(GraphMLLoader.class);
 
+	private static final int BUFFER_SIZE = 256 * 1024;
+
 	private final String fileToLoad;
 	private JanusGraph graph;
 
@@ -28,17 +38,31 @@ public class GraphMLLoader {
 		final File graphMLFile = new File(fileToLoad);
 
 		if (!graphMLFile.canRead()) {
-			throw new SchemaManagementException("GraphML file " + graphMLFile + " does not exist or is not readable");
+			throw new SchemaManagementException("Graph data file " + graphMLFile + " does not exist or is not readable");
 		}
 
-		LOG.info("Loading GraphML data from " + graphMLFile);
+		final GraphDataFormat format = GraphDataFormat.forFile(graphMLFile);
+		final boolean compressed = GraphDataFormat.isCompressed(graphMLFile);
 
-		final GraphMLReader graphMLReader = GraphMLReader.build().create();
+		LOG.info("Loading {} data from {}{}", format, graphMLFile, compressed ? " (compressed)" : "");
 
-		try (BufferedInputStream is = new BufferedInputStream(new FileInputStream(graphMLFile))) {
-			graphMLReader.readGraph(is, graph);
+		try (InputStream is = openStream(graphMLFile, compressed)) {
+			if (format == GraphDataFormat.GRAPHML) {
+				GraphMLReader.build().create().readGraph(is, graph);
+			} else {
+				graph.io(format.ioBuilder()).reader().create().readGraph(is, graph);
+			}
 		} catch (IOException e) {
-			throw new SchemaManagementException("Failed to load GraphML data from " + graphMLFile + " into the graph", e);
+			throw new SchemaManagementException("Failed to load " + format + " data from " + graphMLFile + " into the graph", e);
+		}
+	}
+
+	private static InputStream openStream(File file, boolean compressed) throws IOException {
+		final InputStream fileStream = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+		if (!compressed) {
+			return fileStream;
 		}
+		// decompressing on a separate thread while the parser consumes the data
+		return new ReadAheadInputStream(new GZIPInputStream(fileStream, BUFFER_SIZE));
 	}
 }
@@ -1,41 +1,305 @@
 package com.newforma.titan.schema;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
-import org.apache.tinkerpop.gremlin.structure.io.graphml.GraphMLWriter;
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Property;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.structure.io.GraphWriter;
+import org.apache.tinkerpop.gremlin.util.iterator.IteratorUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Preconditions;
+
 import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.PropertyKey;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+import org.janusgraph.graphdb.idmanagement.IDManager;
 
+/**
+ * Exports the graph into one or more files. Despite the name, all {@link GraphDataFormat}s are supported,
+ * the format and compression are recognized by the file name. The vertices are streamed from a full scan
+ * and written as they arrive, nothing is sorted or collected in memory. When more than one
+ * partition is requested, the vertices are split by the JanusGraph ID partition they belong to
+ * (the partition bits of their IDs, not ID ranges): every file gets a contiguous range of the ID
+ * partitions. JanusGraph places the vertices in random partitions, so the files are about the same
+ * size, but there are no more non-empty files than ID partitions. If the IDs are not JanusGraph IDs,
+ * the vertices are split by their ID modulo the number of the files. Every partition file is written
+ * by its own thread and contains the vertices of its partitions and their outgoing edges.
+ *
+ * @author Nikolai
+ *
+ */
 public class GraphMLSaver {
 
     private static final Logger LOG = LoggerFactory.getLogger(GraphMLSaver.class);
 
-    private final String saveToLoad;
-    private JanusGraph graph;
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final long PROGRESS_INTERVAL = 100000;
+    private static final Object END_OF_DATA = new Object();
+    private static final String GZIP_SUFFIX = ".gz";
+
+    private final String fileToSave;
+    private final JanusGraph graph;
+    private final int partitions;
+    private final IDManager idManager;
+    private final GraphDataFormat format;
+    private final boolean compressed;
 
-    public GraphMLSaver(JanusGraph graph, final String saveToLoad) {
-        this.saveToLoad = saveToLoad;
+    public GraphMLSaver(JanusGraph graph, final String fileToSave) {
+        this(graph, fileToSave, 1);
+    }
+
+    public GraphMLSaver(JanusGraph graph, final String fileToSave, int partitions) {
+        Preconditions.checkArgument(partitions > 0, "Number of partitions must be positive");
+        this.fileToSave = fileToSave;
         this.graph = graph;
+        this.partitions = partitions;
+        this.idManager = graph instanceof StandardJanusGraph ? ((StandardJanusGraph) graph).getIDManager() : null;
+        this.format = GraphDataFormat.forFile(new File(fileToSave));
+        this.compressed = GraphDataFormat.isCompressed(new File(fileToSave));
     }
 
     void run() throws SchemaManagementException {
-        final File graphMLFile = new File(saveToLoad);
+        final List<File> files = getPartitionFiles(new File(fileToSave), partitions);
+        final Map<String, String> keyTypes = getKeyTypes();
+
+        LOG.info("Writing {} data to {}{}", format, files, compressed ? " (compressed)" : "");
+
+        final JanusGraphTransaction tx = graph.buildTransaction().readOnly().start();
+        final ExecutorService executor = Executors.newFixedThreadPool(partitions);
+        try {
+            final List<BlockingQueue<Object>> queues = new ArrayList<>(partitions);
+            final List<Future<Long>> writers = new ArrayList<>(partitions);
+            for (final File f : files) {
+                final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+                queues.add(queue);
+                writers.add(executor.submit(new PartitionWriter(f, keyTypes, queue)));
+            }
+
+            long vertexCount = 0;
+            final Iterator<Vertex> vertices = tx.vertices();
+            while (vertices.hasNext()) {
+                final Vertex v = vertices.next();
+                enqueue(queues.get(partitionOf(v)), v, writers);
+                if (++vertexCount % PROGRESS_INTERVAL == 0) {
+                    LOG.info("Exported {} vertices so far", vertexCount);
+                }
+            }
+            for (final BlockingQueue<Object> queue : queues) {
+                enqueue(queue, END_OF_DATA, writers);
+            }
+
+            long edgeCount = 0;
+            for (final Future<Long> writer : writers) {
+                edgeCount += writer.get().longValue();
+            }
+            LOG.info("Exported {} vertices and {} edges into {} file(s)", vertexCount, edgeCount, files.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SchemaManagementException("Interrupted while writing " + format + " data to " + files, e);
+        } catch (ExecutionException e) {
+            throw new SchemaManagementException("Failed to write " + format + " data to " + files, e.getCause());
+        } finally {
+            executor.shutdownNow();
+            tx.rollback();
+        }
+    }
 
-        LOG.info("Writing GraphML data to " + graphMLFile);
+    static List<File> getPartitionFiles(File target, int partitions) {
+        if (partitions == 1) {
+            return Collections.singletonList(target);
+        }
+        // inserting the partition number before the format extension and the compression suffix,
+        // e.g. my.dump.graphml.gz -> my.dump-part0.graphml.gz
+        String base = target.getName();
+        String ext = "";
+        if (GraphDataFormat.isCompressed(target)) {
+            ext = base.substring(base.length() - GZIP_SUFFIX.length());
+            base = base.substring(0, base.length() - GZIP_SUFFIX.length());
+        }
+        final int extPos = base.lastIndexOf('.');
+        if (extPos > 0) {
+            ext = base.substring(extPos) + ext;
+            base = base.substring(0, extPos);
+        }
+        final List<File> files = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            files.add(new File(target.getParentFile(), base + "-part" + i + ext));
+        }
+        return files;
+    }
 
-        final GraphMLWriter graphMLWriter = GraphMLWriter.build().normalize(true).create();
+    /**
+     * @return index of the file of the vertex: the ID partitions are split into contiguous ranges
+     */
+    private int partitionOf(Vertex v) {
+        if (partitions == 1) {
+            return 0;
+        }
+        final long id = ((Number) v.id()).longValue();
+        if (idManager != null) {
+            return (int) (idManager.getPartitionId(id) * partitions / idManager.getPartitionBound());
+        }
+        return (int) Math.floorMod(id, (long) partitions);
+    }
 
-        try (BufferedOutputStream os = new BufferedOutputStream(new FileOutputStream(graphMLFile))) {
-            graphMLWriter.writeGraph(os, graph);
-        } catch (IOException e) {
-            throw new SchemaManagementException("Failed to load GraphML data from " + graphMLFile + " into the graph",
-                    e);
+    private Map<String, String> getKeyTypes() {
+        final JanusGraphManagement mgmt = graph.openManagement();
+        try {
+            final Map<String, String> keyTypes = new TreeMap<>();
+            for (final PropertyKey pk : mgmt.getRelationTypes(PropertyKey.class)) {
+                keyTypes.put(pk.name(), GraphMLStreamWriter.attributeType(pk.dataType()));
+            }
+            return keyTypes;
+        } finally {
+            mgmt.rollback();
         }
     }
 
+    /**
+     * Hands over the element to the partition writer, failing fast if any of the writers has
+     * died (otherwise a full queue would block the scan forever).
+     */
+    private static void enqueue(BlockingQueue<Object> queue, Object item, List<Future<Long>> writers)
+            throws InterruptedException, ExecutionException {
+        while (!queue.offer(item, 1, TimeUnit.SECONDS)) {
+            for (final Future<Long> writer : writers) {
+                if (writer.isDone()) {
+                    writer.get();
+                }
+            }
+        }
+    }
+
+    private static void writeProperties(GraphMLStreamWriter writer, Iterator<? extends Property<?>> properties)
+            throws IOException {
+        while (properties.hasNext()) {
+            final Property<?> p = properties.next();
+            writer.data(p.key(), p.value());
+        }
+    }
+
+    /**
+     * Writes the vertices of one partition.
+     */
+    private class PartitionWriter implements Callable<Long> {
+
+        private final File target;
+        private final Map<String, String> keyTypes;
+        private final BlockingQueue<Object> queue;
+
+        private PartitionWriter(File target, Map<String, String> keyTypes, BlockingQueue<Object> queue) {
+            this.target = target;
+            this.keyTypes = keyTypes;
+            this.queue = queue;
+        }
+
+        @Override
+        public Long call() throws IOException, InterruptedException {
+            final long edgeCount;
+            try (OutputStream os = openStream(target)) {
+                if (format == GraphDataFormat.GRAPHML) {
+                    edgeCount = writeGraphML(os);
+                } else {
+                    edgeCount = writeStarGraphs(os);
+                }
+            }
+            LOG.info("{} file {} is complete, {} edges written", format, target, edgeCount);
+            return Long.valueOf(edgeCount);
+        }
+
+        private OutputStream openStream(File file) throws IOException {
+            final OutputStream fileStream = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+            return compressed ? new GZIPOutputStream(fileStream, BUFFER_SIZE) : fileStream;
+        }
+
+        /**
+         * The outgoing edges are spilled into a temporary file while the vertices are written and
+         * appended after the last vertex, since in GraphML the edges must follow the vertices they refer to.
+         */
+        private long writeGraphML(OutputStream os) throws IOException, InterruptedException {
+            final File spillFile = File.createTempFile("graphml-edges", ".xml", target.getAbsoluteFile().getParentFile());
+            long edgeCount = 0;
+            try (OutputStream spillOs = new BufferedOutputStream(new FileOutputStream(spillFile), BUFFER_SIZE)) {
+                final GraphMLStreamWriter nodeWriter = GraphMLStreamWriter.document(os, keyTypes);
+                final GraphMLStreamWriter edgeWriter = GraphMLStreamWriter.fragment(spillOs);
+
+                Object item;
+                while ((item = queue.take()) != END_OF_DATA) {
+                    final Vertex v = (Vertex) item;
+                    nodeWriter.startNode(v.id(), v.label());
+                    writeProperties(nodeWriter, v.properties());
+                    nodeWriter.end();
+
+                    final Iterator<Edge> edges = v.edges(Direction.OUT);
+                    while (edges.hasNext()) {
+                        final Edge e = edges.next();
+                        edgeWriter.startEdge(e.id(), e.outVertex().id(), e.inVertex().id(), e.label());
+                        writeProperties(edgeWriter, e.properties());
+                        edgeWriter.end();
+                        edgeCount++;
+                    }
+                }
+
+                edgeWriter.close();
+                spillOs.flush();
+                nodeWriter.flush();
+                Files.copy(spillFile.toPath(), os);
+                nodeWriter.close();
+            } finally {
+                Files.deleteIfExists(spillFile.toPath());
+            }
+            return edgeCount;
+        }
+
+        /**
+         * GraphSON and Gryo are written as adjacency lists, one vertex with all its edges at a time,
+         * exactly like TinkerPop writers do.
+         */
+        private long writeStarGraphs(OutputStream os) throws IOException, InterruptedException {
+            final GraphWriter writer = graph.io(format.ioBuilder()).writer().create();
+            // GraphSON writer closes the stream it writes to, so each vertex goes through a buffer
+            final ByteArrayOutputStream vertexBuffer = new ByteArrayOutputStream();
+            long edgeCount = 0;
+            Object item;
+            while ((item = queue.take()) != END_OF_DATA) {
+                final Vertex v = (Vertex) item;
+                writer.writeVertex(vertexBuffer, v, Direction.BOTH);
+                vertexBuffer.writeTo(os);
+                vertexBuffer.reset();
+                if (format == GraphDataFormat.GRAPHSON) {
+                    os.write('\n');
+                }
+                edgeCount += IteratorUtils.count(v.edges(Direction.OUT));
+            }
+            return edgeCount;
+        }
+    }
 }
@@ -0,0 +1,183 @@
+package com.newforma.titan.schema;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes GraphML elements one by one, without keeping any part of the graph in memory.
+ * The output follows the conventions of TinkerPop <code>GraphMLWriter</code> (vertex
+ * labels in <code>labelV</code>, edge labels in <code>labelE</code>) so it can be loaded
+ * back with <code>GraphMLReader</code>.
+ *
+ * @author Nikolai
+ *
+ */
+class GraphMLStreamWriter implements Closeable {
+
+    static final String VERTEX_LABEL_KEY = "labelV";
+    static final String EDGE_LABEL_KEY = "labelE";
+
+    private static final String GRAPHML_NS = "http://graphml.graphdrawing.org/xmlns";
+    private static final String GRAPH_ID = "G";
+
+    private final XMLStreamWriter writer;
+    private final boolean fragment;
+
+    private GraphMLStreamWriter(OutputStream os, boolean fragment) throws IOException {
+        try {
+            this.writer = XMLOutputFactory.newInstance().createXMLStreamWriter(os, "UTF-8");
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to create XML writer", e);
+        }
+        this.fragment = fragment;
+    }
+
+    /**
+     * Creates a writer for the complete GraphML document. The header with the key declarations
+     * is written immediately.
+     *
+     * @param os target stream
+     * @param keyTypes GraphML attribute types by the property key name
+     * @return new writer
+     * @throws IOException in case of any I/O error
+     */
+    static GraphMLStreamWriter document(OutputStream os, Map<String, String> keyTypes) throws IOException {
+        final GraphMLStreamWriter w = new GraphMLStreamWriter(os, false);
+        w.writeHeader(keyTypes);
+        return w;
+    }
+
+    /**
+     * Creates a writer for a sequence of nodes and/or edges without the enclosing document,
+     * to be appended to a complete document later.
+     *
+     * @param os target stream
+     * @return new writer
+     * @throws IOException in case of any I/O error
+     */
+    static GraphMLStreamWriter fragment(OutputStream os) throws IOException {
+        return new GraphMLStreamWriter(os, true);
+    }
+
+    static String attributeType(Class<?> dataType) {
+        if (Integer.class.equals(dataType) || Short.class.equals(dataType) || Byte.class.equals(dataType)) {
+            return "int";
+        } else if (Long.class.equals(dataType)) {
+            return "long";
+        } else if (Float.class.equals(dataType)) {
+            return "float";
+        } else if (Double.class.equals(dataType)) {
+            return "double";
+        } else if (Boolean.class.equals(dataType)) {
+            return "boolean";
+        }
+        return "string";
+    }
+
+    private void writeHeader(Map<String, String> keyTypes) throws IOException {
+        try {
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeStartElement("graphml");
+            writer.writeDefaultNamespace(GRAPHML_NS);
+            writeKey(VERTEX_LABEL_KEY, "node", "string");
+            writeKey(EDGE_LABEL_KEY, "edge", "string");
+            for (final Map.Entry<String, String> key : keyTypes.entrySet()) {
+                writeKey(key.getKey(), "all", key.getValue());
+            }
+            writer.writeStartElement("graph");
+            writer.writeAttribute("id", GRAPH_ID);
+            writer.writeAttribute("edgedefault", "directed");
+            // closes the start tag so that the raw fragments can be appended safely
+            writer.writeCharacters("\n");
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to write GraphML header", e);
+        }
+    }
+
+    private void writeKey(String name, String target, String type) throws XMLStreamException {
+        writer.writeEmptyElement("key");
+        writer.writeAttribute("id", name);
+        writer.writeAttribute("for", target);
+        writer.writeAttribute("attr.name", name);
+        writer.writeAttribute("attr.type", type);
+    }
+
+    void startNode(Object id, String label) throws IOException {
+        try {
+            writer.writeStartElement("node");
+            writer.writeAttribute("id", String.valueOf(id));
+            data(VERTEX_LABEL_KEY, label);
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to write node " + id, e);
+        }
+    }
+
+    void startEdge(Object id, Object outId, Object inId, String label) throws IOException {
+        try {
+            writer.writeStartElement("edge");
+            writer.writeAttribute("id", String.valueOf(id));
+            writer.writeAttribute("source", String.valueOf(outId));
+            writer.writeAttribute("target", String.valueOf(inId));
+            data(EDGE_LABEL_KEY, label);
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to write edge " + id, e);
+        }
+    }
+
+    void data(String key, Object value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        try {
+            writer.writeStartElement("data");
+            writer.writeAttribute("key", key);
+            writer.writeCharacters(String.valueOf(value));
+            writer.writeEndElement();
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to write value of " + key, e);
+        }
+    }
+
+    void end() throws IOException {
+        try {
+            writer.writeEndElement();
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to write GraphML element", e);
+        }
+    }
+
+    /**
+     * Flushes everything written so far to the underlying stream, so that raw content
+     * (e.g. a previously written fragment) can be appended to it.
+     *
+     * @throws IOException in case of any I/O error
+     */
+    void flush() throws IOException {
+        try {
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to flush GraphML writer", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!fragment) {
+                writer.writeEndElement();   // graph
+                writer.writeEndElement();   // graphml
+                writer.writeEndDocument();
+            }
+            writer.flush();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to complete GraphML document", e);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.newforma.titan.schema;
+
+import java.util.Date;
+
+/**
+ * One schema revision recorded in the graph by {@link GlobalMetaDataManager} every time the schema is applied.
+ *
+ * @author Nikolai
+ *
+ */
+public class GraphRevision {
+
+    private final Object vertexId;
+    private final long creationTime;
+    private final String graphName;
+    private final String modelVersion;
+    private final String schemaHash;
+
+    GraphRevision(Object vertexId, long creationTime, String graphName, String modelVersion, String schemaHash) {
+        this.vertexId = vertexId;
+        this.creationTime = creationTime;
+        this.graphName = graphName;
+        this.modelVersion = modelVersion;
+        this.schemaHash = schemaHash;
+    }
+
+    public Object getVertexId() {
+        return vertexId;
+    }
+
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    public String getGraphName() {
+        return graphName;
+    }
+
+    public String getModelVersion() {
+        return modelVersion;
+    }
+
+    /**
+     * @return hash of the schema content, <code>null</code> for the revisions recorded before the hash was introduced
+     */
+    public String getSchemaHash() {
+        return schemaHash;
+    }
+
+    @Override
+    public String toString() {
+        return "Revision of " + graphName + " model " + modelVersion + " applied on " + new Date(creationTime)
+                + ", schema hash " + schemaHash;
+    }
+}
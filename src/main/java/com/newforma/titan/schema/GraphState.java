@@ -33,6 +33,7 @@ public class GraphState {
 	final Map<ElementType, Set<String>> pendingRelations = new HashMap<>();
 	final List<String> allIndexNames = new ArrayList<>(16);
 	final List<String> newIndexNames = new ArrayList<>(16);
+	final List<GraphIndexDef> changedIndexes = new ArrayList<>();
 
 	final Map<String, Object> indexMap = new HashMap<String, Object>();
 
@@ -47,6 +48,8 @@ public class GraphState {
 
 	private boolean ttlSupported;
 
+	private String schemaHash;
+
 	GraphState(GraphSchemaDef graphSchemaDef) throws SchemaValidationException {
 		for(ElementType et: ElementType.values()) {
 			existingRelations.put(et, new HashSet<String>());
@@ -118,6 +121,14 @@ public class GraphState {
 		this.ttlSupported = ttlSupported;
 	}
 
+	public String getSchemaHash() {
+		return schemaHash;
+	}
+
+	public void setSchemaHash(String schemaHash) {
+		this.schemaHash = schemaHash;
+	}
+
 	public void addIndex(String indexName, boolean isNew) {
 		this.allIndexNames.add(indexName);
 		if (isNew) {
@@ -134,6 +145,17 @@ public class GraphState {
 	}
 
 
+	/**
+	 * Records a graph index whose definition differs from the existing one, to be rebuilt.
+	 */
+	public void addChangedIndex(GraphIndexDef indexDef) {
+		changedIndexes.add(indexDef);
+	}
+
+	public List<GraphIndexDef> getChangedIndexes() {
+		return changedIndexes;
+	}
+
 	public Object getIndexDef(String indexName) {
 		return indexMap.get(indexName);
 	}
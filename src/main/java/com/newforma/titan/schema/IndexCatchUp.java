@@ -0,0 +1,207 @@
+package com.newforma.titan.schema;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphEdge;
+import org.janusgraph.core.JanusGraphFactory;
+import org.janusgraph.core.JanusGraphRelation;
+import org.janusgraph.core.JanusGraphVertex;
+import org.janusgraph.core.JanusGraphVertexProperty;
+import org.janusgraph.core.log.Change;
+import org.janusgraph.core.log.ChangeState;
+import org.janusgraph.core.log.LogProcessorFramework;
+import org.janusgraph.core.log.TransactionId;
+import org.janusgraph.graphdb.database.IndexSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.newforma.titan.schema.types.GraphIndexDef;
+import com.newforma.titan.schema.types.GraphIndexDef.IndexType;
+import com.newforma.titan.schema.types.GraphIndexDef.RelType;
+
+/**
+ * Brings graph indexes up to date after they have missed the writes of a period, e.g. while the
+ * index backend was down, without reindexing everything: the user transaction log the writers log
+ * their transactions to (see <code>logIdentifier()</code> of the transaction builder) is replayed
+ * from the start of the period and only the vertices changed since then, or the outgoing edges of
+ * these vertices for the edge indexes, are reindexed by several threads. The documents of the
+ * removed elements are removed from the mixed indexes.
+ *
+ * @author Nikolai
+ *
+ */
+public class IndexCatchUp {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexCatchUp.class);
+
+    public static final int DEFAULT_IDLE_TIMEOUT_SECS = 30;
+    private static final long PROGRESS_INTERVAL_MS = 10000;
+    private static final int REMOVAL_BATCH_SIZE = 1000;
+
+    private final JanusGraph graph;
+    private final GraphState graphState;
+    private final List<GraphIndexDef> indexes = new ArrayList<>();
+    private final String logIdentifier;
+    private final Instant startTime;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int idleTimeoutInSecs = DEFAULT_IDLE_TIMEOUT_SECS;
+
+    private final Set<Long> changedVertices = ConcurrentHashMap.newKeySet();
+    private final Set<String> removedVertices = ConcurrentHashMap.newKeySet();
+    private final Set<String> removedEdges = ConcurrentHashMap.newKeySet();
+    private final AtomicLong transactions = new AtomicLong();
+    private volatile long lastTransactionAt;
+    private volatile boolean caughtUp;
+
+    /**
+     * @param logIdentifier name of the user transaction log to replay
+     * @param startTime time the indexes have started missing the writes at
+     */
+    public IndexCatchUp(JanusGraph graph, GraphState graphState, Collection<String> indexNames, String logIdentifier,
+            Instant startTime) throws SchemaManagementException {
+        for (final String indexName : indexNames) {
+            final Object def = graphState.getIndexDef(indexName);
+            if (!(def instanceof GraphIndexDef)) {
+                throw new SchemaManagementException("Index " + indexName + " is not a graph index, it cannot be caught up");
+            }
+            indexes.add((GraphIndexDef) def);
+        }
+        this.graph = graph;
+        this.graphState = graphState;
+        this.logIdentifier = logIdentifier;
+        this.startTime = startTime;
+    }
+
+    public IndexCatchUp threads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @param idleTimeoutInSecs stop replaying the log when no transaction has been read for this long,
+     * must be longer than the read interval of the log
+     */
+    public IndexCatchUp idleTimeout(int idleTimeoutInSecs) {
+        this.idleTimeoutInSecs = idleTimeoutInSecs;
+        return this;
+    }
+
+    /**
+     * @return number of the reindexed elements
+     */
+    public long run() throws SchemaManagementException {
+        for (final GraphIndexDef indexDef : indexes) {
+            ElementIndexer.checkEnabled(graph, indexDef.getName());
+        }
+        readLog();
+
+        long reindexed = 0;
+        for (final GraphIndexDef indexDef : indexes) {
+            if (!changedVertices.isEmpty()) {
+                reindexed += new PartialReindexer(graph, graphState, indexDef.getName()).threads(threads)
+                        .vertexIds(changedVertices.iterator()).run();
+            }
+            if (indexDef.getIndexType() == IndexType.MIXED) {
+                removeDocuments(indexDef, indexDef.getRelType() == RelType.VERTEX ? removedVertices : removedEdges);
+            }
+        }
+        LOG.info("Indexes {} caught up: {} elements reindexed", indexes.stream().map(GraphIndexDef::getName).toArray(), reindexed);
+        return reindexed;
+    }
+
+    private void readLog() throws SchemaManagementException {
+        // the changes committed after this are indexed as usual
+        final Instant endTime = Instant.now();
+        LOG.info("Replaying transaction log {} from {} to {}", logIdentifier, startTime, endTime);
+        final LogProcessorFramework logProcessors = JanusGraphFactory.openTransactionLog(graph);
+        final long readStartTime = System.currentTimeMillis();
+        lastTransactionAt = readStartTime;
+        try {
+            logProcessors.addLogProcessor(logIdentifier)
+                    // a new identifier every time, so the log is read from the start time and not from a previous read
+                    .setProcessorIdentifier("index-catch-up-" + readStartTime)
+                    .setStartTime(startTime)
+                    .addProcessor((tx, txId, changes) -> collect(txId, changes, endTime))
+                    .build();
+            long lastReportTime = readStartTime;
+            while (!caughtUp && System.currentTimeMillis() - lastTransactionAt < TimeUnit.SECONDS.toMillis(idleTimeoutInSecs)) {
+                Thread.sleep(500);
+                if (System.currentTimeMillis() - lastReportTime >= PROGRESS_INTERVAL_MS) {
+                    lastReportTime = System.currentTimeMillis();
+                    LOG.info("Read {} transactions, {} changed vertices", transactions.get(), changedVertices.size());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SchemaManagementException("Interrupted while reading transaction log " + logIdentifier, e);
+        } finally {
+            logProcessors.removeLogProcessor(logIdentifier);
+            logProcessors.shutdown();
+        }
+        LOG.info("Read {} transactions of log {} in {} ms: {} changed vertices, {} removed vertices, {} removed edges",
+                transactions.get(), logIdentifier, System.currentTimeMillis() - readStartTime, changedVertices.size(),
+                removedVertices.size(), removedEdges.size());
+    }
+
+    private void collect(TransactionId txId, ChangeState changes, Instant endTime) {
+        for (final JanusGraphVertex v : changes.getVertices(Change.REMOVED)) {
+            removedVertices.add(IndexSerializer.element2String(v));
+        }
+        for (final JanusGraphVertex v : changes.getVertices(Change.ADDED)) {
+            changedVertices.add(Long.valueOf(v.longId()));
+        }
+        for (final JanusGraphRelation r : changes.getRelations(Change.REMOVED)) {
+            // a modified edge is removed and added back with a new ID
+            if (r.isEdge()) {
+                removedEdges.add(IndexSerializer.element2String(r));
+            }
+        }
+        for (final JanusGraphRelation r : changes.getRelations(Change.ANY)) {
+            if (r.isProperty()) {
+                changedVertices.add(Long.valueOf(((JanusGraphVertexProperty<?>) r).element().longId()));
+            } else if (r.isEdge()) {
+                changedVertices.add(Long.valueOf(((JanusGraphEdge) r).outVertex().longId()));
+            }
+        }
+        transactions.incrementAndGet();
+        lastTransactionAt = System.currentTimeMillis();
+        if (!txId.getTransactionTime().isBefore(endTime)) {
+            caughtUp = true;
+        }
+    }
+
+    private void removeDocuments(GraphIndexDef indexDef, Set<String> docIds) throws SchemaManagementException {
+        if (docIds.isEmpty()) {
+            return;
+        }
+        final List<String> batch = new ArrayList<>(REMOVAL_BATCH_SIZE);
+        for (final String docId : docIds) {
+            batch.add(docId);
+            if (batch.size() >= REMOVAL_BATCH_SIZE) {
+                removeDocumentBatch(indexDef, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            removeDocumentBatch(indexDef, batch);
+        }
+        LOG.info("Index {}: removed the documents of {} removed elements", indexDef.getName(), docIds.size());
+    }
+
+    private void removeDocumentBatch(GraphIndexDef indexDef, List<String> docIds) throws SchemaManagementException {
+        try (ElementIndexer indexer = new ElementIndexer(graph, indexDef.getName())) {
+            for (final String docId : docIds) {
+                indexer.removeDocument(docId);
+            }
+            indexer.commit();
+        }
+    }
+}
@@ -0,0 +1,465 @@
+package com.newforma.titan.schema;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Element;
+import org.apache.tinkerpop.gremlin.structure.Property;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphElement;
+import org.janusgraph.core.JanusGraphIndexQuery;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.JanusGraphVertex;
+import org.janusgraph.core.schema.Mapping;
+import org.janusgraph.diskstorage.Entry;
+import org.janusgraph.diskstorage.StaticBuffer;
+import org.janusgraph.graphdb.database.IndexSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.newforma.titan.schema.scan.ParallelVertexScan;
+import com.newforma.titan.schema.types.GraphIndexDef;
+import com.newforma.titan.schema.types.GraphIndexDef.IndexType;
+import com.newforma.titan.schema.types.GraphIndexDef.RelType;
+import com.newforma.titan.schema.types.GraphIndexKeyDef;
+
+/**
+ * Verifies that the content of a graph index matches the data, in two passes. First a parallel
+ * (optionally sampled) scan finds the elements that should be indexed and checks that each of them
+ * is in the index: the entries of a composite index are read directly from the index store, a mixed
+ * index is queried directly by the element values. Then the content of the index itself is read, so the
+ * entries left behind by the removed elements and by the changed values are found wherever they
+ * are: the rows of a composite index are scanned in the index store, the documents of a mixed index
+ * are scrolled through in Elasticsearch. Every entry has to point to an existing element that still
+ * has the indexed values.
+ * <p>
+ * Optionally only the inconsistent entries are repaired: the missing ones are written and the
+ * stale ones are removed (the stale documents of the existing elements are rewritten), in a
+ * transaction per batch.
+ *
+ * @author Nikolai
+ *
+ */
+public class IndexConsistencyChecker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexConsistencyChecker.class);
+
+    // index lookups returning more hits are too expensive to verify
+    private static final int MAX_HITS = 1000;
+    // index rows or documents checked in one transaction
+    private static final int ENTRY_BATCH_SIZE = 1000;
+    private static final String SCROLL_TIMEOUT = "5m";
+
+    private final JanusGraph graph;
+    private final GraphIndexDef indexDef;
+    private final List<String> keys;
+    private final List<String> lookupKeys;
+    private String targetIndexName;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private double sampleRate = 1.0;
+    private boolean repair;
+
+    private final AtomicLong checked = new AtomicLong();
+    private final AtomicLong entriesChecked = new AtomicLong();
+    private final AtomicLong missing = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+    private final AtomicLong unverified = new AtomicLong();
+    private final AtomicLong repaired = new AtomicLong();
+    private final Random random = new Random();
+
+    public IndexConsistencyChecker(JanusGraph graph, GraphState graphState, String indexName)
+            throws SchemaManagementException {
+        final Object def = graphState.getIndexDef(indexName);
+        if (!(def instanceof GraphIndexDef)) {
+            throw new SchemaManagementException("Index " + indexName + " is not a graph index defined in the schema");
+        }
+        this.graph = graph;
+        this.indexDef = (GraphIndexDef) def;
+        this.targetIndexName = indexName;
+        this.keys = indexDef.getKeys().stream().map(GraphIndexKeyDef::getKey).collect(Collectors.toList());
+        // mixed index keys mapped as TEXT can only be searched by tokens, not by the value
+        this.lookupKeys = indexDef.getKeys().stream()
+                .filter(k -> indexDef.getIndexType() == IndexType.COMPOSITE || k.getMapping() != Mapping.TEXT)
+                .map(GraphIndexKeyDef::getKey).collect(Collectors.toList());
+    }
+
+    /**
+     * @param indexName index built from the same definition to check instead, e.g. a new version of
+     * the index built side by side
+     */
+    public IndexConsistencyChecker of(String indexName) {
+        this.targetIndexName = indexName;
+        return this;
+    }
+
+    public IndexConsistencyChecker threads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    public IndexConsistencyChecker sampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+        return this;
+    }
+
+    /**
+     * @param repair write the missing entries and remove the stale ones
+     */
+    public IndexConsistencyChecker repair(boolean repair) {
+        this.repair = repair;
+        return this;
+    }
+
+    /**
+     * Runs the check and logs the results.
+     *
+     * @param reportFile file to write the results to as JSON, <code>null</code> to only log them
+     * @return share of the checked elements and index entries that are missing or stale
+     */
+    public double check(File reportFile) throws SchemaManagementException {
+        ElementIndexer.checkEnabled(graph, targetIndexName);
+        new ParallelVertexScan(graph, threads).sampleRate(sampleRate)
+                .runBatches("Consistency check of index " + targetIndexName, this::checkBatch);
+        if (indexDef.getIndexType() == IndexType.COMPOSITE) {
+            checkRows();
+        } else {
+            checkDocuments();
+        }
+
+        final long total = checked.get() + entriesChecked.get();
+        final double driftRate = total == 0 ? 0 : (double) (missing.get() + stale.get()) / total;
+        final Map<String, Object> report = new LinkedHashMap<>();
+        report.put("index", targetIndexName);
+        report.put("sample_rate", Double.valueOf(sampleRate));
+        report.put("checked", Long.valueOf(checked.get()));
+        report.put("entries_checked", Long.valueOf(entriesChecked.get()));
+        report.put("missing", Long.valueOf(missing.get()));
+        report.put("stale", Long.valueOf(stale.get()));
+        report.put("unverified", Long.valueOf(unverified.get()));
+        report.put("drift_rate", Double.valueOf(driftRate));
+        report.put("repaired", Long.valueOf(repaired.get()));
+
+        if (missing.get() + stale.get() > 0) {
+            LOG.warn("Index {}: {} elements and {} entries checked, {} missing and {} stale entries, drift rate {}%, {} repaired",
+                    targetIndexName, checked.get(), entriesChecked.get(), missing.get(), stale.get(),
+                    String.format("%.4f", Double.valueOf(driftRate * 100)), repaired.get());
+        } else {
+            LOG.info("Index {}: {} elements and {} entries checked, no inconsistencies found", targetIndexName,
+                    checked.get(), entriesChecked.get());
+        }
+        if (unverified.get() > 0) {
+            LOG.warn("Index {}: {} elements could not be verified (no searchable key or too many hits)",
+                    targetIndexName, unverified.get());
+        }
+        if (reportFile != null) {
+            try {
+                new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(reportFile, report);
+            } catch (IOException e) {
+                throw new SchemaManagementException("Failed to write the index consistency report to " + reportFile, e);
+            }
+        }
+        return driftRate;
+    }
+
+    private void checkBatch(List<JanusGraphVertex> vertices, JanusGraphTransaction tx) throws SchemaManagementException {
+        try (ElementIndexer indexer = new ElementIndexer(graph, targetIndexName)) {
+            boolean changed = false;
+            for (final JanusGraphVertex v : vertices) {
+                for (final JanusGraphElement element : getIndexedElements(v)) {
+                    changed |= checkElement(element, tx, indexer);
+                }
+            }
+            if (changed) {
+                indexer.commit();
+            }
+        }
+    }
+
+    /**
+     * @return the vertex or its outgoing edges that have to be in the index
+     */
+    private List<JanusGraphElement> getIndexedElements(JanusGraphVertex v) {
+        final String indexOnly = indexDef.getIndexOnly();
+        final List<JanusGraphElement> elements = new ArrayList<>();
+        if (indexDef.getRelType() == RelType.VERTEX) {
+            if (indexOnly == null || indexOnly.equals(v.label())) {
+                elements.add(v);
+            }
+        } else {
+            final Iterator<Edge> edges = indexOnly == null ? v.edges(Direction.OUT) : v.edges(Direction.OUT, indexOnly);
+            edges.forEachRemaining(e -> elements.add((JanusGraphElement) e));
+        }
+        return elements.stream().filter(this::hasIndexedKeys).collect(Collectors.toList());
+    }
+
+    /**
+     * @return true if the element has the values the index keeps it for
+     */
+    private boolean hasIndexedKeys(JanusGraphElement element) {
+        // composite index only has the elements with all the keys, mixed - with any of them
+        return indexDef.getIndexType() == IndexType.COMPOSITE
+                ? keys.stream().allMatch(k -> firstValue(element, k) != null)
+                : keys.stream().anyMatch(k -> firstValue(element, k) != null);
+    }
+
+    /**
+     * @return true if the entries of the index have been changed
+     */
+    private boolean checkElement(JanusGraphElement element, JanusGraphTransaction tx, ElementIndexer indexer)
+            throws SchemaManagementException {
+        checked.incrementAndGet();
+        final boolean indexed;
+        if (indexer.isComposite()) {
+            indexed = indexer.hasEntries(element);
+        } else {
+            final Map<String, String> values = new LinkedHashMap<>();
+            for (final String key : lookupKeys) {
+                final String value = normalize(firstValue(element, key));
+                if (value != null) {
+                    values.put(key, value);
+                }
+            }
+            final List<JanusGraphElement> hits = values.isEmpty() ? null : lookup(tx, values);
+            if (hits == null || hits.size() > MAX_HITS) {
+                unverified.incrementAndGet();
+                return false;
+            }
+            indexed = hits.stream().anyMatch(h -> h.id().equals(element.id()));
+        }
+        if (indexed) {
+            return false;
+        }
+        missing.incrementAndGet();
+        LOG.debug("Element {} is missing in index {}", element.id(), targetIndexName);
+        if (!repair) {
+            return false;
+        }
+        indexer.add(element);
+        repaired.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Scans the rows of the composite index for the entries of the removed elements and of the
+     * values the elements no longer have.
+     */
+    private void checkRows() throws SchemaManagementException {
+        LOG.info("Index {}: checking the index rows", targetIndexName);
+        final List<StaticBuffer> rowKeys = new ArrayList<>(ENTRY_BATCH_SIZE);
+        final List<List<Entry>> rows = new ArrayList<>(ENTRY_BATCH_SIZE);
+        try (ElementIndexer scanner = new ElementIndexer(graph, targetIndexName)) {
+            scanner.scanRows((rowKey, entries) -> {
+                if (sampleRate < 1.0 && random.nextDouble() >= sampleRate) {
+                    return;
+                }
+                rowKeys.add(rowKey);
+                rows.add(entries);
+                if (rowKeys.size() >= ENTRY_BATCH_SIZE) {
+                    checkRowBatch(rowKeys, rows);
+                }
+            });
+        }
+        checkRowBatch(rowKeys, rows);
+    }
+
+    private void checkRowBatch(List<StaticBuffer> rowKeys, List<List<Entry>> rows) throws SchemaManagementException {
+        if (rowKeys.isEmpty()) {
+            return;
+        }
+        try (ElementIndexer indexer = new ElementIndexer(graph, targetIndexName)) {
+            int staleEntries = 0;
+            for (int i = 0; i < rowKeys.size(); i++) {
+                entriesChecked.addAndGet(rows.get(i).size());
+                staleEntries += indexer.findStaleEntries(rowKeys.get(i), rows.get(i), repair);
+            }
+            stale.addAndGet(staleEntries);
+            if (repair && staleEntries > 0) {
+                indexer.commit();
+                repaired.addAndGet(staleEntries);
+            }
+        }
+        rowKeys.clear();
+        rows.clear();
+    }
+
+    /**
+     * Scrolls through the documents of the mixed index for the documents of the removed elements and
+     * of the values the elements no longer have. Only possible for the Elasticsearch indexes.
+     */
+    private void checkDocuments() throws SchemaManagementException {
+        final Configuration graphConfig = graph.configuration();
+        final String backingIndex;
+        final String storeName;
+        final Map<String, String> fields;
+        try (ElementIndexer indexer = new ElementIndexer(graph, targetIndexName)) {
+            backingIndex = indexer.getBackingIndexName();
+            storeName = indexer.getStoreName();
+            fields = indexer.getFieldNames();
+        }
+        if (!EsRestClient.isElasticsearch(graphConfig, backingIndex)) {
+            LOG.warn("Index {}: the documents of index backend {} cannot be listed, the stale documents are not checked",
+                    targetIndexName, backingIndex);
+            return;
+        }
+        final String esIndexName = EsBulkIndexingProfile.getEsIndexName(graphConfig, backingIndex, storeName);
+        final String searchPath = "/" + esIndexName
+                + (EsBulkIndexingProfile.isMultiTypeIndex(graphConfig, backingIndex) ? "/" + storeName : "") + "/_search";
+        LOG.info("Index {}: checking the documents of Elasticsearch index {}", targetIndexName, esIndexName);
+
+        try (EsRestClient client = new EsRestClient(graphConfig, backingIndex)) {
+            final Map<String, Object> query = new LinkedHashMap<>();
+            query.put("size", Integer.valueOf(ENTRY_BATCH_SIZE));
+            query.put("sort", Collections.singletonList("_doc"));
+            query.put("_source", new ArrayList<>(fields.values()));
+            JsonNode page = client.execute(new HttpPost(searchPath + "?scroll=" + SCROLL_TIMEOUT), query);
+            String scrollId = page.path("_scroll_id").asText(null);
+            try {
+                while (page.path("hits").path("hits").size() > 0) {
+                    checkDocumentBatch(page.path("hits").path("hits"), fields);
+                    final Map<String, Object> next = new LinkedHashMap<>();
+                    next.put("scroll", SCROLL_TIMEOUT);
+                    next.put("scroll_id", scrollId);
+                    page = client.execute(new HttpPost("/_search/scroll"), next);
+                    scrollId = page.path("_scroll_id").asText(scrollId);
+                }
+            } finally {
+                if (scrollId != null) {
+                    try {
+                        client.execute(new HttpDelete("/_search/scroll/" + scrollId));
+                    } catch (SchemaManagementException e) {
+                        LOG.warn("Failed to clear the Elasticsearch scroll", e);
+                    }
+                }
+            }
+        }
+    }
+
+    private void checkDocumentBatch(JsonNode hits, Map<String, String> fields) throws SchemaManagementException {
+        try (ElementIndexer indexer = new ElementIndexer(graph, targetIndexName)) {
+            int staleDocuments = 0;
+            for (final JsonNode hit : hits) {
+                if (sampleRate < 1.0 && random.nextDouble() >= sampleRate) {
+                    continue;
+                }
+                entriesChecked.incrementAndGet();
+                final String docId = hit.path("_id").asText();
+                final JanusGraphElement element = indexer.getElement(IndexSerializer.string2ElementId(docId));
+                if (element != null && isIndexed(element) && hasDocumentValues(element, hit.path("_source"), fields)) {
+                    continue;
+                }
+                staleDocuments++;
+                LOG.debug("Index {} has a stale document {}", targetIndexName, docId);
+                if (!repair) {
+                    continue;
+                }
+                if (element != null && isIndexed(element)) {
+                    // the values have changed
+                    indexer.add(element);
+                } else {
+                    indexer.removeDocument(docId);
+                }
+            }
+            stale.addAndGet(staleDocuments);
+            if (repair && staleDocuments > 0) {
+                indexer.commit();
+                repaired.addAndGet(staleDocuments);
+            }
+        }
+    }
+
+    /**
+     * @return true if the element belongs to the index
+     */
+    private boolean isIndexed(JanusGraphElement element) {
+        try {
+            return (indexDef.getIndexOnly() == null || indexDef.getIndexOnly().equals(element.label()))
+                    && hasIndexedKeys(element);
+        } catch (IllegalStateException e) {
+            // removed in the meantime
+            return false;
+        }
+    }
+
+    /**
+     * Compares the document fields with the element values. Only the strings, numbers and booleans
+     * are compared, the fields of the other types are assumed to match.
+     */
+    private static boolean hasDocumentValues(JanusGraphElement element, JsonNode source, Map<String, String> fields) {
+        for (final Map.Entry<String, String> field : fields.entrySet()) {
+            final Set<String> values = new HashSet<>();
+            for (final Iterator<? extends Property<Object>> it = element.properties(field.getKey()); it.hasNext();) {
+                final String value = normalize(it.next().value());
+                if (value == null) {
+                    return true;
+                }
+                values.add(value);
+            }
+            final JsonNode docValue = source.path(field.getValue());
+            final Set<String> docValues = new HashSet<>();
+            final Iterable<JsonNode> docItems = docValue.isArray() ? docValue : Collections.singletonList(docValue);
+            for (final JsonNode v : docItems) {
+                if (!v.isMissingNode() && !v.isNull()) {
+                    docValues.add(v.isNumber() ? normalize(v.decimalValue()) : v.asText());
+                }
+            }
+            if (!values.equals(docValues)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the value as compared with a document field, <code>null</code> if it is not comparable
+     */
+    private static String normalize(Object value) {
+        if (value instanceof Double && !Double.isFinite(((Double) value).doubleValue())
+                || value instanceof Float && !Float.isFinite(((Float) value).floatValue())) {
+            return null;
+        } else if (value instanceof Number) {
+            return new BigDecimal(value.toString()).stripTrailingZeros().toPlainString();
+        } else if (value instanceof String || value instanceof Boolean || value instanceof UUID) {
+            return value.toString();
+        }
+        return null;
+    }
+
+    /**
+     * Searches the mixed index itself, not any index JanusGraph would choose for the values.
+     */
+    private List<JanusGraphElement> lookup(JanusGraphTransaction tx, Map<String, String> values) {
+        final String query = values.entrySet().stream()
+                .map(v -> "v.\"" + v.getKey() + "\":\"" + v.getValue().replace("\\", "\\\\").replace("\"", "\\\"") + "\"")
+                .collect(Collectors.joining(" AND "));
+        final JanusGraphIndexQuery indexQuery = tx.indexQuery(targetIndexName, query).limit(MAX_HITS + 1);
+        if (indexDef.getRelType() == RelType.VERTEX) {
+            return indexQuery.vertexStream().map(r -> (JanusGraphElement) r.getElement()).collect(Collectors.toList());
+        }
+        return indexQuery.edgeStream().map(r -> (JanusGraphElement) r.getElement()).collect(Collectors.toList());
+    }
+
+    private static Object firstValue(Element element, String key) {
+        final Iterator<? extends Property<Object>> it = element.properties(key);
+        return it.hasNext() ? it.next().value() : null;
+    }
+}
@@ -0,0 +1,265 @@
+package com.newforma.titan.schema;
+
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Element;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.RelationType;
+import org.janusgraph.core.schema.Index;
+import org.janusgraph.core.schema.JanusGraphIndex;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.janusgraph.core.schema.JanusGraphManagement.IndexJobFuture;
+import org.janusgraph.core.schema.RelationTypeIndex;
+import org.janusgraph.core.schema.SchemaAction;
+import org.janusgraph.core.schema.SchemaStatus;
+import org.janusgraph.diskstorage.keycolumnvalue.scan.ScanMetrics;
+import org.janusgraph.graphdb.database.management.ManagementSystem;
+import org.janusgraph.graphdb.olap.job.IndexRemoveJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Removes the graph and local indexes that exist in the graph but are no longer defined in the
+ * schema, so the writes stop maintaining them. All of them are disabled at once, when all the
+ * graph instances have disabled them their entries are removed by jobs running in parallel. The
+ * mixed indexes cannot be removed by JanusGraph, they are only disabled.
+ *
+ * @author Nikolai
+ *
+ */
+public class IndexPruner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexPruner.class);
+
+    private static final long PROGRESS_INTERVAL_MS = 10000;
+
+    // indexes maintained by the schema manager itself, never in the schema
+    private static final Set<String> INTERNAL_INDEXES = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList(GlobalMetaDataManager.METADATA_ID_GRAPH_INDEX,
+                    GlobalMetaDataManager.METADATA_STATE_ID_GRAPH_INDEX)));
+
+    /**
+     * Index found in the graph only.
+     */
+    private static final class ObsoleteIndex {
+        private final String name;
+        // the indexed relation type of a local index, null for a graph index
+        private final String typeName;
+        private final String mixedBackend;
+        private JanusGraphManagement mgmt;
+        private IndexJobFuture future;
+
+        ObsoleteIndex(String name, String typeName, String mixedBackend) {
+            this.name = name;
+            this.typeName = typeName;
+            this.mixedBackend = mixedBackend;
+        }
+
+        Index get(JanusGraphManagement m) {
+            return typeName == null ? m.getGraphIndex(name) : m.getRelationIndex(m.getRelationType(typeName), name);
+        }
+
+        boolean isDisabled(JanusGraphManagement m) {
+            if (typeName != null) {
+                return ((RelationTypeIndex) get(m)).getIndexStatus() == SchemaStatus.DISABLED;
+            }
+            final JanusGraphIndex index = (JanusGraphIndex) get(m);
+            return Arrays.stream(index.getFieldKeys()).allMatch(k -> index.getIndexStatus(k) == SchemaStatus.DISABLED);
+        }
+
+        @Override
+        public String toString() {
+            return typeName == null ? name : typeName + "." + name;
+        }
+    }
+
+    private final JanusGraph graph;
+    private final GraphState graphState;
+    private int timeoutInSecs = SchemaManager.DEFAULT_INDEX_REGISTERED_TIMEOUT_SECS;
+
+    public IndexPruner(JanusGraph graph, GraphState graphState) {
+        this.graph = graph;
+        this.graphState = graphState;
+    }
+
+    /**
+     * @param timeoutInSecs how long to wait for all the graph instances to disable the indexes
+     */
+    public IndexPruner timeout(int timeoutInSecs) {
+        this.timeoutInSecs = timeoutInSecs;
+        return this;
+    }
+
+    /**
+     * @return names of the indexes existing in the graph but not in the schema
+     */
+    public List<String> listObsoleteIndexes() {
+        return findObsoleteIndexes().stream().map(ObsoleteIndex::toString).collect(Collectors.toList());
+    }
+
+    /**
+     * Disables and removes the obsolete indexes.
+     *
+     * @return number of the pruned indexes
+     */
+    public int prune() throws SchemaManagementException {
+        final List<ObsoleteIndex> indexes = findObsoleteIndexes();
+        if (indexes.isEmpty()) {
+            LOG.info("No obsolete indexes found");
+            return 0;
+        }
+        LOG.info("Pruning {} obsolete index(es): {}", indexes.size(), indexes);
+        graph.tx().rollback();
+        try {
+            disable(indexes);
+
+            final List<ObsoleteIndex> removing = new ArrayList<>(indexes.size());
+            for (final ObsoleteIndex index : indexes) {
+                if (index.mixedBackend != null) {
+                    LOG.warn("Index {} is disabled, mixed indexes cannot be removed: drop it from index backend {} manually",
+                            index, index.mixedBackend);
+                    continue;
+                }
+                LOG.info("Removing index {}...", index);
+                index.mgmt = graph.openManagement();
+                index.future = index.mgmt.updateIndex(index.get(index.mgmt), SchemaAction.REMOVE_INDEX);
+                removing.add(index);
+            }
+            awaitRemoval(removing);
+            for (final ObsoleteIndex index : removing) {
+                index.mgmt.commit();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SchemaManagementException("Pruning of the obsolete indexes has been interrupted", e);
+        } catch (ExecutionException e) {
+            throw new SchemaManagementException("Unable to remove the obsolete indexes", e.getCause());
+        } finally {
+            for (final ObsoleteIndex index : indexes) {
+                if (index.mgmt != null && index.mgmt.isOpen()) {
+                    index.mgmt.rollback();
+                }
+            }
+        }
+        return indexes.size();
+    }
+
+    private void disable(List<ObsoleteIndex> indexes) throws SchemaManagementException, InterruptedException, ExecutionException {
+        final JanusGraphManagement mgmt = graph.openManagement();
+        try {
+            LOG.info("Waiting for {} open graph instance(s) to disable the indexes: {}", mgmt.getOpenInstances().size(),
+                    mgmt.getOpenInstances());
+            for (final ObsoleteIndex index : indexes) {
+                if (!index.isDisabled(mgmt)) {
+                    LOG.info("Disabling index {}...", index);
+                    final IndexJobFuture future = mgmt.updateIndex(index.get(mgmt), SchemaAction.DISABLE_INDEX);
+                    if (future != null) {
+                        future.get();
+                    }
+                }
+            }
+            mgmt.commit();
+        } finally {
+            if (mgmt.isOpen()) {
+                mgmt.rollback();
+            }
+        }
+
+        for (final ObsoleteIndex index : indexes) {
+            final boolean disabled;
+            if (index.typeName == null) {
+                disabled = ManagementSystem.awaitGraphIndexStatus(graph, index.name)
+                        .status(SchemaStatus.DISABLED)
+                        .timeout(timeoutInSecs, ChronoUnit.SECONDS)
+                        .call().getSucceeded();
+            } else {
+                disabled = ManagementSystem.awaitRelationIndexStatus(graph, index.name, index.typeName)
+                        .status(SchemaStatus.DISABLED)
+                        .timeout(timeoutInSecs, ChronoUnit.SECONDS)
+                        .call().getSucceeded();
+            }
+            if (!disabled) {
+                throw new SchemaManagementException("Index " + index + " has not been disabled by all the graph instances in "
+                        + timeoutInSecs + " seconds");
+            }
+        }
+    }
+
+    private void awaitRemoval(List<ObsoleteIndex> removing) throws InterruptedException, ExecutionException {
+        final long startTime = System.currentTimeMillis();
+        for (final ObsoleteIndex index : removing) {
+            while (true) {
+                try {
+                    index.future.get(PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    LOG.info("Removed index entries after {} s: {}", (System.currentTimeMillis() - startTime) / 1000,
+                            getDeletedCounts(removing, true));
+                }
+            }
+        }
+        final Map<String, Long> deleted = getDeletedCounts(removing, false);
+        final long total = deleted.values().stream().mapToLong(Long::longValue).sum();
+        final double seconds = Math.max(1, System.currentTimeMillis() - startTime) / 1000.0;
+        LOG.info("Removed {} index entries in {} s ({} per second): {}", total, String.format("%.1f", seconds),
+                String.format("%.0f", total / seconds), deleted);
+    }
+
+    private static Map<String, Long> getDeletedCounts(List<ObsoleteIndex> indexes, boolean intermediate)
+            throws InterruptedException, ExecutionException {
+        final Map<String, Long> counts = new LinkedHashMap<>();
+        for (final ObsoleteIndex index : indexes) {
+            final ScanMetrics metrics = intermediate ? index.future.getIntermediateResult() : index.future.get();
+            counts.put(index.toString(), metrics == null ? 0L : metrics.getCustom(IndexRemoveJob.DELETED_RECORDS_COUNT));
+        }
+        return counts;
+    }
+
+    private List<ObsoleteIndex> findObsoleteIndexes() {
+        final List<ObsoleteIndex> obsolete = new ArrayList<>();
+        final JanusGraphManagement mgmt = graph.openManagement();
+        try {
+            for (final Class<? extends Element> elementType : Arrays.asList(Vertex.class, Edge.class)) {
+                for (final JanusGraphIndex index : mgmt.getGraphIndexes(elementType)) {
+                    if (isObsolete(index.name())) {
+                        obsolete.add(new ObsoleteIndex(index.name(), null,
+                                index.isMixedIndex() ? index.getBackingIndex() : null));
+                    }
+                }
+            }
+            for (final RelationType type : mgmt.getRelationTypes(RelationType.class)) {
+                for (final RelationTypeIndex index : mgmt.getRelationIndexes(type)) {
+                    if (isObsolete(index.name())) {
+                        obsolete.add(new ObsoleteIndex(index.name(), type.name(), null));
+                    }
+                }
+            }
+        } finally {
+            mgmt.rollback();
+        }
+        return obsolete;
+    }
+
+    private boolean isObsolete(String indexName) {
+        if (INTERNAL_INDEXES.contains(indexName) || graphState.getIndexDef(indexName) != null) {
+            return false;
+        }
+        // the new version of an index being rebuilt
+        return !(indexName.endsWith(SchemaManager.SHADOW_INDEX_SUFFIX) && graphState.getIndexDef(
+                indexName.substring(0, indexName.length() - SchemaManager.SHADOW_INDEX_SUFFIX.length())) != null);
+    }
+}
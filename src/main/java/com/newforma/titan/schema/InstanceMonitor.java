@@ -0,0 +1,196 @@
+package com.newforma.titan.schema;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.janusgraph.diskstorage.ReadBuffer;
+import org.janusgraph.diskstorage.log.Log;
+import org.janusgraph.diskstorage.log.Message;
+import org.janusgraph.diskstorage.log.MessageReader;
+import org.janusgraph.diskstorage.log.ReadMarker;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+import org.janusgraph.graphdb.database.idhandling.VariableLong;
+import org.janusgraph.graphdb.database.management.MgmtLogType;
+import org.janusgraph.graphdb.database.serialize.DataOutput;
+import org.janusgraph.graphdb.database.serialize.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the other JanusGraph instances registered as open. Every schema change is only completed
+ * when all of them have acknowledged the eviction of the changed elements from their schema cache,
+ * so a crashed instance, which never does, makes every index status change wait until the timeout.
+ * JanusGraph does not keep any heartbeat of the instances, so the stale ones are found by sending
+ * an eviction of nothing and waiting for the acknowledgements. A stale instance is not necessarily
+ * dead: an instance only acknowledges an eviction once its transactions open at the time are
+ * closed, so a long transaction, a long GC pause or a slow management log reader delays it. Only
+ * the instances confirmed dead by other means should be force closed. While the monitor is open,
+ * the acknowledgements of every schema change made by this instance are logged as they arrive.
+ *
+ * @author Nikolai
+ *
+ */
+public class InstanceMonitor implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InstanceMonitor.class);
+
+    private static final String CURRENT_INSTANCE_SUFFIX = "(current)";
+
+    /**
+     * Schema change waiting for the acknowledgements.
+     */
+    private static final class Change {
+        private final long sentAt = System.currentTimeMillis();
+        private final Set<String> waiting = ConcurrentHashMap.newKeySet();
+
+        Change(Set<String> instances) {
+            waiting.addAll(instances);
+        }
+    }
+
+    private final JanusGraph graph;
+    private final Log managementLog;
+    private final Serializer serializer;
+    private final String instanceId;
+    private final Map<Long, Change> changes = new ConcurrentHashMap<>();
+    private final MessageReader reader = new MessageReader() {
+        @Override
+        public void read(Message message) {
+            onMessage(message);
+        }
+
+        // not declared by all the JanusGraph versions
+        public void updateState() {
+            // nothing to persist
+        }
+    };
+
+    public InstanceMonitor(JanusGraph graph) throws SchemaManagementException {
+        if (!(graph instanceof StandardJanusGraph)) {
+            throw new SchemaManagementException("Instances can only be monitored for a standard JanusGraph instance");
+        }
+        this.graph = graph;
+        this.managementLog = ((StandardJanusGraph) graph).getBackend().getSystemMgmtLog();
+        this.serializer = ((StandardJanusGraph) graph).getDataSerializer();
+        this.instanceId = ((StandardJanusGraph) graph).getConfiguration().getUniqueGraphId();
+        final Set<String> others = getOtherInstances();
+        LOG.info("This instance is {}, {} other open instance(s): {}", instanceId, others.size(), others);
+        managementLog.registerReader(ReadMarker.fromNow(), reader);
+    }
+
+    /**
+     * @return the other instances that have not acknowledged a schema cache eviction in time, dead or
+     * only slow
+     */
+    public Set<String> findStaleInstances(int timeoutInSecs) throws SchemaManagementException {
+        final Set<String> others = getOtherInstances();
+        if (others.isEmpty()) {
+            return new TreeSet<>();
+        }
+        // the IDs of the real evictions are counted from 0
+        final long probeId = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE / 2, Long.MAX_VALUE);
+        final Change probe = new Change(others);
+        changes.put(Long.valueOf(probeId), probe);
+        try {
+            final DataOutput out = serializer.getDataOutput(32);
+            out.writeObjectNotNull(MgmtLogType.CACHED_TYPE_EVICTION);
+            VariableLong.writePositive(out, probeId);
+            VariableLong.writePositive(out, 0);
+            managementLog.add(out.getStaticBuffer());
+
+            LOG.info("Waiting up to {} s for {} instance(s) to acknowledge a schema cache eviction", timeoutInSecs, others.size());
+            final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeoutInSecs);
+            while (!probe.waiting.isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SchemaManagementException("Interrupted while waiting for the instances to respond", e);
+        } finally {
+            changes.remove(Long.valueOf(probeId));
+        }
+        final Set<String> stale = new TreeSet<>(probe.waiting);
+        if (stale.isEmpty()) {
+            LOG.info("All the open instances have responded");
+        } else {
+            LOG.warn("Stale instance(s) not responding in {} s: {}", timeoutInSecs, stale);
+        }
+        return stale;
+    }
+
+    /**
+     * Unregisters the instances, the schema changes no longer wait for them. An instance still running
+     * keeps using its schema cache and may miss the schema changes made afterwards.
+     */
+    public void forceClose(Set<String> instances) {
+        final JanusGraphManagement mgmt = graph.openManagement();
+        try {
+            for (final String instance : instances) {
+                LOG.warn("Force closing instance {}", instance);
+                mgmt.forceCloseInstance(instance);
+            }
+            mgmt.commit();
+        } finally {
+            if (mgmt.isOpen()) {
+                mgmt.rollback();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        managementLog.unregisterReader(reader);
+    }
+
+    private Set<String> getOtherInstances() {
+        final JanusGraphManagement mgmt = graph.openManagement();
+        try {
+            return mgmt.getOpenInstances().stream().filter(i -> !i.endsWith(CURRENT_INSTANCE_SUFFIX) && !i.equals(instanceId))
+                    .collect(Collectors.toCollection(TreeSet::new));
+        } finally {
+            mgmt.rollback();
+        }
+    }
+
+    private void onMessage(Message message) {
+        final ReadBuffer in = message.getContent().asReadBuffer();
+        final MgmtLogType type = serializer.readObjectNotNull(in, MgmtLogType.class);
+        if (type == MgmtLogType.CACHED_TYPE_EVICTION) {
+            if (instanceId.equals(message.getSenderId())) {
+                final long evictionId = VariableLong.readPositive(in);
+                changes.computeIfAbsent(Long.valueOf(evictionId), id -> {
+                    final Set<String> others = getOtherInstances();
+                    if (others.isEmpty()) {
+                        return null;
+                    }
+                    LOG.info("Schema change {}: waiting for {} instance(s) to acknowledge it: {}", id, others.size(), others);
+                    return new Change(others);
+                });
+            }
+        } else if (type == MgmtLogType.CACHED_TYPE_EVICTION_ACK) {
+            final String receiverId = serializer.readObjectNotNull(in, String.class);
+            final long evictionId = VariableLong.readPositive(in);
+            final Change change = changes.get(Long.valueOf(evictionId));
+            if (!instanceId.equals(receiverId) || change == null || !change.waiting.remove(message.getSenderId())) {
+                return;
+            }
+            final long elapsed = System.currentTimeMillis() - change.sentAt;
+            if (change.waiting.isEmpty()) {
+                changes.remove(Long.valueOf(evictionId));
+                LOG.info("Schema change {}: acknowledged by {}, by all the instances in {} ms", evictionId,
+                        message.getSenderId(), elapsed);
+            } else {
+                LOG.info("Schema change {}: acknowledged by {} in {} ms, waiting for {}", evictionId, message.getSenderId(),
+                        elapsed, change.waiting);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.newforma.titan.schema;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphElement;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.JanusGraphVertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.newforma.titan.schema.scan.ParallelVertexScan;
+import com.newforma.titan.schema.types.GraphIndexDef;
+import com.newforma.titan.schema.types.GraphIndexDef.RelType;
+
+/**
+ * Reindexes only a part of the elements of a graph index instead of the whole graph: the vertices
+ * of one label (by default the <code>index_only</code> label of a vertex index) or the vertices with
+ * the given IDs, or the outgoing edges of these vertices for an edge index. The vertices are
+ * scanned by several threads and the index entries of every batch are written in one
+ * transaction. Only the vertices in the scope are fully read, for the others only the label is.
+ *
+ * @author Nikolai
+ *
+ */
+public class PartialReindexer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PartialReindexer.class);
+
+    private final JanusGraph graph;
+    private final GraphIndexDef indexDef;
+    private String targetIndexName;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private double maxRate;
+    private String label;
+    private Iterator<?> vertexIds;
+
+    private final AtomicLong reindexed = new AtomicLong();
+
+    public PartialReindexer(JanusGraph graph, GraphState graphState, String indexName) throws SchemaManagementException {
+        final Object def = graphState.getIndexDef(indexName);
+        if (!(def instanceof GraphIndexDef)) {
+            throw new SchemaManagementException("Index " + indexName + " is not a graph index, it cannot be partially reindexed");
+        }
+        this.graph = graph;
+        this.indexDef = (GraphIndexDef) def;
+        this.targetIndexName = indexName;
+        if (indexDef.getRelType() == RelType.VERTEX) {
+            this.label = indexDef.getIndexOnly();
+        }
+    }
+
+    public PartialReindexer threads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @param verticesPerSecond maximum number of the vertices processed per second, 0 (the default) for no limit
+     */
+    public PartialReindexer maxRate(double verticesPerSecond) {
+        this.maxRate = verticesPerSecond;
+        return this;
+    }
+
+    /**
+     * @param indexName index built from the same definition to write the entries to instead, e.g. a
+     * new version of the index being rebuilt
+     */
+    public PartialReindexer into(String indexName) {
+        this.targetIndexName = indexName;
+        return this;
+    }
+
+    /**
+     * @param label only reindex the vertices with this label or their edges
+     */
+    public PartialReindexer label(String label) {
+        if (label != null) {
+            this.label = label;
+        }
+        return this;
+    }
+
+    /**
+     * @param vertexIds only reindex the vertices with these IDs or their edges
+     */
+    public PartialReindexer vertexIds(Iterator<?> vertexIds) {
+        this.vertexIds = vertexIds;
+        return this;
+    }
+
+    /**
+     * @return number of the reindexed elements
+     */
+    public long run() throws SchemaManagementException {
+        ElementIndexer.checkEnabled(graph, targetIndexName);
+        if (label == null && vertexIds == null && targetIndexName.equals(indexDef.getName())) {
+            LOG.warn("Partial reindexing of index {} is not limited to a label or vertex IDs, all the vertices are scanned",
+                    indexDef.getName());
+        }
+        final ParallelVertexScan scan = new ParallelVertexScan(graph, threads).maxRate(maxRate);
+        if (vertexIds != null) {
+            scan.vertexIds(vertexIds);
+        }
+        scan.runBatches("Partial reindexing of index " + targetIndexName, this::reindexBatch);
+        LOG.info("Index {}: {} elements reindexed", targetIndexName, reindexed.get());
+        return reindexed.get();
+    }
+
+    private void reindexBatch(List<JanusGraphVertex> vertices, JanusGraphTransaction tx) throws SchemaManagementException {
+        final String indexOnly = indexDef.getIndexOnly();
+        try (ElementIndexer indexer = new ElementIndexer(graph, targetIndexName)) {
+            long count = 0;
+            for (final JanusGraphVertex v : vertices) {
+                if (label != null && !label.equals(v.label())) {
+                    continue;
+                }
+                if (indexDef.getRelType() == RelType.VERTEX) {
+                    if (indexOnly == null || indexOnly.equals(v.label())) {
+                        indexer.add(v);
+                        count++;
+                    }
+                } else {
+                    final Iterator<Edge> edges = indexOnly == null ? v.edges(Direction.OUT) : v.edges(Direction.OUT, indexOnly);
+                    while (edges.hasNext()) {
+                        indexer.add((JanusGraphElement) edges.next());
+                        count++;
+                    }
+                }
+            }
+            if (count > 0) {
+                indexer.commit();
+                reindexed.addAndGet(count);
+            }
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.newforma.titan.schema;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Element;
+import org.janusgraph.core.Cardinality;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.JanusGraphVertex;
+import org.janusgraph.core.schema.Mapping;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.newforma.titan.schema.scan.HyperLogLog;
+import com.newforma.titan.schema.scan.ParallelVertexScan;
+import com.newforma.titan.schema.scan.QuantileSketch;
+import com.newforma.titan.schema.scan.TopValues;
+import com.newforma.titan.schema.types.GraphIndexDef.IndexType;
+import com.newforma.titan.schema.types.SchemaEdgeLabel;
+import com.newforma.titan.schema.types.SchemaPropertyDef;
+import com.newforma.titan.schema.types.SchemaPropertyDesc;
+import com.newforma.titan.schema.types.SchemaVertexLabel;
+
+/**
+ * Profiles the actual values of the properties for the index planning. A parallel (optionally
+ * sampled) scan reads the properties of the vertices and of their outgoing edges and collects for
+ * every property key: the share of the elements missing the property among those whose label
+ * declares it, the distinct count estimate, the most frequent values, the length distribution of
+ * the strings and the values violating the cardinality or the data type of the schema. All the
+ * statistics are kept in fixed-size sketches. Based on them the index type and the mapping of
+ * a graph index on the property are recommended.
+ *
+ * @author Nikolai
+ *
+ */
+public class PropertyProfiler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PropertyProfiler.class);
+
+    private static final int TOP_VALUES = 10;
+    private static final int MAX_VALUE_LENGTH = 100;
+    private static final int MAX_VIOLATION_SAMPLES = 10;
+    // strings longer than that (median) and mostly containing spaces are free text
+    private static final int TEXT_MEDIAN_LENGTH = 30;
+    private static final double TEXT_WHITESPACE_SHARE = 0.5;
+    // fewer distinct values make an index on the property alone poorly selective
+    private static final long LOW_CARDINALITY = 10;
+
+    private final JanusGraph graph;
+    private final GraphState graphState;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private double sampleRate = 1.0;
+
+    private final Map<String, PropertyStats> stats = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> declaredKeys = new HashMap<>();
+
+    public PropertyProfiler(JanusGraph graph, GraphState graphState) {
+        this.graph = graph;
+        this.graphState = graphState;
+        for (final SchemaVertexLabel vertexDef : graphState.getGraphSchemaDef().getVertices()) {
+            declaredKeys.put(vertexDef.getLabel(), keysOf(vertexDef.getProperties()));
+        }
+        for (final SchemaEdgeLabel edgeDef : graphState.getGraphSchemaDef().getEdges()) {
+            declaredKeys.put(edgeDef.getLabel(), keysOf(edgeDef.getProperties()));
+        }
+    }
+
+    public PropertyProfiler threads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    public PropertyProfiler sampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+        return this;
+    }
+
+    /**
+     * Scans the graph and logs the profile of every property.
+     *
+     * @param reportFile file to write the profiles to as JSON, <code>null</code> to only log them
+     * @return property key -&gt; profile
+     */
+    public Map<String, Map<String, Object>> profile(File reportFile) throws SchemaManagementException {
+        new ParallelVertexScan(graph, threads).sampleRate(sampleRate).run("Property profiling", this::profileVertex);
+
+        final Map<String, Map<String, Object>> report = new TreeMap<>();
+        for (final PropertyStats s : stats.values()) {
+            final Map<String, Object> profile = s.toReport();
+            report.put(s.key, profile);
+            LOG.info("{}: null rate {}, ~{} distinct, recommended {}", s.key, profile.get("null_rate"),
+                    profile.get("distinct_estimate"), profile.get("recommendation"));
+            if (s.cardinalityViolations.get() > 0 || s.typeViolations.get() > 0) {
+                LOG.warn("{}: {} cardinality and {} data type violations, e.g. elements {}", s.key,
+                        s.cardinalityViolations.get(), s.typeViolations.get(), s.violationSamples);
+            }
+        }
+        if (reportFile != null) {
+            try {
+                new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(reportFile, report);
+            } catch (IOException e) {
+                throw new SchemaManagementException("Failed to write the property profiles to " + reportFile, e);
+            }
+        }
+        return report;
+    }
+
+    private void profileVertex(JanusGraphVertex v, JanusGraphTransaction tx) {
+        final Map<String, List<Object>> values = new HashMap<>();
+        v.properties().forEachRemaining(p -> values.computeIfAbsent(p.key(), k -> new ArrayList<>()).add(p.value()));
+        profileElement(v, values);
+
+        // every edge is seen once, from its out vertex
+        v.edges(Direction.OUT).forEachRemaining(e -> {
+            final Map<String, List<Object>> edgeValues = new HashMap<>();
+            e.properties().forEachRemaining(p -> edgeValues.computeIfAbsent(p.key(), k -> new ArrayList<>()).add(p.value()));
+            profileElement(e, edgeValues);
+        });
+    }
+
+    private void profileElement(Element element, Map<String, List<Object>> values) {
+        final Set<String> declared = declaredKeys.getOrDefault(element.label(), Collections.emptySet());
+        for (final String key : declared) {
+            if (!values.containsKey(key)) {
+                stats.computeIfAbsent(key, PropertyStats::new).missing.incrementAndGet();
+            }
+        }
+        for (final Map.Entry<String, List<Object>> e : values.entrySet()) {
+            final PropertyStats s = stats.computeIfAbsent(e.getKey(), PropertyStats::new);
+            if (!declared.contains(e.getKey())) {
+                s.undeclared.incrementAndGet();
+            }
+            s.add(element.id(), e.getValue());
+        }
+    }
+
+    private static Set<String> keysOf(Set<SchemaPropertyDesc> props) {
+        final Set<String> keys = new HashSet<>();
+        if (props != null) {
+            props.forEach(p -> keys.add(p.getKey()));
+        }
+        return keys;
+    }
+
+    /**
+     * Statistics of one property key.
+     */
+    private class PropertyStats {
+        private final String key;
+        private final SchemaPropertyDef def;
+        private final Class<?> dataType;
+        private final AtomicLong present = new AtomicLong();
+        private final AtomicLong missing = new AtomicLong();
+        private final AtomicLong undeclared = new AtomicLong();
+        private final AtomicLong values = new AtomicLong();
+        private final AtomicLong whitespaceValues = new AtomicLong();
+        private final AtomicLong cardinalityViolations = new AtomicLong();
+        private final AtomicLong typeViolations = new AtomicLong();
+        private final List<Object> violationSamples = Collections.synchronizedList(new ArrayList<>());
+        private final HyperLogLog distinct = new HyperLogLog();
+        private final TopValues topValues = new TopValues();
+        private final QuantileSketch lengths = new QuantileSketch();
+        // string lengths by powers of two: 0, 1, 2-3, 4-7, ...
+        private final AtomicLongArray lengthHistogram = new AtomicLongArray(32);
+
+        private PropertyStats(String key) {
+            this.key = key;
+            this.def = graphState.getProperty(key);
+            Class<?> type = null;
+            if (def != null) {
+                try {
+                    type = Class.forName(def.getDataType());
+                } catch (ClassNotFoundException e) {
+                    LOG.warn("Unknown data type {} of property \"{}\"", def.getDataType(), key);
+                }
+            }
+            this.dataType = type;
+        }
+
+        private void add(Object elementId, List<Object> elementValues) {
+            present.incrementAndGet();
+            boolean violation = false;
+            if (def != null) {
+                final Cardinality cardinality = def.getCardinality() == null ? Cardinality.SINGLE : def.getCardinality();
+                if (cardinality == Cardinality.SINGLE && elementValues.size() > 1
+                        || cardinality == Cardinality.SET && new HashSet<>(elementValues).size() < elementValues.size()) {
+                    cardinalityViolations.incrementAndGet();
+                    violation = true;
+                }
+            }
+            for (final Object value : elementValues) {
+                values.incrementAndGet();
+                distinct.add(value);
+                if (dataType != null && !dataType.isInstance(value)) {
+                    typeViolations.incrementAndGet();
+                    violation = true;
+                }
+                if (value instanceof String) {
+                    final String s = (String) value;
+                    lengths.add(s.length());
+                    lengthHistogram.incrementAndGet(32 - Integer.numberOfLeadingZeros(s.length()));
+                    if (s.trim().indexOf(' ') >= 0) {
+                        whitespaceValues.incrementAndGet();
+                    }
+                    topValues.add(s.length() > MAX_VALUE_LENGTH ? s.substring(0, MAX_VALUE_LENGTH) + "..." : s);
+                } else {
+                    topValues.add(value);
+                }
+            }
+            if (violation && violationSamples.size() < MAX_VIOLATION_SAMPLES) {
+                violationSamples.add(elementId);
+            }
+        }
+
+        private Map<String, Object> toReport() {
+            final Map<String, Object> report = new LinkedHashMap<>();
+            final long elements = present.get() + missing.get();
+            final long distinctEstimate = Math.min(distinct.estimate(), values.get());
+            report.put("data_type", def == null ? "undefined in the schema" : def.getDataType());
+            report.put("elements", Long.valueOf(present.get()));
+            report.put("null_rate", Double.valueOf(elements == 0 ? 0 : (double) missing.get() / elements));
+            report.put("undeclared_elements", Long.valueOf(undeclared.get()));
+            report.put("values", Long.valueOf(values.get()));
+            report.put("distinct_estimate", Long.valueOf(distinctEstimate));
+            final Map<String, Long> top = new LinkedHashMap<>();
+            topValues.getTop(TOP_VALUES).forEach((v, c) -> top.put(String.valueOf(v), c));
+            report.put("top_values", top);
+            if (lengths.getCount() > 0) {
+                final Map<String, Object> lengthReport = new LinkedHashMap<>();
+                lengthReport.put("p50", Double.valueOf(lengths.getQuantile(0.5)));
+                lengthReport.put("p90", Double.valueOf(lengths.getQuantile(0.9)));
+                lengthReport.put("p99", Double.valueOf(lengths.getQuantile(0.99)));
+                lengthReport.put("max", Double.valueOf(lengths.getMax()));
+                final Map<String, Long> histogram = new LinkedHashMap<>();
+                for (int i = 0; i < lengthHistogram.length(); i++) {
+                    final long count = lengthHistogram.get(i);
+                    if (count > 0) {
+                        histogram.put(i == 0 ? "0" : (1 << (i - 1)) + "-" + ((1 << i) - 1), Long.valueOf(count));
+                    }
+                }
+                lengthReport.put("histogram", histogram);
+                report.put("string_length", lengthReport);
+            }
+            report.put("cardinality_violations", Long.valueOf(cardinalityViolations.get()));
+            report.put("data_type_violations", Long.valueOf(typeViolations.get()));
+            if (!violationSamples.isEmpty()) {
+                report.put("violation_samples", new ArrayList<>(violationSamples));
+            }
+            report.putAll(recommend(distinctEstimate));
+            return report;
+        }
+
+        /**
+         * Recommends the index type (and the mapping for the strings) of a graph index on the property.
+         */
+        private Map<String, Object> recommend(long distinctEstimate) {
+            final Map<String, Object> recommendation = new LinkedHashMap<>();
+            final String note;
+            if (lengths.getCount() > 0 && lengths.getQuantile(0.5) >= TEXT_MEDIAN_LENGTH
+                    && whitespaceValues.get() >= TEXT_WHITESPACE_SHARE * lengths.getCount()) {
+                recommendation.put("index_type", IndexType.MIXED);
+                recommendation.put("mapping", Mapping.TEXT);
+                note = "free text, MIXED index with TEXT mapping for the full-text search";
+            } else if (lengths.getCount() > 0) {
+                recommendation.put("index_type", IndexType.COMPOSITE);
+                recommendation.put("mapping", Mapping.STRING);
+                note = "COMPOSITE index for the exact match, MIXED with STRING mapping for prefix/regex search";
+            } else {
+                recommendation.put("index_type", IndexType.COMPOSITE);
+                note = "COMPOSITE index for the exact match, MIXED for the range queries";
+            }
+            recommendation.put("recommendation", distinctEstimate < LOW_CARDINALITY && values.get() > LOW_CARDINALITY * 100
+                    ? note + "; only " + distinctEstimate + " distinct values, combine with another key or the label"
+                    : note);
+            return recommendation;
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package com.newforma.titan.schema;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.BiPredicate;
+import java.util.stream.Collectors;
+
+import javax.script.Bindings;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.tinkerpop.gremlin.groovy.jsr223.GremlinGroovyScriptEngine;
+import org.apache.tinkerpop.gremlin.process.traversal.Compare;
+import org.apache.tinkerpop.gremlin.process.traversal.Contains;
+import org.apache.tinkerpop.gremlin.process.traversal.Step;
+import org.apache.tinkerpop.gremlin.process.traversal.Traversal;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
+import org.apache.tinkerpop.gremlin.process.traversal.step.HasContainerHolder;
+import org.apache.tinkerpop.gremlin.process.traversal.step.map.GraphStep;
+import org.apache.tinkerpop.gremlin.process.traversal.step.util.HasContainer;
+import org.apache.tinkerpop.gremlin.process.traversal.util.Metrics;
+import org.apache.tinkerpop.gremlin.process.traversal.util.TraversalMetrics;
+import org.apache.tinkerpop.gremlin.structure.T;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.newforma.titan.schema.types.GraphIndexDef;
+import com.newforma.titan.schema.types.GraphIndexDef.IndexType;
+import com.newforma.titan.schema.types.GraphIndexDef.RelType;
+import com.newforma.titan.schema.types.GraphIndexKeyDef;
+
+/**
+ * Profiles the traversals of a query file against the graph and reports the traversals that
+ * start with a full scan, the graph indexes of the schema that none of the traversals has used
+ * and the indexes that would serve the scanning traversals, ready to be added to the schema.
+ * <p>
+ * The query file contains one traversal per line, starting with <code>g.</code>; empty lines
+ * and the lines starting with <code>#</code> or <code>//</code> are ignored. The traversals are
+ * executed (with <code>profile()</code>) in a read-only transaction that is rolled back at the end.
+ *
+ * @author Nikolai
+ *
+ */
+public class QueryPlanAnalyzer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QueryPlanAnalyzer.class);
+
+    // annotations set by JanusGraph query profiler, printed with "_" prefix in some versions
+    private static final String INDEX_ANNOTATION = "index";
+    private static final String FULLSCAN_ANNOTATION = "fullscan";
+
+    private final JanusGraph graph;
+    private final GraphState graphState;
+
+    public QueryPlanAnalyzer(JanusGraph graph, GraphState graphState) {
+        this.graph = graph;
+        this.graphState = graphState;
+    }
+
+    /**
+     * Profiles the traversals and logs the report.
+     *
+     * @param queryFile file with the traversals
+     * @param reportFile file to write the report to as JSON, <code>null</code> to only log it
+     * @return the report
+     */
+    public Report analyze(File queryFile, File reportFile) throws SchemaManagementException {
+        final List<String> queries;
+        try {
+            queries = readQueries(queryFile);
+        } catch (IOException e) {
+            throw new SchemaManagementException("Failed to read the queries from " + queryFile, e);
+        }
+        LOG.info("Analyzing {} queries from {}", Integer.valueOf(queries.size()), queryFile);
+
+        final Report report = new Report();
+        final GremlinGroovyScriptEngine engine = new GremlinGroovyScriptEngine();
+        final JanusGraphTransaction tx = graph.buildTransaction().readOnly().start();
+        try {
+            final Bindings bindings = new SimpleBindings();
+            bindings.put("g", tx.traversal());
+            for (final String query : queries) {
+                report.queries.add(analyzeQuery(engine, bindings, query, report));
+            }
+        } finally {
+            tx.rollback();
+        }
+
+        final Set<String> usedIndexes = report.queries.stream().flatMap(q -> q.indexes.stream())
+                .collect(Collectors.toSet());
+        for (final GraphIndexDef indexDef : graphState.getGraphSchemaDef().getGraphIndexes()) {
+            if (!usedIndexes.contains(indexDef.getName())) {
+                report.unusedIndexes.add(indexDef.getName());
+            }
+        }
+
+        logReport(report);
+        if (reportFile != null) {
+            try {
+                new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(reportFile, report);
+            } catch (IOException e) {
+                throw new SchemaManagementException("Failed to write the query analysis report to " + reportFile, e);
+            }
+        }
+        return report;
+    }
+
+    static List<String> readQueries(File queryFile) throws IOException {
+        return Files.readAllLines(queryFile.toPath(), StandardCharsets.UTF_8).stream()
+                .map(String::trim)
+                .filter(l -> !l.isEmpty() && !l.startsWith("#") && !l.startsWith("//"))
+                .collect(Collectors.toList());
+    }
+
+    private QueryResult analyzeQuery(GremlinGroovyScriptEngine engine, Bindings bindings, String query, Report report) {
+        final QueryResult result = new QueryResult(query);
+        try {
+            final Object evaluated = engine.eval(query, bindings);
+            if (!(evaluated instanceof GraphTraversal)) {
+                result.error = "Not a traversal: " + evaluated;
+                return result;
+            }
+            final GraphTraversal.Admin<?, ?> traversal = ((GraphTraversal<?, ?>) evaluated).asAdmin();
+
+            // the conditions are taken from a copy with the strategies applied, that is what JanusGraph
+            // folds into its graph-centric query
+            final Traversal.Admin<?, ?> inspected = traversal.clone();
+            inspected.applyStrategies();
+            final List<StartStep> startSteps = getStartSteps(inspected);
+
+            final TraversalMetrics metrics = ((GraphTraversal<?, ?>) evaluated).profile().next();
+            final List<Metrics> startMetrics = metrics.getMetrics().stream()
+                    .filter(m -> m.getName().startsWith("JanusGraphStep") || m.getName().startsWith("GraphStep"))
+                    .collect(Collectors.toList());
+
+            for (int i = 0; i < startSteps.size(); i++) {
+                final StartStep step = startSteps.get(i);
+                final Set<String> stepIndexes = new TreeSet<>();
+                boolean scanAnnotated = false;
+                if (i < startMetrics.size()) {
+                    scanAnnotated = collectAnnotations(startMetrics.get(i), stepIndexes);
+                }
+                result.indexes.addAll(stepIndexes);
+                if (step.byId || (!scanAnnotated && !stepIndexes.isEmpty())) {
+                    continue;
+                }
+                result.fullScan = true;
+                final GraphIndexDef suggestion = suggestIndex(step.vertex, step.conditions);
+                if (suggestion == null) {
+                    result.notes.add("No property condition usable by an index in " + step.conditions);
+                    continue;
+                }
+                final List<String> keys = getKeyNames(suggestion);
+                final String undefined = keys.stream().filter(k -> graphState.getProperty(k) == null)
+                        .collect(Collectors.joining(","));
+                if (!undefined.isEmpty()) {
+                    result.notes.add("Properties not defined in the schema: " + undefined);
+                    continue;
+                }
+                final GraphIndexDef existing = findIndex(suggestion);
+                if (existing != null) {
+                    result.notes.add("Index " + existing.getName() + " covers the condition but has not been used,"
+                            + " check its status");
+                    continue;
+                }
+                result.suggestedIndex = suggestion.getName();
+                if (report.suggestedIndexes.stream().noneMatch(s -> s.getName().equals(suggestion.getName()))) {
+                    report.suggestedIndexes.add(suggestion);
+                }
+            }
+        } catch (ScriptException | RuntimeException e) {
+            LOG.debug("Failed to profile {}", query, e);
+            result.error = e.getMessage();
+        }
+        return result;
+    }
+
+    /**
+     * Collects the names of the indexes used by the metrics and by their nested metrics.
+     *
+     * @return true if the profiler has marked the query as a full scan
+     */
+    private static boolean collectAnnotations(Metrics metrics, Set<String> indexes) {
+        boolean fullScan = false;
+        final Map<String, Object> annotations = metrics.getAnnotations();
+        for (final Map.Entry<String, Object> annotation : annotations.entrySet()) {
+            final String key = StringUtils.removeStart(annotation.getKey(), "_");
+            if (INDEX_ANNOTATION.equals(key) && annotation.getValue() != null) {
+                indexes.add(annotation.getValue().toString());
+            } else if (FULLSCAN_ANNOTATION.equals(key) && Boolean.parseBoolean(String.valueOf(annotation.getValue()))) {
+                fullScan = true;
+            }
+        }
+        for (final Metrics nested : metrics.getNested()) {
+            fullScan |= collectAnnotations(nested, indexes);
+        }
+        return fullScan;
+    }
+
+    /**
+     * Finds the graph steps starting the traversal (or a part of it) and the conditions applied to
+     * their elements, either folded into the step or by the <code>has()</code> steps following it.
+     */
+    private static List<StartStep> getStartSteps(Traversal.Admin<?, ?> traversal) {
+        final List<StartStep> startSteps = new ArrayList<>();
+        StartStep current = null;
+        for (final Step<?, ?> step : traversal.getSteps()) {
+            if (step instanceof GraphStep) {
+                final GraphStep<?, ?> graphStep = (GraphStep<?, ?>) step;
+                current = new StartStep(graphStep.returnsVertex(), graphStep.getIds().length > 0);
+                startSteps.add(current);
+            } else if (current == null || !(step instanceof HasContainerHolder)) {
+                current = null;
+                continue;
+            }
+            if (step instanceof HasContainerHolder) {
+                current.conditions.addAll(((HasContainerHolder) step).getHasContainers());
+            }
+        }
+        return startSteps;
+    }
+
+    /**
+     * Suggests the index for the conditions: composite if all the conditions are equalities, mixed
+     * otherwise. The index is restricted to the label if the label is a condition too.
+     *
+     * @return suggested index, <code>null</code> if none of the conditions can be served by an index
+     */
+    static GraphIndexDef suggestIndex(boolean vertex, List<HasContainer> conditions) {
+        final Set<String> keys = new LinkedHashSet<>();
+        String label = null;
+        boolean equalityOnly = true;
+        for (final HasContainer condition : conditions) {
+            final BiPredicate<?, ?> predicate = condition.getBiPredicate();
+            if (T.label.getAccessor().equals(condition.getKey())) {
+                if (predicate == Compare.eq && condition.getValue() instanceof String) {
+                    label = (String) condition.getValue();
+                }
+            } else if (T.id.getAccessor().equals(condition.getKey())
+                    || predicate == Compare.neq || predicate == Contains.without) {
+                // not served by graph indexes
+                continue;
+            } else {
+                keys.add(condition.getKey());
+                equalityOnly &= predicate == Compare.eq || predicate == Contains.within;
+            }
+        }
+        if (keys.isEmpty()) {
+            return null;
+        }
+
+        final IndexType indexType = equalityOnly ? IndexType.COMPOSITE : IndexType.MIXED;
+        final GraphIndexDef indexDef = new GraphIndexDef();
+        indexDef.setName((label == null ? (vertex ? "vertex" : "edge") : label) + "_by_" + StringUtils.join(keys, '_')
+                + (indexType == IndexType.MIXED ? "_mixed" : ""));
+        indexDef.setRelType(vertex ? RelType.VERTEX : RelType.EDGE);
+        indexDef.setIndexType(indexType);
+        indexDef.setIndexOnly(label);
+        indexDef.setKeys(keys.stream().map(k -> {
+            final GraphIndexKeyDef keyDef = new GraphIndexKeyDef();
+            keyDef.setKey(k);
+            return keyDef;
+        }).collect(Collectors.toList()));
+        return indexDef;
+    }
+
+    private GraphIndexDef findIndex(GraphIndexDef suggestion) {
+        final Set<String> keys = new TreeSet<>(getKeyNames(suggestion));
+        for (final GraphIndexDef indexDef : graphState.getGraphSchemaDef().getGraphIndexes()) {
+            if (indexDef.getRelType() == suggestion.getRelType() && indexDef.getIndexType() == suggestion.getIndexType()
+                    && keys.equals(new TreeSet<>(getKeyNames(indexDef)))
+                    && (indexDef.getIndexOnly() == null || indexDef.getIndexOnly().equals(suggestion.getIndexOnly()))) {
+                return indexDef;
+            }
+        }
+        return null;
+    }
+
+    private static List<String> getKeyNames(GraphIndexDef indexDef) {
+        return indexDef.getKeys().stream().map(GraphIndexKeyDef::getKey).collect(Collectors.toList());
+    }
+
+    private static void logReport(Report report) {
+        for (final QueryResult result : report.queries) {
+            if (result.error != null) {
+                LOG.warn("FAILED    {}: {}", result.query, result.error);
+            } else if (result.fullScan) {
+                LOG.warn("FULL SCAN {}{}", result.query,
+                        result.suggestedIndex == null ? "" : " (suggested index " + result.suggestedIndex + ")");
+            } else {
+                LOG.info("INDEXED   {} using {}", result.query, result.indexes);
+            }
+            for (final String note : result.notes) {
+                LOG.warn("          {}", note);
+            }
+        }
+        if (!report.unusedIndexes.isEmpty()) {
+            LOG.warn("Indexes not used by any of the queries: {}", report.unusedIndexes);
+        }
+        if (!report.suggestedIndexes.isEmpty()) {
+            try {
+                LOG.warn("Suggested indexes to add to the schema:\n{}",
+                        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(report.suggestedIndexes));
+            } catch (IOException e) {
+                LOG.warn("Failed to format the suggested indexes", e);
+            }
+        }
+    }
+
+    private static class StartStep {
+        private final boolean vertex;
+        private final boolean byId;
+        private final List<HasContainer> conditions = new ArrayList<>();
+
+        private StartStep(boolean vertex, boolean byId) {
+            this.vertex = vertex;
+            this.byId = byId;
+        }
+    }
+
+    /**
+     * Analysis of one traversal.
+     */
+    public static class QueryResult {
+        private final String query;
+        private final Set<String> indexes = new TreeSet<>();
+        private final List<String> notes = new ArrayList<>();
+        private boolean fullScan;
+        private String suggestedIndex;
+        private String error;
+
+        QueryResult(String query) {
+            this.query = query;
+        }
+
+        public String getQuery() {
+            return query;
+        }
+
+        public Set<String> getIndexes() {
+            return indexes;
+        }
+
+        public boolean isFullScan() {
+            return fullScan;
+        }
+
+        public String getSuggestedIndex() {
+            return suggestedIndex;
+        }
+
+        public List<String> getNotes() {
+            return notes;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Analysis of all the traversals of the query file.
+     */
+    public static class Report {
+        private final List<QueryResult> queries = new ArrayList<>();
+        private final List<String> unusedIndexes = new ArrayList<>();
+        private final List<GraphIndexDef> suggestedIndexes = new ArrayList<>();
+
+        public List<QueryResult> getQueries() {
+            return queries;
+        }
+
+        public List<String> getUnusedIndexes() {
+            return unusedIndexes;
+        }
+
+        /**
+         * @return index definitions in the schema format
+         */
+        public List<GraphIndexDef> getSuggestedIndexes() {
+            return suggestedIndexes;
+        }
+
+        public Map<String, Long> getSummary() {
+            final Map<String, Long> summary = new LinkedHashMap<>();
+            summary.put("queries", Long.valueOf(queries.size()));
+            summary.put("full_scans", Long.valueOf(queries.stream().filter(QueryResult::isFullScan).count()));
+            summary.put("failed", Long.valueOf(queries.stream().filter(q -> q.error != null).count()));
+            return summary;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.HashSet;
 
 import org.apache.commons.lang3.StringUtils;
@@ -23,6 +24,8 @@ import com.github.fge.jsonschema.core.report.ProcessingMessage;
 import com.github.fge.jsonschema.core.report.ProcessingReport;
 import com.github.fge.jsonschema.main.JsonSchemaFactory;
 import com.github.fge.jsonschema.main.JsonValidator;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.newforma.titan.schema.types.DoctagListType;
 import com.newforma.titan.schema.types.DoctagListTypeDeserializer;
 import com.newforma.titan.schema.types.GraphSchemaDef;
@@ -38,6 +41,31 @@ public class SchemaLoader {
 
     private static final Logger LOG = LoggerFactory.getLogger(SchemaLoader.class);
 
+    /**
+     * Schema loaded with all its included files.
+     */
+    public static final class LoadedSchema {
+        private final GraphSchemaDef schemaDef;
+        private final String contentHash;
+
+        private LoadedSchema(GraphSchemaDef schemaDef, String contentHash) {
+            this.schemaDef = schemaDef;
+            this.contentHash = contentHash;
+        }
+
+        public GraphSchemaDef getSchemaDef() {
+            return schemaDef;
+        }
+
+        /**
+         * @return SHA-256 hash of the schema including all its included files. The hash does not
+         * depend on the formatting of the files, only on their JSON content
+         */
+        public String getContentHash() {
+            return contentHash;
+        }
+    }
+
     private SchemaLoader() {
 
     }
@@ -47,21 +75,35 @@ public class SchemaLoader {
     }
 
     public GraphSchemaDef loadFrom(File rootFile) throws IOException, SchemaValidationException {
+        return load(rootFile).getSchemaDef();
+    }
+
+    public GraphSchemaDef loadFrom(final InputStream schemaStream, String rootName, File basePath) throws IOException, SchemaValidationException {
+        return load(schemaStream, rootName, basePath).getSchemaDef();
+    }
+
+    /**
+     * Loads the schema along with the hash of its content.
+     */
+    public LoadedSchema load(File rootFile) throws IOException, SchemaValidationException {
         try (InputStream is = new FileInputStream(rootFile)){
-            return loadFrom(is, rootFile.getName(), rootFile.getParentFile());
+            return load(is, rootFile.getName(), rootFile.getParentFile());
         }
     }
 
     // TODO: implement include resolvers
-    public GraphSchemaDef loadFrom(final InputStream schemaStream, String rootName, File basePath) throws IOException, SchemaValidationException {
+    public LoadedSchema load(final InputStream schemaStream, String rootName, File basePath) throws IOException, SchemaValidationException {
         HashSet<String> includesTracker = new HashSet<>();
         includesTracker.add(new File(basePath, rootName).getAbsolutePath());
 
-        return processIncludes(loadSingleJsonFrom(schemaStream), includesTracker, basePath);
+        final Hasher contentHasher = Hashing.sha256().newHasher();
+        final GraphSchemaDef def = processIncludes(loadSingleJsonFrom(schemaStream, contentHasher), includesTracker,
+                basePath, contentHasher);
+        return new LoadedSchema(def, contentHasher.hash().toString());
     }
 
-    private GraphSchemaDef processIncludes(GraphSchemaDef rootSchema, HashSet<String> includesTracker, File baseDir)
-            throws IOException, SchemaValidationException {
+    private GraphSchemaDef processIncludes(GraphSchemaDef rootSchema, HashSet<String> includesTracker, File baseDir,
+            Hasher contentHasher) throws IOException, SchemaValidationException {
         for (final String includeFile : rootSchema.getIncludes()) {
             File f = new File(includeFile);
             if (!f.isAbsolute()) {
@@ -79,8 +121,8 @@ public class SchemaLoader {
             final GraphSchemaDef nestedSchema;
 
             try (InputStream is = new FileInputStream(f)) {
-                nestedSchema = processIncludes(loadSingleJsonFrom(is), includesTracker,
-                    f.getParentFile());
+                nestedSchema = processIncludes(loadSingleJsonFrom(is, contentHasher), includesTracker,
+                    f.getParentFile(), contentHasher);
             }
 
             // merging all the elements of this nested schema into the parent
@@ -91,13 +133,16 @@ public class SchemaLoader {
             rootSchema.getLocalPropertyIndexes().addAll(nestedSchema.getLocalPropertyIndexes());
             rootSchema.getLocalEdgeIndexes().addAll(nestedSchema.getLocalEdgeIndexes());
             rootSchema.getDoctagsMeta().addAll(nestedSchema.getDoctagsMeta());
+            rootSchema.getMigrations().addAll(nestedSchema.getMigrations());
         }
 
         return rootSchema;
     }
 
-    private GraphSchemaDef loadSingleJsonFrom(InputStream jsonStream) throws IOException, SchemaValidationException {
+    private GraphSchemaDef loadSingleJsonFrom(InputStream jsonStream, Hasher contentHasher) throws IOException, SchemaValidationException {
         final JsonNode titanSchema = JsonLoader.fromReader(new InputStreamReader(new BufferedInputStream(jsonStream)));
+        // compact serialization of the tree, in the file order
+        contentHasher.putString(titanSchema.toString(), StandardCharsets.UTF_8);
         final JsonNode titalSchemaDef = JsonLoader.fromResource(SCHEMA_RESOURCE);
 
         final JsonValidator validator = JsonSchemaFactory.newBuilder().freeze().getValidator();
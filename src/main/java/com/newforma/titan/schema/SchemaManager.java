@@ -1,13 +1,26 @@
 package com.newforma.titan.schema;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import org.apache.commons.configuration.ConfigurationException;
@@ -71,6 +84,10 @@ public class SchemaManager {
 	private static final Logger LOG = LoggerFactory.getLogger(SchemaManager.class);
 
 	public static final int DEFAULT_INDEX_REGISTERED_TIMEOUT_SECS = 300;
+	static final String SHADOW_INDEX_SUFFIX = "_next";
+	private static final String RETIRED_INDEX_SUFFIX = "_old";
+	private static final DateTimeFormatter RETIRED_INDEX_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMddHHmmss")
+			.withZone(ZoneOffset.UTC);
 	private final String graphSchemaFileName;
 	private final String graphConfigFileName;
 	private boolean doApplyChanges;
@@ -78,6 +95,49 @@ public class SchemaManager {
 	private String graphMLFileToLoad;
 	private String docTagFilter;
 	private String graphMLFileToSave;
+	private int graphMLSavePartitions = 1;
+	private long generateVertexCount;
+	private double generateAverageDegree = DataGenerator.DEFAULT_AVERAGE_DEGREE;
+	private String generatedDataFile;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int revisionRetention = GlobalMetaDataManager.DEFAULT_REVISION_RETENTION;
+	private int revisionsToShow;
+	private boolean skipIfUnchanged;
+	private String queryFileToAnalyze;
+	private String queryReportFile;
+	private long supernodeThreshold;
+	private double supernodeSampleRate = 1.0;
+	private String supernodeReportFile;
+	private boolean profileProperties;
+	private double profileSampleRate = 1.0;
+	private String profileReportFile;
+	private String indexToCheck;
+	private boolean repairIndex;
+	private double indexCheckSampleRate = 1.0;
+	private String indexCheckReportFile;
+	private double migrationRate;
+	private boolean skipUniqueCheck;
+	private boolean auditConstraints;
+	private boolean repairConstraints;
+	private String constraintReportFile;
+	private boolean rebuildChangedIndexes;
+	private double rebuildRate;
+	private boolean pruneIndexes;
+	private int instanceCheckTimeoutInSecs;
+	private List<String> instancesToForceClose = Collections.emptyList();
+	private boolean cleanGhosts;
+	private boolean repairGhosts;
+	private String ghostReportFile;
+	private boolean reapExpired;
+	private int reapIntervalInSecs;
+	private double reapRate;
+	private List<String> indexesToCatchUp = Collections.emptyList();
+	private String catchUpLogIdentifier;
+	private String catchUpStartTime;
+	private boolean esBulkProfile;
+	private long dynamoDbReadCapacity;
+	private long dynamoDbWriteCapacity;
+	private List<String> dynamoDbStores = DynamoDbCapacityScaler.DEFAULT_STORES;
 	private int reindexTimeoutInSecs = DEFAULT_INDEX_REGISTERED_TIMEOUT_SECS;
 
 	private List<ReindexAction> reindexActions = Collections.emptyList();
@@ -117,6 +177,302 @@ public class SchemaManager {
 		return this;
 	}
 
+	public SchemaManager andSaveDataPartitions(int partitions) {
+		this.graphMLSavePartitions = partitions;
+		return this;
+	}
+
+	public SchemaManager andGenerateData(long vertexCount, double averageDegree) {
+		this.generateVertexCount = vertexCount;
+		this.generateAverageDegree = averageDegree;
+		return this;
+	}
+
+	/**
+	 * @param generatedDataFile GraphML file to write the generated data to, instead of the graph
+	 */
+	public SchemaManager generatedDataFile(String generatedDataFile) {
+		this.generatedDataFile = generatedDataFile;
+		return this;
+	}
+
+	public SchemaManager threads(int threads) {
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * @param revisionRetention number of the latest schema revisions to keep in the graph, 0 to keep all,
+	 * {@link GlobalMetaDataManager#DEFAULT_REVISION_RETENTION} by default
+	 */
+	public SchemaManager keepRevisions(int revisionRetention) {
+		this.revisionRetention = revisionRetention;
+		return this;
+	}
+
+	public SchemaManager andShowRevisions(int revisionsToShow) {
+		this.revisionsToShow = revisionsToShow;
+		return this;
+	}
+
+	/**
+	 * @param skipIfUnchanged skip the verification and the update of the schema elements if the
+	 * latest revision in the graph has been recorded for exactly the same schema content
+	 */
+	public SchemaManager skipIfUnchanged(boolean skipIfUnchanged) {
+		this.skipIfUnchanged = skipIfUnchanged;
+		return this;
+	}
+
+	/**
+	 * @param queryFileToAnalyze file with the traversals to profile, see {@link QueryPlanAnalyzer}
+	 */
+	public SchemaManager andAnalyzeQueries(String queryFileToAnalyze) {
+		this.queryFileToAnalyze = queryFileToAnalyze;
+		return this;
+	}
+
+	public SchemaManager queryReportFile(String queryReportFile) {
+		this.queryReportFile = queryReportFile;
+		return this;
+	}
+
+	/**
+	 * @param supernodeThreshold number of the edges of one label and direction that makes a vertex
+	 * a supernode, 0 to skip the supernode detection
+	 */
+	public SchemaManager andDetectSupernodes(long supernodeThreshold) {
+		this.supernodeThreshold = supernodeThreshold;
+		return this;
+	}
+
+	public SchemaManager supernodeSampleRate(double supernodeSampleRate) {
+		this.supernodeSampleRate = supernodeSampleRate;
+		return this;
+	}
+
+	public SchemaManager supernodeReportFile(String supernodeReportFile) {
+		this.supernodeReportFile = supernodeReportFile;
+		return this;
+	}
+
+	public SchemaManager andProfileProperties(boolean profileProperties) {
+		this.profileProperties = profileProperties;
+		return this;
+	}
+
+	public SchemaManager profileSampleRate(double profileSampleRate) {
+		this.profileSampleRate = profileSampleRate;
+		return this;
+	}
+
+	public SchemaManager profileReportFile(String profileReportFile) {
+		this.profileReportFile = profileReportFile;
+		return this;
+	}
+
+	/**
+	 * @param indexToCheck graph index to verify the content of, see {@link IndexConsistencyChecker}
+	 */
+	public SchemaManager andCheckIndex(String indexToCheck) {
+		this.indexToCheck = indexToCheck;
+		return this;
+	}
+
+	public SchemaManager repairIndex(boolean repairIndex) {
+		this.repairIndex = repairIndex;
+		return this;
+	}
+
+	public SchemaManager indexCheckSampleRate(double indexCheckSampleRate) {
+		this.indexCheckSampleRate = indexCheckSampleRate;
+		return this;
+	}
+
+	public SchemaManager indexCheckReportFile(String indexCheckReportFile) {
+		this.indexCheckReportFile = indexCheckReportFile;
+		return this;
+	}
+
+	/**
+	 * @param verticesPerSecond maximum number of the vertices processed per second by the data
+	 * migrations, 0 (the default) for no limit
+	 */
+	public SchemaManager migrationRate(double verticesPerSecond) {
+		this.migrationRate = verticesPerSecond;
+		return this;
+	}
+
+	/**
+	 * @param skipUniqueCheck do not check the existing data for duplicates before creating the unique indexes
+	 */
+	public SchemaManager skipUniqueCheck(boolean skipUniqueCheck) {
+		this.skipUniqueCheck = skipUniqueCheck;
+		return this;
+	}
+
+	/**
+	 * @param auditConstraints check the data for the violations of the edge multiplicities and the
+	 * property cardinalities, see {@link ConstraintAuditor}
+	 */
+	public SchemaManager andAuditConstraints(boolean auditConstraints) {
+		this.auditConstraints = auditConstraints;
+		return this;
+	}
+
+	public SchemaManager repairConstraints(boolean repairConstraints) {
+		this.repairConstraints = repairConstraints;
+		return this;
+	}
+
+	public SchemaManager constraintReportFile(String constraintReportFile) {
+		this.constraintReportFile = constraintReportFile;
+		return this;
+	}
+
+	/**
+	 * @param rebuildChangedIndexes rebuild the graph indexes whose definition differs from the existing
+	 * one under a new name and swap them, instead of failing
+	 */
+	public SchemaManager rebuildChangedIndexes(boolean rebuildChangedIndexes) {
+		this.rebuildChangedIndexes = rebuildChangedIndexes;
+		return this;
+	}
+
+	/**
+	 * @param verticesPerSecond maximum number of the vertices processed per second while reindexing
+	 * the rebuilt indexes, 0 (the default) for no limit
+	 */
+	public SchemaManager rebuildRate(double verticesPerSecond) {
+		this.rebuildRate = verticesPerSecond;
+		return this;
+	}
+
+	/**
+	 * @param timeoutInSecs look for the stale graph instances, which would make the schema changes wait
+	 * until the timeout, giving every instance this time to respond, and track the acknowledgements of
+	 * the schema changes by the instances, see {@link InstanceMonitor}. 0 (the default) to do neither.
+	 */
+	public SchemaManager andCheckInstances(int timeoutInSecs) {
+		this.instanceCheckTimeoutInSecs = timeoutInSecs;
+		return this;
+	}
+
+	/**
+	 * @param instances IDs of the graph instances known to be dead, unregistered if they are found stale
+	 * by {@link #andCheckInstances(int)}. A missing acknowledgement alone does not prove that an instance
+	 * is dead, so only the instances listed here are ever force closed.
+	 */
+	public SchemaManager forceCloseInstances(List<String> instances) {
+		this.instancesToForceClose = instances;
+		return this;
+	}
+
+	/**
+	 * @param pruneIndexes disable and remove the indexes that exist in the graph but not in the
+	 * schema, see {@link IndexPruner}
+	 */
+	public SchemaManager andPruneIndexes(boolean pruneIndexes) {
+		this.pruneIndexes = pruneIndexes;
+		return this;
+	}
+
+	/**
+	 * @param readCapacity read capacity units to raise the DynamoDB tables to for the time of the
+	 * reindexing and the bulk loading, 0 (the default) to leave the capacity as it is, see
+	 * {@link DynamoDbCapacityScaler}
+	 */
+	public SchemaManager dynamoDbCapacity(long readCapacity, long writeCapacity) {
+		this.dynamoDbReadCapacity = readCapacity;
+		this.dynamoDbWriteCapacity = writeCapacity;
+		return this;
+	}
+
+	public SchemaManager dynamoDbStores(List<String> stores) {
+		this.dynamoDbStores = stores;
+		return this;
+	}
+
+	/**
+	 * @param esBulkProfile switch the Elasticsearch index of a mixed index to the bulk indexing
+	 * settings while it is reindexed, see {@link EsBulkIndexingProfile}
+	 */
+	public SchemaManager esBulkProfile(boolean esBulkProfile) {
+		this.esBulkProfile = esBulkProfile;
+		return this;
+	}
+
+	/**
+	 * @param indexNames graph indexes to bring up to date with the changes recorded in a transaction
+	 * log, see {@link IndexCatchUp}
+	 */
+	public SchemaManager andCatchUpIndexes(List<String> indexNames) {
+		this.indexesToCatchUp = indexNames;
+		return this;
+	}
+
+	/**
+	 * @param logIdentifier name of the user transaction log the writers log their transactions to
+	 */
+	public SchemaManager catchUpLog(String logIdentifier) {
+		this.catchUpLogIdentifier = logIdentifier;
+		return this;
+	}
+
+	/**
+	 * @param startTime ISO-8601 time the indexes have started missing the writes at, e.g. 2018-01-31T10:15:00Z
+	 */
+	public SchemaManager catchUpFrom(String startTime) {
+		this.catchUpStartTime = startTime;
+		return this;
+	}
+
+	/**
+	 * @param cleanGhosts look for the ghost vertices, the dangling and the half-deleted edges, see
+	 * {@link GhostVertexCleaner}
+	 */
+	public SchemaManager andCleanGhosts(boolean cleanGhosts) {
+		this.cleanGhosts = cleanGhosts;
+		return this;
+	}
+
+	public SchemaManager repairGhosts(boolean repairGhosts) {
+		this.repairGhosts = repairGhosts;
+		return this;
+	}
+
+	public SchemaManager ghostReportFile(String ghostReportFile) {
+		this.ghostReportFile = ghostReportFile;
+		return this;
+	}
+
+	/**
+	 * @param reapExpired remove the expired vertices and edges if the storage backend does not support
+	 * TTL, see {@link TtlReaper}
+	 */
+	public SchemaManager andReapExpired(boolean reapExpired) {
+		this.reapExpired = reapExpired;
+		return this;
+	}
+
+	/**
+	 * @param intervalInSecs keep removing the expired elements with this interval, 0 (the default) to
+	 * remove them only once
+	 */
+	public SchemaManager reapInterval(int intervalInSecs) {
+		this.reapIntervalInSecs = intervalInSecs;
+		return this;
+	}
+
+	/**
+	 * @param verticesPerSecond maximum number of the vertices processed per second while removing the
+	 * expired elements, 0 (the default) for no limit
+	 */
+	public SchemaManager reapRate(double verticesPerSecond) {
+		this.reapRate = verticesPerSecond;
+		return this;
+	}
+
 	public SchemaManager reindexingTimeout(int timeoutInSecs) {
 		this.reindexTimeoutInSecs = timeoutInSecs;
 		return this;
@@ -125,15 +481,16 @@ public class SchemaManager {
 	void run() throws SchemaManagementException {
 		LOG.debug("Processing schema from {} for graph {}, applying changes={}", graphSchemaFileName, graphConfigFileName,
 				Boolean.valueOf(doApplyChanges));
-		final GraphSchemaDef graphDef;
+		final SchemaLoader.LoadedSchema loadedSchema;
 		try {
-			graphDef = SchemaLoader.getInstance().loadFrom(new File(graphSchemaFileName));
+			loadedSchema = SchemaLoader.getInstance().load(new File(graphSchemaFileName));
 		} catch (IOException e) {
 			throw new SchemaManagementException("Failed to load the graph schema", e);
 		} catch (SchemaValidationException e) {
 			throw new SchemaManagementException("Failed to validate the graph schema", e);
 		}
 
+		final GraphSchemaDef graphDef = loadedSchema.getSchemaDef();
 		LOG.debug("Successfully loaded graph schema: {}", graphDef);
 
 		final PropertiesConfiguration graphConfig = new PropertiesConfiguration();
@@ -143,6 +500,7 @@ public class SchemaManager {
 		} catch (SchemaValidationException e) {
 			throw new SchemaManagementException("Graph schema inconsistency detected", e);
 		}
+		graphState.setSchemaHash(loadedSchema.getContentHash());
 
 		LOG.info("Connecting to the graph using {}", graphConfigFileName);
 		try {
@@ -151,48 +509,142 @@ public class SchemaManager {
 			throw new SchemaManagementException("Failed to load graph configuration from " + graphConfigFileName, e);
 		}
 
+		// the rate limits of the client can only be set before the graph is opened
+		final boolean dataHeavy = hasDataHeavyPhases(graphDef);
+		if (dataHeavy && dynamoDbReadCapacity > 0 && doApplyChanges && DynamoDbCapacityScaler.isDynamoDb(graphConfig)) {
+			DynamoDbCapacityScaler.raiseRateLimits(graphConfig, dynamoDbStores, dynamoDbReadCapacity, dynamoDbWriteCapacity);
+		}
+
 		final JanusGraph graph = JanusGraphFactory.open(graphConfig);
+		InstanceMonitor instanceMonitor = null;
 
 		try {
 
 			LOG.info("Graph connection successful");
 
+			if (instanceCheckTimeoutInSecs > 0) {
+				instanceMonitor = new InstanceMonitor(graph);
+				final Set<String> staleInstances = instanceMonitor.findStaleInstances(instanceCheckTimeoutInSecs);
+				forceCloseInstances(instanceMonitor, staleInstances);
+			}
+
 			if (graph instanceof StandardJanusGraph
 					&& ((StandardJanusGraph) graph).getBackend().getStoreFeatures().hasCellTTL()) {
 				graphState.setTtlSupported(true);
 			}
 
-			// 1. Validate the values in the schema as much as possible
-
-			LOG.debug("Validating graph schema definition");
-			try {
-				new SchemaValidator().validate(graphDef);
-			} catch (SchemaValidationException e) {
-				throw new SchemaManagementException("Failed to validate the graph schema", e);
+			if (revisionsToShow > 0) {
+				showRevisions(graph);
 			}
 
-			// 2. For each schema element check if it exists in the database
-			// already
-			// and if it conflicts the definition
-			LOG.debug("Verifying existing graph elements");
-			verifyExistingGraphElements(graph, graphState, graphDef);
+			// one scope for all the phases that may process the data in bulk, the client rate limits
+			// have been raised for it when the graph was opened
+			try (DynamoDbCapacityScaler scaler = scaleDynamoDbCapacity(graphConfig, dataHeavy)) {
+				if (skipIfUnchanged && isSchemaUnchanged(graph, graphState)) {
+					LOG.info("The schema has not changed since the latest revision, skipping the verification");
+				} else {
+					// 1. Validate the values in the schema as much as possible
 
-			// 3. For each non-existing relation type - create one (unless doing
-			// dry-run)
-			if (doApplyChanges) {
-				populateNewGraphElements(graph, graphState, graphDef);
-			} else {
-				LOG.info("Dry-run: NOT creating graph elements");
+					LOG.debug("Validating graph schema definition");
+					try {
+						new SchemaValidator().validate(graphDef);
+					} catch (SchemaValidationException e) {
+						throw new SchemaManagementException("Failed to validate the graph schema", e);
+					}
+
+					// 2. For each schema element check if it exists in the database
+					// already
+					// and if it conflicts the definition
+					LOG.debug("Verifying existing graph elements");
+					verifyExistingGraphElements(graph, graphState, graphDef);
+
+					// 3. For each non-existing relation type - create one (unless doing
+					// dry-run)
+					if (doApplyChanges) {
+						populateNewGraphElements(graph, graphState, graphDef);
+					} else {
+						LOG.info("Dry-run: NOT creating graph elements");
+					}
+				}
+
+				if (pruneIndexes) {
+					final IndexPruner pruner = new IndexPruner(graph, graphState).timeout(reindexTimeoutInSecs);
+					if (doApplyChanges) {
+						pruner.prune();
+					} else {
+						LOG.info("Dry-run: NOT pruning the obsolete indexes {}", pruner.listObsoleteIndexes());
+					}
+				}
+
+				// checked even if the schema has not changed, to resume an interrupted migration
+				if (!graphDef.getMigrations().isEmpty()) {
+					if (doApplyChanges) {
+						new DataMigrator(graph, graphState, this).threads(threads).maxRate(migrationRate).run();
+					} else {
+						LOG.info("Dry-run: NOT applying data migrations");
+					}
+				}
+
+				reindexData(graph, graphState, reindexActions);
+
+				if (!indexesToCatchUp.isEmpty()) {
+					if (doApplyChanges) {
+						catchUpIndexes(graph, graphState);
+					} else {
+						LOG.info("Dry-run: NOT catching up indexes {}", indexesToCatchUp);
+					}
+				}
+
+				if (!StringUtils.isEmpty(indexToCheck)) {
+					new IndexConsistencyChecker(graph, graphState, indexToCheck)
+							.threads(threads).sampleRate(indexCheckSampleRate).repair(repairIndex && doApplyChanges)
+							.check(StringUtils.isEmpty(indexCheckReportFile) ? null : new File(indexCheckReportFile));
+				}
+
+				if (auditConstraints) {
+					new ConstraintAuditor(graph, graphState).threads(threads).repair(repairConstraints && doApplyChanges)
+							.audit(StringUtils.isEmpty(constraintReportFile) ? null : new File(constraintReportFile));
+				}
+
+				if (cleanGhosts) {
+					new GhostVertexCleaner(graph, graphState).threads(threads).repair(repairGhosts && doApplyChanges)
+							.clean(StringUtils.isEmpty(ghostReportFile) ? null : new File(ghostReportFile));
+				}
+
+				if (!StringUtils.isEmpty(graphMLFileToLoad)) {
+					new GraphMLLoader(graph, graphMLFileToLoad).run();
+				}
+
+				if (generateVertexCount > 0) {
+					final DataGenerator generator = new DataGenerator(graphState, generateVertexCount)
+							.averageDegree(generateAverageDegree).threads(threads);
+					if (StringUtils.isEmpty(generatedDataFile)) {
+						generator.generateInto(graph);
+					} else {
+						generator.generateInto(new File(generatedDataFile));
+					}
+				}
 			}
 
-			reindexData(graph, graphState, reindexActions);
+			if (!StringUtils.isEmpty(queryFileToAnalyze)) {
+				new QueryPlanAnalyzer(graph, graphState).analyze(new File(queryFileToAnalyze),
+						StringUtils.isEmpty(queryReportFile) ? null : new File(queryReportFile));
+			}
 
-			if (!StringUtils.isEmpty(graphMLFileToLoad)) {
-				new GraphMLLoader(graph, graphMLFileToLoad).run();
+			if (supernodeThreshold > 0) {
+				new SupernodeAnalyzer(graph, graphState, supernodeThreshold)
+						.threads(threads).sampleRate(supernodeSampleRate)
+						.queryFile(StringUtils.isEmpty(queryFileToAnalyze) ? null : new File(queryFileToAnalyze))
+						.analyze(StringUtils.isEmpty(supernodeReportFile) ? null : new File(supernodeReportFile));
+			}
+
+			if (profileProperties) {
+				new PropertyProfiler(graph, graphState).threads(threads).sampleRate(profileSampleRate)
+						.profile(StringUtils.isEmpty(profileReportFile) ? null : new File(profileReportFile));
 			}
 
 			if (!StringUtils.isEmpty(graphMLFileToSave)) {
-				new GraphMLSaver(graph, graphMLFileToSave).run();
+				new GraphMLSaver(graph, graphMLFileToSave, graphMLSavePartitions).run();
 			}
 
 			if (!StringUtils.isEmpty(docDir)) {
@@ -208,33 +660,138 @@ public class SchemaManager {
 							e);
 				}
 			}
+
+			if (reapExpired) {
+				if (doApplyChanges) {
+					reapExpired(graph, graphState);
+				} else {
+					LOG.info("Dry-run: NOT removing the expired elements");
+				}
+			}
 		} finally {
+			if (instanceMonitor != null) {
+				instanceMonitor.close();
+			}
 			if (graph != null) {
 				graph.close();
 			}
 		}
 	}
 
+	/**
+	 * Force closes the stale instances that are listed as dead. The other stale instances may only be
+	 * slow: e.g. an instance acknowledges a schema change only when its open transactions are closed.
+	 */
+	private void forceCloseInstances(InstanceMonitor instanceMonitor, Set<String> staleInstances) {
+		final Set<String> toClose = new TreeSet<>(staleInstances);
+		toClose.retainAll(instancesToForceClose);
+		final Set<String> notListed = new TreeSet<>(staleInstances);
+		notListed.removeAll(instancesToForceClose);
+		final Set<String> notStale = new TreeSet<>(instancesToForceClose);
+		notStale.removeAll(staleInstances);
+
+		if (!notStale.isEmpty()) {
+			LOG.warn("Instance(s) {} have responded or are not registered, NOT force closing them", notStale);
+		}
+		if (!toClose.isEmpty()) {
+			if (doApplyChanges) {
+				instanceMonitor.forceClose(toClose);
+			} else {
+				LOG.info("Dry-run: NOT force closing instance(s) {}", toClose);
+			}
+		}
+		if (!notListed.isEmpty()) {
+			LOG.warn("The schema changes will wait for the stale instance(s) {} until the timeout. A missing "
+					+ "acknowledgement does not prove that an instance is dead, once it is confirmed it can be force "
+					+ "closed with -sif <instance ID> -w", notListed);
+		}
+	}
+
+	/**
+	 * Decides up front, from the options and the schema, whether the run may process the data in bulk:
+	 * rebuild the changed indexes, scan the data for the duplicates of the unique indexes, migrate,
+	 * reindex, catch up, load or generate the data. Whether a new unique index has to be checked is
+	 * only known once the graph is open, so any unique index in the schema counts.
+	 */
+	private boolean hasDataHeavyPhases(GraphSchemaDef graphDef) {
+		final boolean uniqueCheck = !skipUniqueCheck
+				&& graphDef.getGraphIndexes().stream().anyMatch(i -> BooleanUtils.toBoolean(i.getUnique()));
+		return rebuildChangedIndexes || uniqueCheck || !graphDef.getMigrations().isEmpty() || !reindexActions.isEmpty()
+				|| !indexesToCatchUp.isEmpty() || !StringUtils.isEmpty(graphMLFileToLoad)
+				|| generateVertexCount > 0 && StringUtils.isEmpty(generatedDataFile);
+	}
+
+	/**
+	 * @return the scaler of the DynamoDB tables with the capacity raised, <code>null</code> if the
+	 * scaling is not enabled or not applicable
+	 */
+	private DynamoDbCapacityScaler scaleDynamoDbCapacity(PropertiesConfiguration graphConfig, boolean heavyPhase)
+			throws SchemaManagementException {
+		if (!heavyPhase || dynamoDbReadCapacity <= 0) {
+			return null;
+		}
+		if (!DynamoDbCapacityScaler.isDynamoDb(graphConfig)) {
+			LOG.warn("The graph is not stored in DynamoDB, its capacity is left as it is");
+			return null;
+		}
+		if (!doApplyChanges) {
+			LOG.info("Dry-run: NOT raising the capacity of the DynamoDB tables");
+			return null;
+		}
+		return new DynamoDbCapacityScaler(graphConfig, dynamoDbStores, dynamoDbReadCapacity, dynamoDbWriteCapacity)
+				.timeout(reindexTimeoutInSecs).scaleUp();
+	}
+
+	private void catchUpIndexes(JanusGraph graph, GraphState graphState) throws SchemaManagementException {
+		if (StringUtils.isEmpty(catchUpLogIdentifier) || StringUtils.isEmpty(catchUpStartTime)) {
+			throw new SchemaManagementException("Catching up the indexes requires the transaction log identifier and the start time");
+		}
+		final Instant startTime;
+		try {
+			startTime = Instant.parse(catchUpStartTime);
+		} catch (DateTimeParseException e) {
+			throw new SchemaManagementException("Invalid catch-up start time " + catchUpStartTime, e);
+		}
+		new IndexCatchUp(graph, graphState, indexesToCatchUp, catchUpLogIdentifier, startTime).threads(threads).run();
+	}
+
+	private void reapExpired(JanusGraph graph, GraphState graphState) throws SchemaManagementException {
+		final TtlReaper reaper = new TtlReaper(graph, graphState).threads(threads).maxRate(reapRate);
+		while (true) {
+			reaper.run();
+			if (reapIntervalInSecs <= 0) {
+				return;
+			}
+			LOG.info("Next removal of the expired elements in {} second(s)", Integer.valueOf(reapIntervalInSecs));
+			try {
+				Thread.sleep(TimeUnit.SECONDS.toMillis(reapIntervalInSecs));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SchemaManagementException("Interrupted while waiting to remove the expired elements", e);
+			}
+		}
+	}
+
 	private void reindexData(JanusGraph graph, GraphState graphState, List<ReindexAction> reindexActionList) throws SchemaManagementException {
 		for(final ReindexAction action: reindexActionList) {
 			switch(action.getTarget()) {
 			case NAMED:
-				updateSingleIndex(graphState, graph, action.getIndexName(), action.getMethod());
+				updateSingleIndex(graphState, graph, action.getIndexName(), action);
 				break;
 			case ALL:
 				for(final String indexName: graphState.getAllIndexes()) {
-					updateSingleIndex(graphState, graph, indexName, action.getMethod());
+					updateSingleIndex(graphState, graph, indexName, action);
 				}
 				break;
 			case NEW:
 				for(final String indexName: graphState.getNewIndexes()) {
-					updateSingleIndex(graphState, graph, indexName, action.getMethod());
+					updateSingleIndex(graphState, graph, indexName, action);
 				}
 				break;
             case UNAVAILABLE:
                 for(final String indexName: IndexUtils.getUnavailableIndexes(graphState.getAllIndexes(), graphState, graph)) {
                     LOG.info("Index {} is not available, updating", indexName);
-                    updateSingleIndex(graphState, graph, indexName, action.getMethod());
+                    updateSingleIndex(graphState, graph, indexName, action);
                 }
                 break;
 			default:
@@ -243,9 +800,11 @@ public class SchemaManager {
 		}
 	}
 
-	private void updateSingleIndex(GraphState graphState, JanusGraph graph, String indexName, IndexingMethod indexingMethod) throws SchemaManagementException {
+	private void updateSingleIndex(GraphState graphState, JanusGraph graph, String indexName, ReindexAction action) throws SchemaManagementException {
 		graph.tx().rollback();
 
+		final IndexingMethod indexingMethod = action.getMethod();
+
 		Object indexDef = graphState.getIndexDef(indexName);
 
 		if (indexDef == null) {
@@ -257,21 +816,31 @@ public class SchemaManager {
 				LOG.info("Updating graph index {}", indexName);
 				ensureGraphIndexReady(graph, indexName);
 
-				final JanusGraphManagement mgmtUp = graph.openManagement();
-                switch (indexingMethod) {
-                case LOCAL:
-                    mgmtUp.updateIndex(mgmtUp.getGraphIndex(indexName), SchemaAction.REINDEX).get();
-                    break;
-                case HADOOP:
-                case HADOOP2:
-                    MapReduceIndexManagement mr = new MapReduceIndexManagement(graph);
-                    mr.updateIndex(mgmtUp.getGraphIndex(indexName), SchemaAction.REINDEX).get();
-                    break;
-                default:
-                    throw new RuntimeException("Unsupported reindexing method: " + indexingMethod);
-                }
+				// the original settings are restored even if the reindexing fails
+				try (EsBulkIndexingProfile esProfile = applyEsBulkProfile(graph, (GraphIndexDef) indexDef)) {
+					if (indexingMethod == IndexingMethod.PARTIAL) {
+						partialReindex(graphState, graph, indexName, action);
+						return;
+					}
 
-				mgmtUp.commit();
+					final JanusGraphManagement mgmtUp = graph.openManagement();
+	                switch (indexingMethod) {
+	                case LOCAL:
+	                    mgmtUp.updateIndex(mgmtUp.getGraphIndex(indexName), SchemaAction.REINDEX).get();
+	                    break;
+	                case HADOOP:
+	                case HADOOP2:
+	                    MapReduceIndexManagement mr = new MapReduceIndexManagement(graph);
+	                    mr.updateIndex(mgmtUp.getGraphIndex(indexName), SchemaAction.REINDEX).get();
+	                    break;
+	                default:
+	                    throw new RuntimeException("Unsupported reindexing method: " + indexingMethod);
+	                }
+
+					mgmtUp.commit();
+				}
+			} else if (indexingMethod == IndexingMethod.PARTIAL) {
+				throw new SchemaManagementException("Index " + indexName + " is not a graph index, it cannot be partially reindexed");
 			} else if (indexDef instanceof LocalEdgeIndexDef) {
 				LOG.info("Updating local edge index {}", indexName);
 				LocalEdgeIndexDef localIndexDef = (LocalEdgeIndexDef)indexDef;
@@ -325,6 +894,46 @@ public class SchemaManager {
         }
 	}
 
+	/**
+	 * @return the bulk indexing settings applied to the Elasticsearch index of a mixed index,
+	 * <code>null</code> if they are not enabled or not applicable
+	 */
+	private EsBulkIndexingProfile applyEsBulkProfile(JanusGraph graph, GraphIndexDef indexDef)
+			throws SchemaManagementException {
+		if (!esBulkProfile || indexDef.getIndexType() != IndexType.MIXED) {
+			return null;
+		}
+		final String backingIndex;
+		final String storeName;
+		try (ElementIndexer indexer = new ElementIndexer(graph, indexDef.getName())) {
+			backingIndex = indexer.getBackingIndexName();
+			// differs from the index name if the index has been renamed, e.g. rebuilt side by side
+			storeName = indexer.getStoreName();
+		}
+		if (!EsRestClient.isElasticsearch(graph.configuration(), backingIndex)) {
+			LOG.info("Index backend {} of index {} is not Elasticsearch, its settings are left as they are", backingIndex,
+					indexDef.getName());
+			return null;
+		}
+		return new EsBulkIndexingProfile(graph.configuration(), backingIndex, storeName).apply();
+	}
+
+	private void partialReindex(GraphState graphState, JanusGraph graph, String indexName, ReindexAction action) throws SchemaManagementException {
+		final PartialReindexer reindexer = new PartialReindexer(graph, graphState, indexName)
+				.threads(threads)
+				.label(action.getLabel());
+		if (StringUtils.isEmpty(action.getVertexIdsFile())) {
+			reindexer.run();
+			return;
+		}
+		try (BufferedReader reader = Files.newBufferedReader(Paths.get(action.getVertexIdsFile()), StandardCharsets.UTF_8)) {
+			reindexer.vertexIds(reader.lines().map(String::trim).filter(line -> !line.isEmpty()).map(Long::valueOf).iterator())
+					.run();
+		} catch (IOException | UncheckedIOException | NumberFormatException e) {
+			throw new SchemaManagementException("Unable to read the vertex IDs from " + action.getVertexIdsFile(), e);
+		}
+	}
+
 	private RelationTypeIndex ensureLocalIndexReady(JanusGraph graph, RelationTypeIndex index, String relationTypeName) throws SchemaManagementException {
 		RelationTypeIndex index2 = ensureLocalIndexState(graph, index, relationTypeName, SchemaStatus.INSTALLED,
 				SchemaAction.REGISTER_INDEX, SchemaStatus.REGISTERED);
@@ -432,15 +1041,46 @@ public class SchemaManager {
 	private void populateNewGraphElements(JanusGraph graph, GraphState graphState, GraphSchemaDef graphDef)
 			throws SchemaManagementException {
 
+		checkNewUniqueIndexes(graph, graphState);
 		populateNewProperties(graph, graphState);
 		populateNewVertices(graph, graphState);
 		populateNewEdges(graph, graphState);
 		populateNewIndexes(graph, graphState);
+		rebuildChangedIndexes(graph, graphState);
 		populateNewLocalPropIndexes(graph, graphState);
 		populateNewLocalEdgeIndexes(graph, graphState);
 		populateGraphMetadata(graph, graphState);
 	}
 
+	/**
+	 * Fails if the existing data has duplicates for any of the unique indexes to be created, before
+	 * any schema element is created.
+	 */
+	private void checkNewUniqueIndexes(JanusGraph graph, GraphState graphState) throws SchemaManagementException {
+		if (skipUniqueCheck) {
+			return;
+		}
+		final List<GraphIndexDef> newUniqueIndexes = graphState.getGraphSchemaDef().getGraphIndexes().stream()
+				.filter(i -> BooleanUtils.toBoolean(i.getUnique()))
+				.filter(i -> !graphState.elementExists(ElementType.INDEX, i.getName())
+						|| graphState.getChangedIndexes().contains(i))
+				// no element can have a key that does not exist yet
+				.filter(i -> i.getKeys().stream().allMatch(k -> graph.containsPropertyKey(k.getKey())))
+				.collect(Collectors.toList());
+		if (newUniqueIndexes.isEmpty()) {
+			return;
+		}
+		graph.tx().rollback();
+		LOG.info("Checking the existing data for duplicates of {} new unique index(es)", newUniqueIndexes.size());
+		final List<UniqueIndexChecker.Duplicates> duplicates = new UniqueIndexChecker(graph, newUniqueIndexes)
+				.threads(threads)
+				.check();
+		if (!duplicates.isEmpty()) {
+			throw new SchemaManagementException("The existing data violates the unique indexes, the schema has not been changed: "
+					+ duplicates);
+		}
+	}
+
 	private void verifyVertices(JanusGraph graph, GraphState graphState) throws SchemaManagementException {
 		graph.tx().rollback();
 		final JanusGraphManagement mgmt = graph.openManagement();
@@ -535,24 +1175,32 @@ public class SchemaManager {
 				// not expected
 				throw new RuntimeException("Unsupported index relation: " + indexDef.getRelType());
 			}
-			assertGraphSetting("index", indexName, "relation type", JanusGraphIndexClass, dbGraphIndex.getIndexedElement());
-			assertGraphSetting("index", indexName, "type", indexDef.getIndexType(), dbGraphIndex.isCompositeIndex()
-					? GraphIndexDef.IndexType.COMPOSITE : GraphIndexDef.IndexType.MIXED);
-			assertGraphSetting("index", indexName, "unique", indexDef.getUnique(),
-					Boolean.valueOf(dbGraphIndex.isUnique()));
-			if (dbGraphIndex.isMixedIndex()) {
-				assertGraphSetting("index", indexName, "index backend",
-						getIndexingBackendName(graphState.getGraphSchemaDef(), indexDef),
-						dbGraphIndex.getBackingIndex());
-			}
+			try {
+				assertGraphSetting("index", indexName, "relation type", JanusGraphIndexClass, dbGraphIndex.getIndexedElement());
+				assertGraphSetting("index", indexName, "type", indexDef.getIndexType(), dbGraphIndex.isCompositeIndex()
+						? GraphIndexDef.IndexType.COMPOSITE : GraphIndexDef.IndexType.MIXED);
+				assertGraphSetting("index", indexName, "unique", indexDef.getUnique(),
+						Boolean.valueOf(dbGraphIndex.isUnique()));
+				if (dbGraphIndex.isMixedIndex()) {
+					assertGraphSetting("index", indexName, "index backend",
+							getIndexingBackendName(graphState.getGraphSchemaDef(), indexDef),
+							dbGraphIndex.getBackingIndex());
+				}
 
-			// NOTE: the keys in the index are not sorted so they can appear in any order
-			final List<String> declaredKeys = indexDef.getKeys().stream().map(GraphIndexKeyDef::getKey).sorted()
-					.collect(Collectors.toList());
-			final List<String> dbKeys = Arrays.stream(dbGraphIndex.getFieldKeys()).map(PropertyKey::name).sorted()
-					.collect(Collectors.toList());
+				// NOTE: the keys in the index are not sorted so they can appear in any order
+				final List<String> declaredKeys = indexDef.getKeys().stream().map(GraphIndexKeyDef::getKey).sorted()
+						.collect(Collectors.toList());
+				final List<String> dbKeys = Arrays.stream(dbGraphIndex.getFieldKeys()).map(PropertyKey::name).sorted()
+						.collect(Collectors.toList());
 
-			assertGraphSetting("index", indexName, "property keys", declaredKeys, dbKeys);
+				assertGraphSetting("index", indexName, "property keys", declaredKeys, dbKeys);
+			} catch (SchemaManagementException e) {
+				if (!rebuildChangedIndexes) {
+					throw e;
+				}
+				LOG.warn("{}, the index will be rebuilt", e.getMessage());
+				graphState.addChangedIndex(indexDef);
+			}
 
 			graphState.addElement(ElementType.INDEX, indexName);
 
@@ -823,58 +1471,7 @@ public class SchemaManager {
 
 			LOG.info("Creating graph index {}", indexName);
 
-			final boolean isEdgeIndex = indexDef.getRelType() == RelType.EDGE;
-
-			final JanusGraphManagement mgmt = graph.openManagement();
-
-			final IndexBuilder indexBuilder = mgmt.buildIndex(indexName, isEdgeIndex ? Edge.class : Vertex.class);
-
-			final String targetIndexType = indexDef.getIndexOnly();
-			if (!StringUtils.isEmpty(targetIndexType)) {
-				final JanusGraphSchemaType targetType;
-				if (isEdgeIndex) {
-					targetType = mgmt.getEdgeLabel(targetIndexType);
-				} else {
-					targetType = mgmt.getVertexLabel(targetIndexType);
-				}
-				if (targetType == null) {
-					throw new SchemaManagementException("Target index type \"" + targetIndexType + "\" not found for index \"" +
-							indexName + "\"");
-				}
-				indexBuilder.indexOnly(targetType);
-			}
-
-			if (BooleanUtils.toBoolean(indexDef.getUnique())) {
-				indexBuilder.unique();
-			}
-
-			for(final GraphIndexKeyDef indexKey: indexDef.getKeys()) {
-				final PropertyKey pk = mgmt.getPropertyKey(indexKey.getKey());
-				if (pk == null) {
-					throw new SchemaManagementException("Property key \"" + indexKey.getKey() + "\" not found for index \"" +
-							indexName + "\"");
-				}
-				final List<Parameter> paramList = new ArrayList<>(2);
-				if (indexKey.getMapping() != null) {
-					paramList.add(indexKey.getMapping().asParameter());
-				}
-				if (indexKey.getParameters() != null) {
-					paramList.addAll(indexKey.getParameters().stream()
-							.map(p -> new Parameter<>(p.getParamKey(), p.getParamValue()))
-							.collect(Collectors.toList()));
-				}
-				if (paramList.isEmpty()) {
-					indexBuilder.addKey(pk);
-				} else {
-					indexBuilder.addKey(pk, paramList.toArray(new Parameter[paramList.size()]));
-				}
-			}
-
-			final JanusGraphIndex index = (indexDef.getIndexType() == IndexType.COMPOSITE
-					? indexBuilder.buildCompositeIndex() : indexBuilder.buildMixedIndex(
-							getIndexingBackendName(graphState.getGraphSchemaDef(), indexDef)));
-
-			mgmt.commit();
+			buildGraphIndex(graph, graphState, indexDef, indexName);
 
 			try {
 				LOG.info("Waiting for the index {} to become available...", indexName);
@@ -898,6 +1495,180 @@ public class SchemaManager {
 		}
 	}
 
+	/**
+	 * Replaces every graph index whose definition has changed without leaving the queries without
+	 * an index: the new version is built under a shadow name, reindexed and enabled while the old
+	 * one is still in use. The content of the new version is verified (the share set by
+	 * {@link #indexCheckSampleRate(double)}), then the names are swapped and the old version is
+	 * renamed to a unique retired name, disabled and removed.
+	 */
+	private void rebuildChangedIndexes(JanusGraph graph, GraphState graphState) throws SchemaManagementException {
+		for (final GraphIndexDef indexDef : graphState.getChangedIndexes()) {
+			final String indexName = indexDef.getName();
+			final String shadowName = indexName + SHADOW_INDEX_SUFFIX;
+			// unique, the mixed indexes retired before cannot be removed and keep their names
+			final String retiredName = indexName + RETIRED_INDEX_SUFFIX + "_"
+					+ RETIRED_INDEX_TIMESTAMP.format(Instant.now());
+
+			JanusGraphManagement mgmt = graph.openManagement();
+			final boolean shadowExists = mgmt.containsGraphIndex(shadowName);
+			final boolean retiredNameTaken = mgmt.containsGraphIndex(retiredName);
+			final List<String> leftovers = getRetiredIndexes(mgmt, indexName);
+			mgmt.rollback();
+			if (retiredNameTaken) {
+				throw new SchemaManagementException("Index \"" + retiredName + "\" already exists, index \"" + indexName
+						+ "\" cannot be rebuilt now");
+			}
+			for (final String leftover : leftovers) {
+				LOG.warn("Index {} is left from a previous rebuild, retiring it first", leftover);
+				retireGraphIndex(graph, leftover);
+			}
+			if (shadowExists) {
+				LOG.warn("Index {} already exists, resuming the rebuild of index {}", shadowName, indexName);
+			} else {
+				LOG.info("Rebuilding index {} as {}", indexName, shadowName);
+				buildGraphIndex(graph, graphState, indexDef, shadowName);
+			}
+			ensureGraphIndexReady(graph, shadowName);
+
+			new PartialReindexer(graph, graphState, indexName).into(shadowName)
+					.threads(threads).maxRate(rebuildRate).run();
+
+			final double driftRate = new IndexConsistencyChecker(graph, graphState, indexName).of(shadowName)
+					.threads(threads).sampleRate(indexCheckSampleRate).check(null);
+			if (driftRate > 0) {
+				throw new SchemaManagementException("Index \"" + shadowName + "\" does not match the data (drift rate "
+						+ driftRate + "), index \"" + indexName + "\" is left unchanged, the rebuild is resumed by the next run");
+			}
+
+			LOG.info("Swapping index {} with its new version, retiring the old version as {}", indexName, retiredName);
+			mgmt = graph.openManagement();
+			mgmt.changeName(mgmt.getGraphIndex(indexName), retiredName);
+			mgmt.changeName(mgmt.getGraphIndex(shadowName), indexName);
+			mgmt.commit();
+
+			// already listed by populateNewIndexes(), the rebuilt version is reindexed along with the others
+			retireGraphIndex(graph, retiredName);
+			LOG.info("Index {} has been rebuilt", indexName);
+		}
+	}
+
+	/**
+	 * @return names of the old versions of the index left by the previous rebuilds that still have to be
+	 * disabled or removed
+	 */
+	private static List<String> getRetiredIndexes(JanusGraphManagement mgmt, String indexName) {
+		final Pattern retiredName = Pattern.compile(Pattern.quote(indexName + RETIRED_INDEX_SUFFIX) + "(_\\d+)?");
+		final List<String> retired = new ArrayList<>();
+		for (final Class<? extends Element> elementType : Arrays.asList(Vertex.class, Edge.class)) {
+			for (final JanusGraphIndex index : mgmt.getGraphIndexes(elementType)) {
+				final boolean disabled = Arrays.stream(index.getFieldKeys())
+						.allMatch(k -> index.getIndexStatus(k) == SchemaStatus.DISABLED);
+				// the disabled mixed indexes cannot be removed
+				if (retiredName.matcher(index.name()).matches() && !(disabled && index.isMixedIndex())) {
+					retired.add(index.name());
+				}
+			}
+		}
+		return retired;
+	}
+
+	/**
+	 * Disables the graph index, waits until all the graph instances have disabled it and removes it.
+	 * The mixed indexes cannot be removed by JanusGraph, they are only disabled.
+	 */
+	void retireGraphIndex(JanusGraph graph, String indexName) throws SchemaManagementException {
+		try {
+			JanusGraphManagement mgmt = graph.openManagement();
+			final JanusGraphIndex index = mgmt.getGraphIndex(indexName);
+			if (Arrays.stream(index.getFieldKeys()).allMatch(k -> index.getIndexStatus(k) == SchemaStatus.DISABLED)) {
+				mgmt.rollback();
+			} else {
+				LOG.info("Disabling index {}...", indexName);
+				mgmt.updateIndex(index, SchemaAction.DISABLE_INDEX).get();
+				mgmt.commit();
+			}
+			ManagementSystem.awaitGraphIndexStatus(graph, indexName)
+					.status(SchemaStatus.DISABLED)
+					.timeout(this.reindexTimeoutInSecs, ChronoUnit.SECONDS)
+					.call();
+
+			mgmt = graph.openManagement();
+			final JanusGraphIndex disabledIndex = mgmt.getGraphIndex(indexName);
+			if (disabledIndex.isMixedIndex()) {
+				LOG.warn("Index {} is disabled, mixed indexes cannot be removed: drop it from index backend {} manually",
+						indexName, disabledIndex.getBackingIndex());
+				mgmt.rollback();
+				return;
+			}
+			LOG.info("Removing index {}...", indexName);
+			mgmt.updateIndex(disabledIndex, SchemaAction.REMOVE_INDEX).get();
+			mgmt.commit();
+			LOG.info("Index {} has been removed", indexName);
+		} catch (InterruptedException | ExecutionException e) {
+			throw new SchemaManagementException("Unable to retire index \"" + indexName + "\"", e);
+		}
+	}
+
+	/**
+	 * Creates the graph index with the given name from the definition, the index is not registered yet.
+	 */
+	private void buildGraphIndex(JanusGraph graph, GraphState graphState, GraphIndexDef indexDef, String indexName)
+			throws SchemaManagementException {
+		final boolean isEdgeIndex = indexDef.getRelType() == RelType.EDGE;
+
+		final JanusGraphManagement mgmt = graph.openManagement();
+
+		final IndexBuilder indexBuilder = mgmt.buildIndex(indexName, isEdgeIndex ? Edge.class : Vertex.class);
+
+		final String targetIndexType = indexDef.getIndexOnly();
+		if (!StringUtils.isEmpty(targetIndexType)) {
+			final JanusGraphSchemaType targetType;
+			if (isEdgeIndex) {
+				targetType = mgmt.getEdgeLabel(targetIndexType);
+			} else {
+				targetType = mgmt.getVertexLabel(targetIndexType);
+			}
+			if (targetType == null) {
+				throw new SchemaManagementException("Target index type \"" + targetIndexType + "\" not found for index \"" +
+						indexName + "\"");
+			}
+			indexBuilder.indexOnly(targetType);
+		}
+
+		if (BooleanUtils.toBoolean(indexDef.getUnique())) {
+			indexBuilder.unique();
+		}
+
+		for(final GraphIndexKeyDef indexKey: indexDef.getKeys()) {
+			final PropertyKey pk = mgmt.getPropertyKey(indexKey.getKey());
+			if (pk == null) {
+				throw new SchemaManagementException("Property key \"" + indexKey.getKey() + "\" not found for index \"" +
+						indexName + "\"");
+			}
+			final List<Parameter> paramList = new ArrayList<>(2);
+			if (indexKey.getMapping() != null) {
+				paramList.add(indexKey.getMapping().asParameter());
+			}
+			if (indexKey.getParameters() != null) {
+				paramList.addAll(indexKey.getParameters().stream()
+						.map(p -> new Parameter<>(p.getParamKey(), p.getParamValue()))
+						.collect(Collectors.toList()));
+			}
+			if (paramList.isEmpty()) {
+				indexBuilder.addKey(pk);
+			} else {
+				indexBuilder.addKey(pk, paramList.toArray(new Parameter[paramList.size()]));
+			}
+		}
+
+		final JanusGraphIndex index = (indexDef.getIndexType() == IndexType.COMPOSITE
+				? indexBuilder.buildCompositeIndex() : indexBuilder.buildMixedIndex(
+						getIndexingBackendName(graphState.getGraphSchemaDef(), indexDef)));
+
+		mgmt.commit();
+	}
+
 	private void populateNewLocalPropIndexes(JanusGraph graph, GraphState graphState) throws SchemaManagementException {
 		for (final LocalPropertyIndexDef localPropIndexDef : graphState.getGraphSchemaDef().getLocalPropertyIndexes()) {
 			final String indexName = localPropIndexDef.getName();
@@ -1010,10 +1781,35 @@ public class SchemaManager {
 		return indexDef.getIndexBackend();
 	}
 
+	private void showRevisions(JanusGraph graph) throws SchemaManagementException {
+		try {
+			final List<GraphRevision> revisions = new GlobalMetaDataManager().getRevisions(graph, revisionsToShow);
+			if (revisions.isEmpty()) {
+				LOG.info("No schema revisions recorded in the graph");
+			}
+			for (final GraphRevision revision : revisions) {
+				LOG.info("{}", revision);
+			}
+		} catch (IOException e) {
+			throw new SchemaManagementException("Failed to read the schema revisions", e);
+		}
+	}
+
+	private boolean isSchemaUnchanged(JanusGraph graph, GraphState graphState) throws SchemaManagementException {
+		final GraphRevision current;
+		try {
+			current = new GlobalMetaDataManager().getCurrentRevision(graph);
+		} catch (IOException e) {
+			throw new SchemaManagementException("Failed to read the current schema revision", e);
+		}
+		return current != null && graphState.getSchemaHash() != null
+				&& graphState.getSchemaHash().equals(current.getSchemaHash());
+	}
+
 	private void populateGraphMetadata(JanusGraph graph, GraphState graphState) throws SchemaManagementException {
 		GlobalMetaDataManager gdm = new GlobalMetaDataManager();
 		try {
-			gdm.updateGraph(graph, graphState.getGraphSchemaDef(), this);
+			gdm.updateGraph(graph, graphState, revisionRetention, this);
 		} catch (IOException e) {
 			throw new SchemaManagementException("Failed to persist graph metadata", e);
 		}
@@ -1,5 +1,7 @@
 package com.newforma.titan.schema;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -24,9 +26,56 @@ public class SchemaManagerApp {
     private static final String OPTION_WRITE_TO_DB = "w";
     private static final String OPTION_LOAD_GRAPHML = "l";
     private static final String OPTION_SAVE_GRAPHML = "s";
+    private static final String OPTION_SAVE_PARTITIONS = "sp";
     private static final String OPTION_FILTER_TAGS = "t";
     private static final String OPTION_INDEXING_METHOD = "m";
     private static final String OPTION_REINDEX_TIMEOUT = "it";
+    private static final String OPTION_REINDEX_LABEL = "il";
+    private static final String OPTION_REINDEX_IDS = "iv";
+    private static final String OPTION_ES_BULK_PROFILE = "ieb";
+    private static final String OPTION_GENERATE_DATA = "gen";
+    private static final String OPTION_GENERATE_DEGREE = "gdeg";
+    private static final String OPTION_GENERATE_FILE = "gfile";
+    private static final String OPTION_THREADS = "th";
+    private static final String OPTION_SHOW_REVISIONS = "rev";
+    private static final String OPTION_KEEP_REVISIONS = "rk";
+    private static final String OPTION_SKIP_UNCHANGED = "u";
+    private static final String OPTION_ANALYZE_QUERIES = "aq";
+    private static final String OPTION_QUERY_REPORT = "aqr";
+    private static final String OPTION_SUPERNODES = "sn";
+    private static final String OPTION_SUPERNODE_SAMPLE = "sns";
+    private static final String OPTION_SUPERNODE_REPORT = "snr";
+    private static final String OPTION_PROFILE = "pp";
+    private static final String OPTION_PROFILE_SAMPLE = "pps";
+    private static final String OPTION_PROFILE_REPORT = "ppr";
+    private static final String OPTION_CHECK_INDEX = "ic";
+    private static final String OPTION_REPAIR_INDEX = "icr";
+    private static final String OPTION_CHECK_INDEX_SAMPLE = "ics";
+    private static final String OPTION_CHECK_INDEX_REPORT = "icf";
+    private static final String OPTION_MIGRATION_RATE = "mr";
+    private static final String OPTION_SKIP_UNIQUE_CHECK = "nu";
+    private static final String OPTION_AUDIT_CONSTRAINTS = "ca";
+    private static final String OPTION_REPAIR_CONSTRAINTS = "car";
+    private static final String OPTION_CONSTRAINT_REPORT = "caf";
+    private static final String OPTION_REBUILD_CHANGED = "bg";
+    private static final String OPTION_REBUILD_RATE = "bgr";
+    private static final String OPTION_PRUNE_INDEXES = "pi";
+    private static final String OPTION_CHECK_INSTANCES = "si";
+    private static final String OPTION_FORCE_CLOSE_STALE = "sif";
+    private static final String OPTION_CLEAN_GHOSTS = "gv";
+    private static final String OPTION_REPAIR_GHOSTS = "gvr";
+    private static final String OPTION_GHOST_REPORT = "gvf";
+    private static final String OPTION_REAP_EXPIRED = "ttl";
+    private static final String OPTION_REAP_INTERVAL = "ttli";
+    private static final String OPTION_REAP_RATE = "ttlr";
+    private static final String OPTION_CATCH_UP = "cu";
+    private static final String OPTION_CATCH_UP_LOG = "cul";
+    private static final String OPTION_CATCH_UP_FROM = "cuf";
+    private static final String OPTION_DYNAMODB_CAPACITY = "ddc";
+    private static final String OPTION_DYNAMODB_STORES = "dds";
+
+    private static final String DATA_FORMATS_HELP = "The format is recognized by the file extension: "
+            + ".json for GraphSON, .kryo for Gryo, GraphML otherwise; .gz suffix (e.g. .graphml.gz) enables gzip compression";
 
     private static final Logger LOG = LoggerFactory.getLogger(SchemaManagerApp.class);
 
@@ -64,7 +113,8 @@ public class SchemaManagerApp {
             reindexActions.add(new ReindexAction(IndexTarget.valueOf(cmdLine.getOptionValue(OPTION_REINDEX_DATA))));
         }
         if (cmdLine.hasOption(OPTION_REINDEX_SPECIFIC)) {
-            reindexActions.add(new ReindexAction(IndexTarget.NAMED, indexingMethod, cmdLine.getOptionValue(OPTION_REINDEX_SPECIFIC)));
+            reindexActions.add(new ReindexAction(IndexTarget.NAMED, indexingMethod, cmdLine.getOptionValue(OPTION_REINDEX_SPECIFIC),
+                    cmdLine.getOptionValue(OPTION_REINDEX_LABEL), cmdLine.getOptionValue(OPTION_REINDEX_IDS)));
         }
 
         int reindexTimeoutInSecs = SchemaManager.DEFAULT_INDEX_REGISTERED_TIMEOUT_SECS;
@@ -76,6 +126,111 @@ public class SchemaManagerApp {
         final String graphMLToLoad = cmdLine.getOptionValue(OPTION_LOAD_GRAPHML);
         final String graphMLToSave = cmdLine.getOptionValue(OPTION_SAVE_GRAPHML);
         final String tagFilter = cmdLine.getOptionValue(OPTION_FILTER_TAGS);
+        int savePartitions = 1;
+        if (cmdLine.hasOption(OPTION_SAVE_PARTITIONS)) {
+            savePartitions = Integer.parseInt(cmdLine.getOptionValue(OPTION_SAVE_PARTITIONS));
+        }
+        long generateVertexCount = 0;
+        if (cmdLine.hasOption(OPTION_GENERATE_DATA)) {
+            generateVertexCount = Long.parseLong(cmdLine.getOptionValue(OPTION_GENERATE_DATA));
+        }
+        double generateDegree = DataGenerator.DEFAULT_AVERAGE_DEGREE;
+        if (cmdLine.hasOption(OPTION_GENERATE_DEGREE)) {
+            generateDegree = Double.parseDouble(cmdLine.getOptionValue(OPTION_GENERATE_DEGREE));
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (cmdLine.hasOption(OPTION_THREADS)) {
+            threads = Integer.parseInt(cmdLine.getOptionValue(OPTION_THREADS));
+        }
+
+        int showRevisions = 0;
+        if (cmdLine.hasOption(OPTION_SHOW_REVISIONS)) {
+            showRevisions = Integer.parseInt(cmdLine.getOptionValue(OPTION_SHOW_REVISIONS));
+        }
+        int keepRevisions = GlobalMetaDataManager.DEFAULT_REVISION_RETENTION;
+        if (cmdLine.hasOption(OPTION_KEEP_REVISIONS)) {
+            keepRevisions = Integer.parseInt(cmdLine.getOptionValue(OPTION_KEEP_REVISIONS));
+        }
+
+        long supernodeThreshold = 0;
+        if (cmdLine.hasOption(OPTION_SUPERNODES)) {
+            supernodeThreshold = Long.parseLong(cmdLine.getOptionValue(OPTION_SUPERNODES));
+        }
+        double supernodeSampleRate = 1.0;
+        if (cmdLine.hasOption(OPTION_SUPERNODE_SAMPLE)) {
+            supernodeSampleRate = Double.parseDouble(cmdLine.getOptionValue(OPTION_SUPERNODE_SAMPLE));
+        }
+
+        double profileSampleRate = 1.0;
+        if (cmdLine.hasOption(OPTION_PROFILE_SAMPLE)) {
+            profileSampleRate = Double.parseDouble(cmdLine.getOptionValue(OPTION_PROFILE_SAMPLE));
+        }
+
+        double migrationRate = 0;
+        if (cmdLine.hasOption(OPTION_MIGRATION_RATE)) {
+            migrationRate = Double.parseDouble(cmdLine.getOptionValue(OPTION_MIGRATION_RATE));
+        }
+
+        int instanceCheckTimeout = 0;
+        if (cmdLine.hasOption(OPTION_CHECK_INSTANCES)) {
+            instanceCheckTimeout = Integer.parseInt(cmdLine.getOptionValue(OPTION_CHECK_INSTANCES));
+        }
+
+        List<String> instancesToForceClose = Collections.emptyList();
+        if (cmdLine.hasOption(OPTION_FORCE_CLOSE_STALE)) {
+            if (instanceCheckTimeout <= 0) {
+                System.out.println("Only the instances found stale can be force closed, -" + OPTION_FORCE_CLOSE_STALE
+                        + " requires -" + OPTION_CHECK_INSTANCES);
+                printHelp(options);
+                System.exit(1);
+                return;
+            }
+            instancesToForceClose = Arrays.asList(cmdLine.getOptionValue(OPTION_FORCE_CLOSE_STALE).split(","));
+        }
+
+        double rebuildRate = 0;
+        if (cmdLine.hasOption(OPTION_REBUILD_RATE)) {
+            rebuildRate = Double.parseDouble(cmdLine.getOptionValue(OPTION_REBUILD_RATE));
+        }
+
+        int reapInterval = 0;
+        if (cmdLine.hasOption(OPTION_REAP_INTERVAL)) {
+            reapInterval = Integer.parseInt(cmdLine.getOptionValue(OPTION_REAP_INTERVAL));
+        }
+
+        double reapRate = 0;
+        if (cmdLine.hasOption(OPTION_REAP_RATE)) {
+            reapRate = Double.parseDouble(cmdLine.getOptionValue(OPTION_REAP_RATE));
+        }
+
+        List<String> catchUpIndexes = Collections.emptyList();
+        if (cmdLine.hasOption(OPTION_CATCH_UP)) {
+            catchUpIndexes = Arrays.asList(cmdLine.getOptionValue(OPTION_CATCH_UP).split(","));
+        }
+
+        long dynamoDbReadCapacity = 0;
+        long dynamoDbWriteCapacity = 0;
+        if (cmdLine.hasOption(OPTION_DYNAMODB_CAPACITY)) {
+            final String[] capacity = cmdLine.getOptionValue(OPTION_DYNAMODB_CAPACITY).split(":");
+            if (capacity.length != 2) {
+                System.out.println("Invalid DynamoDB capacity, expected <read>:<write>");
+                printHelp(options);
+                System.exit(1);
+                return;
+            }
+            dynamoDbReadCapacity = Long.parseLong(capacity[0]);
+            dynamoDbWriteCapacity = Long.parseLong(capacity[1]);
+        }
+
+        List<String> dynamoDbStores = DynamoDbCapacityScaler.DEFAULT_STORES;
+        if (cmdLine.hasOption(OPTION_DYNAMODB_STORES)) {
+            dynamoDbStores = Arrays.asList(cmdLine.getOptionValue(OPTION_DYNAMODB_STORES).split(","));
+        }
+
+        double indexCheckSampleRate = 1.0;
+        if (cmdLine.hasOption(OPTION_CHECK_INDEX_SAMPLE)) {
+            indexCheckSampleRate = Double.parseDouble(cmdLine.getOptionValue(OPTION_CHECK_INDEX_SAMPLE));
+        }
 
         try {
             new SchemaManager(remainingArgs[0], graphConfigFile)
@@ -84,7 +239,49 @@ public class SchemaManagerApp {
                     .applyTagFilter(tagFilter).andGenerateDocumentation(docDir)
                     .andLoadData(graphMLToLoad)
                     .reindexingTimeout(reindexTimeoutInSecs)
-                    ./*andSaveData(graphMLToSave).*/run();
+                    .esBulkProfile(cmdLine.hasOption(OPTION_ES_BULK_PROFILE))
+                    .andSaveData(graphMLToSave)
+                    .andSaveDataPartitions(savePartitions)
+                    .andGenerateData(generateVertexCount, generateDegree)
+                    .generatedDataFile(cmdLine.getOptionValue(OPTION_GENERATE_FILE))
+                    .threads(threads)
+                    .andShowRevisions(showRevisions)
+                    .keepRevisions(keepRevisions)
+                    .skipIfUnchanged(cmdLine.hasOption(OPTION_SKIP_UNCHANGED))
+                    .andAnalyzeQueries(cmdLine.getOptionValue(OPTION_ANALYZE_QUERIES))
+                    .queryReportFile(cmdLine.getOptionValue(OPTION_QUERY_REPORT))
+                    .andDetectSupernodes(supernodeThreshold)
+                    .supernodeSampleRate(supernodeSampleRate)
+                    .supernodeReportFile(cmdLine.getOptionValue(OPTION_SUPERNODE_REPORT))
+                    .andProfileProperties(cmdLine.hasOption(OPTION_PROFILE))
+                    .profileSampleRate(profileSampleRate)
+                    .profileReportFile(cmdLine.getOptionValue(OPTION_PROFILE_REPORT))
+                    .migrationRate(migrationRate)
+                    .skipUniqueCheck(cmdLine.hasOption(OPTION_SKIP_UNIQUE_CHECK))
+                    .andAuditConstraints(cmdLine.hasOption(OPTION_AUDIT_CONSTRAINTS))
+                    .repairConstraints(cmdLine.hasOption(OPTION_REPAIR_CONSTRAINTS))
+                    .constraintReportFile(cmdLine.getOptionValue(OPTION_CONSTRAINT_REPORT))
+                    .rebuildChangedIndexes(cmdLine.hasOption(OPTION_REBUILD_CHANGED))
+                    .rebuildRate(rebuildRate)
+                    .andCheckInstances(instanceCheckTimeout)
+                    .forceCloseInstances(instancesToForceClose)
+                    .andPruneIndexes(cmdLine.hasOption(OPTION_PRUNE_INDEXES))
+                    .andCleanGhosts(cmdLine.hasOption(OPTION_CLEAN_GHOSTS))
+                    .repairGhosts(cmdLine.hasOption(OPTION_REPAIR_GHOSTS))
+                    .ghostReportFile(cmdLine.getOptionValue(OPTION_GHOST_REPORT))
+                    .andReapExpired(cmdLine.hasOption(OPTION_REAP_EXPIRED))
+                    .reapInterval(reapInterval)
+                    .reapRate(reapRate)
+                    .andCatchUpIndexes(catchUpIndexes)
+                    .dynamoDbCapacity(dynamoDbReadCapacity, dynamoDbWriteCapacity)
+                    .dynamoDbStores(dynamoDbStores)
+                    .catchUpLog(cmdLine.getOptionValue(OPTION_CATCH_UP_LOG))
+                    .catchUpFrom(cmdLine.getOptionValue(OPTION_CATCH_UP_FROM))
+                    .andCheckIndex(cmdLine.getOptionValue(OPTION_CHECK_INDEX))
+                    .repairIndex(cmdLine.hasOption(OPTION_REPAIR_INDEX))
+                    .indexCheckSampleRate(indexCheckSampleRate)
+                    .indexCheckReportFile(cmdLine.getOptionValue(OPTION_CHECK_INDEX_REPORT))
+                    .run();
         } catch (Throwable t) {
             LOG.error("ERROR", t);
             System.exit(1);
@@ -100,17 +297,96 @@ public class SchemaManagerApp {
         options.addOption(OPTION_REINDEX_SPECIFIC, true, "Reindex the specific index after applying the schema");
         options.addOption(OPTION_INDEXING_METHOD, true, "Using the specific indexing method: one of " +
                 StringUtils.join(ReindexAction.IndexingMethod.values(), ',') + " ("  +
-                ReindexAction.IndexingMethod.LOCAL + " is the default)");
+                ReindexAction.IndexingMethod.LOCAL + " is the default). " + ReindexAction.IndexingMethod.PARTIAL
+                + " only reindexes the index_only vertex label of a graph index or the vertices selected by -"
+                + OPTION_REINDEX_LABEL + "/-" + OPTION_REINDEX_IDS);
+        options.addOption(OPTION_REINDEX_LABEL, true, "Only reindex the vertices with the specified label (or their edges), "
+                + "with the " + ReindexAction.IndexingMethod.PARTIAL + " indexing method");
+        options.addOption(OPTION_REINDEX_IDS, true, "Only reindex the vertices (or their edges) with the IDs listed in the "
+                + "specified file, one per line, with the " + ReindexAction.IndexingMethod.PARTIAL + " indexing method");
         options.addOption(OPTION_GENERATE_DOCS, true, "Generate documentation, write to the specified directory");
-        options.addOption(OPTION_LOAD_GRAPHML, true, "Load specific GraphML file into the database");
-        options.addOption(OPTION_SAVE_GRAPHML, true, "Save specific GraphML file into a file");
+        options.addOption(OPTION_LOAD_GRAPHML, true, "Load specific data file into the database. " + DATA_FORMATS_HELP);
+        options.addOption(OPTION_SAVE_GRAPHML, true, "Save the graph data into the specified file. " + DATA_FORMATS_HELP);
+        options.addOption(OPTION_SAVE_PARTITIONS, true, "Split the saved data into the specified number of files "
+                + "by the JanusGraph ID partition of the vertices, written in parallel (1 is the default)");
         options.addOption(OPTION_FILTER_TAGS, true, "Apply tag filter for generated documentation. "
                 + "Filter format: tag-spec[,tag-spec[,...]]. tag-spec ::= [!]tag-name[:tag-color]. "
                 + "Colors are used for DOT diagram. If the filter is specified, then only the elements having the "
                 + "specified tags will be included in the documentation and the elements having the tags prefixed with "
                 + "\"!\" will be excluded.");
         options.addRequiredOption("g", "graph-config", true, "Graph property file name");
+        options.addOption(OPTION_ES_BULK_PROFILE, false, "While reindexing a mixed index stored in Elasticsearch, disable the "
+                + "refresh and the replicas and enlarge the translog, then restore the settings and merge the index");
         options.addOption(OPTION_REINDEX_TIMEOUT, true, "Specify the amount of time in seconds to wait before timing out on an index creation. Default 300 seconds.");
+        options.addOption(OPTION_GENERATE_DATA, true, "Generate the specified number of vertices (and the edges between them) "
+                + "following the schema, after loading the data");
+        options.addOption(OPTION_GENERATE_DEGREE, true, "Average number of the generated edges per vertex for each relationship ("
+                + DataGenerator.DEFAULT_AVERAGE_DEGREE + " is the default)");
+        options.addOption(OPTION_GENERATE_FILE, true, "Write the generated data into the specified GraphML file instead of the graph");
+        options.addOption(OPTION_THREADS, true, "Number of threads for the parallel operations (number of CPUs is the default)");
+        options.addOption(OPTION_SHOW_REVISIONS, true, "Print the specified number of the latest schema revisions recorded in the graph");
+        options.addOption(OPTION_KEEP_REVISIONS, true, "Keep only the specified number of the latest schema revisions "
+                + "in the graph when recording a new one, 0 to keep all (default " + GlobalMetaDataManager.DEFAULT_REVISION_RETENTION + ")");
+        options.addOption(OPTION_SKIP_UNCHANGED, false, "Skip the verification and the update of the schema elements if the "
+                + "schema content is the same as in the latest recorded revision");
+        options.addOption(OPTION_ANALYZE_QUERIES, true, "Profile the traversals from the specified file (one per line) and "
+                + "report the full scans, the unused indexes and the indexes to add to the schema");
+        options.addOption(OPTION_QUERY_REPORT, true, "Write the query analysis report into the specified JSON file");
+        options.addOption(OPTION_SUPERNODES, true, "Find the vertices having at least the specified number of edges of one "
+                + "label and direction (e.g. " + SupernodeAnalyzer.DEFAULT_THRESHOLD + ") and suggest local edge indexes for them");
+        options.addOption(OPTION_SUPERNODE_SAMPLE, true, "Fraction of the vertices to scan for the supernode detection (1 is the default)");
+        options.addOption(OPTION_SUPERNODE_REPORT, true, "Write the supernode report into the specified JSON file");
+        options.addOption(OPTION_PROFILE, false, "Profile the values of every property (null rate, distinct values, top values, "
+                + "string lengths, cardinality violations) and recommend the index types");
+        options.addOption(OPTION_PROFILE_SAMPLE, true, "Fraction of the vertices to scan for the property profiling (1 is the default)");
+        options.addOption(OPTION_PROFILE_REPORT, true, "Write the property profiles into the specified JSON file");
+        options.addOption(OPTION_SKIP_UNIQUE_CHECK, false, "Do not check the existing data for duplicates before creating "
+                + "the unique indexes");
+        options.addOption(OPTION_MIGRATION_RATE, true, "Maximum number of vertices per second processed by the data migrations "
+                + "defined in the schema (no limit by default)");
+        options.addOption(OPTION_AUDIT_CONSTRAINTS, false, "Check the data for the violations of the edge multiplicities "
+                + "and the property cardinalities defined in the schema");
+        options.addOption(OPTION_REPAIR_CONSTRAINTS, false, "Repair the violations found by the audit keeping the edge "
+                + "or property value with the lowest ID, not necessarily the oldest one (requires -" + OPTION_WRITE_TO_DB + ")");
+        options.addOption(OPTION_CONSTRAINT_REPORT, true, "Write the constraint violations into the specified JSON file");
+        options.addOption(OPTION_REBUILD_CHANGED, false, "Rebuild the graph indexes whose definition has changed under a new "
+                + "name and swap them with the existing ones instead of failing (requires -" + OPTION_WRITE_TO_DB + ")");
+        options.addOption(OPTION_REBUILD_RATE, true, "Maximum number of vertices per second processed while reindexing "
+                + "the rebuilt indexes (no limit by default)");
+        options.addOption(OPTION_CHECK_INSTANCES, true, "Before changing the schema, find the open graph instances not "
+                + "responding in the specified number of seconds and log the acknowledgements of the schema changes");
+        options.addOption(OPTION_FORCE_CLOSE_STALE, true, "Comma-separated IDs of the graph instances known to be dead "
+                + "to force close if they are found stale (requires -" + OPTION_CHECK_INSTANCES + " and -" + OPTION_WRITE_TO_DB
+                + "). A missing acknowledgement alone does not prove that an instance is dead");
+        options.addOption(OPTION_PRUNE_INDEXES, false, "Disable and remove the indexes existing in the graph but no longer "
+                + "defined in the schema (requires -" + OPTION_WRITE_TO_DB + ", only lists them otherwise)");
+        options.addOption(OPTION_CLEAN_GHOSTS, false, "Look for the ghost vertices (left by concurrent deletes), the edges "
+                + "pointing to missing vertices and the edges stored on one of their vertices only");
+        options.addOption(OPTION_REPAIR_GHOSTS, false, "Remove the ghost vertices and the broken edges found (requires -"
+                + OPTION_WRITE_TO_DB + ")");
+        options.addOption(OPTION_GHOST_REPORT, true, "Write the ghost vertex and broken edge counts into the specified JSON file");
+        options.addOption(OPTION_REAP_EXPIRED, false, "Remove the vertices and edges older than their TTL when the storage "
+                + "backend does not support TTL (requires -" + OPTION_WRITE_TO_DB + ")");
+        options.addOption(OPTION_REAP_INTERVAL, true, "Keep removing the expired elements with the specified interval in seconds "
+                + "(once by default)");
+        options.addOption(OPTION_REAP_RATE, true, "Maximum number of vertices per second processed while removing the expired "
+                + "elements (no limit by default)");
+        options.addOption(OPTION_CATCH_UP, true, "Bring the specified comma-separated graph indexes up to date by reindexing "
+                + "the elements changed since -" + OPTION_CATCH_UP_FROM + " according to the transaction log (requires -"
+                + OPTION_WRITE_TO_DB + ")");
+        options.addOption(OPTION_CATCH_UP_LOG, true, "Identifier of the transaction log the writers log their transactions to");
+        options.addOption(OPTION_CATCH_UP_FROM, true, "ISO-8601 time to replay the transaction log from, e.g. 2018-01-31T10:15:00Z");
+        options.addOption(OPTION_DYNAMODB_CAPACITY, true, "Raise the capacity of the DynamoDB tables to <read>:<write> units "
+                + "for the phases processing the data in bulk (index rebuild, unique check, migrations, reindexing, "
+                + "catch-up, loading and generating data), then restore it (requires -" + OPTION_WRITE_TO_DB + ")");
+        options.addOption(OPTION_DYNAMODB_STORES, true, "Comma-separated JanusGraph stores whose DynamoDB tables are scaled "
+                + "(edgestore,graphindex by default)");
+        options.addOption(OPTION_CHECK_INDEX, true, "Verify that the content of the specified graph index matches the data");
+        options.addOption(OPTION_REPAIR_INDEX, false, "Repair the inconsistent entries found by the index verification "
+                + "(requires -" + OPTION_WRITE_TO_DB + ")");
+        options.addOption(OPTION_CHECK_INDEX_SAMPLE, true, "Fraction of the vertices and of the index entries to check for the index verification "
+                + "and for the verification of the rebuilt indexes (1 is the default)");
+        options.addOption(OPTION_CHECK_INDEX_REPORT, true, "Write the index verification results into the specified JSON file");
         return options;
     }
 
@@ -0,0 +1,390 @@
+package com.newforma.titan.schema;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+import org.apache.tinkerpop.gremlin.groovy.jsr223.GremlinGroovyScriptEngine;
+import org.apache.tinkerpop.gremlin.process.traversal.Step;
+import org.apache.tinkerpop.gremlin.process.traversal.Traversal;
+import org.apache.tinkerpop.gremlin.process.traversal.step.HasContainerHolder;
+import org.apache.tinkerpop.gremlin.process.traversal.step.map.VertexStep;
+import org.apache.tinkerpop.gremlin.process.traversal.step.util.HasContainer;
+import org.apache.tinkerpop.gremlin.process.traversal.util.TraversalHelper;
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.T;
+import org.apache.tinkerpop.gremlin.structure.util.empty.EmptyGraph;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.JanusGraphVertex;
+import org.janusgraph.graphdb.internal.Order;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.newforma.titan.schema.scan.ParallelVertexScan;
+import com.newforma.titan.schema.scan.QuantileSketch;
+import com.newforma.titan.schema.types.LocalEdgeIndexDef;
+import com.newforma.titan.schema.types.SchemaEdgeLabel;
+import com.newforma.titan.schema.types.SchemaRelationshipDesc;
+import com.newforma.titan.schema.types.SchemaSortKey;
+import com.newforma.titan.schema.types.SchemaVertexLabel;
+import com.newforma.titan.schema.types.SchemaVertexRelationshipDesc;
+
+/**
+ * Finds the supernodes - the vertices with too many edges of one label in one direction - and
+ * suggests the local (vertex-centric) edge indexes for them. The degree distribution of every edge
+ * label and direction is collected by a parallel (optionally sampled) scan into quantile sketches,
+ * so the memory does not depend on the size of the graph. The vertices of the labels an edge label
+ * connects according to the schema relationships count with degree 0 when they have no such edges.
+ * When sampled, the number of the supernodes in the graph is estimated from the sample. For the
+ * vertices above the threshold the properties of their edges are counted; the sort keys of the
+ * suggested indexes are the edge
+ * properties filtered on by the traversals of the query file, if given, or the property present on
+ * most of the supernode edges otherwise.
+ *
+ * @author Nikolai
+ *
+ */
+public class SupernodeAnalyzer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SupernodeAnalyzer.class);
+
+    public static final long DEFAULT_THRESHOLD = 10000;
+    private static final int TOP_SUPERNODES = 10;
+    private static final int MAX_SORT_KEYS = 2;
+    // a property present on fewer supernode edges is not worth sorting by
+    private static final double MIN_KEY_PRESENCE = 0.5;
+
+    private final JanusGraph graph;
+    private final GraphState graphState;
+    private final long threshold;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private double sampleRate = 1.0;
+    private File queryFile;
+
+    private final Map<String, EdgeStats> stats = new ConcurrentHashMap<>();
+    // vertex label -> "label/direction" of the edges the vertices of the label can have
+    private final Map<String, Set<String>> connectedStats = new HashMap<>();
+
+    /**
+     * @param threshold number of the edges of one label and direction that makes a vertex a supernode
+     */
+    public SupernodeAnalyzer(JanusGraph graph, GraphState graphState, long threshold) {
+        Preconditions.checkArgument(threshold > 0, "Supernode threshold must be positive");
+        this.graph = graph;
+        this.graphState = graphState;
+        this.threshold = threshold;
+        for (final SchemaEdgeLabel e : graphState.getGraphSchemaDef().getEdges()) {
+            for (final SchemaRelationshipDesc rel : e.getRelationships()) {
+                addConnection(rel.getOut(), e.getLabel(), Direction.OUT);
+                addConnection(rel.getIn(), e.getLabel(), Direction.IN);
+            }
+        }
+        for (final SchemaVertexLabel v : graphState.getGraphSchemaDef().getVertices()) {
+            for (final SchemaVertexRelationshipDesc rel : v.getRelationships()) {
+                addConnection(v.getLabel(), rel.getEdge(), rel.getDirection());
+                addConnection(rel.getVertex(), rel.getEdge(), rel.getDirection().opposite());
+            }
+        }
+    }
+
+    private void addConnection(String vertexLabel, String edgeLabel, Direction direction) {
+        final Set<String> labelStats = connectedStats.computeIfAbsent(vertexLabel, k -> new HashSet<>());
+        for (final Direction dir : direction == Direction.BOTH ? Direction.proper : new Direction[] { direction }) {
+            labelStats.add(edgeLabel + "/" + dir);
+        }
+    }
+
+    public SupernodeAnalyzer threads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    public SupernodeAnalyzer sampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+        return this;
+    }
+
+    /**
+     * @param queryFile traversals (in {@link QueryPlanAnalyzer} format) to find the filtered edge properties in
+     */
+    public SupernodeAnalyzer queryFile(File queryFile) {
+        this.queryFile = queryFile;
+        return this;
+    }
+
+    /**
+     * Scans the graph, logs the degree distributions, the supernodes and the suggested indexes.
+     *
+     * @param reportFile file to write the report to as JSON, <code>null</code> to only log it
+     * @return suggested local edge indexes
+     */
+    public List<LocalEdgeIndexDef> analyze(File reportFile) throws SchemaManagementException {
+        final Map<String, Map<String, Long>> edgeFilters;
+        try {
+            edgeFilters = queryFile == null ? Collections.emptyMap() : getEdgeFilters(QueryPlanAnalyzer.readQueries(queryFile));
+        } catch (IOException | ScriptException e) {
+            throw new SchemaManagementException("Failed to read the queries from " + queryFile, e);
+        }
+
+        new ParallelVertexScan(graph, threads).sampleRate(sampleRate).run("Supernode detection", this::countEdges);
+
+        final List<LocalEdgeIndexDef> suggestions = new ArrayList<>();
+        final Map<String, Object> degreeReport = new LinkedHashMap<>();
+        for (final Map.Entry<String, EdgeStats> entry : new TreeMap<>(stats).entrySet()) {
+            final EdgeStats s = entry.getValue();
+            final QuantileSketch d = s.degrees;
+            final String supernodeCount = sampleRate < 1
+                    ? String.format("%d supernodes in the sample, about %d in the graph", s.supernodes.get(), estimate(s.supernodes.get()))
+                    : s.supernodes.get() + " supernodes";
+            LOG.info("{} {}: {} vertices{}, degree p50={} p90={} p99={} p999={} max={}, {}", s.label, s.direction,
+                    d.getCount(), sampleRate < 1 ? " sampled" : "", fmt(d.getQuantile(0.5)), fmt(d.getQuantile(0.9)),
+                    fmt(d.getQuantile(0.99)), fmt(d.getQuantile(0.999)), fmt(d.getMax()), supernodeCount);
+
+            final Map<String, Object> labelReport = new LinkedHashMap<>();
+            labelReport.put("vertices", Long.valueOf(d.getCount()));
+            labelReport.put("p50", Double.valueOf(d.getQuantile(0.5)));
+            labelReport.put("p90", Double.valueOf(d.getQuantile(0.9)));
+            labelReport.put("p99", Double.valueOf(d.getQuantile(0.99)));
+            labelReport.put("p999", Double.valueOf(d.getQuantile(0.999)));
+            labelReport.put("max", Double.valueOf(d.getMax()));
+            // the counts of the scanned vertices, of the sample if sampled
+            labelReport.put("supernodes", Long.valueOf(s.supernodes.get()));
+            if (sampleRate < 1) {
+                labelReport.put("estimated_supernodes", Long.valueOf(estimate(s.supernodes.get())));
+            }
+            degreeReport.put(entry.getKey(), labelReport);
+            if (s.supernodes.get() == 0) {
+                continue;
+            }
+
+            final List<Map<String, Object>> top = s.getTopSupernodes();
+            LOG.warn("{} {}: top supernodes {}", s.label, s.direction, top);
+            labelReport.put("top_supernodes", top);
+
+            final LocalEdgeIndexDef suggestion = suggestIndex(s, edgeFilters.getOrDefault(s.label + "/" + s.direction,
+                    Collections.emptyMap()));
+            if (suggestion != null) {
+                suggestions.add(suggestion);
+                labelReport.put("suggested_index", suggestion.getName());
+            }
+        }
+        final Map<String, Object> report = new LinkedHashMap<>();
+        report.put("threshold", Long.valueOf(threshold));
+        report.put("sample_rate", Double.valueOf(sampleRate));
+        report.put("degrees", degreeReport);
+        report.put("suggested_local_edge_indexes", suggestions);
+
+        try {
+            final ObjectMapper mapper = new ObjectMapper();
+            if (!suggestions.isEmpty()) {
+                LOG.warn("Suggested local edge indexes to add to the schema:\n{}",
+                        mapper.writerWithDefaultPrettyPrinter().writeValueAsString(suggestions));
+            }
+            if (reportFile != null) {
+                mapper.writerWithDefaultPrettyPrinter().writeValue(reportFile, report);
+            }
+        } catch (IOException e) {
+            throw new SchemaManagementException("Failed to write the supernode report to " + reportFile, e);
+        }
+        return suggestions;
+    }
+
+    private void countEdges(JanusGraphVertex v, JanusGraphTransaction tx) {
+        // counted locally first, the properties are only interesting for the supernodes
+        final Map<String, long[]> degrees = new HashMap<>();
+        final Map<String, Map<String, long[]>> keys = new HashMap<>();
+        // no edges of a label the vertex could have is a degree of 0, not a missing value
+        for (final String statsKey : connectedStats.getOrDefault(v.label(), Collections.emptySet())) {
+            degrees.put(statsKey, new long[1]);
+        }
+        v.edges(Direction.BOTH).forEachRemaining(e -> {
+            final Direction dir = v.id().equals(e.outVertex().id()) ? Direction.OUT : Direction.IN;
+            final String statsKey = e.label() + "/" + dir;
+            degrees.computeIfAbsent(statsKey, k -> new long[1])[0]++;
+            final Map<String, long[]> edgeKeys = keys.computeIfAbsent(statsKey, k -> new HashMap<>());
+            for (final String key : e.keys()) {
+                edgeKeys.computeIfAbsent(key, k -> new long[1])[0]++;
+            }
+        });
+        for (final Map.Entry<String, long[]> degree : degrees.entrySet()) {
+            final EdgeStats s = stats.computeIfAbsent(degree.getKey(), EdgeStats::new);
+            final long count = degree.getValue()[0];
+            s.degrees.add(count);
+            if (count >= threshold) {
+                s.addSupernode(v.id(), count, keys.get(degree.getKey()));
+            }
+        }
+    }
+
+    private LocalEdgeIndexDef suggestIndex(EdgeStats s, Map<String, Long> filters) {
+        final List<String> sortKeys;
+        if (!filters.isEmpty()) {
+            sortKeys = filters.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .map(Map.Entry::getKey)
+                    .filter(k -> graphState.getProperty(k) != null)
+                    .limit(MAX_SORT_KEYS)
+                    .collect(Collectors.toList());
+        } else {
+            sortKeys = s.getKeyPresence().entrySet().stream()
+                    .filter(e -> e.getValue().doubleValue() >= MIN_KEY_PRESENCE && graphState.getProperty(e.getKey()) != null)
+                    .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                    .map(Map.Entry::getKey)
+                    .limit(1)
+                    .collect(Collectors.toList());
+        }
+        if (sortKeys.isEmpty()) {
+            LOG.warn("{} {}: no edge property suitable for a sort key, consider adding one", s.label, s.direction);
+            return null;
+        }
+        for (final LocalEdgeIndexDef existing : graphState.getGraphSchemaDef().getLocalEdgeIndexes()) {
+            if (existing.getLabel().equals(s.label)
+                    && (existing.getDirection() == s.direction || existing.getDirection() == Direction.BOTH)
+                    && existing.getSortKey().getKeys().get(0).equals(sortKeys.get(0))) {
+                LOG.info("{} {}: already covered by local edge index {}", s.label, s.direction, existing.getName());
+                return null;
+            }
+        }
+        return newLocalEdgeIndexDef(s.label, s.direction, sortKeys);
+    }
+
+    static LocalEdgeIndexDef newLocalEdgeIndexDef(String label, Direction direction, List<String> sortKeys) {
+        final SchemaSortKey sortKey = new SchemaSortKey();
+        sortKey.setKeys(new ArrayList<>(sortKeys));
+        sortKey.setOrder(Order.ASC);
+        final LocalEdgeIndexDef indexDef = new LocalEdgeIndexDef();
+        indexDef.setName(label + "_" + direction.name().toLowerCase() + "_by_" + String.join("_", sortKeys));
+        indexDef.setLabel(label);
+        indexDef.setDirection(direction);
+        indexDef.setSortKey(sortKey);
+        return indexDef;
+    }
+
+    /**
+     * Finds the edge properties filtered on right after the edges are selected, e.g.
+     * <code>outE('created').has('date', gt(x))</code>.
+     *
+     * @return "label/direction" -&gt; property -&gt; number of the filters
+     */
+    static Map<String, Map<String, Long>> getEdgeFilters(List<String> queries) throws ScriptException {
+        final Map<String, Map<String, Long>> filters = new HashMap<>();
+        final GremlinGroovyScriptEngine engine = new GremlinGroovyScriptEngine();
+        // the traversals are only built, not executed
+        final Map<String, Object> bindings = ImmutableMap.of("g", EmptyGraph.instance().traversal());
+        for (final String query : queries) {
+            final Object evaluated = engine.eval(query, new SimpleBindings(new HashMap<>(bindings)));
+            if (!(evaluated instanceof Traversal)) {
+                continue;
+            }
+            final Traversal.Admin<?, ?> traversal = ((Traversal<?, ?>) evaluated).asAdmin();
+            for (final VertexStep<?> step : TraversalHelper.getStepsOfAssignableClassRecursively(VertexStep.class, traversal)) {
+                if (!step.returnsEdge()) {
+                    continue;
+                }
+                final List<String> keys = new ArrayList<>();
+                for (Step<?, ?> next = step.getNextStep(); next instanceof HasContainerHolder; next = next.getNextStep()) {
+                    for (final HasContainer c : ((HasContainerHolder) next).getHasContainers()) {
+                        if (!c.getKey().equals(T.label.getAccessor()) && !c.getKey().equals(T.id.getAccessor())) {
+                            keys.add(c.getKey());
+                        }
+                    }
+                }
+                final List<Direction> directions = step.getDirection() == Direction.BOTH
+                        ? Arrays.asList(Direction.OUT, Direction.IN) : Collections.singletonList(step.getDirection());
+                for (final String label : step.getEdgeLabels()) {
+                    for (final Direction dir : directions) {
+                        final Map<String, Long> labelFilters = filters.computeIfAbsent(label + "/" + dir, k -> new HashMap<>());
+                        keys.forEach(k -> labelFilters.merge(k, Long.valueOf(1), Long::sum));
+                    }
+                }
+            }
+        }
+        return filters;
+    }
+
+    /**
+     * @return number of the vertices in the graph estimated from their number in the sample
+     */
+    private long estimate(long sampled) {
+        return Math.round(sampled / sampleRate);
+    }
+
+    private static String fmt(double value) {
+        return String.format("%.0f", Double.valueOf(value));
+    }
+
+    /**
+     * Degree statistics of one edge label in one direction.
+     */
+    private static class EdgeStats {
+        private final String label;
+        private final Direction direction;
+        private final QuantileSketch degrees = new QuantileSketch();
+        private final AtomicLong supernodes = new AtomicLong();
+        private final AtomicLong supernodeEdges = new AtomicLong();
+        private final Map<String, AtomicLong> supernodeKeys = new ConcurrentHashMap<>();
+        private final PriorityQueue<Object[]> top = new PriorityQueue<>(Comparator.comparingLong(e -> ((Long) e[1]).longValue()));
+
+        private EdgeStats(String statsKey) {
+            final int pos = statsKey.lastIndexOf('/');
+            this.label = statsKey.substring(0, pos);
+            this.direction = Direction.valueOf(statsKey.substring(pos + 1));
+        }
+
+        private void addSupernode(Object vertexId, long degree, Map<String, long[]> keys) {
+            supernodes.incrementAndGet();
+            supernodeEdges.addAndGet(degree);
+            keys.forEach((k, c) -> supernodeKeys.computeIfAbsent(k, x -> new AtomicLong()).addAndGet(c[0]));
+            synchronized (top) {
+                top.add(new Object[] { vertexId, Long.valueOf(degree) });
+                if (top.size() > TOP_SUPERNODES) {
+                    top.poll();
+                }
+            }
+        }
+
+        private List<Map<String, Object>> getTopSupernodes() {
+            final List<Object[]> sorted;
+            synchronized (top) {
+                sorted = new ArrayList<>(top);
+            }
+            sorted.sort(Comparator.comparingLong((Object[] e) -> ((Long) e[1]).longValue()).reversed());
+            return sorted.stream().map(e -> {
+                final Map<String, Object> m = new LinkedHashMap<>();
+                m.put("id", e[0]);
+                m.put("degree", e[1]);
+                return m;
+            }).collect(Collectors.toList());
+        }
+
+        /**
+         * @return property -&gt; fraction of the supernode edges having it
+         */
+        private Map<String, Double> getKeyPresence() {
+            final long edges = supernodeEdges.get();
+            return supernodeKeys.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey,
+                    e -> Double.valueOf(edges == 0 ? 0 : (double) e.getValue().get() / edges)));
+        }
+    }
+}
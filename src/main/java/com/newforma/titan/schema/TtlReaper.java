@@ -0,0 +1,245 @@
+package com.newforma.titan.schema;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.tinkerpop.gremlin.process.traversal.P;
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Element;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.JanusGraphVertex;
+import org.janusgraph.core.VertexLabel;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.AbstractIterator;
+import com.newforma.titan.schema.scan.ParallelVertexScan;
+import com.newforma.titan.schema.types.GraphIndexDef;
+import com.newforma.titan.schema.types.GraphIndexDef.IndexType;
+import com.newforma.titan.schema.types.GraphIndexDef.RelType;
+import com.newforma.titan.schema.types.SchemaEdgeLabel;
+import com.newforma.titan.schema.types.SchemaPropertyDef;
+import com.newforma.titan.schema.types.SchemaVertexLabel;
+
+/**
+ * Emulates the vertex and edge TTL of the schema on the storage backends without cell TTL: the
+ * elements whose creation time (the <code>ttl_timestamp_key</code> property of the graph defaults)
+ * is older than their TTL are removed. The expired elements are looked up with a mixed index on
+ * the timestamp if the schema has one, otherwise all the vertices are scanned. They are removed by
+ * several threads, optionally at a limited rate, in a transaction per batch.
+ * <p>
+ * The vertices of the static labels cannot be removed, their TTL is only applied by the storage
+ * backends supporting TTL and is skipped here.
+ *
+ * @author Nikolai
+ *
+ */
+public class TtlReaper {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TtlReaper.class);
+
+    private final JanusGraph graph;
+    private final GraphState graphState;
+    private final String timestampKey;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private double maxRate;
+
+    public TtlReaper(JanusGraph graph, GraphState graphState) {
+        this.graph = graph;
+        this.graphState = graphState;
+        this.timestampKey = graphState.getGraphSchemaDef().getGraph().getDefaults().getTtlTimestampKey();
+    }
+
+    public TtlReaper threads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @param verticesPerSecond maximum number of the vertices processed per second, 0 (the default) for no limit
+     */
+    public TtlReaper maxRate(double verticesPerSecond) {
+        this.maxRate = verticesPerSecond;
+        return this;
+    }
+
+    /**
+     * Removes the expired vertices and edges once.
+     *
+     * @return number of the removed elements
+     */
+    public long run() throws SchemaManagementException {
+        if (graphState.isTtlSupported()) {
+            LOG.info("Storage backend supports TTL, the expired elements are removed by the backend");
+            return 0;
+        }
+        if (timestampKey == null) {
+            throw new SchemaManagementException("TTL emulation requires \"ttl_timestamp_key\" in the graph defaults");
+        }
+        long removed = 0;
+        for (final SchemaVertexLabel vertexDef : graphState.getGraphSchemaDef().getVertices()) {
+            if (vertexDef.getTtl() != null && !isStatic(vertexDef.getLabel())) {
+                removed += reap(RelType.VERTEX, vertexDef.getLabel(), vertexDef.getTtl().getDuration());
+            }
+        }
+        for (final SchemaEdgeLabel edgeDef : graphState.getGraphSchemaDef().getEdges()) {
+            if (edgeDef.getTtl() != null) {
+                removed += reap(RelType.EDGE, edgeDef.getLabel(), edgeDef.getTtl().getDuration());
+            }
+        }
+        for (final SchemaPropertyDef propertyDef : graphState.getGraphSchemaDef().getProperties()) {
+            if (propertyDef.getTtl() != null) {
+                LOG.warn("TTL of property \"{}\" cannot be emulated, the values have no creation time", propertyDef.getKey());
+            }
+        }
+        return removed;
+    }
+
+    private long reap(RelType relType, String label, Duration ttl) throws SchemaManagementException {
+        final long cutoff = System.currentTimeMillis() - ttl.toMillis();
+        final AtomicLong removed = new AtomicLong();
+        final ParallelVertexScan scan = new ParallelVertexScan(graph, threads).maxRate(maxRate)
+                .batchSize(ParallelVertexScan.DEFAULT_BATCH_SIZE);
+        final String indexName = findTimestampIndex(relType, label);
+        JanusGraphTransaction queryTx = null;
+        try {
+            if (indexName != null) {
+                LOG.info("Looking up the expired {} {} with index {}", relType, label, indexName);
+                queryTx = graph.buildTransaction().readOnly().start();
+                final P<Object> expired = P.lt(toTimestamp(cutoff));
+                // a vertex with several expired edges is handed over once per batch, without keeping all the
+                // vertex IDs; another batch it is handed over to only removes the edges still there
+                scan.vertexIds(relType == RelType.VERTEX
+                        ? queryTx.traversal().V().hasLabel(label).has(timestampKey, expired).id()
+                        : dedupPerBatch(queryTx.traversal().E().hasLabel(label).has(timestampKey, expired).outV().id(),
+                                ParallelVertexScan.DEFAULT_BATCH_SIZE));
+            }
+            scan.runBatches("Expiring " + relType + " " + label,
+                    (vertices, tx) -> removed.addAndGet(removeExpired(relType, label, cutoff, vertices)));
+        } finally {
+            if (queryTx != null) {
+                queryTx.rollback();
+            }
+        }
+        LOG.info("Removed {} expired {} {} created before {}", removed.get(), relType, label, new Date(cutoff));
+        return removed.get();
+    }
+
+    private long removeExpired(RelType relType, String label, long cutoff, List<JanusGraphVertex> vertices) {
+        final JanusGraphTransaction tx = graph.newTransaction();
+        try {
+            long count = 0;
+            for (final JanusGraphVertex scanned : vertices) {
+                if (relType == RelType.VERTEX && (!label.equals(scanned.label()) || !isExpired(scanned, cutoff))) {
+                    continue;
+                }
+                final JanusGraphVertex v = tx.getVertex(((Number) scanned.id()).longValue());
+                if (v == null) {
+                    continue;
+                }
+                if (relType == RelType.VERTEX) {
+                    v.remove();
+                    count++;
+                } else {
+                    for (final Iterator<Edge> edges = v.edges(Direction.OUT, label); edges.hasNext();) {
+                        final Edge e = edges.next();
+                        if (isExpired(e, cutoff)) {
+                            e.remove();
+                            count++;
+                        }
+                    }
+                }
+            }
+            if (count > 0) {
+                tx.commit();
+            }
+            return count;
+        } finally {
+            if (tx.isOpen()) {
+                tx.rollback();
+            }
+        }
+    }
+
+    /**
+     * @return true if the vertex label exists and is static, its vertices cannot be removed
+     */
+    private boolean isStatic(String label) {
+        final JanusGraphManagement mgmt = graph.openManagement();
+        try {
+            final VertexLabel vertexLabel = mgmt.getVertexLabel(label);
+            if (vertexLabel != null && vertexLabel.isStatic()) {
+                LOG.warn("Vertex label \"{}\" is static, its vertices cannot be removed and its TTL cannot be emulated", label);
+                return true;
+            }
+            return false;
+        } finally {
+            mgmt.rollback();
+        }
+    }
+
+    /**
+     * @return the IDs without the repeated ones within every batch of the given size, the batches of the
+     * scan being formed from the returned IDs
+     */
+    static Iterator<Object> dedupPerBatch(Iterator<?> ids, int batchSize) {
+        return new AbstractIterator<Object>() {
+            private final Set<Object> batch = new HashSet<>();
+
+            @Override
+            protected Object computeNext() {
+                while (ids.hasNext()) {
+                    final Object id = ids.next();
+                    if (batch.size() >= batchSize) {
+                        batch.clear();
+                    }
+                    if (batch.add(id)) {
+                        return id;
+                    }
+                }
+                return endOfData();
+            }
+        };
+    }
+
+    /**
+     * @return name of a mixed index the expired elements can be looked up with, <code>null</code> if there is none
+     */
+    private String findTimestampIndex(RelType relType, String label) {
+        for (final GraphIndexDef indexDef : graphState.getGraphSchemaDef().getGraphIndexes()) {
+            if (indexDef.getIndexType() == IndexType.MIXED && indexDef.getRelType() == relType
+                    && (indexDef.getIndexOnly() == null || indexDef.getIndexOnly().equals(label))
+                    && indexDef.getKeys().stream().anyMatch(k -> timestampKey.equals(k.getKey()))) {
+                return indexDef.getName();
+            }
+        }
+        return null;
+    }
+
+    private Object toTimestamp(long time) {
+        final SchemaPropertyDef propertyDef = graphState.getProperty(timestampKey);
+        return propertyDef != null && Date.class.getName().equals(propertyDef.getDataType())
+                ? new Date(time) : Long.valueOf(time);
+    }
+
+    /**
+     * @return true if the element has the creation time and it is before the cutoff
+     */
+    private boolean isExpired(Element element, long cutoff) {
+        final Object value = element.property(timestampKey).orElse(null);
+        if (value instanceof Date) {
+            return ((Date) value).getTime() < cutoff;
+        } else if (value instanceof Number) {
+            return ((Number) value).longValue() < cutoff;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,196 @@
+package com.newforma.titan.schema;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Element;
+import org.apache.tinkerpop.gremlin.structure.Property;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphVertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.newforma.titan.schema.scan.DuplicateFinder;
+import com.newforma.titan.schema.scan.ParallelVertexScan;
+import com.newforma.titan.schema.types.GraphIndexDef;
+import com.newforma.titan.schema.types.GraphIndexDef.RelType;
+import com.newforma.titan.schema.types.GraphIndexKeyDef;
+
+/**
+ * Checks that the existing data does not violate the unique graph indexes before they are
+ * created. One parallel scan of the vertices (and their outgoing edges, for the edge indexes)
+ * collects the value tuples of all the indexes, the tuples shared by more than one element are
+ * reported with a sample of them.
+ *
+ * @author Nikolai
+ *
+ */
+public class UniqueIndexChecker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UniqueIndexChecker.class);
+
+    private static final int SAMPLE_GROUPS = 10;
+    private static final int SAMPLE_IDS = 10;
+
+    /**
+     * Duplicates found for one index.
+     */
+    public static class Duplicates {
+        private final String indexName;
+        private long groupCount;
+        private final Map<String, List<String>> samples = new LinkedHashMap<>();
+
+        Duplicates(String indexName) {
+            this.indexName = indexName;
+        }
+
+        public String getIndexName() {
+            return indexName;
+        }
+
+        /**
+         * @return number of the value tuples shared by more than one element
+         */
+        public long getGroupCount() {
+            return groupCount;
+        }
+
+        /**
+         * @return some of the shared value tuples (as JSON arrays) with some of the element IDs having them
+         */
+        public Map<String, List<String>> getSamples() {
+            return samples;
+        }
+
+        @Override
+        public String toString() {
+            return "index " + indexName + ": " + groupCount + " duplicate value(s), e.g. " + samples;
+        }
+    }
+
+    private final JanusGraph graph;
+    private final List<GraphIndexDef> indexes;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int maxInMemory = DuplicateFinder.DEFAULT_MAX_IN_MEMORY;
+
+    public UniqueIndexChecker(JanusGraph graph, Collection<GraphIndexDef> indexes) {
+        this.graph = graph;
+        this.indexes = new ArrayList<>(indexes);
+    }
+
+    public UniqueIndexChecker threads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @param maxInMemory number of the distinct value tuples of one index kept in memory before
+     * spilling them to the disk
+     */
+    public UniqueIndexChecker maxInMemory(int maxInMemory) {
+        this.maxInMemory = maxInMemory;
+        return this;
+    }
+
+    /**
+     * @return the indexes with duplicates, empty if there are none
+     */
+    public List<Duplicates> check() throws SchemaManagementException {
+        final List<Duplicates> result = new ArrayList<>();
+        if (indexes.isEmpty()) {
+            return result;
+        }
+        final List<DuplicateFinder> finders = new ArrayList<>(indexes.size());
+        try {
+            for (int i = 0; i < indexes.size(); i++) {
+                finders.add(new DuplicateFinder(maxInMemory));
+            }
+            final ObjectMapper mapper = new ObjectMapper();
+            final AtomicLong tuples = new AtomicLong();
+            new ParallelVertexScan(graph, threads).run("Uniqueness check of " + indexes.size() + " index(es)", (v, tx) -> {
+                for (int i = 0; i < indexes.size(); i++) {
+                    for (final Element e : getIndexedElements(indexes.get(i), v)) {
+                        for (final List<Object> tuple : getValueTuples(indexes.get(i), e)) {
+                            finders.get(i).add(toKey(mapper, tuple), e.id().toString());
+                            tuples.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            LOG.info("Collected {} value tuples of the unique indexes", tuples.get());
+
+            for (int i = 0; i < indexes.size(); i++) {
+                final Duplicates duplicates = new Duplicates(indexes.get(i).getName());
+                finders.get(i).forEachDuplicate((key, ids) -> {
+                    duplicates.groupCount++;
+                    if (duplicates.samples.size() < SAMPLE_GROUPS) {
+                        duplicates.samples.put(key, new ArrayList<>(ids.subList(0, Math.min(SAMPLE_IDS, ids.size()))));
+                    }
+                });
+                if (duplicates.groupCount > 0) {
+                    LOG.error("Unique {}", duplicates);
+                    result.add(duplicates);
+                }
+            }
+        } catch (IOException e) {
+            throw new SchemaManagementException("Failed to collect the values of the unique indexes", e);
+        } finally {
+            for (final DuplicateFinder finder : finders) {
+                try {
+                    finder.close();
+                } catch (IOException e) {
+                    LOG.warn("Failed to remove the temporary files", e);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static List<Element> getIndexedElements(GraphIndexDef indexDef, JanusGraphVertex v) {
+        final String indexOnly = indexDef.getIndexOnly();
+        final List<Element> elements = new ArrayList<>();
+        if (indexDef.getRelType() == RelType.VERTEX) {
+            if (indexOnly == null || indexOnly.equals(v.label())) {
+                elements.add(v);
+            }
+        } else {
+            final Iterator<Edge> edges = indexOnly == null ? v.edges(Direction.OUT) : v.edges(Direction.OUT, indexOnly);
+            edges.forEachRemaining(elements::add);
+        }
+        return elements;
+    }
+
+    /**
+     * @return all the combinations of the values of the index keys, none if any key is missing
+     */
+    private static List<List<Object>> getValueTuples(GraphIndexDef indexDef, Element element) {
+        final List<List<Object>> values = new ArrayList<>(indexDef.getKeys().size());
+        for (final GraphIndexKeyDef key : indexDef.getKeys()) {
+            final List<Object> keyValues = new ArrayList<>(1);
+            for (final Iterator<? extends Property<Object>> it = element.properties(key.getKey()); it.hasNext();) {
+                keyValues.add(it.next().value());
+            }
+            if (keyValues.isEmpty()) {
+                return new ArrayList<>();
+            }
+            values.add(keyValues);
+        }
+        return Lists.cartesianProduct(values);
+    }
+
+    private static String toKey(ObjectMapper mapper, List<Object> tuple) throws JsonProcessingException {
+        // the type of every value is defined by its property, so the JSON form is unambiguous
+        return mapper.writeValueAsString(tuple);
+    }
+}
@@ -7,17 +7,33 @@ import com.google.common.base.Preconditions;
 public class ReindexAction {
 	public enum IndexTarget { ALL, NEW, NAMED, UNAVAILABLE }
 
-	public enum IndexingMethod { LOCAL, HADOOP, HADOOP2 }
+	/**
+	 * PARTIAL reindexes only the elements in the scope of the action (see
+	 * {@link ReindexAction#ReindexAction(IndexTarget, IndexingMethod, String, String, String)}),
+	 * graph indexes only
+	 */
+	public enum IndexingMethod { LOCAL, HADOOP, HADOOP2, PARTIAL }
 
 	private final IndexTarget target;
 	private final String indexName;
 	private final IndexingMethod method;
+	private final String label;
+	private final String vertexIdsFile;
 
 	public ReindexAction(IndexTarget target) {
 		this(target, IndexingMethod.LOCAL, null);
 	}
 
 	public ReindexAction(IndexTarget target, IndexingMethod method, String indexName) {
+		this(target, method, indexName, null, null);
+	}
+
+	/**
+	 * @param label only reindex the vertices with this label (or their edges), <code>null</code> for any
+	 * @param vertexIdsFile only reindex the vertices (or their edges) with the IDs listed in this file,
+	 * one per line, <code>null</code> for all
+	 */
+	public ReindexAction(IndexTarget target, IndexingMethod method, String indexName, String label, String vertexIdsFile) {
 		Preconditions.checkNotNull(target, "Reindex target cannot be null");
 		Preconditions.checkArgument(
 				target != IndexTarget.NAMED || (target == IndexTarget.NAMED && !StringUtils.isEmpty(indexName)),
@@ -25,6 +41,8 @@ public class ReindexAction {
 		this.target = target;
 		this.method = method;
 		this.indexName = indexName;
+		this.label = label;
+		this.vertexIdsFile = vertexIdsFile;
 	}
 
 	public IndexTarget getTarget() {
@@ -38,4 +56,12 @@ public class ReindexAction {
     public IndexingMethod getMethod() {
         return method;
     }
+
+	public String getLabel() {
+		return label;
+	}
+
+	public String getVertexIdsFile() {
+		return vertexIdsFile;
+	}
 }
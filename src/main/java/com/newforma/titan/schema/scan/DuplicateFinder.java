@@ -0,0 +1,156 @@
+package com.newforma.titan.schema.scan;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Finds the keys added with more than one element ID. The keys are grouped in memory until there
+ * are too many of them, then all of them are spilled to temporary files partitioned by the key
+ * hash and every partition is grouped separately in the end, so only one partition has to fit in
+ * memory at a time.
+ *
+ * @author Nikolai
+ *
+ */
+public class DuplicateFinder implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DuplicateFinder.class);
+
+    public static final int DEFAULT_MAX_IN_MEMORY = 1000000;
+    private static final int PARTITIONS = 64;
+
+    private final int maxInMemory;
+    private Map<String, List<String>> inMemory = new HashMap<>();
+    private File spillDir;
+    private DataOutputStream[] partitions;
+
+    public DuplicateFinder() {
+        this(DEFAULT_MAX_IN_MEMORY);
+    }
+
+    /**
+     * @param maxInMemory number of the keys grouped in memory before spilling them to the disk
+     */
+    public DuplicateFinder(int maxInMemory) {
+        Preconditions.checkArgument(maxInMemory > 0, "Number of the keys in memory must be positive");
+        this.maxInMemory = maxInMemory;
+    }
+
+    public synchronized void add(String key, String id) throws IOException {
+        if (partitions != null) {
+            write(key, id);
+            return;
+        }
+        inMemory.computeIfAbsent(key, k -> new ArrayList<>(1)).add(id);
+        if (inMemory.size() > maxInMemory) {
+            spill();
+        }
+    }
+
+    /**
+     * Calls the consumer for every key added with more than one ID, in no particular order.
+     */
+    public synchronized void forEachDuplicate(BiConsumer<String, List<String>> consumer) throws IOException {
+        if (partitions == null) {
+            emitDuplicates(inMemory, consumer);
+            return;
+        }
+        for (final DataOutputStream out : partitions) {
+            out.close();
+        }
+        for (int p = 0; p < PARTITIONS; p++) {
+            final Map<String, List<String>> groups = new HashMap<>();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(partitionFile(p))))) {
+                while (true) {
+                    final String key;
+                    try {
+                        key = readString(in);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    groups.computeIfAbsent(key, k -> new ArrayList<>(1)).add(readString(in));
+                }
+            }
+            emitDuplicates(groups, consumer);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (partitions != null) {
+            for (final DataOutputStream out : partitions) {
+                out.close();
+            }
+            FileUtils.deleteDirectory(spillDir);
+            partitions = null;
+        }
+        inMemory = null;
+    }
+
+    private void spill() throws IOException {
+        spillDir = Files.createTempDirectory("duplicates").toFile();
+        LOG.info("More than {} distinct keys, spilling them to {}", Integer.valueOf(maxInMemory), spillDir);
+        partitions = new DataOutputStream[PARTITIONS];
+        for (int p = 0; p < PARTITIONS; p++) {
+            partitions[p] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(partitionFile(p))));
+        }
+        for (final Map.Entry<String, List<String>> e : inMemory.entrySet()) {
+            for (final String id : e.getValue()) {
+                write(e.getKey(), id);
+            }
+        }
+        inMemory = null;
+    }
+
+    private void write(String key, String id) throws IOException {
+        final DataOutputStream out = partitions[(key.hashCode() & Integer.MAX_VALUE) % PARTITIONS];
+        writeString(out, key);
+        writeString(out, id);
+    }
+
+    private File partitionFile(int partition) {
+        return new File(spillDir, "partition-" + partition);
+    }
+
+    private static void emitDuplicates(Map<String, List<String>> groups, BiConsumer<String, List<String>> consumer) {
+        for (final Map.Entry<String, List<String>> e : groups.entrySet()) {
+            if (e.getValue().size() > 1) {
+                consumer.accept(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    // unlike writeUTF(), not limited to 64K
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,84 @@
+package com.newforma.titan.schema.scan;
+
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Distinct count estimate with a fixed memory (2^precision bytes), the standard error is
+ * about 1.04 / sqrt(2^precision), i.e. 0.8% for the default precision. The values are hashed by
+ * their string form, so e.g. <code>1</code> and <code>"1"</code> are counted as one value.
+ *
+ * @author Nikolai
+ *
+ */
+public class HyperLogLog {
+
+    public static final int DEFAULT_PRECISION = 14;
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public HyperLogLog(int precision) {
+        Preconditions.checkArgument(precision >= 4 && precision <= 18, "Precision must be between 4 and 18");
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public void add(Object value) {
+        final long hash = HASH.hashString(String.valueOf(value), StandardCharsets.UTF_8).asLong();
+        final int index = (int) (hash >>> (64 - precision));
+        // position of the first 1 bit in the remaining bits, the added 1 bit stops at the end of them
+        final byte rank = (byte) (Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1);
+        synchronized (registers) {
+            if (registers[index] < rank) {
+                registers[index] = rank;
+            }
+        }
+    }
+
+    public void merge(HyperLogLog other) {
+        Preconditions.checkArgument(other.precision == precision, "Counters with different precision cannot be merged");
+        final byte[] copy;
+        synchronized (other.registers) {
+            copy = other.registers.clone();
+        }
+        synchronized (registers) {
+            for (int i = 0; i < registers.length; i++) {
+                registers[i] = (byte) Math.max(registers[i], copy[i]);
+            }
+        }
+    }
+
+    /**
+     * @return estimated number of the distinct values added
+     */
+    public long estimate() {
+        final int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        synchronized (registers) {
+            for (final byte r : registers) {
+                sum += 1.0 / (1L << r);
+                if (r == 0) {
+                    zeros++;
+                }
+            }
+        }
+        final double alpha = 0.7213 / (1 + 1.079 / m);
+        final double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // linear counting is more precise for the small cardinalities
+            return Math.round(m * Math.log((double) m / zeros));
+        }
+        return Math.round(estimate);
+    }
+}
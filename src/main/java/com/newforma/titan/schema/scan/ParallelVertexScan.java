@@ -0,0 +1,323 @@
+package com.newforma.titan.schema.scan;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.JanusGraphVertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.RateLimiter;
+import com.newforma.titan.schema.SchemaManagementException;
+
+/**
+ * Full (or sampled) scan of the graph vertices processed by several threads. The vertex IDs are
+ * read from one scan and handed over in batches to the worker threads, every batch is processed in
+ * its own read-only transaction, so the memory used by the transaction caches is bounded by the
+ * batch size. The scan is not read ahead of the processing by more than two batches per thread.
+ *
+ * @author Nikolai
+ *
+ */
+public class ParallelVertexScan {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelVertexScan.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final long PROGRESS_INTERVAL_MS = 10000;
+
+    /**
+     * Processes one vertex, called concurrently by the worker threads.
+     */
+    @FunctionalInterface
+    public interface VertexProcessor {
+        void process(JanusGraphVertex vertex, JanusGraphTransaction tx) throws Exception;
+    }
+
+    /**
+     * Processes one batch of the vertices, called concurrently by the worker threads.
+     */
+    @FunctionalInterface
+    public interface BatchProcessor {
+        void process(List<JanusGraphVertex> vertices, JanusGraphTransaction tx) throws Exception;
+    }
+
+    /**
+     * Processes one batch of the scanned vertex IDs, including the IDs of the vertices that do not
+     * exist (e.g. ghost vertices), called concurrently by the worker threads.
+     */
+    @FunctionalInterface
+    public interface IdBatchProcessor {
+        void process(List<Object> vertexIds) throws Exception;
+    }
+
+    /**
+     * Receives the scan checkpoints, called by the scanning thread.
+     */
+    @FunctionalInterface
+    public interface CheckpointListener {
+        /**
+         * @param vertexId ID of the vertex all the vertices up to which (in the scan order) have been processed
+         */
+        void checkpoint(Object vertexId) throws SchemaManagementException;
+    }
+
+    private final JanusGraph graph;
+    private final int threads;
+    private double sampleRate = 1.0;
+    private long seed = System.nanoTime();
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private Iterator<?> vertexIds;
+    private Object resumeAfter;
+    private CheckpointListener checkpointListener;
+    private RateLimiter rateLimiter;
+
+    public ParallelVertexScan(JanusGraph graph, int threads) {
+        Preconditions.checkArgument(threads > 0, "Number of threads must be positive");
+        this.graph = graph;
+        this.threads = threads;
+    }
+
+    /**
+     * @param sampleRate fraction of the vertices to process, 1 (the default) for all
+     */
+    public ParallelVertexScan sampleRate(double sampleRate) {
+        Preconditions.checkArgument(sampleRate > 0 && sampleRate <= 1, "Sample rate must be in (0, 1]");
+        this.sampleRate = sampleRate;
+        return this;
+    }
+
+    public ParallelVertexScan seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public ParallelVertexScan batchSize(int batchSize) {
+        Preconditions.checkArgument(batchSize > 0, "Batch size must be positive");
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * @param vertexIds IDs of the vertices to process instead of scanning all of them, the missing
+     * vertices are skipped
+     */
+    public ParallelVertexScan vertexIds(Iterator<?> vertexIds) {
+        this.vertexIds = vertexIds;
+        return this;
+    }
+
+    /**
+     * @param verticesPerSecond maximum rate of processing the vertices, to limit the load on the
+     * storage backend, 0 (the default) for no limit
+     */
+    public ParallelVertexScan maxRate(double verticesPerSecond) {
+        Preconditions.checkArgument(verticesPerSecond >= 0, "Rate must not be negative");
+        this.rateLimiter = verticesPerSecond > 0 ? RateLimiter.create(verticesPerSecond) : null;
+        return this;
+    }
+
+    /**
+     * @param vertexId ID of the vertex of a previous checkpoint, the vertices up to it are skipped. If
+     * the vertex no longer exists, all the vertices are processed. Full scans only.
+     */
+    public ParallelVertexScan resumeAfter(Object vertexId) {
+        this.resumeAfter = vertexId;
+        return this;
+    }
+
+    /**
+     * @param checkpointListener receives the checkpoints to resume the scan from at every progress
+     * report and at the end
+     */
+    public ParallelVertexScan checkpoints(CheckpointListener checkpointListener) {
+        this.checkpointListener = checkpointListener;
+        return this;
+    }
+
+    /**
+     * Runs the scan, failing on the first failure of the processor.
+     *
+     * @param description what the scan does, for the log messages
+     * @return number of the processed vertices
+     */
+    public long run(String description, VertexProcessor processor) throws SchemaManagementException {
+        return runBatches(description, (vertices, tx) -> {
+            for (final JanusGraphVertex v : vertices) {
+                processor.process(v, tx);
+            }
+        });
+    }
+
+    /**
+     * Runs the scan handing over the vertices batch by batch, e.g. for the processors that write
+     * something once per batch. Fails on the first failure of the processor.
+     *
+     * @param description what the scan does, for the log messages
+     * @return number of the processed vertices
+     */
+    public long runBatches(String description, BatchProcessor processor) throws SchemaManagementException {
+        return runIdBatches(description, ids -> processBatch(ids, processor));
+    }
+
+    /**
+     * Runs the scan handing over the vertex IDs batch by batch, without loading the vertices. Fails
+     * on the first failure of the processor.
+     *
+     * @param description what the scan does, for the log messages
+     * @return number of the processed vertex IDs
+     */
+    public long runIdBatches(String description, IdBatchProcessor processor) throws SchemaManagementException {
+        Preconditions.checkState(resumeAfter == null || vertexIds == null, "Only a full scan can be resumed");
+        final Random random = new Random(seed);
+        final ExecutorService workers = Executors.newFixedThreadPool(threads);
+        final Semaphore pending = new Semaphore(threads * 2);
+        final AtomicLong processed = new AtomicLong();
+        // in the scan order, the completed ones are forgotten when all the previous ones are completed too
+        final Deque<SubmittedBatch> batches = new ArrayDeque<>();
+        final JanusGraphTransaction scanTx = graph.buildTransaction().readOnly().start();
+        final long startTime = System.currentTimeMillis();
+        long lastReportTime = startTime;
+        long scanned = 0;
+        Object checkpoint = null;
+        Object lastCheckpoint = null;
+
+        LOG.info("{}: scanning {} of the vertices with {} threads", description,
+                sampleRate < 1 ? String.format("%.2f%%", sampleRate * 100) : "all", Integer.valueOf(threads));
+        if (resumeAfter != null) {
+            LOG.info("{}: resuming after vertex {}", description, resumeAfter);
+        }
+        try {
+            boolean skipping = resumeAfter != null;
+            Iterator<?> ids = vertexIds != null ? vertexIds : Iterators.transform(scanTx.vertices(), Vertex::id);
+            List<Object> batch = new ArrayList<>(batchSize);
+            while (ids.hasNext()) {
+                final Object id = ids.next();
+                scanned++;
+                if (skipping) {
+                    skipping = !id.equals(resumeAfter);
+                    if (!skipping || ids.hasNext()) {
+                        continue;
+                    }
+                    LOG.warn("{}: vertex {} to resume after has not been found, processing all the vertices",
+                            description, resumeAfter);
+                    skipping = false;
+                    ids = Iterators.transform(scanTx.vertices(), Vertex::id);
+                    continue;
+                }
+                if (sampleRate < 1 && random.nextDouble() >= sampleRate) {
+                    continue;
+                }
+                batch.add(id);
+                if (batch.size() >= batchSize) {
+                    checkpoint = submit(workers, pending, batches, batch, processor, processed, checkpoint);
+                    batch = new ArrayList<>(batchSize);
+                }
+
+                final long now = System.currentTimeMillis();
+                if (now - lastReportTime >= PROGRESS_INTERVAL_MS) {
+                    lastReportTime = now;
+                    LOG.info("{}: scanned {} vertices, processed {}", description, Long.valueOf(scanned),
+                            Long.valueOf(processed.get()));
+                    if (checkpointListener != null && checkpoint != null && checkpoint != lastCheckpoint) {
+                        checkpointListener.checkpoint(checkpoint);
+                        lastCheckpoint = checkpoint;
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                checkpoint = submit(workers, pending, batches, batch, processor, processed, checkpoint);
+            }
+            for (final SubmittedBatch b : batches) {
+                b.future.get();
+                checkpoint = b.lastId;
+            }
+            if (checkpointListener != null && checkpoint != null && checkpoint != lastCheckpoint) {
+                checkpointListener.checkpoint(checkpoint);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SchemaManagementException(description + " has been interrupted", e);
+        } catch (ExecutionException e) {
+            throw new SchemaManagementException(description + " has failed", e.getCause());
+        } finally {
+            workers.shutdownNow();
+            scanTx.rollback();
+        }
+        LOG.info("{}: scanned {} vertices, processed {} in {} ms", description, Long.valueOf(scanned),
+                Long.valueOf(processed.get()), Long.valueOf(System.currentTimeMillis() - startTime));
+        return processed.get();
+    }
+
+    /**
+     * @return the last vertex ID of the completed batches not preceded by any incomplete one
+     */
+    private Object submit(ExecutorService workers, Semaphore pending, Deque<SubmittedBatch> batches, List<Object> ids,
+            IdBatchProcessor processor, AtomicLong processed, Object checkpoint) throws InterruptedException, ExecutionException {
+        pending.acquire();
+        batches.add(new SubmittedBatch(workers.submit(() -> {
+            try {
+                if (rateLimiter != null) {
+                    rateLimiter.acquire(ids.size());
+                }
+                processor.process(ids);
+                processed.addAndGet(ids.size());
+            } finally {
+                pending.release();
+            }
+            return null;
+        }), ids.get(ids.size() - 1)));
+        // fails fast if a batch has failed
+        for (final SubmittedBatch b : batches) {
+            if (b.future.isDone()) {
+                b.future.get();
+            }
+        }
+        Object completed = checkpoint;
+        while (!batches.isEmpty() && batches.peekFirst().future.isDone()) {
+            completed = batches.pollFirst().lastId;
+        }
+        return completed;
+    }
+
+    private void processBatch(List<Object> ids, BatchProcessor processor) throws Exception {
+        final JanusGraphTransaction tx = graph.buildTransaction().readOnly().start();
+        try {
+            final List<JanusGraphVertex> vertices = new ArrayList<>(ids.size());
+            for (final Object id : ids) {
+                final JanusGraphVertex v = tx.getVertex(((Number) id).longValue());
+                if (v != null) {
+                    vertices.add(v);
+                }
+            }
+            processor.process(vertices, tx);
+        } finally {
+            tx.rollback();
+        }
+    }
+
+    private static final class SubmittedBatch {
+        private final Future<?> future;
+        private final Object lastId;
+
+        SubmittedBatch(Future<?> future, Object lastId) {
+            this.future = future;
+            this.lastId = lastId;
+        }
+    }
+}
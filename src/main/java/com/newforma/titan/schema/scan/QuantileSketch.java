@@ -0,0 +1,133 @@
+package com.newforma.titan.schema.scan;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Streaming quantile sketch for non-negative values (degrees, counts, sizes), with a bounded
+ * relative error. The values are counted in logarithmic buckets, so the memory depends only on
+ * the range of the values (a few hundred buckets cover 1..2^40 with 1% error), not on their number.
+ * The sketches of several scan threads can be merged.
+ *
+ * @author Nikolai
+ *
+ */
+public class QuantileSketch {
+
+    public static final double DEFAULT_RELATIVE_ERROR = 0.01;
+
+    private final double relativeError;
+    private final double logGamma;
+    private final TreeMap<Integer, Long> buckets = new TreeMap<>();
+    private long zeroCount;
+    private long count;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+    private double sum;
+
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ERROR);
+    }
+
+    /**
+     * @param relativeError maximum relative error of the returned quantiles, e.g. 0.01 for 1%
+     */
+    public QuantileSketch(double relativeError) {
+        Preconditions.checkArgument(relativeError > 0 && relativeError < 1, "Relative error must be between 0 and 1");
+        this.relativeError = relativeError;
+        this.logGamma = Math.log((1 + relativeError) / (1 - relativeError));
+    }
+
+    public synchronized void add(double value) {
+        Preconditions.checkArgument(value >= 0, "Negative values are not supported");
+        if (value == 0) {
+            zeroCount++;
+        } else {
+            buckets.merge(Integer.valueOf((int) Math.ceil(Math.log(value) / logGamma)), Long.valueOf(1), Long::sum);
+        }
+        count++;
+        sum += value;
+        min = count == 1 ? value : Math.min(min, value);
+        max = count == 1 ? value : Math.max(max, value);
+    }
+
+    public void merge(QuantileSketch other) {
+        Preconditions.checkArgument(other.relativeError == relativeError, "Sketches with different errors cannot be merged");
+        if (other == this) {
+            return;
+        }
+        // copying first, so the two sketches are never locked at the same time
+        final QuantileSketch copy = new QuantileSketch(relativeError);
+        synchronized (other) {
+            copy.buckets.putAll(other.buckets);
+            copy.zeroCount = other.zeroCount;
+            copy.count = other.count;
+            copy.min = other.min;
+            copy.max = other.max;
+            copy.sum = other.sum;
+        }
+        if (copy.count == 0) {
+            return;
+        }
+        synchronized (this) {
+            for (final Map.Entry<Integer, Long> bucket : copy.buckets.entrySet()) {
+                buckets.merge(bucket.getKey(), bucket.getValue(), Long::sum);
+            }
+            zeroCount += copy.zeroCount;
+            min = count == 0 ? copy.min : Math.min(min, copy.min);
+            max = count == 0 ? copy.max : Math.max(max, copy.max);
+            count += copy.count;
+            sum += copy.sum;
+        }
+    }
+
+    /**
+     * @param quantile quantile between 0 and 1, e.g. 0.99
+     * @return estimated value of the quantile, NaN if the sketch is empty
+     */
+    public synchronized double getQuantile(double quantile) {
+        Preconditions.checkArgument(quantile >= 0 && quantile <= 1, "Quantile must be between 0 and 1");
+        if (count == 0) {
+            return Double.NaN;
+        }
+        final long rank = (long) Math.ceil(quantile * count);
+        long seen = zeroCount;
+        if (rank <= seen) {
+            return 0;
+        }
+        for (final Map.Entry<Integer, Long> bucket : buckets.entrySet()) {
+            seen += bucket.getValue().longValue();
+            if (seen >= rank) {
+                // middle of the bucket, within the relative error from any value in it
+                final double value = 2 * Math.exp(bucket.getKey().intValue() * logGamma) / (1 + Math.exp(logGamma));
+                return Math.max(min, Math.min(max, value));
+            }
+        }
+        return max;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized double getMin() {
+        return min;
+    }
+
+    public synchronized double getMax() {
+        return max;
+    }
+
+    public synchronized double getMean() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    /**
+     * @return number of the buckets, i.e. the size of the sketch
+     */
+    synchronized int getBucketCount() {
+        return buckets.size() + (zeroCount > 0 ? 1 : 0);
+    }
+}
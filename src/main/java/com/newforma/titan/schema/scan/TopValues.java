@@ -0,0 +1,75 @@
+package com.newforma.titan.schema.scan;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The most frequent values of a stream, counted in a fixed number of slots (Space-Saving
+ * algorithm): when all the slots are taken, a new value replaces the least frequent one and
+ * inherits its count. The counts of the values are overestimated by at most
+ * <code>total / capacity</code>, the values more frequent than that are never missed.
+ *
+ * @author Nikolai
+ *
+ */
+public class TopValues {
+
+    public static final int DEFAULT_CAPACITY = 100;
+
+    private final int capacity;
+    private final Map<Object, long[]> counters = new HashMap<>();
+    private long total;
+
+    public TopValues() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TopValues(int capacity) {
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive");
+        this.capacity = capacity;
+    }
+
+    public synchronized void add(Object value) {
+        total++;
+        final long[] counter = counters.get(value);
+        if (counter != null) {
+            counter[0]++;
+        } else if (counters.size() < capacity) {
+            counters.put(value, new long[] { 1 });
+        } else {
+            Object minValue = null;
+            long minCount = Long.MAX_VALUE;
+            for (final Map.Entry<Object, long[]> e : counters.entrySet()) {
+                if (e.getValue()[0] < minCount) {
+                    minCount = e.getValue()[0];
+                    minValue = e.getKey();
+                }
+            }
+            counters.remove(minValue);
+            counters.put(value, new long[] { minCount + 1 });
+        }
+    }
+
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    /**
+     * @param limit maximum number of the values returned
+     * @return the most frequent values with their (estimated) counts, most frequent first
+     */
+    public synchronized Map<Object, Long> getTop(int limit) {
+        final List<Map.Entry<Object, long[]>> entries = new ArrayList<>(counters.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        final Map<Object, Long> top = new LinkedHashMap<>();
+        for (final Map.Entry<Object, long[]> e : entries.subList(0, Math.min(limit, entries.size()))) {
+            top.put(e.getKey(), Long.valueOf(e.getValue()[0]));
+        }
+        return top;
+    }
+}
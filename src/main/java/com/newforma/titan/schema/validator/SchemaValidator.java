@@ -1,5 +1,6 @@
 package com.newforma.titan.schema.validator;
 
+import java.util.HashSet;
 import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -10,6 +11,7 @@ import com.newforma.titan.schema.types.GraphIndexDef;
 import com.newforma.titan.schema.types.GraphSchemaDef;
 import com.newforma.titan.schema.types.LocalEdgeIndexDef;
 import com.newforma.titan.schema.types.LocalPropertyIndexDef;
+import com.newforma.titan.schema.types.MigrationDef;
 import com.newforma.titan.schema.types.SchemaEdgeLabel;
 import com.newforma.titan.schema.types.SchemaPropertyDef;
 import com.newforma.titan.schema.types.SchemaVertexLabel;
@@ -55,6 +57,8 @@ public class SchemaValidator {
 
 		validatePropertyDataTypes(schemaDef);
 		validateIndexes(schemaDef);
+		validateMigrations(schemaDef);
+		validateTtlTimestampKey(schemaDef);
 
 		// TODO: do more validation before we get to the DB changes
 	}
@@ -73,6 +77,49 @@ public class SchemaValidator {
 		}
 	}
 
+	private void validateMigrations(GraphSchemaDef schemaDef) throws SchemaValidationException {
+		final Set<String> keys = schemaDef.getProperties().stream().map(SchemaPropertyDef::getKey).collect(Collectors.toSet());
+		final Set<String> names = new HashSet<>();
+		for (final MigrationDef migration : schemaDef.getMigrations()) {
+			if (!names.add(migration.getName())) {
+				throw new SchemaValidationException("Duplicate migration name \"" + migration.getName() + "\"");
+			}
+			if (!keys.contains(migration.getKey())) {
+				throw new SchemaValidationException("Migration \"" + migration.getName() + "\" refers to undefined property \""
+						+ migration.getKey() + "\"");
+			}
+			if (migration.getSourceKey() != null && !keys.contains(migration.getSourceKey())) {
+				throw new SchemaValidationException("Migration \"" + migration.getName() + "\" refers to undefined property \""
+						+ migration.getSourceKey() + "\"");
+			}
+			final String missing;
+			switch (migration.getType()) {
+			case BACKFILL:
+				missing = migration.getValue() == null ? "a value" : null;
+				break;
+			case COPY:
+				missing = migration.getSourceKey() == null ? "a source key" : null;
+				break;
+			case TRANSFORM:
+				missing = StringUtils.isEmpty(migration.getExpression()) ? "an expression" : null;
+				break;
+			default:
+				throw new SchemaValidationException("Unsupported migration type " + migration.getType());
+			}
+			if (missing != null) {
+				throw new SchemaValidationException("Migration \"" + migration.getName() + "\" of type " + migration.getType()
+						+ " requires " + missing);
+			}
+		}
+	}
+
+	private void validateTtlTimestampKey(GraphSchemaDef schemaDef) throws SchemaValidationException {
+		final String key = schemaDef.getGraph().getDefaults().getTtlTimestampKey();
+		if (key != null && schemaDef.getProperties().stream().noneMatch(p -> key.equals(p.getKey()))) {
+			throw new SchemaValidationException("TTL timestamp refers to undefined property \"" + key + "\"");
+		}
+	}
+
 	private void validatePropertyDataTypes(GraphSchemaDef schemaDef) throws SchemaValidationException {
 		for (final SchemaPropertyDef propertyDef : schemaDef.getProperties()) {
 			try {
@@ -0,0 +1,205 @@
+package com.newforma.titan.utils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.diskstorage.locking.PermanentLockingException;
+import org.janusgraph.diskstorage.locking.TemporaryLockingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+import groovy.lang.Closure;
+
+/**
+ * Script binding (<code>batch</code>) for the data migrations that are too big for one transaction:
+ * <pre>
+ * batch(g.V().hasLabel('document'), 1000) { v -&gt; v.property('migrated', true) }
+ * batch(g.V().hasLabel('document'), 1000, 4) { v, tx -&gt; ... }
+ * </pre>
+ * The elements of the traversal are processed in batches, every batch in its own transaction
+ * that is committed at the end of the batch. The elements are re-read in the batch transaction,
+ * so the closure can modify them (the transaction is passed as the second parameter if the closure
+ * takes two). A batch failing because of a lock conflict is rolled back and re-executed a few
+ * times. Batches can be processed by several threads, the total number of the batches executed at
+ * the same time by all the scripts is limited.
+ *
+ * @author Nikolai
+ *
+ */
+public class BatchRunner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchRunner.class);
+
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long RETRY_BASE_DELAY_MS = 100;
+    private static final long PROGRESS_INTERVAL_MS = 10000;
+
+    private final JanusGraph graph;
+    private final Semaphore concurrencyLimit;
+
+    /**
+     * @param graph graph to open the batch transactions on
+     * @param maxConcurrency maximum number of the batches executed at the same time
+     */
+    public BatchRunner(JanusGraph graph, int maxConcurrency) {
+        Preconditions.checkArgument(maxConcurrency > 0, "Maximum concurrency must be positive");
+        this.graph = graph;
+        this.concurrencyLimit = new Semaphore(maxConcurrency);
+    }
+
+    public long call(Object source, int batchSize, Closure<?> closure) throws InterruptedException, ExecutionException {
+        return call(source, batchSize, 1, closure);
+    }
+
+    /**
+     * @param source traversal or any other iterator or iterable of the elements to process
+     * @param batchSize number of the elements processed (and committed) in one transaction
+     * @param threads number of the threads processing the batches
+     * @param closure closure to call for each element
+     * @return number of the processed elements
+     */
+    public long call(Object source, int batchSize, int threads, Closure<?> closure)
+            throws InterruptedException, ExecutionException {
+        Preconditions.checkArgument(batchSize > 0, "Batch size must be positive");
+        Preconditions.checkArgument(threads > 0, "Number of threads must be positive");
+
+        final Iterator<?> elements = toIterator(source);
+        final ExecutorService workers = Executors.newFixedThreadPool(threads);
+        // at most two batches per thread are waiting, the traversal is not read ahead of the processing
+        final Semaphore pending = new Semaphore(threads * 2);
+        final AtomicLong processed = new AtomicLong();
+        final List<Future<?>> batches = new ArrayList<>();
+        final long startTime = System.currentTimeMillis();
+        long lastReportTime = startTime;
+        try {
+            while (elements.hasNext()) {
+                final List<Object> batchElements = new ArrayList<>(batchSize);
+                while (batchElements.size() < batchSize && elements.hasNext()) {
+                    batchElements.add(elements.next());
+                }
+                pending.acquire();
+                batches.add(workers.submit(() -> {
+                    try {
+                        runBatch(batchElements, closure);
+                        processed.addAndGet(batchElements.size());
+                    } finally {
+                        pending.release();
+                    }
+                    return null;
+                }));
+                checkCompleted(batches);
+
+                final long now = System.currentTimeMillis();
+                if (now - lastReportTime >= PROGRESS_INTERVAL_MS) {
+                    lastReportTime = now;
+                    LOG.info("Processed {} elements, {} per second", processed.get(),
+                            processed.get() * 1000 / Math.max(1, now - startTime));
+                }
+            }
+            for (final Future<?> batch : batches) {
+                batch.get();
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        LOG.info("Processed {} elements in {} ms", processed.get(), System.currentTimeMillis() - startTime);
+        return processed.get();
+    }
+
+    private void runBatch(List<Object> elements, Closure<?> closure) throws InterruptedException {
+        concurrencyLimit.acquire();
+        try {
+            for (int attempt = 1;; attempt++) {
+                final JanusGraphTransaction tx = graph.newTransaction();
+                try {
+                    for (final Object element : elements) {
+                        final Object txElement = reload(tx, element);
+                        if (txElement == null) {
+                            // removed in the meantime
+                            continue;
+                        }
+                        if (closure.getMaximumNumberOfParameters() > 1) {
+                            closure.call(txElement, tx);
+                        } else {
+                            closure.call(txElement);
+                        }
+                    }
+                    tx.commit();
+                    return;
+                } catch (RuntimeException e) {
+                    if (attempt >= MAX_ATTEMPTS || !isLockConflict(e)) {
+                        throw e;
+                    }
+                    tx.rollback();
+                    final long delay = RETRY_BASE_DELAY_MS * (1L << attempt);
+                    LOG.warn("Lock conflict in a batch of {} elements, retrying (attempt {} of {})", elements.size(),
+                            attempt + 1, MAX_ATTEMPTS);
+                    Thread.sleep(delay + ThreadLocalRandom.current().nextLong(delay));
+                } finally {
+                    if (tx.isOpen()) {
+                        tx.rollback();
+                    }
+                }
+            }
+        } finally {
+            concurrencyLimit.release();
+        }
+    }
+
+    private static Object reload(JanusGraphTransaction tx, Object element) {
+        final Iterator<?> reloaded;
+        if (element instanceof Vertex) {
+            reloaded = tx.vertices(((Vertex) element).id());
+        } else if (element instanceof Edge) {
+            reloaded = tx.edges(((Edge) element).id());
+        } else {
+            // values, IDs, paths etc. are passed as they are
+            return element;
+        }
+        return reloaded.hasNext() ? reloaded.next() : null;
+    }
+
+    private static boolean isLockConflict(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof PermanentLockingException || t instanceof TemporaryLockingException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void checkCompleted(List<Future<?>> batches) throws InterruptedException, ExecutionException {
+        final Iterator<Future<?>> it = batches.iterator();
+        while (it.hasNext()) {
+            final Future<?> batch = it.next();
+            if (batch.isDone()) {
+                // fails fast if the batch has failed
+                batch.get();
+                it.remove();
+            }
+        }
+    }
+
+    private static Iterator<?> toIterator(Object source) {
+        if (source instanceof Iterator) {
+            return (Iterator<?>) source;
+        } else if (source instanceof Iterable) {
+            return ((Iterable<?>) source).iterator();
+        }
+        throw new IllegalArgumentException("Cannot iterate over " + source);
+    }
+}
@@ -0,0 +1,136 @@
+package com.newforma.titan.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Input stream that reads its source on a separate thread, a few chunks ahead of the consumer.
+ * Used to overlap the decompression of the data files with their parsing.
+ *
+ * @author Nikolai
+ *
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    private static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    private static final int DEFAULT_CHUNKS_AHEAD = 16;
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    private final InputStream source;
+    private final BlockingQueue<byte[]> chunks;
+    private final Thread reader;
+
+    private volatile Throwable failure;
+    private volatile boolean closed;
+
+    private byte[] current;
+    private int position;
+
+    public ReadAheadInputStream(InputStream source) {
+        this(source, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNKS_AHEAD);
+    }
+
+    public ReadAheadInputStream(InputStream source, int chunkSize, int chunksAhead) {
+        this.source = source;
+        this.chunks = new ArrayBlockingQueue<>(chunksAhead);
+        this.reader = new Thread(() -> readAhead(chunkSize), "read-ahead-" + source.getClass().getSimpleName());
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    private void readAhead(int chunkSize) {
+        try {
+            while (!closed) {
+                final byte[] buf = new byte[chunkSize];
+                int len = 0;
+                int n;
+                while (len < chunkSize && (n = source.read(buf, len, chunkSize - len)) >= 0) {
+                    len += n;
+                }
+                if (len > 0) {
+                    chunks.put(len == chunkSize ? buf : Arrays.copyOf(buf, len));
+                }
+                if (len < chunkSize) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed, nobody waits for the data
+            Thread.currentThread().interrupt();
+        } catch (Throwable e) {
+            // the errors as well, the consumer waits for the end of the stream otherwise
+            failure = e;
+        } finally {
+            if (!Thread.currentThread().isInterrupted()) {
+                try {
+                    chunks.put(END_OF_STREAM);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false if the end of the stream has been reached
+     */
+    private boolean ensureData() throws IOException {
+        if (current == END_OF_STREAM) {
+            return false;
+        }
+        if (current != null && position < current.length) {
+            return true;
+        }
+        try {
+            current = chunks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for data", e);
+        }
+        position = 0;
+        if (current == END_OF_STREAM) {
+            if (failure != null) {
+                throw new IOException("Failed to read the source stream", failure);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureData()) {
+            return -1;
+        }
+        final int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current == null || current == END_OF_STREAM ? 0 : current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        reader.interrupt();
+        source.close();
+    }
+}
@@ -0,0 +1,318 @@
+package com.newforma.titan.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.tinkerpop.gremlin.groovy.jsr223.GremlinGroovyScriptEngine;
+import org.apache.tinkerpop.gremlin.groovy.jsr223.GroovyCustomizer;
+import org.apache.tinkerpop.gremlin.jsr223.CoreImports;
+import org.apache.tinkerpop.gremlin.util.Gremlin;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
+import org.codehaus.groovy.control.customizers.ImportCustomizer;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.codehaus.groovy.tools.GroovyClass;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hashing;
+
+import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovySystem;
+import groovy.lang.Script;
+import groovy.transform.ThreadInterrupt;
+
+/**
+ * Disk cache of the compiled Gremlin/Groovy scripts. The scripts are compiled with the same
+ * compiler configuration as the script engine created by {@link #createScriptEngine()} has, the
+ * generated classes are stored in a directory named after the hash of the script content and of
+ * Groovy and TinkerPop versions, so any change of the script or of the runtime makes it recompiled.
+ * The cached classes of every script are loaded through their own class loader.
+ * <p>
+ * The loaded classes run with the graph credentials, so the cache directory must be private: it is
+ * created accessible by its owner only, and the directory and the cached classes not owned by the
+ * current user, or writable by others, are refused.
+ *
+ * @author Nikolai
+ *
+ */
+public class ScriptCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScriptCache.class);
+
+    private static final String CLASS_FILE_SUFFIX = ".class";
+
+    private static final List<String> JANUSGRAPH_STAR_IMPORTS = Arrays.asList("org.janusgraph.core",
+            "org.janusgraph.core.attribute", "org.janusgraph.core.schema");
+
+    // imports added to the Gremlin defaults, by the script engine and by the cache compiler alike
+    private static final GroovyCustomizer JANUSGRAPH_IMPORTS = () -> {
+        final ImportCustomizer imports = new ImportCustomizer();
+        imports.addStarImports(JANUSGRAPH_STAR_IMPORTS.toArray(new String[JANUSGRAPH_STAR_IMPORTS.size()]));
+        return imports;
+    };
+
+    // makes the loops and the method calls of the scripts check the interrupt flag, so a timed out script stops
+    private static final GroovyCustomizer THREAD_INTERRUPT = () -> new ASTTransformationCustomizer(ThreadInterrupt.class);
+
+    private static final Set<PosixFilePermission> OTHERS_WRITE = EnumSet.of(PosixFilePermission.GROUP_WRITE,
+            PosixFilePermission.OTHERS_WRITE);
+
+    private final File cacheDir;
+    private final UserPrincipal owner;
+    private final Map<String, Class<? extends Script>> loadedScripts = new ConcurrentHashMap<>();
+
+    /**
+     * @param cacheDir private directory of the cache, created if it does not exist
+     * @throws IOException if the directory cannot be created or is not private to the current user
+     */
+    public ScriptCache(File cacheDir) throws IOException {
+        this.cacheDir = cacheDir;
+        final Path path = cacheDir.toPath();
+        this.owner = path.getFileSystem().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+        if (!Files.isDirectory(path)) {
+            if (Files.getFileAttributeView(path.toAbsolutePath().getParent(), PosixFileAttributeView.class) != null) {
+                Files.createDirectories(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } else {
+                Files.createDirectories(path);
+            }
+        }
+        verifyPrivate(path);
+    }
+
+    /**
+     * @return script engine compiling the scripts the same way as the cache does
+     */
+    public static GremlinGroovyScriptEngine createScriptEngine() {
+        return new GremlinGroovyScriptEngine(JANUSGRAPH_IMPORTS, THREAD_INTERRUPT);
+    }
+
+    /**
+     * Loads the script from the cache, compiling and caching it if needed.
+     *
+     * @param scriptText script source
+     * @param defaultBindings bindings used when the script is evaluated without explicit ones
+     * @return compiled script, every evaluation runs a new instance of the script
+     * @throws ScriptException if the script fails to compile
+     * @throws IOException if the cache cannot be read or written
+     */
+    public CompiledScript load(String scriptText, Bindings defaultBindings) throws ScriptException, IOException {
+        final String key = getCacheKey(scriptText);
+        Class<? extends Script> scriptClass = loadedScripts.get(key);
+        if (scriptClass == null) {
+            scriptClass = loadOrCompile(key, scriptText);
+            loadedScripts.putIfAbsent(key, scriptClass);
+        }
+        return new CachedCompiledScript(scriptClass, defaultBindings);
+    }
+
+    static String getCacheKey(String scriptText) {
+        return Hashing.sha256().newHasher()
+                .putString(GroovySystem.getVersion(), StandardCharsets.UTF_8).putByte((byte) 0)
+                .putString(Gremlin.version(), StandardCharsets.UTF_8).putByte((byte) 0)
+                .putString(JANUSGRAPH_STAR_IMPORTS.toString(), StandardCharsets.UTF_8).putByte((byte) 0)
+                .putString(ThreadInterrupt.class.getName(), StandardCharsets.UTF_8).putByte((byte) 0)
+                .putString(scriptText, StandardCharsets.UTF_8)
+                .hash().toString();
+    }
+
+    static String getScriptClassName(String key) {
+        return "CachedScript_" + key;
+    }
+
+    private Class<? extends Script> loadOrCompile(String key, String scriptText) throws ScriptException, IOException {
+        final File entryDir = new File(cacheDir, key);
+        if (entryDir.isDirectory()) {
+            LOG.debug("Using cached script classes from {}", entryDir);
+        } else {
+            LOG.info("Compiling script into {}", entryDir);
+            compile(key, scriptText, entryDir);
+        }
+        verifyPrivate(entryDir.toPath());
+        try {
+            return new CachedClassLoader(this, entryDir, getClass().getClassLoader())
+                    .loadClass(getScriptClassName(key)).asSubclass(Script.class);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Script cache entry " + entryDir + " is broken, remove it to recompile the script", e);
+        }
+    }
+
+    /**
+     * Compiles the script into a temporary directory and moves it to its final place, so a
+     * partially written entry is never seen by the concurrent runs.
+     */
+    private void compile(String key, String scriptText, File entryDir) throws ScriptException, IOException {
+        final CompilerConfiguration config = createCompilerConfiguration();
+        final File tmpDir = new File(cacheDir, key + ".tmp-" + UUID.randomUUID());
+        Files.createDirectories(tmpDir.toPath());
+        try (GroovyClassLoader compileLoader = new GroovyClassLoader(getClass().getClassLoader(), config)) {
+            final CompilationUnit unit = new CompilationUnit(config, null, compileLoader);
+            unit.addSource(getScriptClassName(key) + ".groovy", scriptText);
+            try {
+                unit.compile(Phases.CLASS_GENERATION);
+            } catch (CompilationFailedException e) {
+                final ScriptException se = new ScriptException(e.getMessage());
+                se.initCause(e);
+                throw se;
+            }
+            for (final Object c : unit.getClasses()) {
+                final GroovyClass groovyClass = (GroovyClass) c;
+                Files.write(new File(tmpDir, groovyClass.getName() + CLASS_FILE_SUFFIX).toPath(), groovyClass.getBytes());
+            }
+            try {
+                Files.move(tmpDir.toPath(), entryDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException | AtomicMoveNotSupportedException e) {
+                if (!entryDir.isDirectory()) {
+                    throw e;
+                }
+                // compiled by a concurrent run in the meantime
+            }
+        } finally {
+            if (tmpDir.exists()) {
+                FileUtils.deleteDirectory(tmpDir);
+            }
+        }
+    }
+
+    /**
+     * @return the configuration the Gremlin script engine compiles the scripts with: the Gremlin
+     * default imports and the compilation customizers the engine is created with, including the
+     * interrupt checks
+     */
+    private static CompilerConfiguration createCompilerConfiguration() {
+        final ImportCustomizer imports = new ImportCustomizer();
+        for (final Class<?> c : CoreImports.getClassImports()) {
+            imports.addImports(c.getCanonicalName());
+        }
+        for (final Method m : CoreImports.getMethodImports()) {
+            imports.addStaticImport(m.getDeclaringClass().getCanonicalName(), m.getName());
+        }
+        for (final Enum<?> e : CoreImports.getEnumImports()) {
+            imports.addStaticImport(e.getDeclaringClass().getCanonicalName(), e.name());
+        }
+
+        final CompilerConfiguration config = new CompilerConfiguration(CompilerConfiguration.DEFAULT);
+        config.addCompilationCustomizers(imports, JANUSGRAPH_IMPORTS.create(), THREAD_INTERRUPT.create());
+        return config;
+    }
+
+    /**
+     * Refuses the cache files that another user could have planted or modified.
+     */
+    private void verifyPrivate(Path path) throws IOException {
+        final UserPrincipal fileOwner = Files.getOwner(path);
+        if (!owner.equals(fileOwner)) {
+            throw new IOException("Script cache file " + path + " is owned by " + fileOwner.getName() + ", not by "
+                    + owner.getName() + ", refusing to use it");
+        }
+        final PosixFileAttributeView posix = Files.getFileAttributeView(path, PosixFileAttributeView.class);
+        if (posix != null && posix.readAttributes().permissions().stream().anyMatch(OTHERS_WRITE::contains)) {
+            throw new IOException("Script cache file " + path + " is writable by other users, refusing to use it");
+        }
+    }
+
+    /**
+     * Loads the classes of one cached script from its directory.
+     */
+    private static class CachedClassLoader extends ClassLoader {
+
+        private final ScriptCache cache;
+        private final File entryDir;
+
+        private CachedClassLoader(ScriptCache cache, File entryDir, ClassLoader parent) {
+            super(parent);
+            this.cache = cache;
+            this.entryDir = entryDir;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            final File classFile = new File(entryDir, name + CLASS_FILE_SUFFIX);
+            if (!classFile.isFile()) {
+                throw new ClassNotFoundException(name);
+            }
+            try {
+                cache.verifyPrivate(classFile.toPath());
+                final byte[] bytes = Files.readAllBytes(classFile.toPath());
+                return defineClass(name, bytes, 0, bytes.length);
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+    }
+
+    /**
+     * Script loaded from the cache, each evaluation creates a new script instance with its own binding.
+     */
+    private static class CachedCompiledScript extends CompiledScript {
+
+        private final Class<? extends Script> scriptClass;
+        private final Bindings defaultBindings;
+
+        private CachedCompiledScript(Class<? extends Script> scriptClass, Bindings defaultBindings) {
+            this.scriptClass = scriptClass;
+            this.defaultBindings = defaultBindings;
+        }
+
+        @Override
+        public Object eval() throws ScriptException {
+            return eval(defaultBindings);
+        }
+
+        @Override
+        public Object eval(Bindings bindings) throws ScriptException {
+            final Binding binding = new Binding();
+            for (final Map.Entry<String, Object> b : bindings.entrySet()) {
+                binding.setVariable(b.getKey(), b.getValue());
+            }
+            try {
+                return InvokerHelper.createScript(scriptClass, binding).run();
+            } catch (RuntimeException e) {
+                final ScriptException se = new ScriptException(e.toString());
+                se.initCause(e);
+                throw se;
+            }
+        }
+
+        @Override
+        public Object eval(ScriptContext context) throws ScriptException {
+            return eval(context.getBindings(ScriptContext.ENGINE_SCOPE));
+        }
+
+        @Override
+        public ScriptEngine getEngine() {
+            // not bound to any engine, the script is executed directly
+            return null;
+        }
+    }
+}
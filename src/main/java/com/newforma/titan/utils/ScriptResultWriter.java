@@ -0,0 +1,391 @@
+package com.newforma.titan.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Element;
+import org.apache.tinkerpop.gremlin.structure.Property;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Streams the script results as a JSON array of <code>{"script": ..., "result": ...}</code>
+ * objects, in the order of the scripts. A result is serialized while it is being iterated (e.g. a
+ * traversal returned by the script is never collected) into an entry buffer, kept in memory while
+ * it is small and spilled into a temporary file otherwise. The entry is only copied to the output
+ * when it is published, after the script has succeeded, and in the order of the scripts, so a
+ * script failing while its result is serialized leaves nothing behind. The number of the items
+ * written per script is capped, the rest of the result is skipped and the result is marked as
+ * truncated.
+ *
+ * @author Nikolai
+ *
+ */
+public class ScriptResultWriter implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScriptResultWriter.class);
+
+    private static final int IN_MEMORY_ENTRY_SIZE = 1024 * 1024;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final OutputStream out;
+    private final long maxItems;
+
+    private final Map<Integer, Entry> publishedEntries = new TreeMap<>();
+    private final Set<Integer> publishedIndexes = new HashSet<>();
+    private int nextIndex;
+
+    /**
+     * @param out target stream, not closed by the writer
+     * @param maxItems maximum number of the values written for one script result, 0 for no limit
+     */
+    public ScriptResultWriter(OutputStream out, long maxItems) throws IOException {
+        this.out = out;
+        this.maxItems = maxItems;
+        out.write('[');
+    }
+
+    /**
+     * Serializes the result of the script into an entry, to be {@link #publish(Entry) published} or
+     * {@link Entry#discard() discarded}. Must be called in the thread executing the script, before its
+     * transaction is closed, since the result may be lazily evaluated.
+     *
+     * @param index position of the script in the list of the scripts
+     */
+    public Entry serialize(int index, String scriptName, Object result) throws IOException {
+        final Entry entry = new Entry(index, scriptName);
+        try {
+            writeEntry(entry.buffer, scriptName, result);
+            entry.buffer.close();
+        } catch (IOException | RuntimeException e) {
+            entry.discard();
+            throw e;
+        }
+        return entry;
+    }
+
+    /**
+     * Writes the entry to the output as soon as the results of all the preceding scripts are written.
+     * Only one entry, result or failure, is written per script: an entry published for a script
+     * already having one is discarded and logged.
+     */
+    public synchronized void publish(Entry entry) throws IOException {
+        final Integer index = Integer.valueOf(entry.index);
+        if (!publishedIndexes.add(index)) {
+            LOG.error("Result of script {} has already been written, discarding its {}", entry.scriptName, entry.describe());
+            entry.discard();
+            return;
+        }
+        publishedEntries.put(index, entry);
+        Entry next;
+        while ((next = publishedEntries.remove(Integer.valueOf(nextIndex))) != null) {
+            try {
+                writeSeparator();
+                next.copyTo(out);
+            } finally {
+                next.discard();
+            }
+            nextIndex++;
+        }
+        out.flush();
+    }
+
+    /**
+     * Serializes and publishes the result of the script.
+     *
+     * @see #serialize(int, String, Object)
+     */
+    public void write(int index, String scriptName, Object result) throws IOException {
+        publish(serialize(index, scriptName, result));
+    }
+
+    /**
+     * Writes the failure of the script instead of its result.
+     */
+    public void writeFailure(int index, String scriptName, Throwable failure) throws IOException {
+        write(index, scriptName, new Failure(failure));
+    }
+
+    private void writeSeparator() throws IOException {
+        out.write((nextIndex == 0 ? "\n" : ",\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeEntry(OutputStream os, String scriptName, Object result) throws IOException {
+        try (JsonGenerator gen = jsonFactory.createGenerator(os, JsonEncoding.UTF8)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET).useDefaultPrettyPrinter()) {
+            gen.writeStartObject();
+            gen.writeStringField("script", scriptName);
+            if (result instanceof Failure) {
+                gen.writeStringField("error", String.valueOf(((Failure) result).cause));
+            } else {
+                gen.writeFieldName("result");
+                final long[] written = new long[1];
+                if (!writeValue(gen, result, written)) {
+                    LOG.warn("Result of script {} exceeds {} items and is truncated", scriptName, maxItems);
+                    gen.writeBooleanField("truncated", true);
+                }
+            }
+            gen.writeEndObject();
+        }
+    }
+
+    /**
+     * @return false if the value has been truncated
+     */
+    private boolean writeValue(JsonGenerator gen, Object value, long[] written) throws IOException {
+        written[0]++;
+        if (value == null) {
+            gen.writeNull();
+        } else if (value instanceof Number) {
+            writeNumber(gen, (Number) value);
+        } else if (value instanceof Boolean) {
+            gen.writeBoolean(((Boolean) value).booleanValue());
+        } else if (value instanceof CharSequence || value instanceof Enum) {
+            gen.writeString(value.toString());
+        } else if (value instanceof Element) {
+            return writeElement(gen, (Element) value, written);
+        } else if (value instanceof Property) {
+            final Property<?> p = (Property<?>) value;
+            if (!p.isPresent()) {
+                gen.writeNull();
+                return true;
+            }
+            gen.writeStartObject();
+            gen.writeStringField("key", p.key());
+            gen.writeFieldName("value");
+            final boolean complete = writeValue(gen, p.value(), written);
+            gen.writeEndObject();
+            return complete;
+        } else if (value instanceof Map) {
+            gen.writeStartObject();
+            for (final Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                gen.writeFieldName(String.valueOf(e.getKey()));
+                if (!writeValue(gen, e.getValue(), written)) {
+                    gen.writeEndObject();
+                    return false;
+                }
+            }
+            gen.writeEndObject();
+        } else if (value instanceof Iterator || value instanceof Iterable || value.getClass().isArray()) {
+            return writeItems(gen, toIterator(value), written);
+        } else {
+            gen.writeString(value.toString());
+        }
+        return true;
+    }
+
+    private boolean writeItems(JsonGenerator gen, Iterator<?> items, long[] written) throws IOException {
+        gen.writeStartArray();
+        try {
+            while (items.hasNext()) {
+                if (maxItems > 0 && written[0] >= maxItems) {
+                    return false;
+                }
+                if (!writeValue(gen, items.next(), written)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            gen.writeEndArray();
+        }
+    }
+
+    private boolean writeElement(JsonGenerator gen, Element element, long[] written) throws IOException {
+        gen.writeStartObject();
+        try {
+            gen.writeFieldName("id");
+            writeValue(gen, element.id(), written);
+            gen.writeStringField("label", element.label());
+            if (element instanceof Edge) {
+                gen.writeFieldName("outV");
+                writeValue(gen, ((Edge) element).outVertex().id(), written);
+                gen.writeFieldName("inV");
+                writeValue(gen, ((Edge) element).inVertex().id(), written);
+            }
+            gen.writeFieldName("properties");
+            if (element instanceof Vertex) {
+                // multi-valued properties are written as arrays
+                final Map<String, List<Object>> props = new TreeMap<>();
+                element.properties().forEachRemaining(p -> props.computeIfAbsent(p.key(), k -> new ArrayList<>()).add(p.value()));
+                return writeValue(gen, props, written);
+            }
+            final Map<String, Object> props = new TreeMap<>();
+            element.properties().forEachRemaining(p -> props.put(p.key(), p.value()));
+            return writeValue(gen, props, written);
+        } finally {
+            gen.writeEndObject();
+        }
+    }
+
+    private static void writeNumber(JsonGenerator gen, Number n) throws IOException {
+        if (n instanceof Integer || n instanceof Short || n instanceof Byte) {
+            gen.writeNumber(n.intValue());
+        } else if (n instanceof Long) {
+            gen.writeNumber(n.longValue());
+        } else if (n instanceof Float || n instanceof Double) {
+            gen.writeNumber(n.doubleValue());
+        } else {
+            gen.writeNumber(n.toString());
+        }
+    }
+
+    private static Iterator<?> toIterator(Object value) {
+        if (value instanceof Iterator) {
+            return (Iterator<?>) value;
+        } else if (value instanceof Iterable) {
+            return ((Iterable<?>) value).iterator();
+        }
+        final int length = Array.getLength(value);
+        return new Iterator<Object>() {
+            private int i;
+
+            @Override
+            public boolean hasNext() {
+                return i < length;
+            }
+
+            @Override
+            public Object next() {
+                return Array.get(value, i++);
+            }
+        };
+    }
+
+    /**
+     * Completes the JSON array. The results of the scripts that have not been written because some
+     * of the preceding scripts have not completed are dropped.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!publishedEntries.isEmpty()) {
+            LOG.warn("Dropping the results of scripts {}, the result of script #{} has not been written",
+                    publishedEntries.keySet(), nextIndex);
+        }
+        for (final Entry entry : publishedEntries.values()) {
+            entry.discard();
+        }
+        publishedEntries.clear();
+        out.write("\n]\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    /**
+     * Serialized result of a script, in memory or in a temporary file.
+     */
+    public static final class Entry {
+        private final int index;
+        private final String scriptName;
+        private final EntryBuffer buffer = new EntryBuffer();
+
+        private Entry(int index, String scriptName) {
+            this.index = index;
+            this.scriptName = scriptName;
+        }
+
+        private void copyTo(OutputStream os) throws IOException {
+            if (buffer.spillFile != null) {
+                Files.copy(buffer.spillFile.toPath(), os);
+            } else {
+                buffer.memory.writeTo(os);
+            }
+        }
+
+        private String describe() {
+            return buffer.spillFile != null ? "entry spilled to " + buffer.spillFile
+                    : "entry of " + buffer.memory.size() + " bytes";
+        }
+
+        /**
+         * Releases the entry without writing it.
+         */
+        public void discard() {
+            try {
+                buffer.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close the result buffer", e);
+            }
+            if (buffer.spillFile != null) {
+                try {
+                    Files.deleteIfExists(buffer.spillFile.toPath());
+                } catch (IOException e) {
+                    LOG.warn("Failed to delete {}", buffer.spillFile, e);
+                }
+            }
+            buffer.memory.reset();
+        }
+    }
+
+    /**
+     * Keeps the bytes in memory until they exceed {@link #IN_MEMORY_ENTRY_SIZE}, then moves them into
+     * a temporary file.
+     */
+    private static final class EntryBuffer extends OutputStream {
+        private final ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        private File spillFile;
+        private OutputStream spillOs;
+
+        @Override
+        public void write(int b) throws IOException {
+            target(1).write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            target(len).write(b, off, len);
+        }
+
+        private OutputStream target(int len) throws IOException {
+            if (spillOs == null && memory.size() + len > IN_MEMORY_ENTRY_SIZE) {
+                spillFile = File.createTempFile("script-result", ".json");
+                spillOs = new BufferedOutputStream(new FileOutputStream(spillFile));
+                memory.writeTo(spillOs);
+                memory.reset();
+            }
+            return spillOs != null ? spillOs : memory;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (spillOs != null) {
+                spillOs.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (spillOs != null) {
+                spillOs.close();
+            }
+        }
+    }
+
+    private static class Failure {
+        private final Throwable cause;
+
+        private Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+}
@@ -1,16 +1,25 @@
 package com.newforma.titan.utils;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.Reader;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.script.Bindings;
 import javax.script.CompiledScript;
 import javax.script.ScriptException;
+import javax.script.SimpleBindings;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.DefaultParser;
@@ -20,26 +29,70 @@ import org.apache.commons.cli.ParseException;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.PropertiesConfiguration;
 import org.apache.commons.io.FileUtils;
-import org.apache.tinkerpop.gremlin.groovy.engine.GremlinExecutor;
-import org.apache.tinkerpop.gremlin.groovy.jsr223.GremlinGroovyScriptEngineFactory;
+import org.apache.tinkerpop.gremlin.groovy.jsr223.GremlinGroovyScriptEngine;
 import org.apache.tinkerpop.gremlin.jsr223.ConcurrentBindings;
-import org.apache.tinkerpop.gremlin.jsr223.DefaultGremlinScriptEngineManager;
-import org.apache.tinkerpop.gremlin.jsr223.GremlinScriptEngine;
-import org.apache.tinkerpop.gremlin.jsr223.GremlinScriptEngineManager;
+import org.codehaus.groovy.runtime.MethodClosure;
 import org.janusgraph.core.JanusGraph;
 import org.janusgraph.core.JanusGraphFactory;
+import org.janusgraph.core.JanusGraphTransaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableMap;
 
-import groovy.json.JsonBuilder;
-
 public class ScriptRunnerApp {
     private static final String OPTION_GRAPH_CONFIG = "g";
+    private static final String OPTION_PARALLEL = "p";
+    private static final String OPTION_SCRIPT_CACHE = "c";
+    private static final String OPTION_BATCH_CONCURRENCY = "bc";
+    private static final String OPTION_TIMEOUT = "to";
+    private static final String OPTION_MAX_RESULT_ITEMS = "mr";
+    private static final String OPTION_OUTPUT = "o";
+
+    public static final long DEFAULT_MAX_RESULT_ITEMS = 1000000;
 
     private static final Logger LOG = LoggerFactory.getLogger(ScriptRunnerApp.class);
 
+    private ScriptCache scriptCache;
+    private int batchConcurrency = Runtime.getRuntime().availableProcessors();
+    private long evaluationTimeoutMs;
+    private long maxResultItems = DEFAULT_MAX_RESULT_ITEMS;
+
+    /**
+     * @param scriptCache cache of the compiled scripts, <code>null</code> to compile the scripts on every run
+     */
+    public ScriptRunnerApp withScriptCache(ScriptCache scriptCache) {
+        this.scriptCache = scriptCache;
+        return this;
+    }
+
+    /**
+     * @param batchConcurrency maximum number of the batches executed at the same time by the <code>batch</code>
+     * binding (see {@link BatchRunner}), for all the scripts together
+     */
+    public ScriptRunnerApp withBatchConcurrency(int batchConcurrency) {
+        this.batchConcurrency = batchConcurrency;
+        return this;
+    }
+
+    /**
+     * @param evaluationTimeoutMs maximum time of one script evaluation, 0 for no limit
+     */
+    public ScriptRunnerApp withEvaluationTimeout(long evaluationTimeoutMs) {
+        this.evaluationTimeoutMs = evaluationTimeoutMs;
+        return this;
+    }
+
+    /**
+     * @param maxResultItems maximum number of the values written for one script result, the rest is skipped. 0 for no limit
+     */
+    public ScriptRunnerApp withMaxResultItems(long maxResultItems) {
+        this.maxResultItems = maxResultItems;
+        return this;
+    }
+
     public static void main(String[] args) {
         final Options options = populateOptions();
         final CommandLine cmdLine;
@@ -61,9 +114,32 @@ public class ScriptRunnerApp {
         }
 
         final String graphConfigFile = cmdLine.getOptionValue(OPTION_GRAPH_CONFIG);
+        int parallelism = 1;
+        if (cmdLine.hasOption(OPTION_PARALLEL)) {
+            parallelism = Integer.parseInt(cmdLine.getOptionValue(OPTION_PARALLEL));
+        }
 
         try {
-            new ScriptRunnerApp().runScripts(graphConfigFile, remainingArgs);
+            final ScriptRunnerApp runner = new ScriptRunnerApp();
+            if (cmdLine.hasOption(OPTION_SCRIPT_CACHE)) {
+                runner.withScriptCache(new ScriptCache(new File(cmdLine.getOptionValue(OPTION_SCRIPT_CACHE))));
+            }
+            if (cmdLine.hasOption(OPTION_BATCH_CONCURRENCY)) {
+                runner.withBatchConcurrency(Integer.parseInt(cmdLine.getOptionValue(OPTION_BATCH_CONCURRENCY)));
+            }
+            if (cmdLine.hasOption(OPTION_TIMEOUT)) {
+                runner.withEvaluationTimeout(TimeUnit.SECONDS.toMillis(Long.parseLong(cmdLine.getOptionValue(OPTION_TIMEOUT))));
+            }
+            if (cmdLine.hasOption(OPTION_MAX_RESULT_ITEMS)) {
+                runner.withMaxResultItems(Long.parseLong(cmdLine.getOptionValue(OPTION_MAX_RESULT_ITEMS)));
+            }
+            if (cmdLine.hasOption(OPTION_OUTPUT)) {
+                try (OutputStream os = new BufferedOutputStream(new FileOutputStream(cmdLine.getOptionValue(OPTION_OUTPUT)))) {
+                    runner.runScripts(graphConfigFile, remainingArgs, parallelism, os);
+                }
+            } else {
+                runner.runScripts(graphConfigFile, remainingArgs, parallelism, System.out);
+            }
         } catch (final Throwable t) {
             LOG.error("Execution failed", t);
             System.exit(1);
@@ -73,20 +149,49 @@ public class ScriptRunnerApp {
     }
 
     /**
-     * Executes the collection of Groovy scripts.
+     * Executes the collection of Groovy scripts, collecting their results in memory.
      *
      * @param graphConfigFileName Graph configuration file
      * @param scriptFileNames script file names - absolute or relative to the current working directory
      * @return list of JSON-serialized return values for each corresponding script
      * @throws IOException in case of any I/O error
+     * @see #runScripts(String, String[], int, OutputStream)
      */
     public List<String> runScripts(String graphConfigFileName, String[] scriptFileNames) throws IOException, ScriptException {
+        final ByteArrayOutputStream resultStream = new ByteArrayOutputStream();
+        runScripts(graphConfigFileName, scriptFileNames, 1, resultStream);
 
-        final GremlinGroovyScriptEngineFactory factory = new GremlinGroovyScriptEngineFactory();
-        final GremlinScriptEngineManager scriptEngineManager = new DefaultGremlinScriptEngineManager();
-        factory.setCustomizerManager(scriptEngineManager);
+        final ObjectMapper mapper = new ObjectMapper();
+        final List<String> results = new ArrayList<>(scriptFileNames.length);
+        for (final JsonNode entry : mapper.readTree(resultStream.toByteArray())) {
+            final JsonNode result = entry.get("result");
+            results.add(result == null || result.isNull() ? "{}" : mapper.writerWithDefaultPrettyPrinter().writeValueAsString(result));
+        }
+        return results;
+    }
+
+    /**
+     * Executes the collection of Groovy scripts, possibly in parallel. When more than one thread is used,
+     * the scripts must be independent: each of them runs in its own transaction, bound as <code>graph</code>
+     * and <code>tx</code>, with <code>g</code> being the traversal source of that transaction. The
+     * transaction is committed if the script succeeds and rolled back otherwise. All the scripts
+     * are executed even if some of them fail.
+     * <p>
+     * The results are streamed to the output as a JSON array, in the order of the scripts (see
+     * {@link ScriptResultWriter}).
+     *
+     * @param graphConfigFileName Graph configuration file
+     * @param scriptFileNames script file names - absolute or relative to the current working directory
+     * @param parallelism number of scripts to execute at the same time, 1 to execute them sequentially
+     * @param resultStream stream to write the results to, not closed
+     * @throws IOException in case of any I/O error
+     * @throws ScriptException if any of the scripts fails or times out
+     */
+    public void runScripts(String graphConfigFileName, String[] scriptFileNames, int parallelism, OutputStream resultStream)
+            throws IOException, ScriptException {
 
-        final GremlinScriptEngine groovyEngine = factory.getScriptEngine();
+        // the same compiler configuration as the cached scripts have
+        final GremlinGroovyScriptEngine groovyEngine = ScriptCache.createScriptEngine();
 
         LOG.debug("Instantiated Groovy engine {}", groovyEngine);
 
@@ -98,55 +203,308 @@ public class ScriptRunnerApp {
             throw new IOException("Failed to load graph configuration from " + graphConfigFileName, e);
         }
 
-        final List<String> results = new ArrayList<>(scriptFileNames.length);
-
-        try (final JanusGraph graph = JanusGraphFactory.open(graphConfig)) {
+        // a thread per running evaluation, so a timed out script still running does not hold back the next ones
+        final ExecutorService evaluationExecutor = Executors.newCachedThreadPool(r -> {
+            final Thread thread = new Thread(r, "script-evaluation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (final JanusGraph graph = JanusGraphFactory.open(graphConfig);
+                final ScriptResultWriter resultWriter = new ScriptResultWriter(resultStream, maxResultItems)) {
 
+            // bound as a closure, since Groovy scripts can only call the closures from the binding
+            final MethodClosure batchBinding = new MethodClosure(new BatchRunner(graph, batchConcurrency), "call");
             Bindings globalBindings = new ConcurrentBindings(ImmutableMap.<String, Object>builder().
                     put("graph", graph).
-                    put("g", graph.traversal()).build());
-
-            final GremlinExecutor.Builder gremlinExecutorBuilder = GremlinExecutor.build()
-                    .afterFailure((b, e) -> { ((JanusGraph) b.get("graph")).tx().rollback(); })
-                    .beforeEval(b -> { ((JanusGraph) b.get("graph")).tx().rollback(); })
-                    .afterTimeout(b -> { ((JanusGraph) b.get("graph")).tx().rollback(); })
-                    .globalBindings(globalBindings);
-            final GremlinExecutor scriptExecutor = gremlinExecutorBuilder.create();
-
-            for (final String scriptFile : scriptFileNames) {
-                LOG.info("Executing script {}", scriptFile);
-                try (final Reader scriptReader = new FileReader(scriptFile)) {
-
-                    Optional<CompiledScript> compiledScript = scriptExecutor.compile(FileUtils.readFileToString(new File(scriptFile)));
-                    if (compiledScript.isPresent()) {
-                        final Object result = compiledScript.get().eval();
-                        LOG.debug("Script raw result \"{}\"", result);
-                        final String jsonResult;
-                        if (result != null) {
-                            jsonResult = new JsonBuilder(result).toPrettyString();
-                        } else {
-                            jsonResult = "{}";
-                        }
-
-                        results.add(jsonResult);
-
-                        LOG.info("Script {} returned \"{}\"", scriptFile, jsonResult);
+                    put("g", graph.traversal()).
+                    put("batch", batchBinding).build());
+
+            final ScriptEvaluator evaluator = new ScriptEvaluator(groovyEngine, evaluationExecutor);
+
+            if (parallelism > 1) {
+                runScriptsInParallel(graph, batchBinding, evaluator, resultWriter, scriptFileNames, parallelism);
+            } else {
+                final ScriptTransaction threadTransaction = new ScriptTransaction() {
+                    @Override
+                    public void begin() {
+                        graph.tx().rollback();
+                    }
+
+                    @Override
+                    public void commit() {
                         graph.tx().commit();
-                    } else {
-                        throw new IOException("Failed to compile script " + scriptFile);
                     }
+
+                    @Override
+                    public void rollback() {
+                        graph.tx().rollback();
+                    }
+                };
+                for (int i = 0; i < scriptFileNames.length; i++) {
+                    LOG.info("Executing script {}", scriptFileNames[i]);
+                    evaluate(evaluator, i, scriptFileNames[i], globalBindings, threadTransaction, resultWriter);
                 }
             }
+        } finally {
+            evaluationExecutor.shutdownNow();
         }
 
         LOG.info("Executed {} script(s)", scriptFileNames.length);
+    }
 
-        return results;
+    private void runScriptsInParallel(final JanusGraph graph, final MethodClosure batchBinding, final ScriptEvaluator evaluator,
+            final ScriptResultWriter resultWriter, final String[] scriptFileNames, final int parallelism) throws IOException, ScriptException {
+        LOG.info("Executing {} script(s) using {} threads", scriptFileNames.length, parallelism);
+        final ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+        try {
+            final List<Future<?>> futures = new ArrayList<>(scriptFileNames.length);
+            for (int i = 0; i < scriptFileNames.length; i++) {
+                final int index = i;
+                futures.add(workers.submit(() -> {
+                    try {
+                        runIsolatedScript(graph, batchBinding, evaluator, resultWriter, index, scriptFileNames[index]);
+                    } catch (IOException | ScriptException | RuntimeException e) {
+                        // keeping the results of the following scripts in order
+                        resultWriter.writeFailure(index, scriptFileNames[index], e);
+                        throw e;
+                    }
+                    return null;
+                }));
+            }
+
+            // waiting for all the scripts
+            Throwable firstFailure = null;
+            int failures = 0;
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    LOG.error("Script {} failed", scriptFileNames[i], e.getCause());
+                    failures++;
+                    if (firstFailure == null) {
+                        firstFailure = e.getCause();
+                    }
+                }
+            }
+            if (firstFailure instanceof IOException) {
+                throw (IOException) firstFailure;
+            } else if (firstFailure instanceof ScriptException) {
+                throw (ScriptException) firstFailure;
+            } else if (firstFailure != null) {
+                throw new IOException(failures + " of " + scriptFileNames.length + " script(s) failed", firstFailure);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while executing the scripts", e);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private void runIsolatedScript(final JanusGraph graph, final MethodClosure batchBinding, final ScriptEvaluator evaluator,
+            final ScriptResultWriter resultWriter, final int index, final String scriptFile) throws IOException, ScriptException {
+        LOG.info("Executing script {}", scriptFile);
+        final JanusGraphTransaction tx = graph.newTransaction();
+        final Bindings bindings = new SimpleBindings();
+        bindings.put("graph", tx);
+        bindings.put("tx", tx);
+        bindings.put("g", tx.traversal());
+        bindings.put("batch", batchBinding);
+
+        // closed by the evaluation
+        evaluate(evaluator, index, scriptFile, bindings, new ScriptTransaction() {
+            @Override
+            public void begin() {
+                // the transaction has just been opened
+            }
+
+            @Override
+            public void commit() {
+                tx.commit();
+            }
+
+            @Override
+            public void rollback() {
+                if (tx.isOpen()) {
+                    tx.rollback();
+                }
+            }
+        }, resultWriter);
+    }
+
+    /**
+     * Evaluates the script on the evaluation executor, serializing its result and committing its transaction
+     * in the evaluation thread, since the result may be a lazy traversal of that transaction. The result is
+     * only published once the transaction is committed. The transaction is always closed by this method or
+     * by the evaluation thread, also when the script times out: the script is interrupted and it never
+     * commits after the timeout has been reported, its transaction is rolled back in the evaluation thread
+     * as soon as the script returns. The scripts are compiled with interrupt checks, so a script stops at its
+     * next loop iteration or method call once interrupted. A script that still keeps running only holds its own
+     * evaluation thread, the next scripts are evaluated in other threads.
+     */
+    private void evaluate(final ScriptEvaluator evaluator, final int index, final String scriptFile,
+            final Bindings bindings, final ScriptTransaction transaction, final ScriptResultWriter resultWriter)
+            throws IOException, ScriptException {
+        final CompiledScript compiledScript;
+        try {
+            final String scriptText = FileUtils.readFileToString(new File(scriptFile));
+            compiledScript = scriptCache == null
+                    ? evaluator.engine.compile(scriptText) : scriptCache.load(scriptText, bindings);
+        } catch (IOException | ScriptException | RuntimeException e) {
+            transaction.rollback();
+            throw e;
+        }
+
+        final Evaluation evaluation = new Evaluation();
+        final Future<?> future = evaluator.executor.submit(() -> {
+            evaluation.attach();
+            ScriptResultWriter.Entry entry = null;
+            boolean committed = false;
+            try {
+                if (evaluation.isAbandoned()) {
+                    // timed out before it started
+                    return null;
+                }
+                transaction.begin();
+                entry = resultWriter.serialize(index, scriptFile, compiledScript.eval(bindings));
+                if (!evaluation.startCommit()) {
+                    LOG.warn("Script {} has returned after its timeout, rolling back its transaction", scriptFile);
+                    return null;
+                }
+                transaction.commit();
+                committed = true;
+            } finally {
+                evaluation.detach();
+                if (!committed) {
+                    transaction.rollback();
+                    if (entry != null) {
+                        entry.discard();
+                    }
+                }
+            }
+            resultWriter.publish(entry);
+            return null;
+        });
+
+        try {
+            try {
+                if (evaluationTimeoutMs > 0) {
+                    future.get(evaluationTimeoutMs, TimeUnit.MILLISECONDS);
+                } else {
+                    future.get();
+                }
+            } catch (TimeoutException e) {
+                if (evaluation.abandon()) {
+                    throw new ScriptException("Script " + scriptFile + " has not completed in " + evaluationTimeoutMs
+                            + " ms, its transaction is rolled back");
+                }
+                // the script has returned in time and is being committed, the commit decides the outcome
+                future.get();
+            }
+            LOG.info("Script {} completed", scriptFile);
+        } catch (InterruptedException e) {
+            evaluation.abandon();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while executing script " + scriptFile, e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof ScriptException) {
+                throw (ScriptException) cause;
+            }
+            final ScriptException se = new ScriptException("Script " + scriptFile + " failed: " + cause);
+            se.initCause(cause);
+            throw se;
+        }
+    }
+
+    /**
+     * State of one script evaluation shared by the evaluation thread and the thread waiting for it: either
+     * the script starts committing or it is abandoned (timed out), whichever comes first.
+     */
+    private static final class Evaluation {
+        private static final int RUNNING = 0;
+        private static final int COMMITTING = 1;
+        private static final int ABANDONED = 2;
+
+        private final AtomicInteger state = new AtomicInteger(RUNNING);
+        private Thread thread;
+
+        synchronized void attach() {
+            thread = Thread.currentThread();
+        }
+
+        synchronized void detach() {
+            thread = null;
+        }
+
+        boolean isAbandoned() {
+            return state.get() == ABANDONED;
+        }
+
+        /**
+         * @return false if the evaluation has been abandoned and must not commit
+         */
+        boolean startCommit() {
+            return state.compareAndSet(RUNNING, COMMITTING);
+        }
+
+        /**
+         * Abandons the evaluation and interrupts the script, unless it is already committing.
+         *
+         * @return false if the evaluation is committing
+         */
+        synchronized boolean abandon() {
+            if (!state.compareAndSet(RUNNING, ABANDONED)) {
+                return false;
+            }
+            if (thread != null) {
+                thread.interrupt();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Engine compiling the scripts not cached and executor evaluating all the scripts.
+     */
+    private static final class ScriptEvaluator {
+        private final GremlinGroovyScriptEngine engine;
+        private final ExecutorService executor;
+
+        private ScriptEvaluator(GremlinGroovyScriptEngine engine, ExecutorService executor) {
+            this.engine = engine;
+            this.executor = executor;
+        }
+    }
+
+    /**
+     * Transaction handling of one script, executed in the script evaluation thread.
+     */
+    private interface ScriptTransaction {
+        void begin();
+
+        void commit();
+
+        void rollback();
     }
 
     private static Options populateOptions() {
         final Options options = new Options();
         options.addOption(OPTION_GRAPH_CONFIG, true, "Graph configuration property file");
+        options.addOption(OPTION_PARALLEL, "parallel", true, "Execute the specified number of scripts in parallel, "
+                + "each in its own transaction. The scripts must be independent of each other");
+        options.addOption(OPTION_SCRIPT_CACHE, "script-cache", true, "Cache the compiled scripts in the specified directory, "
+                + "private to the current user (the scripts are compiled on every run by default)");
+        options.addOption(OPTION_BATCH_CONCURRENCY, "batch-concurrency", true, "Maximum number of the batches executed "
+                + "at the same time by the \"batch\" binding in all the scripts (number of CPUs is the default)");
+        options.addOption(OPTION_TIMEOUT, "timeout", true, "Maximum time of one script evaluation in seconds, "
+                + "a script taking longer is interrupted and its transaction is rolled back (no limit by default)");
+        options.addOption(OPTION_MAX_RESULT_ITEMS, "max-result-items", true, "Maximum number of the values written for "
+                + "one script result, the rest is skipped (" + DEFAULT_MAX_RESULT_ITEMS + " is the default, 0 for no limit)");
+        options.addOption(OPTION_OUTPUT, "output", true, "Write the script results (JSON) to the specified file "
+                + "instead of the standard output");
         return options;
     }
 
@@ -0,0 +1,59 @@
+package com.newforma.titan.schema;
+
+import static org.junit.Assert.assertEquals;
+
+import org.janusgraph.core.Cardinality;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.JanusGraphVertex;
+import org.janusgraph.core.Multiplicity;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.newforma.titan.schema.types.GraphSchemaDef;
+import com.newforma.titan.schema.types.SchemaEdgeLabel;
+
+public class ConstraintAuditorTest extends InMemoryGraphTest {
+
+    @Before
+    public void setUp() {
+        // the graph allows more than the schema does
+        final JanusGraphManagement mgmt = graph.openManagement();
+        mgmt.makePropertyKey("p1").dataType(String.class).cardinality(Cardinality.LIST).make();
+        mgmt.makeEdgeLabel("e1").multiplicity(Multiplicity.MULTI).make();
+        mgmt.commit();
+
+        final JanusGraphTransaction tx = graph.newTransaction();
+        for (int i = 0; i < 5; i++) {
+            final JanusGraphVertex v1 = tx.addVertex("v1");
+            v1.property("p1", "first");
+            v1.addEdge("e1", tx.addVertex("v2"));
+            if (i == 0) {
+                v1.property("p1", "second");
+                v1.addEdge("e1", tx.addVertex("v2"));
+            }
+        }
+        tx.commit();
+    }
+
+    private GraphState loadSchema() throws Exception {
+        final GraphSchemaDef schema = loadSchemaDef();
+        for (final SchemaEdgeLabel edgeDef : schema.getEdges()) {
+            if ("e1".equals(edgeDef.getLabel())) {
+                edgeDef.setMultiplicity(Multiplicity.MANY2ONE);
+            }
+        }
+        return new GraphState(schema);
+    }
+
+    @Test
+    public void testViolationsRepaired() throws Exception {
+        final GraphState graphState = loadSchema();
+
+        // one vertex violates both the property cardinality and the edge multiplicity
+        assertEquals(2, new ConstraintAuditor(graph, graphState).threads(2).repair(true).audit(null));
+        assertEquals(0, new ConstraintAuditor(graph, graphState).threads(2).audit(null));
+        assertEquals(5, graph.traversal().E().hasLabel("e1").count().next().longValue());
+        assertEquals(5, graph.traversal().V().has("p1", "first").count().next().longValue());
+    }
+}
@@ -0,0 +1,99 @@
+package com.newforma.titan.schema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.tuple.Triple;
+import org.janusgraph.core.Multiplicity;
+import org.junit.Test;
+
+import com.newforma.titan.schema.types.GraphSchemaDef;
+import com.newforma.titan.schema.types.SchemaEdgeLabel;
+import com.newforma.titan.schema.types.SchemaRelationshipDesc;
+
+public class DataGeneratorTest {
+
+    @Test
+    public void testVertexCountsAreSplitEvenly() throws Exception {
+        final Map<String, Integer> counts = new DataGenerator(InMemoryGraphTest.loadGraphState(), 11).getVertexCounts();
+        assertEquals(Integer.valueOf(6), counts.get("v1"));
+        assertEquals(Integer.valueOf(5), counts.get("v2"));
+    }
+
+    @Test
+    public void testRelationshipsAreCollectedFromVerticesAndEdges() throws Exception {
+        final Set<Triple<String, String, String>> rels = new DataGenerator(InMemoryGraphTest.loadGraphState(), 10).getRelationships();
+        assertEquals(3, rels.size());
+        assertTrue(rels.contains(Triple.of("v1", "e1", "v2")));
+        assertTrue(rels.contains(Triple.of("v1", "e2", "v2")));
+        assertTrue(rels.contains(Triple.of("v2", "e2", "v1")));
+    }
+
+    @Test
+    public void testGenerateIntoFileIsReproducible() throws Exception {
+        final File first = File.createTempFile("generated", ".xml");
+        final File second = File.createTempFile("generated", ".xml");
+        try {
+            new DataGenerator(InMemoryGraphTest.loadGraphState(), 100).seed(42).generateInto(first);
+            new DataGenerator(InMemoryGraphTest.loadGraphState(), 100).seed(42).generateInto(second);
+
+            final String data = new String(Files.readAllBytes(first.toPath()), StandardCharsets.UTF_8);
+            assertEquals(data, new String(Files.readAllBytes(second.toPath()), StandardCharsets.UTF_8));
+            assertEquals(100, count(data, "<node "));
+            assertTrue(count(data, "<edge ") > 0);
+        } finally {
+            first.delete();
+            second.delete();
+        }
+    }
+
+    @Test
+    public void testMultiplicityRespectedAcrossRelationships() throws Exception {
+        final File file = File.createTempFile("generated", ".xml");
+        try {
+            final GraphSchemaDef schema = InMemoryGraphTest.loadSchemaDef();
+            for (final SchemaEdgeLabel edgeDef : schema.getEdges()) {
+                if ("e1".equals(edgeDef.getLabel())) {
+                    // v1 gets outgoing e1 edges for two relationships
+                    edgeDef.setMultiplicity(Multiplicity.MANY2ONE);
+                    final SchemaRelationshipDesc rel = new SchemaRelationshipDesc();
+                    rel.setOut("v1");
+                    rel.setIn("v1");
+                    edgeDef.getRelationships().add(rel);
+                }
+            }
+            new DataGenerator(new GraphState(schema), 100).seed(42).generateInto(file);
+
+            final String data = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            final Matcher m = Pattern.compile("<edge id=\"[^\"]*\" source=\"(\\d+)\" target=\"\\d+\">"
+                    + "<data key=\"" + GraphMLStreamWriter.EDGE_LABEL_KEY + "\">e1</data>").matcher(data);
+            final Set<String> sources = new HashSet<>();
+            int edges = 0;
+            while (m.find()) {
+                assertTrue("Vertex " + m.group(1) + " has several e1 edges", sources.add(m.group(1)));
+                edges++;
+            }
+            assertTrue(edges > 0);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static int count(String data, String what) {
+        final Matcher m = Pattern.compile(Pattern.quote(what)).matcher(data);
+        int count = 0;
+        while (m.find()) {
+            count++;
+        }
+        return count;
+    }
+}
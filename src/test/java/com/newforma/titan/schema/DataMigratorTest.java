@@ -0,0 +1,93 @@
+package com.newforma.titan.schema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.JanusGraphVertex;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.newforma.titan.schema.types.GraphSchemaDef;
+import com.newforma.titan.schema.types.MigrationDef;
+
+public class DataMigratorTest extends InMemoryGraphTest {
+
+    @Before
+    public void setUp() {
+        final JanusGraphTransaction tx = graph.newTransaction();
+        for (int i = 0; i < 10; i++) {
+            final JanusGraphVertex v1 = tx.addVertex("v1");
+            if (i < 3) {
+                v1.property("p1", "set" + i);
+            }
+            tx.addVertex("v2").property("p2", "code" + i);
+        }
+        tx.commit();
+    }
+
+    private GraphState loadSchema() throws Exception {
+        final GraphSchemaDef schema = loadSchemaDef();
+
+        final MigrationDef backfill = new MigrationDef();
+        backfill.setName("p1_default");
+        backfill.setType(MigrationDef.Type.BACKFILL);
+        backfill.setLabel("v1");
+        backfill.setKey("p1");
+        backfill.setValue("default");
+        schema.getMigrations().add(backfill);
+
+        final MigrationDef transform = new MigrationDef();
+        transform.setName("p2_upper_case");
+        transform.setType(MigrationDef.Type.TRANSFORM);
+        transform.setLabel("v2");
+        transform.setKey("p2");
+        transform.setExpression("value?.toUpperCase()");
+        schema.getMigrations().add(transform);
+
+        return new GraphState(schema);
+    }
+
+    private long count(String label, String key, String value) {
+        return graph.traversal().V().hasLabel(label).has(key, value).count().next().longValue();
+    }
+
+    @Test
+    public void testMigrationsAppliedOnce() throws Exception {
+        final GraphState graphState = loadSchema();
+        final SchemaManager schemaManager = new SchemaManager("junit.json", "junit.properties");
+
+        new DataMigrator(graph, graphState, schemaManager).threads(2).run();
+        assertEquals(7, count("v1", "p1", "default"));
+        assertEquals(1, count("v1", "p1", "set0"));
+        assertEquals(1, count("v2", "p2", "CODE0"));
+
+        // completed migrations are not applied again
+        final JanusGraphTransaction tx = graph.newTransaction();
+        tx.addVertex("v1");
+        tx.commit();
+        new DataMigrator(graph, graphState, schemaManager).threads(2).run();
+        assertEquals(7, count("v1", "p1", "default"));
+        assertEquals("completed", new GlobalMetaDataManager().getMigrationState(graph, "p1_default").get("status"));
+    }
+
+    @Test
+    public void testNonIdempotentTransformFails() throws Exception {
+        final GraphState graphState = loadSchema();
+        graphState.getGraphSchemaDef().getMigrations().clear();
+        final MigrationDef transform = new MigrationDef();
+        transform.setName("p2_suffix");
+        transform.setType(MigrationDef.Type.TRANSFORM);
+        transform.setKey("p2");
+        transform.setExpression("value == null ? null : value + '_x'");
+        graphState.getGraphSchemaDef().getMigrations().add(transform);
+
+        try {
+            new DataMigrator(graph, graphState, new SchemaManager("junit.json", "junit.properties")).threads(2).run();
+            fail("A transform changing its own result must fail");
+        } catch (SchemaManagementException e) {
+            // expected
+        }
+        assertEquals(1, count("v2", "p2", "code0"));
+    }
+}
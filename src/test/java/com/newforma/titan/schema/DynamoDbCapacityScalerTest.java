@@ -0,0 +1,51 @@
+package com.newforma.titan.schema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.junit.Test;
+
+public class DynamoDbCapacityScalerTest {
+
+    private static Configuration dynamoDbConfig() {
+        final Configuration config = new BaseConfiguration();
+        config.setProperty("storage.backend", "com.amazon.janusgraph.diskstorage.dynamodb.DynamoDBStoreManager");
+        config.setProperty("storage.dynamodb.prefix", "demo");
+        config.setProperty("storage.dynamodb.stores.edgestore.read-rate", "100");
+        config.setProperty("storage.dynamodb.stores.edgestore.write-rate", "5000");
+        return config;
+    }
+
+    @Test
+    public void testTableName() {
+        final Configuration config = dynamoDbConfig();
+        assertTrue(DynamoDbCapacityScaler.isDynamoDb(config));
+        assertEquals("demo_edgestore", DynamoDbCapacityScaler.getTableName(config, "edgestore"));
+
+        config.clearProperty("storage.dynamodb.prefix");
+        assertEquals("jg_graphindex", DynamoDbCapacityScaler.getTableName(config, "graphindex"));
+    }
+
+    @Test
+    public void testRateLimitsRaised() {
+        final Configuration config = dynamoDbConfig();
+        DynamoDbCapacityScaler.raiseRateLimits(config, DynamoDbCapacityScaler.DEFAULT_STORES, 2000, 1000);
+
+        assertEquals(2000.0, config.getDouble("storage.dynamodb.stores.edgestore.read-rate"), 0);
+        // never lowered
+        assertEquals(5000.0, config.getDouble("storage.dynamodb.stores.edgestore.write-rate"), 0);
+        assertEquals(2000.0, config.getDouble("storage.dynamodb.stores.graphindex.read-rate"), 0);
+        assertEquals(1000.0, config.getDouble("storage.dynamodb.stores.graphindex.write-rate"), 0);
+    }
+
+    @Test(expected = SchemaManagementException.class)
+    public void testNotDynamoDb() throws Exception {
+        final Configuration config = new BaseConfiguration();
+        config.setProperty("storage.backend", "inmemory");
+        assertFalse(DynamoDbCapacityScaler.isDynamoDb(config));
+        new DynamoDbCapacityScaler(config, DynamoDbCapacityScaler.DEFAULT_STORES, 2000, 1000);
+    }
+}
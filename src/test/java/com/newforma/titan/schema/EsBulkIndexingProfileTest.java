@@ -0,0 +1,76 @@
+package com.newforma.titan.schema;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphFactory;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.junit.Test;
+
+public class EsBulkIndexingProfileTest {
+
+    @Test
+    public void testIndexName() {
+        final Configuration config = new BaseConfiguration();
+        config.setProperty("index.search.backend", "elasticsearch");
+        assertEquals("janusgraph_v1_by_p1", EsBulkIndexingProfile.getEsIndexName(config, "search", "v1_by_P1"));
+
+        config.setProperty("index.search.index-name", "graph");
+        assertEquals("graph_v1_by_p1", EsBulkIndexingProfile.getEsIndexName(config, "search", "v1_by_p1"));
+
+        config.setProperty("index.search.elasticsearch.use-deprecated-multitype-index", "true");
+        assertEquals("graph", EsBulkIndexingProfile.getEsIndexName(config, "search", "v1_by_p1"));
+    }
+
+    @Test
+    public void testStoreNameOfRenamedIndex() throws Exception {
+        final JanusGraph graph = JanusGraphFactory.build().set("storage.backend", "inmemory")
+                .set("index.search.backend", "lucene")
+                .set("index.search.directory", Files.createTempDirectory("lucene").toString()).open();
+        try {
+            JanusGraphManagement mgmt = graph.openManagement();
+            mgmt.buildIndex("p1_next", Vertex.class).addKey(mgmt.makePropertyKey("p1").dataType(String.class).make())
+                    .buildMixedIndex("search");
+            mgmt.commit();
+            mgmt = graph.openManagement();
+            mgmt.changeName(mgmt.getGraphIndex("p1_next"), "p1");
+            mgmt.commit();
+
+            // the index backend keeps the documents under the original name
+            try (ElementIndexer indexer = new ElementIndexer(graph, "p1")) {
+                assertEquals("search", indexer.getBackingIndexName());
+                assertEquals("p1_next", indexer.getStoreName());
+            }
+        } finally {
+            graph.close();
+        }
+    }
+
+    @Test
+    public void testHostUrls() {
+        final Configuration config = new BaseConfiguration();
+        assertEquals(Arrays.asList("http://localhost:9200"), EsBulkIndexingProfile.getHostUrls(config, "search"));
+
+        config.setProperty("index.search.hostname", "es1, es2:9201");
+        config.setProperty("index.search.port", "9300");
+        config.setProperty("index.search.elasticsearch.interface", "TRANSPORT_CLIENT");
+        assertEquals(Arrays.asList("http://es1:9200", "http://es2:9201"), EsBulkIndexingProfile.getHostUrls(config, "search"));
+
+        config.setProperty("index.search.elasticsearch.interface", "REST_CLIENT");
+        config.setProperty("index.search.port", "9201");
+        assertEquals(Arrays.asList("http://es1:9201", "http://es2:9201"), EsBulkIndexingProfile.getHostUrls(config, "search"));
+    }
+
+    @Test(expected = SchemaManagementException.class)
+    public void testNotElasticsearch() throws Exception {
+        final Configuration config = new BaseConfiguration();
+        config.setProperty("index.search.backend", "lucene");
+        new EsBulkIndexingProfile(config, "search", "v1_by_p1");
+    }
+}
@@ -0,0 +1,45 @@
+package com.newforma.titan.schema;
+
+import static org.junit.Assert.assertEquals;
+
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.JanusGraphVertex;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GhostVertexCleanerTest extends InMemoryGraphTest {
+
+    @Before
+    public void setUp() {
+        JanusGraphTransaction tx = graph.newTransaction();
+        final long aId = ((Number) tx.addVertex("v1").id()).longValue();
+        final long bId = ((Number) tx.addVertex("v2").id()).longValue();
+        for (int i = 0; i < 10; i++) {
+            tx.addVertex("v1").addEdge("e1", tx.addVertex("v2"));
+        }
+        tx.commit();
+
+        // the vertex is modified concurrently with its removal
+        final JanusGraphTransaction writer = graph.newTransaction();
+        final JanusGraphVertex b = writer.getVertex(bId);
+        tx = graph.newTransaction();
+        tx.getVertex(bId).remove();
+        tx.commit();
+        b.property("p2", "ghost");
+        writer.getVertex(aId).addEdge("e1", b);
+        writer.commit();
+    }
+
+    @Test
+    public void testGhostVertexAndDanglingEdgeRemoved() throws Exception {
+        final GraphState graphState = loadGraphState();
+
+        // the ghost vertex and the edge pointing to it
+        assertEquals(2, new GhostVertexCleaner(graph, graphState).threads(2).clean(null));
+        assertEquals(2, new GhostVertexCleaner(graph, graphState).threads(2).repair(true).clean(null));
+        assertEquals(0, new GhostVertexCleaner(graph, graphState).threads(2).clean(null));
+
+        assertEquals(11, graph.traversal().V().hasLabel("v1").count().next().longValue());
+        assertEquals(10, graph.traversal().E().hasLabel("e1").count().next().longValue());
+    }
+}
@@ -0,0 +1,43 @@
+package com.newforma.titan.schema;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class GlobalMetaDataManagerTest extends InMemoryGraphTest {
+
+    @Test
+    public void testOldRevisionsPruned() throws Exception {
+        final GraphState graphState = loadGraphState();
+        final SchemaManager schemaManager = new SchemaManager("junit.json", "junit.properties");
+        final GlobalMetaDataManager metaDataManager = new GlobalMetaDataManager();
+        for (int i = 0; i < 5; i++) {
+            graphState.setSchemaHash("hash" + i);
+            metaDataManager.updateGraph(graph, graphState, 3, schemaManager);
+            // distinct creation times
+            Thread.sleep(2);
+        }
+
+        final List<GraphRevision> revisions = metaDataManager.getRevisions(graph, 0);
+        assertEquals(3, revisions.size());
+        assertEquals("hash4", revisions.get(0).getSchemaHash());
+        assertEquals("hash2", revisions.get(2).getSchemaHash());
+        assertEquals("hash4", metaDataManager.getCurrentRevision(graph).getSchemaHash());
+    }
+
+    @Test
+    public void testMigrationStateUpdated() throws Exception {
+        final SchemaManager schemaManager = new SchemaManager("junit.json", "junit.properties");
+        final GlobalMetaDataManager metaDataManager = new GlobalMetaDataManager();
+        assertEquals(Collections.emptyMap(), metaDataManager.getMigrationState(graph, "m1"));
+
+        // every checkpoint replaces the state recorded before
+        for (int i = 0; i < 3; i++) {
+            metaDataManager.saveMigrationState(graph, "m1", Collections.singletonMap("checkpoint", "id" + i), schemaManager);
+        }
+        assertEquals("id2", metaDataManager.getMigrationState(graph, "m1").get("checkpoint"));
+    }
+}
@@ -0,0 +1,30 @@
+package com.newforma.titan.schema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+
+public class GraphDataFormatTest {
+
+    @Test
+    public void forFile() {
+        assertEquals(GraphDataFormat.GRAPHML, GraphDataFormat.forFile(new File("data.xml")));
+        assertEquals(GraphDataFormat.GRAPHML, GraphDataFormat.forFile(new File("data.graphml.gz")));
+        assertEquals(GraphDataFormat.GRAPHML, GraphDataFormat.forFile(new File("data")));
+        assertEquals(GraphDataFormat.GRAPHSON, GraphDataFormat.forFile(new File("data.json")));
+        assertEquals(GraphDataFormat.GRAPHSON, GraphDataFormat.forFile(new File("/tmp/DATA.JSON.GZ")));
+        assertEquals(GraphDataFormat.GRYO, GraphDataFormat.forFile(new File("data.kryo")));
+    }
+
+    @Test
+    public void isCompressed() {
+        assertTrue(GraphDataFormat.isCompressed(new File("data.graphml.gz")));
+        assertTrue(GraphDataFormat.isCompressed(new File("data.json.gz")));
+        assertFalse(GraphDataFormat.isCompressed(new File("data.json")));
+        assertFalse(GraphDataFormat.isCompressed(new File("data.gzip")));
+    }
+}
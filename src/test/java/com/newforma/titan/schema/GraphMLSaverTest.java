@@ -0,0 +1,42 @@
+package com.newforma.titan.schema;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class GraphMLSaverTest {
+
+    @Test
+    public void getPartitionFiles_single() {
+        final File target = new File("/tmp/dump.graphml.gz");
+        assertEquals(Collections.singletonList(target), GraphMLSaver.getPartitionFiles(target, 1));
+    }
+
+    @Test
+    public void getPartitionFiles_multiple() {
+        final List<File> files = GraphMLSaver.getPartitionFiles(new File("/tmp/dump.graphml.gz"), 3);
+        assertEquals(Arrays.asList(
+                new File("/tmp/dump-part0.graphml.gz"),
+                new File("/tmp/dump-part1.graphml.gz"),
+                new File("/tmp/dump-part2.graphml.gz")), files);
+    }
+
+    @Test
+    public void getPartitionFiles_dotInName() {
+        final List<File> files = GraphMLSaver.getPartitionFiles(new File("/tmp/my.dump.graphml.gz"), 2);
+        assertEquals(Arrays.asList(
+                new File("/tmp/my.dump-part0.graphml.gz"),
+                new File("/tmp/my.dump-part1.graphml.gz")), files);
+    }
+
+    @Test
+    public void getPartitionFiles_noExtension() {
+        final List<File> files = GraphMLSaver.getPartitionFiles(new File("/tmp/dump"), 2);
+        assertEquals(Arrays.asList(new File("/tmp/dump-part0"), new File("/tmp/dump-part1")), files);
+    }
+}
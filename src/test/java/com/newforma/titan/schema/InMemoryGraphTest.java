@@ -0,0 +1,69 @@
+package com.newforma.titan.schema;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Collections;
+
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphFactory;
+import org.junit.After;
+import org.junit.Before;
+
+import com.newforma.titan.schema.types.GraphIndexDef;
+import com.newforma.titan.schema.types.GraphIndexDef.IndexType;
+import com.newforma.titan.schema.types.GraphIndexDef.RelType;
+import com.newforma.titan.schema.types.GraphIndexKeyDef;
+import com.newforma.titan.schema.types.GraphSchemaDef;
+
+/**
+ * Base of the tests running against an in-memory graph, opened before every test (before the
+ * <code>@Before</code> methods of the test) and closed after it, with the shared test schema.
+ */
+public abstract class InMemoryGraphTest {
+
+    private static final String SCHEMA_RESOURCE = "doctag_cascading_test_001.json";
+
+    protected JanusGraph graph;
+
+    @Before
+    public void openGraph() {
+        graph = openInMemory();
+    }
+
+    @After
+    public void closeGraph() {
+        graph.close();
+    }
+
+    static JanusGraph openInMemory() {
+        return JanusGraphFactory.build().set("storage.backend", "inmemory").open();
+    }
+
+    /**
+     * @return the test schema (vertex labels v1 and v2, edge labels e1 and e2, properties p1 and p2),
+     * to be modified by the test
+     */
+    static GraphSchemaDef loadSchemaDef() throws Exception {
+        try (InputStream is = InMemoryGraphTest.class.getResourceAsStream(SCHEMA_RESOURCE)) {
+            return SchemaLoader.getInstance().loadFrom(is, "junit.json", new File(System.getProperty("java.io.tmpdir")));
+        }
+    }
+
+    static GraphState loadGraphState() throws Exception {
+        return new GraphState(loadSchemaDef());
+    }
+
+    /**
+     * Adds a composite vertex index of one property to the schema.
+     */
+    static void addCompositeIndex(GraphSchemaDef schema, String indexName, String key) {
+        final GraphIndexKeyDef keyDef = new GraphIndexKeyDef();
+        keyDef.setKey(key);
+        final GraphIndexDef index = new GraphIndexDef();
+        index.setName(indexName);
+        index.setRelType(RelType.VERTEX);
+        index.setIndexType(IndexType.COMPOSITE);
+        index.setKeys(Collections.singletonList(keyDef));
+        schema.getGraphIndexes().add(index);
+    }
+}
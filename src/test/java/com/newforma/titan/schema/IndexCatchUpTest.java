@@ -0,0 +1,61 @@
+package com.newforma.titan.schema;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.Instant;
+import java.util.Collections;
+
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.janusgraph.core.schema.SchemaAction;
+import org.janusgraph.core.schema.SchemaStatus;
+import org.janusgraph.graphdb.database.management.ManagementSystem;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.newforma.titan.schema.types.GraphSchemaDef;
+
+public class IndexCatchUpTest extends InMemoryGraphTest {
+
+    private static final String INDEX_NAME = "v1_by_p1";
+    private static final String LOG_IDENTIFIER = "writes";
+
+    private Instant startTime;
+
+    @Before
+    public void setUp() throws Exception {
+        startTime = Instant.now().minusSeconds(1);
+        final JanusGraphTransaction tx = graph.buildTransaction().logIdentifier(LOG_IDENTIFIER).start();
+        for (int i = 0; i < 5; i++) {
+            tx.addVertex("v1").property("p1", "value" + i);
+        }
+        tx.commit();
+
+        // the index is enabled without reindexing the existing data
+        JanusGraphManagement mgmt = graph.openManagement();
+        mgmt.buildIndex(INDEX_NAME, Vertex.class).addKey(mgmt.getPropertyKey("p1")).buildCompositeIndex();
+        mgmt.commit();
+        ManagementSystem.awaitGraphIndexStatus(graph, INDEX_NAME).status(SchemaStatus.REGISTERED).call();
+        mgmt = graph.openManagement();
+        mgmt.updateIndex(mgmt.getGraphIndex(INDEX_NAME), SchemaAction.ENABLE_INDEX);
+        mgmt.commit();
+        ManagementSystem.awaitGraphIndexStatus(graph, INDEX_NAME).status(SchemaStatus.ENABLED).call();
+    }
+
+    private GraphState loadSchema() throws Exception {
+        final GraphSchemaDef schema = loadSchemaDef();
+        addCompositeIndex(schema, INDEX_NAME, "p1");
+        return new GraphState(schema);
+    }
+
+    @Test
+    public void testChangedVerticesReindexed() throws Exception {
+        final GraphState graphState = loadSchema();
+        assertEquals(1.0, new IndexConsistencyChecker(graph, graphState, INDEX_NAME).threads(2).check(null), 0);
+
+        assertEquals(5, new IndexCatchUp(graph, graphState, Collections.singletonList(INDEX_NAME), LOG_IDENTIFIER, startTime)
+                .threads(2).idleTimeout(15).run());
+        assertEquals(0.0, new IndexConsistencyChecker(graph, graphState, INDEX_NAME).threads(2).check(null), 0);
+    }
+}
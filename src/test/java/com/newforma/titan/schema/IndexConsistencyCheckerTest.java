@@ -0,0 +1,73 @@
+package com.newforma.titan.schema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.JanusGraphVertex;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.janusgraph.core.schema.SchemaAction;
+import org.janusgraph.core.schema.SchemaStatus;
+import org.janusgraph.graphdb.database.management.ManagementSystem;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.newforma.titan.schema.types.GraphSchemaDef;
+
+public class IndexConsistencyCheckerTest extends InMemoryGraphTest {
+
+    private static final String INDEX_NAME = "v1_by_p1";
+
+    @Before
+    public void setUp() throws Exception {
+        final JanusGraphTransaction tx = graph.newTransaction();
+        for (int i = 0; i < 5; i++) {
+            tx.addVertex("v1").property("p1", "value" + i);
+        }
+        tx.commit();
+
+        // the index is enabled without reindexing the existing data
+        JanusGraphManagement mgmt = graph.openManagement();
+        mgmt.buildIndex(INDEX_NAME, Vertex.class).addKey(mgmt.getPropertyKey("p1")).buildCompositeIndex();
+        mgmt.commit();
+        ManagementSystem.awaitGraphIndexStatus(graph, INDEX_NAME).status(SchemaStatus.REGISTERED).call();
+        mgmt = graph.openManagement();
+        mgmt.updateIndex(mgmt.getGraphIndex(INDEX_NAME), SchemaAction.ENABLE_INDEX);
+        mgmt.commit();
+        ManagementSystem.awaitGraphIndexStatus(graph, INDEX_NAME).status(SchemaStatus.ENABLED).call();
+    }
+
+    private GraphState loadSchema() throws Exception {
+        final GraphSchemaDef schema = loadSchemaDef();
+        addCompositeIndex(schema, INDEX_NAME, "p1");
+        return new GraphState(schema);
+    }
+
+    @Test
+    public void testMissingEntriesRepaired() throws Exception {
+        final GraphState graphState = loadSchema();
+
+        assertEquals(1.0, new IndexConsistencyChecker(graph, graphState, INDEX_NAME).threads(2).repair(true).check(null), 0);
+        assertEquals(0.0, new IndexConsistencyChecker(graph, graphState, INDEX_NAME).threads(2).check(null), 0);
+    }
+
+    @Test
+    public void testStaleEntriesRemoved() throws Exception {
+        final GraphState graphState = loadSchema();
+        new IndexConsistencyChecker(graph, graphState, INDEX_NAME).threads(2).repair(true).check(null);
+
+        // an entry for a value the vertex does not have, as if a change of the value has been lost
+        final JanusGraphTransaction tx = graph.newTransaction();
+        final JanusGraphVertex v = (JanusGraphVertex) tx.traversal().V().has("p1", "value0").next();
+        v.property("p1", "lost change");
+        try (ElementIndexer indexer = new ElementIndexer(graph, INDEX_NAME)) {
+            indexer.add(v);
+            indexer.commit();
+        }
+        tx.rollback();
+
+        assertTrue(new IndexConsistencyChecker(graph, graphState, INDEX_NAME).threads(2).repair(true).check(null) > 0);
+        assertEquals(0.0, new IndexConsistencyChecker(graph, graphState, INDEX_NAME).threads(2).check(null), 0);
+    }
+}
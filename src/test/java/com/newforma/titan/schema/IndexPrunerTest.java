@@ -0,0 +1,58 @@
+package com.newforma.titan.schema;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.schema.JanusGraphIndex;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.janusgraph.core.schema.SchemaAction;
+import org.janusgraph.core.schema.SchemaStatus;
+import org.janusgraph.graphdb.database.management.ManagementSystem;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IndexPrunerTest extends InMemoryGraphTest {
+
+    @Before
+    public void setUp() throws Exception {
+        final JanusGraphTransaction tx = graph.newTransaction();
+        for (int i = 0; i < 5; i++) {
+            tx.addVertex("v1").property("p1", "value" + i);
+        }
+        tx.commit();
+
+        JanusGraphManagement mgmt = graph.openManagement();
+        mgmt.buildIndex("obsolete", Vertex.class).addKey(mgmt.getPropertyKey("p1")).buildCompositeIndex();
+        mgmt.commit();
+        ManagementSystem.awaitGraphIndexStatus(graph, "obsolete").status(SchemaStatus.REGISTERED).call();
+        mgmt = graph.openManagement();
+        mgmt.updateIndex(mgmt.getGraphIndex("obsolete"), SchemaAction.REINDEX).get();
+        mgmt.commit();
+
+        // not in the schema either, but maintained by the schema manager
+        mgmt = graph.openManagement();
+        mgmt.buildIndex(GlobalMetaDataManager.METADATA_ID_GRAPH_INDEX, Vertex.class)
+                .addKey(mgmt.makePropertyKey(GlobalMetaDataManager.METADATA_ID_PROPERTY_KEY).dataType(String.class).make())
+                .buildCompositeIndex();
+        mgmt.commit();
+    }
+
+    @Test
+    public void testObsoleteIndexPruned() throws Exception {
+        final IndexPruner pruner = new IndexPruner(graph, loadGraphState()).timeout(30);
+        assertEquals(Collections.singletonList("obsolete"), pruner.listObsoleteIndexes());
+
+        assertEquals(1, pruner.prune());
+
+        final JanusGraphManagement mgmt = graph.openManagement();
+        final JanusGraphIndex index = mgmt.getGraphIndex("obsolete");
+        assertEquals(SchemaStatus.DISABLED, index.getIndexStatus(mgmt.getPropertyKey("p1")));
+        final JanusGraphIndex metadataIndex = mgmt.getGraphIndex(GlobalMetaDataManager.METADATA_ID_GRAPH_INDEX);
+        assertEquals(SchemaStatus.ENABLED,
+                metadataIndex.getIndexStatus(mgmt.getPropertyKey(GlobalMetaDataManager.METADATA_ID_PROPERTY_KEY)));
+        mgmt.rollback();
+    }
+}
@@ -0,0 +1,16 @@
+package com.newforma.titan.schema;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class InstanceMonitorTest extends InMemoryGraphTest {
+
+    @Test
+    public void testNoStaleInstances() throws Exception {
+        try (InstanceMonitor monitor = new InstanceMonitor(graph)) {
+            // the only open instance is this one
+            assertTrue(monitor.findStaleInstances(1).isEmpty());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.newforma.titan.schema;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.janusgraph.core.schema.SchemaAction;
+import org.janusgraph.core.schema.SchemaStatus;
+import org.janusgraph.graphdb.database.management.ManagementSystem;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.newforma.titan.schema.types.GraphSchemaDef;
+
+public class PartialReindexerTest extends InMemoryGraphTest {
+
+    private static final String INDEX_NAME = "v1_by_p1";
+
+    @Before
+    public void setUp() throws Exception {
+        final JanusGraphTransaction tx = graph.newTransaction();
+        for (int i = 0; i < 5; i++) {
+            tx.addVertex("v1").property("p1", "value" + i);
+        }
+        tx.commit();
+
+        // the index is enabled without reindexing the existing data
+        enableIndex(INDEX_NAME);
+    }
+
+    private void enableIndex(String indexName) throws Exception {
+        JanusGraphManagement mgmt = graph.openManagement();
+        mgmt.buildIndex(indexName, Vertex.class).addKey(mgmt.getPropertyKey("p1")).buildCompositeIndex();
+        mgmt.commit();
+        ManagementSystem.awaitGraphIndexStatus(graph, indexName).status(SchemaStatus.REGISTERED).call();
+        mgmt = graph.openManagement();
+        mgmt.updateIndex(mgmt.getGraphIndex(indexName), SchemaAction.ENABLE_INDEX);
+        mgmt.commit();
+        ManagementSystem.awaitGraphIndexStatus(graph, indexName).status(SchemaStatus.ENABLED).call();
+    }
+
+    private GraphState loadSchema() throws Exception {
+        final GraphSchemaDef schema = loadSchemaDef();
+        addCompositeIndex(schema, INDEX_NAME, "p1");
+        return new GraphState(schema);
+    }
+
+    @Test
+    public void testLabelReindexed() throws Exception {
+        final GraphState graphState = loadSchema();
+
+        assertEquals(5, new PartialReindexer(graph, graphState, INDEX_NAME).threads(2).label("v1").run());
+        assertEquals(0, new PartialReindexer(graph, graphState, INDEX_NAME).threads(2).label("v2").run());
+        assertEquals(0.0, new IndexConsistencyChecker(graph, graphState, INDEX_NAME).threads(2).check(null), 0);
+    }
+
+    @Test
+    public void testReindexedIntoNewVersion() throws Exception {
+        final GraphState graphState = loadSchema();
+        enableIndex(INDEX_NAME + "_next");
+
+        assertEquals(5, new PartialReindexer(graph, graphState, INDEX_NAME).into(INDEX_NAME + "_next").threads(2).run());
+        // the original index is left as it was
+        assertEquals(1.0, new IndexConsistencyChecker(graph, graphState, INDEX_NAME).threads(2).check(null), 0);
+    }
+}
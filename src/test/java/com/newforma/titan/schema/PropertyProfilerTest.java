@@ -0,0 +1,56 @@
+package com.newforma.titan.schema;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+
+import org.janusgraph.core.Cardinality;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.JanusGraphVertex;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.janusgraph.core.schema.Mapping;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.newforma.titan.schema.types.GraphIndexDef.IndexType;
+
+public class PropertyProfilerTest extends InMemoryGraphTest {
+
+    @Before
+    public void setUp() {
+        // the graph allows more values than the schema does
+        final JanusGraphManagement mgmt = graph.openManagement();
+        mgmt.makePropertyKey("p2").dataType(String.class).cardinality(Cardinality.LIST).make();
+        mgmt.commit();
+
+        final JanusGraphTransaction tx = graph.newTransaction();
+        for (int i = 0; i < 10; i++) {
+            final JanusGraphVertex v1 = tx.addVertex("v1");
+            if (i < 8) {
+                v1.property("p1", "this is a rather long description number " + (i % 4));
+            }
+            final JanusGraphVertex v2 = tx.addVertex("v2");
+            v2.property("p2", "code" + i);
+            if (i == 0) {
+                v2.property("p2", "extra");
+            }
+        }
+        tx.commit();
+    }
+
+    @Test
+    public void testPropertyProfiles() throws Exception {
+        final Map<String, Map<String, Object>> report = new PropertyProfiler(graph, loadGraphState()).threads(2).profile(null);
+
+        final Map<String, Object> p1 = report.get("p1");
+        assertEquals(Double.valueOf(0.2), p1.get("null_rate"));
+        assertEquals(Long.valueOf(4), p1.get("distinct_estimate"));
+        assertEquals(IndexType.MIXED, p1.get("index_type"));
+        assertEquals(Mapping.TEXT, p1.get("mapping"));
+
+        final Map<String, Object> p2 = report.get("p2");
+        assertEquals(Long.valueOf(1), p2.get("cardinality_violations"));
+        assertEquals(Long.valueOf(11), p2.get("distinct_estimate"));
+        assertEquals(IndexType.COMPOSITE, p2.get("index_type"));
+    }
+}
@@ -0,0 +1,65 @@
+package com.newforma.titan.schema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.tinkerpop.gremlin.process.traversal.P;
+import org.apache.tinkerpop.gremlin.process.traversal.step.util.HasContainer;
+import org.apache.tinkerpop.gremlin.structure.T;
+import org.junit.Test;
+
+import com.newforma.titan.schema.types.GraphIndexDef;
+import com.newforma.titan.schema.types.GraphIndexDef.IndexType;
+import com.newforma.titan.schema.types.GraphIndexDef.RelType;
+
+public class QueryPlanAnalyzerTest {
+
+    @Test
+    public void testEqualityConditionsSuggestCompositeIndex() {
+        final GraphIndexDef indexDef = QueryPlanAnalyzer.suggestIndex(true, Arrays.asList(
+                new HasContainer(T.label.getAccessor(), P.eq("v1")),
+                new HasContainer("p1", P.eq("x")),
+                new HasContainer("p2", P.within("a", "b"))));
+
+        assertEquals("v1_by_p1_p2", indexDef.getName());
+        assertEquals(RelType.VERTEX, indexDef.getRelType());
+        assertEquals(IndexType.COMPOSITE, indexDef.getIndexType());
+        assertEquals("v1", indexDef.getIndexOnly());
+        assertEquals(2, indexDef.getKeys().size());
+    }
+
+    @Test
+    public void testRangeConditionSuggestsMixedIndex() {
+        final GraphIndexDef indexDef = QueryPlanAnalyzer.suggestIndex(false, Arrays.asList(
+                new HasContainer("p1", P.gt(Integer.valueOf(10)))));
+
+        assertEquals("edge_by_p1_mixed", indexDef.getName());
+        assertEquals(RelType.EDGE, indexDef.getRelType());
+        assertEquals(IndexType.MIXED, indexDef.getIndexType());
+        assertNull(indexDef.getIndexOnly());
+    }
+
+    @Test
+    public void testLabelOnlyConditionHasNoSuggestion() {
+        assertNull(QueryPlanAnalyzer.suggestIndex(true, Arrays.asList(
+                new HasContainer(T.label.getAccessor(), P.eq("v1")),
+                new HasContainer("p1", P.neq("x")))));
+    }
+
+    @Test
+    public void testCommentsAndEmptyLinesAreSkipped() throws Exception {
+        final File queryFile = File.createTempFile("queries", ".txt");
+        try {
+            Files.write(queryFile.toPath(), Arrays.asList("# comment", "", "g.V().has('p1', 'x')", "  // another",
+                    "  g.E().count()  "), StandardCharsets.UTF_8);
+            assertEquals(Arrays.asList("g.V().has('p1', 'x')", "g.E().count()"), QueryPlanAnalyzer.readQueries(queryFile));
+        } finally {
+            queryFile.delete();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.newforma.titan.schema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.JanusGraphVertex;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.newforma.titan.schema.types.LocalEdgeIndexDef;
+
+public class SupernodeAnalyzerTest extends InMemoryGraphTest {
+
+    @Before
+    public void setUp() {
+        final JanusGraphTransaction tx = graph.newTransaction();
+        final JanusGraphVertex hub = tx.addVertex("v1");
+        for (int i = 0; i < 20; i++) {
+            hub.addEdge("e1", tx.addVertex("v2"), "p1", "value" + i);
+        }
+        tx.commit();
+    }
+
+    @Test
+    public void testSupernodeGetsLocalEdgeIndexSuggestion() throws Exception {
+        final List<LocalEdgeIndexDef> suggestions = new SupernodeAnalyzer(graph, loadGraphState(), 10).threads(2).analyze(null);
+
+        assertEquals(1, suggestions.size());
+        final LocalEdgeIndexDef indexDef = suggestions.get(0);
+        assertEquals("e1", indexDef.getLabel());
+        assertEquals(Direction.OUT, indexDef.getDirection());
+        assertEquals(Collections.singletonList("p1"), indexDef.getSortKey().getKeys());
+    }
+
+    @Test
+    public void testNoSuggestionBelowThreshold() throws Exception {
+        assertEquals(0, new SupernodeAnalyzer(graph, loadGraphState(), 21).analyze(null).size());
+    }
+
+    @Test
+    public void testVerticesWithoutEdgesHaveZeroDegree() throws Exception {
+        final File report = File.createTempFile("supernodes", ".json");
+        try {
+            new SupernodeAnalyzer(graph, loadGraphState(), 10).threads(2).analyze(report);
+            final JsonNode degrees = new ObjectMapper().readTree(report).get("degrees");
+
+            // e2 connects v1 and v2 both ways, none of the 21 vertices has such an edge
+            assertEquals(21, degrees.get("e2/OUT").get("vertices").asLong());
+            assertEquals(0, degrees.get("e2/OUT").get("max").asDouble(), 0);
+            // only v1 vertices have outgoing e1 edges
+            assertEquals(1, degrees.get("e1/OUT").get("vertices").asLong());
+        } finally {
+            report.delete();
+        }
+    }
+
+    @Test
+    public void testEdgeFiltersAreFoundInQueries() throws Exception {
+        final Map<String, Map<String, Long>> filters = SupernodeAnalyzer.getEdgeFilters(Arrays.asList(
+                "g.V().has('p1', 'x').outE('e1').has('p2', gt('a')).inV()",
+                "g.V().bothE('e2').has('p1', 'y')",
+                "g.V().out('e1')"));
+
+        assertEquals(Long.valueOf(1), filters.get("e1/OUT").get("p2"));
+        assertEquals(Long.valueOf(1), filters.get("e2/OUT").get("p1"));
+        assertEquals(Long.valueOf(1), filters.get("e2/IN").get("p1"));
+        assertNull(filters.get("e1/IN"));
+    }
+}
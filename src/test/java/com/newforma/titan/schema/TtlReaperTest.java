@@ -0,0 +1,93 @@
+package com.newforma.titan.schema;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.JanusGraphVertex;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.newforma.titan.schema.types.GraphSchemaDef;
+import com.newforma.titan.schema.types.TTLType;
+
+public class TtlReaperTest extends InMemoryGraphTest {
+
+    private static final long HOUR = Duration.ofHours(1).toMillis();
+
+    @Before
+    public void setUp() {
+        final long now = System.currentTimeMillis();
+        final JanusGraphTransaction tx = graph.newTransaction();
+        for (int i = 0; i < 10; i++) {
+            // half of the vertices and edges are two hours old
+            final long created = i % 2 == 0 ? now - 2 * HOUR : now;
+            final JanusGraphVertex v1 = tx.addVertex("v1");
+            v1.property("created", Long.valueOf(created));
+            final JanusGraphVertex v2 = tx.addVertex("v2");
+            v2.property("created", Long.valueOf(now - 2 * HOUR));
+            v1.addEdge("e1", v2, "created", Long.valueOf(created));
+        }
+        // no timestamp, never expires
+        tx.addVertex("v1");
+        tx.commit();
+    }
+
+    private GraphState loadSchema() throws Exception {
+        final GraphSchemaDef schema = loadSchemaDef();
+        schema.getGraph().getDefaults().setTtlTimestampKey("created");
+        schema.getVertices().stream().filter(v -> v.getLabel().equals("v1"))
+                .forEach(v -> v.setTtl(new TTLType(Duration.ofHours(1))));
+        schema.getEdges().stream().filter(e -> e.getLabel().equals("e1"))
+                .forEach(e -> e.setTtl(new TTLType(Duration.ofHours(1))));
+        return new GraphState(schema);
+    }
+
+    @Test
+    public void testExpiredElementsRemoved() throws Exception {
+        final long removed = new TtlReaper(graph, loadSchema()).threads(2).run();
+
+        // 5 expired v1 vertices with their edges, then nothing left to remove for e1
+        assertEquals(5, removed);
+        assertEquals(6, graph.traversal().V().hasLabel("v1").count().next().longValue());
+        assertEquals(10, graph.traversal().V().hasLabel("v2").count().next().longValue());
+        assertEquals(5, graph.traversal().E().hasLabel("e1").count().next().longValue());
+    }
+
+    @Test
+    public void testStaticVertexLabelSkipped() throws Exception {
+        try (JanusGraph staticGraph = openInMemory()) {
+            final JanusGraphManagement mgmt = staticGraph.openManagement();
+            mgmt.makeVertexLabel("v1").setStatic().make();
+            mgmt.commit();
+            final JanusGraphTransaction tx = staticGraph.newTransaction();
+            tx.addVertex("v1").property("created", Long.valueOf(System.currentTimeMillis() - 2 * HOUR));
+            tx.commit();
+
+            assertEquals(0, new TtlReaper(staticGraph, loadSchema()).threads(2).run());
+            assertEquals(1, staticGraph.traversal().V().hasLabel("v1").count().next().longValue());
+        }
+    }
+
+    @Test
+    public void testDedupPerBatch() {
+        final List<Object> ids = Lists.newArrayList(TtlReaper.dedupPerBatch(
+                Arrays.<Object>asList(1L, 1L, 2L, 3L, 3L, 1L, 4L).iterator(), 2));
+
+        // repeated within a batch of 2 distinct IDs only
+        assertEquals(Arrays.<Object>asList(1L, 2L, 3L, 1L, 4L), ids);
+    }
+
+    @Test(expected = SchemaManagementException.class)
+    public void testTimestampKeyRequired() throws Exception {
+        final GraphState graphState = loadSchema();
+        graphState.getGraphSchemaDef().getGraph().getDefaults().setTtlTimestampKey(null);
+        new TtlReaper(graph, graphState).run();
+    }
+}
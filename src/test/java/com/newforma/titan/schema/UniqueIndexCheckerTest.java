@@ -0,0 +1,55 @@
+package com.newforma.titan.schema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.janusgraph.core.JanusGraphTransaction;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.newforma.titan.schema.types.GraphIndexDef;
+import com.newforma.titan.schema.types.GraphIndexDef.IndexType;
+import com.newforma.titan.schema.types.GraphIndexDef.RelType;
+import com.newforma.titan.schema.types.GraphIndexKeyDef;
+
+public class UniqueIndexCheckerTest extends InMemoryGraphTest {
+
+    @Before
+    public void setUp() {
+        final JanusGraphTransaction tx = graph.newTransaction();
+        for (int i = 0; i < 10; i++) {
+            tx.addVertex("v1").property("p1", "name" + (i < 2 ? 0 : i));
+            tx.addVertex("v2").property("p1", "other" + i);
+        }
+        tx.commit();
+    }
+
+    private static GraphIndexDef newUniqueIndex(String name, String indexOnly) {
+        final GraphIndexKeyDef key = new GraphIndexKeyDef();
+        key.setKey("p1");
+        final GraphIndexDef index = new GraphIndexDef();
+        index.setName(name);
+        index.setRelType(RelType.VERTEX);
+        index.setIndexType(IndexType.COMPOSITE);
+        index.setUnique(Boolean.TRUE);
+        index.setIndexOnly(indexOnly);
+        index.setKeys(Collections.singletonList(key));
+        return index;
+    }
+
+    @Test
+    public void testDuplicatesFound() throws Exception {
+        final List<UniqueIndexChecker.Duplicates> duplicates = new UniqueIndexChecker(graph,
+                Arrays.asList(newUniqueIndex("all_by_p1", null), newUniqueIndex("v2_by_p1", "v2"))).threads(2).check();
+
+        assertEquals(1, duplicates.size());
+        assertEquals("all_by_p1", duplicates.get(0).getIndexName());
+        assertEquals(1, duplicates.get(0).getGroupCount());
+        assertTrue(duplicates.get(0).getSamples().containsKey("[\"name0\"]"));
+        assertEquals(2, duplicates.get(0).getSamples().get("[\"name0\"]").size());
+    }
+}
@@ -0,0 +1,41 @@
+package com.newforma.titan.schema.scan;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class DuplicateFinderTest {
+
+    private static Map<String, List<String>> findDuplicates(int maxInMemory) throws Exception {
+        final Map<String, List<String>> duplicates = new HashMap<>();
+        try (DuplicateFinder finder = new DuplicateFinder(maxInMemory)) {
+            for (int i = 0; i < 1000; i++) {
+                finder.add("key-" + i, "id-" + i);
+            }
+            finder.add("key-7", "id-1007");
+            finder.add("key-500", "id-1500");
+            finder.add("key-500", "id-2500");
+            finder.forEachDuplicate((key, ids) -> duplicates.put(key, new ArrayList<>(ids)));
+        }
+        return duplicates;
+    }
+
+    @Test
+    public void testDuplicatesInMemory() throws Exception {
+        final Map<String, List<String>> duplicates = findDuplicates(DuplicateFinder.DEFAULT_MAX_IN_MEMORY);
+        assertEquals(2, duplicates.size());
+        assertEquals(2, duplicates.get("key-7").size());
+        assertEquals(3, duplicates.get("key-500").size());
+    }
+
+    @Test
+    public void testDuplicatesSpilled() throws Exception {
+        assertEquals(findDuplicates(DuplicateFinder.DEFAULT_MAX_IN_MEMORY).keySet(), findDuplicates(100).keySet());
+        assertEquals(3, findDuplicates(100).get("key-500").size());
+    }
+}
@@ -0,0 +1,28 @@
+package com.newforma.titan.schema.scan;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class HyperLogLogTest {
+
+    @Test
+    public void testSmallCardinalityIsExact() {
+        final HyperLogLog hll = new HyperLogLog();
+        for (int i = 0; i < 1000; i++) {
+            hll.add(Integer.valueOf(i % 10));
+        }
+        assertEquals(10, hll.estimate());
+    }
+
+    @Test
+    public void testLargeCardinalityIsWithinError() {
+        final HyperLogLog first = new HyperLogLog();
+        final HyperLogLog second = new HyperLogLog();
+        for (int i = 0; i < 1000000; i++) {
+            (i % 2 == 0 ? first : second).add("value-" + i);
+        }
+        first.merge(second);
+        assertEquals(1000000, first.estimate(), 1000000 * 0.03);
+    }
+}
@@ -0,0 +1,53 @@
+package com.newforma.titan.schema.scan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class QuantileSketchTest {
+
+    @Test
+    public void testQuantilesAreWithinRelativeError() {
+        final QuantileSketch sketch = new QuantileSketch(0.01);
+        for (int i = 1; i <= 100000; i++) {
+            sketch.add(i);
+        }
+        assertEquals(50000, sketch.getQuantile(0.5), 50000 * 0.01);
+        assertEquals(99000, sketch.getQuantile(0.99), 99000 * 0.01);
+        assertEquals(100000, sketch.getMax(), 0);
+        assertEquals(1, sketch.getMin(), 0);
+        assertTrue("Sketch size must not grow with the number of values", sketch.getBucketCount() < 1000);
+    }
+
+    @Test
+    public void testMergedSketchMatchesSingleSketch() {
+        final Random random = new Random(1);
+        final QuantileSketch single = new QuantileSketch();
+        final QuantileSketch first = new QuantileSketch();
+        final QuantileSketch second = new QuantileSketch();
+        for (int i = 0; i < 10000; i++) {
+            final long value = (long) (1 / (1 - random.nextDouble()));
+            single.add(value);
+            (i % 2 == 0 ? first : second).add(value);
+        }
+        first.merge(second);
+
+        assertEquals(single.getCount(), first.getCount());
+        assertEquals(single.getQuantile(0.9), first.getQuantile(0.9), 0);
+        assertEquals(single.getMax(), first.getMax(), 0);
+    }
+
+    @Test
+    public void testZerosAndEmptySketch() {
+        final QuantileSketch sketch = new QuantileSketch();
+        assertTrue(Double.isNaN(sketch.getQuantile(0.5)));
+        sketch.add(0);
+        sketch.add(0);
+        sketch.add(10);
+        assertEquals(0, sketch.getQuantile(0.5), 0);
+        assertEquals(10, sketch.getQuantile(1), 10 * QuantileSketch.DEFAULT_RELATIVE_ERROR);
+    }
+}
@@ -0,0 +1,25 @@
+package com.newforma.titan.schema.scan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TopValuesTest {
+
+    @Test
+    public void testFrequentValuesAreFoundInLongTail() {
+        final TopValues top = new TopValues(20);
+        for (int i = 0; i < 10000; i++) {
+            top.add(i % 10 == 0 ? "frequent" : i % 10 == 1 ? "second" : "rare-" + i);
+        }
+        final Map<Object, Long> values = top.getTop(2);
+        assertEquals(2, values.size());
+        assertEquals("frequent", values.keySet().iterator().next());
+        assertTrue(values.containsKey("second"));
+        assertTrue(values.get("frequent").longValue() >= 1000);
+        assertEquals(10000, top.getTotal());
+    }
+}
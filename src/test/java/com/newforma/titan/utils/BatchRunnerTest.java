@@ -0,0 +1,47 @@
+package com.newforma.titan.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphFactory;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import groovy.lang.Closure;
+
+public class BatchRunnerTest {
+
+    private JanusGraph graph;
+
+    @Before
+    public void setUp() {
+        graph = JanusGraphFactory.build().set("storage.backend", "inmemory").open();
+        final JanusGraphTransaction tx = graph.newTransaction();
+        for (int i = 0; i < 25; i++) {
+            tx.addVertex("item").property("index", Integer.valueOf(i));
+        }
+        tx.commit();
+    }
+
+    @After
+    public void tearDown() {
+        graph.close();
+    }
+
+    @Test
+    public void testAllElementsAreProcessedAndCommitted() throws Exception {
+        final long processed = new BatchRunner(graph, 2).call(graph.traversal().V().hasLabel("item"), 10, 3,
+                new Closure<Object>(this) {
+                    @SuppressWarnings("unused")
+                    public Object doCall(Object v) {
+                        return ((org.apache.tinkerpop.gremlin.structure.Vertex) v).property("migrated", Boolean.TRUE);
+                    }
+                });
+        graph.tx().rollback();
+
+        assertEquals(25, processed);
+        assertEquals(25L, graph.traversal().V().has("migrated", Boolean.TRUE).count().next().longValue());
+    }
+}
@@ -0,0 +1,62 @@
+package com.newforma.titan.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class ReadAheadInputStreamTest {
+
+    @Test
+    public void readsEverything() throws IOException {
+        final byte[] data = new byte[100003];
+        new Random(42).nextBytes(data);
+
+        try (InputStream is = new ReadAheadInputStream(new ByteArrayInputStream(data), 1000, 4)) {
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            IOUtils.copy(is, os);
+            assertArrayEquals(data, os.toByteArray());
+            assertEquals(-1, is.read());
+        }
+    }
+
+    @Test
+    public void emptySource() throws IOException {
+        try (InputStream is = new ReadAheadInputStream(new ByteArrayInputStream(new byte[0]))) {
+            assertEquals(-1, is.read());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void propagatesFailure() throws IOException {
+        final InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("broken");
+            }
+        };
+        try (InputStream is = new ReadAheadInputStream(failing)) {
+            is.read();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void propagatesError() throws IOException {
+        final InputStream failing = new InputStream() {
+            @Override
+            public int read() {
+                throw new StackOverflowError("broken");
+            }
+        };
+        try (InputStream is = new ReadAheadInputStream(failing)) {
+            is.read();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.newforma.titan.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import javax.script.SimpleBindings;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class ScriptCacheTest {
+
+    private File cacheDir;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheDir = Files.createTempDirectory("script-cache").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(cacheDir);
+    }
+
+    @Test
+    public void testScriptIsCompiledOnceAndReused() throws Exception {
+        final String script = "[1, 2, 3].collect { it * x }.sum()";
+
+        final Object first = new ScriptCache(cacheDir)
+                .load(script, new SimpleBindings(ImmutableMap.of("x", 2))).eval();
+        assertEquals(12, ((Number) first).intValue());
+        assertEquals(1, cacheDir.list().length);
+
+        // a new cache instance (e.g. the next run) uses the stored classes
+        final Object second = new ScriptCache(cacheDir)
+                .load(script, null).eval(new SimpleBindings(ImmutableMap.of("x", 3)));
+        assertEquals(18, ((Number) second).intValue());
+        assertEquals(1, cacheDir.list().length);
+    }
+
+    @Test(expected = IOException.class)
+    public void testSharedDirectoryRefused() throws Exception {
+        final PosixFileAttributeView posix = Files.getFileAttributeView(cacheDir.toPath(), PosixFileAttributeView.class);
+        Assume.assumeNotNull(posix);
+        posix.setPermissions(PosixFilePermissions.fromString("rwxrwxrwx"));
+        new ScriptCache(cacheDir);
+    }
+
+    @Test
+    public void testCacheKeyDependsOnContent() {
+        assertNotEquals(ScriptCache.getCacheKey("1 + 1"), ScriptCache.getCacheKey("1 + 2"));
+        assertEquals(ScriptCache.getCacheKey("1 + 1"), ScriptCache.getCacheKey("1 + 1"));
+    }
+}
@@ -0,0 +1,94 @@
+package com.newforma.titan.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ScriptResultWriterTest {
+
+    @Test
+    public void writesInScriptOrder() throws IOException {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (ScriptResultWriter writer = new ScriptResultWriter(os, 0)) {
+            final ScriptResultWriter.Entry second = writer.serialize(1, "b.groovy", Arrays.asList(1, 2));
+            writer.publish(second);
+            writer.write(0, "a.groovy", "x");
+        }
+        final JsonNode results = new ObjectMapper().readTree(os.toByteArray());
+        assertEquals(2, results.size());
+        assertEquals("a.groovy", results.get(0).get("script").asText());
+        assertEquals("x", results.get(0).get("result").asText());
+        assertEquals(2, results.get(1).get("result").size());
+    }
+
+    @Test
+    public void failureWhileSerializingLeavesNothing() throws IOException {
+        final Iterator<Object> failing = new Iterator<Object>() {
+            private int i;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Object next() {
+                if (i++ == 3) {
+                    throw new IllegalStateException("traversal failed");
+                }
+                return Integer.valueOf(i);
+            }
+        };
+
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (ScriptResultWriter writer = new ScriptResultWriter(os, 0)) {
+            try {
+                writer.serialize(0, "a.groovy", failing);
+            } catch (IllegalStateException e) {
+                writer.writeFailure(0, "a.groovy", e);
+            }
+        }
+        final JsonNode results = new ObjectMapper().readTree(os.toByteArray());
+        assertEquals(1, results.size());
+        assertTrue(results.get(0).has("error"));
+        assertFalse(results.get(0).has("result"));
+    }
+
+    @Test
+    public void onlyOneEntryPerScript() throws IOException {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (ScriptResultWriter writer = new ScriptResultWriter(os, 0)) {
+            writer.write(0, "a.groovy", "x");
+            writer.writeFailure(0, "a.groovy", new IOException("late failure"));
+        }
+        final JsonNode results = new ObjectMapper().readTree(os.toByteArray());
+        assertEquals(1, results.size());
+        assertEquals("x", results.get(0).get("result").asText());
+    }
+
+    @Test
+    public void largeResultIsSpilled() throws IOException {
+        final char[] chars = new char[64 * 1024];
+        Arrays.fill(chars, 'v');
+        final String value = new String(chars);
+
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (ScriptResultWriter writer = new ScriptResultWriter(os, 0)) {
+            writer.write(0, "a.groovy", Collections.nCopies(32, value));
+        }
+        final JsonNode results = new ObjectMapper().readTree(os.toByteArray());
+        assertEquals(32, results.get(0).get("result").size());
+        assertEquals(value, results.get(0).get("result").get(31).asText());
+    }
+}
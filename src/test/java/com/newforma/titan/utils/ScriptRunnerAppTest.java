@@ -0,0 +1,74 @@
+package com.newforma.titan.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.script.ScriptException;
+
+import org.apache.commons.io.FileUtils;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ScriptRunnerAppTest {
+
+    private File workDir;
+    private File graphConfig;
+
+    @Before
+    public void setUp() throws Exception {
+        workDir = Files.createTempDirectory("script-runner").toFile();
+        graphConfig = new File(workDir, "graph.properties");
+        // persistent, the graph is reopened after the run
+        FileUtils.writeStringToFile(graphConfig, "storage.backend=berkeleyje\nstorage.directory="
+                + new File(workDir, "graph").getAbsolutePath().replace('\\', '/') + "\n", StandardCharsets.UTF_8);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(workDir);
+    }
+
+    @Test
+    public void testFailingScriptDoesNotAffectParallelOne() throws Exception {
+        final File kept = script("kept.groovy", "g.addV('v1').property('name', 'kept').iterate()\n'done'");
+        final File failing = script("failing.groovy",
+                "g.addV('v1').property('name', 'lost').iterate()\nthrow new IllegalStateException('failing on purpose')");
+
+        final ByteArrayOutputStream resultStream = new ByteArrayOutputStream();
+        try {
+            new ScriptRunnerApp().runScripts(graphConfig.getPath(),
+                    new String[] { failing.getPath(), kept.getPath() }, 2, resultStream);
+            fail("The failure of the script must be reported");
+        } catch (ScriptException e) {
+            // expected
+        }
+
+        final JsonNode results = new ObjectMapper().readTree(resultStream.toByteArray());
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).get("error").asText().contains("failing on purpose"));
+        assertEquals("done", results.get(1).get("result").asText());
+
+        try (JanusGraph graph = JanusGraphFactory.open(graphConfig.getPath())) {
+            assertEquals(1, graph.traversal().V().has("name", "kept").count().next().longValue());
+            assertEquals(0, graph.traversal().V().has("name", "lost").count().next().longValue());
+        }
+    }
+
+    private File script(String name, String text) throws Exception {
+        final File file = new File(workDir, name);
+        FileUtils.writeStringToFile(file, text, StandardCharsets.UTF_8);
+        return file;
+    }
+}